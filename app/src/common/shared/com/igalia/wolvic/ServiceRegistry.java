@@ -0,0 +1,271 @@
+package com.igalia.wolvic;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.igalia.wolvic.telemetry.StartupTrace;
+import com.igalia.wolvic.utils.SystemUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates the application services lazily, the first time they are requested, after the services
+ * they depend on. Services that don't need the main thread can also be created ahead of time in
+ * background executors, and requesting them in the meantime waits for them.
+ *
+ * Dependencies must be registered before the services that depend on them, so there can't be
+ * cycles. Factories must not request services that are not declared as dependencies, as two
+ * threads creating services which wait for each other would deadlock.
+ */
+public class ServiceRegistry {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(ServiceRegistry.class);
+
+    public interface Factory<T> {
+        @NonNull
+        T create();
+    }
+
+    public static final class Key<T> {
+        private final String mName;
+
+        public Key(@NonNull String name) {
+            mName = name;
+        }
+
+        @NonNull
+        public String getName() {
+            return mName;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return mName;
+        }
+    }
+
+    public static class Stats {
+        public final String name;
+        public final boolean initialized;
+        // The thread that created the service, null if it wasn't created.
+        @Nullable
+        public final String thread;
+        // The time spent in the factory, without creating the dependencies.
+        public final long durationMicros;
+        // Position in the creation order, starting at 0, or -1 if the service wasn't created.
+        public final int order;
+
+        Stats(@NonNull String name, boolean initialized, @Nullable String thread, long durationMicros, int order) {
+            this.name = name;
+            this.initialized = initialized;
+            this.thread = thread;
+            this.durationMicros = durationMicros;
+            this.order = order;
+        }
+
+        @NonNull
+        public JSONObject toJson() throws JSONException {
+            JSONObject json = new JSONObject();
+            json.put("name", name);
+            json.put("initialized", initialized);
+            if (initialized) {
+                json.put("thread", thread);
+                json.put("durationMicros", durationMicros);
+                json.put("order", order);
+            }
+            return json;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return initialized ? name + " (" + thread + "): " + durationMicros / 1000.0 + " ms" : name + ": not created";
+        }
+    }
+
+    private static class Entry<T> {
+        final Key<T> key;
+        final Factory<T> factory;
+        final List<Key<?>> dependencies;
+        volatile T instance;
+        // Guarded by the entry.
+        boolean creating;
+        String thread;
+        long durationMicros;
+        int order = -1;
+
+        Entry(@NonNull Key<T> key, @NonNull Factory<T> factory, @NonNull List<Key<?>> dependencies) {
+            this.key = key;
+            this.factory = factory;
+            this.dependencies = dependencies;
+        }
+    }
+
+    private final Map<Key<?>, Entry<?>> mEntries = new ConcurrentHashMap<>();
+    // In registration order.
+    private final List<Entry<?>> mRegistered = new CopyOnWriteArrayList<>();
+    private final AtomicInteger mCreated = new AtomicInteger();
+
+    public <T> void register(@NonNull Key<T> key, @NonNull Factory<T> factory, @NonNull Key<?>... dependencies) {
+        for (Key<?> dependency : dependencies) {
+            if (!mEntries.containsKey(dependency)) {
+                throw new IllegalArgumentException(key + " depends on " + dependency + ", which is not registered");
+            }
+        }
+        Entry<T> entry = new Entry<>(key, factory, Arrays.asList(dependencies));
+        if (mEntries.putIfAbsent(key, entry) != null) {
+            throw new IllegalArgumentException(key + " is already registered");
+        }
+        mRegistered.add(entry);
+    }
+
+    /**
+     * Returns the service, creating it and its dependencies if they don't exist yet.
+     */
+    @NonNull
+    public <T> T get(@NonNull Key<T> key) {
+        Entry<T> entry = getEntry(key);
+        T instance = entry.instance;
+        if (instance != null) {
+            return instance;
+        }
+
+        // Dependencies are created before taking the lock of the entry.
+        for (Key<?> dependency : entry.dependencies) {
+            get(dependency);
+        }
+
+        synchronized (entry) {
+            if (entry.instance != null) {
+                return entry.instance;
+            }
+            if (entry.creating) {
+                throw new IllegalStateException(key + " was requested while it's being created");
+            }
+            entry.creating = true;
+            try {
+                long start = System.nanoTime();
+                try (StartupTrace.Span ignored = StartupTrace.begin("Service: " + key)) {
+                    entry.instance = entry.factory.create();
+                }
+                entry.thread = Thread.currentThread().getName();
+                entry.durationMicros = (System.nanoTime() - start) / 1000;
+                entry.order = mCreated.getAndIncrement();
+                Log.d(LOGTAG, "Created " + getStats(entry));
+
+            } finally {
+                entry.creating = false;
+            }
+            return entry.instance;
+        }
+    }
+
+    /**
+     * Returns the service if it was already created, without creating it.
+     */
+    @Nullable
+    public <T> T peek(@NonNull Key<T> key) {
+        Entry<T> entry = getEntry(key);
+        return entry.instance;
+    }
+
+    public boolean isInitialized(@NonNull Key<?> key) {
+        return getEntry(key).instance != null;
+    }
+
+    /**
+     * Creates the given services, and their dependencies, in the executor. Every service is
+     * submitted separately, so executors with several threads create them in parallel.
+     */
+    public void initializeAsync(@NonNull Executor executor, @NonNull Key<?>... keys) {
+        for (Key<?> key : keys) {
+            executor.execute(() -> {
+                try {
+                    get(key);
+                } catch (RuntimeException e) {
+                    // The error will be thrown again to the code requesting the service.
+                    Log.e(LOGTAG, "Unable to create " + key + " in the background: " + e.getLocalizedMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Returns every registered service, the created ones first in creation order, then the rest
+     * in registration order. Services created after startup are included too.
+     */
+    @NonNull
+    public List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<>();
+        for (Entry<?> entry : mRegistered) {
+            stats.add(getStats(entry));
+        }
+        stats.sort((a, b) -> {
+            if (a.initialized != b.initialized) {
+                return a.initialized ? -1 : 1;
+            }
+            return Integer.compare(a.order, b.order);
+        });
+        return stats;
+    }
+
+    /**
+     * Writes the stats of the services to a new file in the given directory.
+     * @return The exported file, or null if it couldn't be written.
+     */
+    @Nullable
+    public File exportStats(@NonNull File directory) {
+        File file = new File(directory, "wolvic_services_" + System.currentTimeMillis() + ".json");
+        try (OutputStream out = new FileOutputStream(file)) {
+            JSONArray services = new JSONArray();
+            for (Stats stats : getStats()) {
+                services.put(stats.toJson());
+            }
+            JSONObject json = new JSONObject();
+            json.put("services", services);
+            out.write(json.toString(2).getBytes(StandardCharsets.UTF_8));
+            return file;
+
+        } catch (IOException | JSONException e) {
+            Log.e(LOGTAG, "Unable to export the service stats: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    @NonNull
+    private static Stats getStats(@NonNull Entry<?> entry) {
+        synchronized (entry) {
+            boolean initialized = entry.instance != null;
+            return new Stats(entry.key.getName(), initialized, entry.thread, entry.durationMicros, entry.order);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @NonNull
+    private <T> Entry<T> getEntry(@NonNull Key<T> key) {
+        Entry<T> entry = (Entry<T>) mEntries.get(key);
+        if (entry == null) {
+            throw new IllegalArgumentException(key + " is not registered");
+        }
+        return entry;
+    }
+}
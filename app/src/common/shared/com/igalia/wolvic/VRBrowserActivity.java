@@ -58,6 +58,7 @@ import com.igalia.wolvic.crashreporting.GlobalExceptionHandler;
 import com.igalia.wolvic.geolocation.GeolocationWrapper;
 import com.igalia.wolvic.input.MotionEventGenerator;
 import com.igalia.wolvic.search.SearchEngineWrapper;
+import com.igalia.wolvic.telemetry.StartupTrace;
 import com.igalia.wolvic.telemetry.TelemetryService;
 import com.igalia.wolvic.ui.OffscreenDisplay;
 import com.igalia.wolvic.ui.adapters.Language;
@@ -94,6 +95,7 @@ import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Consumer;
 
 import static com.igalia.wolvic.ui.widgets.UIWidget.REMOVE_WIDGET;
@@ -164,6 +166,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     SwipeRunnable mLastRunnable;
     Handler mHandler = new Handler();
     Runnable mAudioUpdateRunnable;
+    final AtomicBoolean mAudioUpdatePending = new AtomicBoolean();
     Windows mWindows;
     RootWidget mRootWidget;
     KeyboardWidget mKeyboard;
@@ -225,6 +228,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
+        StartupTrace.Span span = StartupTrace.begin("VRBrowserActivity.onCreate");
         SettingsStore.getInstance(getBaseContext()).setPid(Process.myPid());
         ((VRBrowserApplication)getApplication()).onActivityCreate(this);
         // Fix for infinite restart on startup crashes.
@@ -234,6 +238,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             super.onCreate(savedInstanceState);
             Log.e(LOGTAG, "Cancel Restart");
             finish();
+            span.end();
             return;
         }
         SettingsStore.getInstance(getBaseContext()).incrementCrashRestartCount();
@@ -278,7 +283,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             Log.i(LOGTAG, "AudioEngine sounds preloaded!");
             // mAudioEngine.playSound(AudioEngine.Sound.AMBIENT, true);
         });
-        mAudioUpdateRunnable = () -> mAudioEngine.update();
+        mAudioUpdateRunnable = () -> {
+            mAudioUpdatePending.set(false);
+            mAudioEngine.update();
+        };
 
         mSettings = SettingsStore.getInstance(this);
         mSettings.initModel(this);
@@ -290,7 +298,9 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         final String tempPath = getCacheDir().getAbsolutePath();
         queueRunnable(() -> setTemporaryFilePath(tempPath));
 
+        StartupTrace.Span widgetsSpan = StartupTrace.begin("VRBrowserActivity.initializeWidgets");
         initializeWidgets();
+        widgetsSpan.end();
 
         loadFromIntent(getIntent());
 
@@ -306,6 +316,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         checkForCrash();
 
         mLifeCycle.setCurrentState(Lifecycle.State.CREATED);
+        span.end();
     }
 
     protected void initializeWidgets() {
@@ -443,6 +454,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
         mAudioEngine.pauseEngine();
 
         mWindows.onPause();
+        SessionStore.get().getHistoryStore().flush();
 
         for (Widget widget: mWidgets.values()) {
             widget.onPause();
@@ -475,8 +487,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         // If we're signed-in, poll for any new device events (e.g. received tabs) on activity resume.
         // There's no push support right now, so this helps with the perception of speedy tab delivery.
-        ((VRBrowserApplication)getApplicationContext()).getAccounts().refreshDevicesAsync();
-        ((VRBrowserApplication)getApplicationContext()).getAccounts().pollForEventsAsync();
+        ((VRBrowserApplication)getApplicationContext()).runAfterStartup(() -> {
+            ((VRBrowserApplication)getApplicationContext()).getAccounts().refreshDevicesAsync();
+            ((VRBrowserApplication)getApplicationContext()).getAccounts().pollForEventsAsync();
+        });
 
         super.onResume();
         mLifeCycle.setCurrentState(Lifecycle.State.RESUMED);
@@ -658,21 +672,26 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     };
 
     private void checkForCrash() {
-        final ArrayList<String> files = CrashReporterService.findCrashFiles(getBaseContext());
-        if (files.isEmpty()) {
-            Log.d(LOGTAG, "No crash files found.");
-            return;
-        }
-        boolean isCrashReportingEnabled = SettingsStore.getInstance(this).isCrashReportingEnabled();
-        if (isCrashReportingEnabled) {
-            SystemUtils.postCrashFiles(this, files);
-
-        } else {
-            if (mCrashDialog == null) {
-                mCrashDialog = new CrashDialogWidget(this, files);
+        // Listing the files directory is disk I/O, so it's kept out of the startup.
+        ((VRBrowserApplication)getApplication()).getExecutors().diskIO().execute(() -> {
+            final ArrayList<String> files = CrashReporterService.findCrashFiles(getBaseContext());
+            if (files.isEmpty()) {
+                Log.d(LOGTAG, "No crash files found.");
+                return;
             }
-            mCrashDialog.show(UIWidget.REQUEST_FOCUS);
-        }
+            runOnUiThread(() -> {
+                boolean isCrashReportingEnabled = SettingsStore.getInstance(this).isCrashReportingEnabled();
+                if (isCrashReportingEnabled) {
+                    SystemUtils.postCrashFiles(this, files);
+
+                } else {
+                    if (mCrashDialog == null) {
+                        mCrashDialog = new CrashDialogWidget(this, files);
+                    }
+                    mCrashDialog.show(UIWidget.REQUEST_FOCUS);
+                }
+            });
+        });
     }
 
     private void handleContentCrashIntent(@NonNull final Intent intent) {
@@ -965,7 +984,10 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
 
         // https://developers.google.com/vr/reference/android/com/google/vr/sdk/audio/GvrAudioEngine.html#resume()
         // The initialize method must be called from the main thread at a regular rate.
-        runOnUiThread(mAudioUpdateRunnable);
+        // Only one update is queued at a time, it applies the latest pose.
+        if (mAudioUpdatePending.compareAndSet(false, true)) {
+            runOnUiThread(mAudioUpdateRunnable);
+        }
     }
 
     @Keep
@@ -1091,6 +1113,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
     @SuppressWarnings("unused")
     void renderPointerLayer(final Surface aSurface, final long aNativeCallback) {
         runOnUiThread(() -> {
+            final long start = TelemetryService.Performance.start();
             try {
                 Canvas canvas = aSurface.lockHardwareCanvas();
                 canvas.drawColor(Color.TRANSPARENT, PorterDuff.Mode.CLEAR);
@@ -1112,6 +1135,7 @@ public class VRBrowserActivity extends PlatformActivity implements WidgetManager
             catch (Exception ex) {
                 ex.printStackTrace();
             }
+            TelemetryService.Performance.stop(TelemetryService.Performance.POINTER_LAYER_RENDER, start);
             if (aNativeCallback != 0) {
                 queueRunnable(() -> runCallbackNative(aNativeCallback));
             }
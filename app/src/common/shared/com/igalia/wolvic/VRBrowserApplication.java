@@ -8,22 +8,29 @@ package com.igalia.wolvic;
 import android.app.Application;
 import android.content.Context;
 import android.content.res.Configuration;
+import android.os.Handler;
 import android.os.Looper;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.igalia.wolvic.browser.Accounts;
 import com.igalia.wolvic.browser.Addons;
 import com.igalia.wolvic.browser.LoginStorage;
 import com.igalia.wolvic.browser.Places;
 import com.igalia.wolvic.browser.Services;
+import com.igalia.wolvic.browser.SettingsStore;
 import com.igalia.wolvic.browser.engine.EngineProvider;
 import com.igalia.wolvic.browser.engine.SessionStore;
+import com.igalia.wolvic.crashreporting.CrashUploadQueue;
 import com.igalia.wolvic.db.AppDatabase;
 import com.igalia.wolvic.db.DataRepository;
 import com.igalia.wolvic.downloads.DownloadsManager;
 import com.igalia.wolvic.speech.MKSpeechRecognizer;
 import com.igalia.wolvic.speech.SpeechRecognizer;
+import com.igalia.wolvic.telemetry.LocalTelemetry;
+import com.igalia.wolvic.telemetry.StallDetector;
+import com.igalia.wolvic.telemetry.StartupTrace;
 import com.igalia.wolvic.telemetry.TelemetryService;
 import com.igalia.wolvic.ui.adapters.Language;
 import com.igalia.wolvic.ui.widgets.AppServicesProvider;
@@ -33,20 +40,36 @@ import com.igalia.wolvic.utils.EnvironmentsManager;
 import com.igalia.wolvic.utils.LocaleUtils;
 import com.igalia.wolvic.utils.SystemUtils;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
 public class VRBrowserApplication extends Application implements AppServicesProvider {
 
+    // Deferred startup tasks run after this delay even if no window renders, e.g. in immersive mode.
+    private static final long DEFERRED_STARTUP_TIMEOUT = 5000;
+
+    private static final ServiceRegistry.Key<ConnectivityReceiver> CONNECTIVITY = new ServiceRegistry.Key<>("ConnectivityReceiver");
+    private static final ServiceRegistry.Key<Places> PLACES = new ServiceRegistry.Key<>("Places");
+    private static final ServiceRegistry.Key<Services> SERVICES = new ServiceRegistry.Key<>("Services");
+    private static final ServiceRegistry.Key<LoginStorage> LOGIN_STORAGE = new ServiceRegistry.Key<>("LoginStorage");
+    private static final ServiceRegistry.Key<Accounts> ACCOUNTS = new ServiceRegistry.Key<>("Accounts");
+    private static final ServiceRegistry.Key<DownloadsManager> DOWNLOADS = new ServiceRegistry.Key<>("DownloadsManager");
+    private static final ServiceRegistry.Key<SpeechRecognizer> SPEECH_RECOGNIZER = new ServiceRegistry.Key<>("SpeechRecognizer");
+    private static final ServiceRegistry.Key<EnvironmentsManager> ENVIRONMENTS = new ServiceRegistry.Key<>("EnvironmentsManager");
+    private static final ServiceRegistry.Key<Addons> ADDONS = new ServiceRegistry.Key<>("Addons");
+
     private SessionStore mSessionStore;
     private AppExecutors mAppExecutors;
     private BitmapCache mBitmapCache;
-    private Services mServices;
-    private LoginStorage mLoginStorage;
-    private Places mPlaces;
-    private Accounts mAccounts;
-    private DownloadsManager mDownloadsManager;
-    private SpeechRecognizer mSpeechRecognizer;
-    private EnvironmentsManager mEnvironmentsManager;
-    private Addons mAddons;
-    private ConnectivityReceiver mConnectivityManager;
+    private ServiceRegistry mServiceRegistry = new ServiceRegistry();
+    private SpeechRecognizer mCustomSpeechRecognizer;
+    private LocalTelemetry mLocalTelemetry;
+    private StallDetector mStallDetector;
+    private CrashUploadQueue mCrashUploadQueue;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final List<Runnable> mDeferredTasks = new ArrayList<>();
+    private boolean mStartupCompleted;
 
     @Override
     public void onCreate() {
@@ -65,35 +88,139 @@ public class VRBrowserApplication extends Application implements AppServicesProv
         // depending on how JVM classloader does the initialization job.
         // See https://github.com/MozillaReality/FirefoxReality/issues/3651
         Looper.getMainLooper().getThread();
+        StartupTrace.Span span = StartupTrace.begin("Application.onCreate");
         TelemetryService.init(this, EngineProvider.INSTANCE.getDefaultClient(this));
+        mLocalTelemetry = new LocalTelemetry(getFilesDir());
+        TelemetryService.addService(mLocalTelemetry);
+
+        // The report is opened in a window, so keep it where the content processes can read it.
+        File reportDirectory = getExternalFilesDir(null);
+        if (reportDirectory == null) {
+            reportDirectory = getFilesDir();
+        }
+        mStallDetector = new StallDetector(Looper.getMainLooper(), new File(reportDirectory, "main_thread_stalls.json"));
+        if (SettingsStore.getInstance(this).isStallDetectorEnabled()) {
+            mStallDetector.start();
+        }
+        span.end();
     }
 
     protected void onActivityCreate(@NonNull Context activityContext) {
+        StartupTrace.Span span = StartupTrace.begin("Application.onActivityCreate");
+        mStartupCompleted = !SettingsStore.getInstance(this).isDeferredStartupEnabled();
         onConfigurationChanged(activityContext.getResources().getConfiguration());
-        EngineProvider.INSTANCE.getDefaultGeckoWebExecutor(activityContext);
         mAppExecutors = new AppExecutors();
-        mConnectivityManager = new ConnectivityReceiver(activityContext);
-        mConnectivityManager.init();
-        mPlaces = new Places(activityContext);
-        mServices = new Services(activityContext, mPlaces);
-        mLoginStorage = new LoginStorage(this);
-        mAccounts = new Accounts(activityContext);
+        mCrashUploadQueue = new CrashUploadQueue(this, mAppExecutors.scheduled());
+        // Retry the crashes queued in previous runs.
+        mCrashUploadQueue.scheduleUpload(CrashUploadQueue.UPLOAD_DELAY);
         mSessionStore = SessionStore.get();
-        mSessionStore.initialize(activityContext);
-        mSessionStore.setLocales(LocaleUtils.getPreferredLanguageTags(activityContext));
-        mDownloadsManager = new DownloadsManager(activityContext);
-        mDownloadsManager.init();
-        mSpeechRecognizer = new MKSpeechRecognizer(activityContext);
+        registerServices(activityContext);
+        // These don't need the main thread, and are needed as soon as the windows are created.
+        mServiceRegistry.initializeAsync(mAppExecutors.diskIO(), PLACES, DOWNLOADS);
+
+        StartupTrace.trace("GeckoWebExecutor", () -> EngineProvider.INSTANCE.getDefaultGeckoWebExecutor(activityContext));
+        // The login storage is the autocomplete delegate of the runtime, so it's needed by the first page.
+        mServiceRegistry.get(LOGIN_STORAGE);
+        try (StartupTrace.Span ignored = StartupTrace.begin("SessionStore.initialize")) {
+            mSessionStore.initialize(activityContext);
+            mSessionStore.setLocales(LocaleUtils.getPreferredLanguageTags(activityContext));
+        }
         mBitmapCache = new BitmapCache(activityContext, mAppExecutors.diskIO(), mAppExecutors.mainThread());
-        mEnvironmentsManager = new EnvironmentsManager(activityContext);
-        mEnvironmentsManager.init();
-        mAddons = new Addons(activityContext, mSessionStore);
+        // Add-ons are only needed by the add-ons panels, which create them if needed before.
+        runAfterStartup(() -> mServiceRegistry.get(ADDONS));
+        if (!mStartupCompleted) {
+            mHandler.postDelayed(this::onStartupCompleted, DEFERRED_STARTUP_TIMEOUT);
+        }
+        span.end();
+    }
+
+    /**
+     * Services are created on their first use, after the services they depend on. The Services
+     * and Accounts constructors get their dependencies from this application.
+     */
+    private void registerServices(@NonNull Context activityContext) {
+        ServiceRegistry registry = new ServiceRegistry();
+        registry.register(CONNECTIVITY, () -> {
+            ConnectivityReceiver receiver = new ConnectivityReceiver(activityContext);
+            receiver.init();
+            return receiver;
+        });
+        registry.register(PLACES, () -> new Places(activityContext));
+        registry.register(SERVICES, () -> new Services(activityContext, registry.get(PLACES)),
+                PLACES, CONNECTIVITY);
+        registry.register(LOGIN_STORAGE, () -> {
+            LoginStorage storage = new LoginStorage(this);
+            mLocalTelemetry.addSnapshot("loginStorage", storage::getOperationStats);
+            return storage;
+        });
+        registry.register(ACCOUNTS, () -> new Accounts(activityContext), SERVICES);
+        registry.register(DOWNLOADS, () -> {
+            DownloadsManager manager = new DownloadsManager(activityContext);
+            manager.init();
+            return manager;
+        });
+        registry.register(SPEECH_RECOGNIZER, () -> new MKSpeechRecognizer(activityContext));
+        registry.register(ENVIRONMENTS, () -> {
+            EnvironmentsManager manager = new EnvironmentsManager(activityContext);
+            manager.init();
+            return manager;
+        }, DOWNLOADS);
+        registry.register(ADDONS, () -> new Addons(activityContext, mSessionStore));
+        mServiceRegistry = registry;
     }
 
     protected void onActivityDestroy() {
-        mConnectivityManager.end();
-        mDownloadsManager.end();
-        mEnvironmentsManager.end();
+        mHandler.removeCallbacksAndMessages(null);
+        mDeferredTasks.clear();
+        ConnectivityReceiver connectivityReceiver = mServiceRegistry.peek(CONNECTIVITY);
+        if (connectivityReceiver != null) {
+            connectivityReceiver.end();
+        }
+        // The environments manager listens to the downloads one, so it ends first.
+        EnvironmentsManager environmentsManager = mServiceRegistry.peek(ENVIRONMENTS);
+        if (environmentsManager != null) {
+            environmentsManager.end();
+        }
+        DownloadsManager downloadsManager = mServiceRegistry.peek(DOWNLOADS);
+        if (downloadsManager != null) {
+            downloadsManager.end();
+        }
+    }
+
+    /**
+     * Runs the given task once the startup is completed, after the first window rendered, or right
+     * away if it already is. Used for the components that are not needed to show the first page.
+     * Must be called from the main thread.
+     */
+    public void runAfterStartup(@NonNull Runnable task) {
+        if (mStartupCompleted) {
+            task.run();
+        } else {
+            mDeferredTasks.add(task);
+        }
+    }
+
+    /**
+     * Called when the first window renders its content, or after a timeout.
+     */
+    public void onStartupCompleted() {
+        if (mStartupCompleted) {
+            return;
+        }
+        mStartupCompleted = true;
+        mHandler.removeCallbacksAndMessages(null);
+        StartupTrace.instant("Startup completed");
+
+        // Post the tasks one by one, so they don't block the main thread all together.
+        for (Runnable task : mDeferredTasks) {
+            mHandler.post(() -> {
+                try (StartupTrace.Span ignored = StartupTrace.begin("Deferred task")) {
+                    task.run();
+                }
+            });
+        }
+        mDeferredTasks.clear();
+        mHandler.post(StartupTrace::finish);
     }
 
     @Override
@@ -105,16 +232,44 @@ public class VRBrowserApplication extends Application implements AppServicesProv
         super.onConfigurationChanged(newConfig);
     }
 
+    public LocalTelemetry getLocalTelemetry() {
+        return mLocalTelemetry;
+    }
+
+    public StallDetector getStallDetector() {
+        return mStallDetector;
+    }
+
+    public CrashUploadQueue getCrashUploadQueue() {
+        return mCrashUploadQueue;
+    }
+
+    /**
+     * Returns every registered service, with the time each created one took, in creation order.
+     */
+    public List<ServiceRegistry.Stats> getServiceStats() {
+        return mServiceRegistry.getStats();
+    }
+
+    /**
+     * Writes the service stats to a new JSON file in the given directory.
+     * @return The exported file, or null if it couldn't be written.
+     */
+    @Nullable
+    public File exportServiceStats(@NonNull File directory) {
+        return mServiceRegistry.exportStats(directory);
+    }
+
     public Services getServices() {
-        return mServices;
+        return mServiceRegistry.get(SERVICES);
     }
 
     public LoginStorage getLoginStorage() {
-        return mLoginStorage;
+        return mServiceRegistry.get(LOGIN_STORAGE);
     }
 
     public Places getPlaces() {
-        return mPlaces;
+        return mServiceRegistry.get(PLACES);
     }
 
     public AppDatabase getDatabase() {
@@ -134,30 +289,33 @@ public class VRBrowserApplication extends Application implements AppServicesProv
     }
 
     public Accounts getAccounts() {
-        return mAccounts;
+        return mServiceRegistry.get(ACCOUNTS);
     }
 
     public DownloadsManager getDownloadsManager() {
-        return mDownloadsManager;
+        return mServiceRegistry.get(DOWNLOADS);
     }
 
     @Override
     public SpeechRecognizer getSpeechRecognizer() {
-        return mSpeechRecognizer;
+        if (mCustomSpeechRecognizer != null) {
+            return mCustomSpeechRecognizer;
+        }
+        return mServiceRegistry.get(SPEECH_RECOGNIZER);
     }
 
     public void setSpeechRecognizer(SpeechRecognizer customRecognizer) {
-        mSpeechRecognizer = customRecognizer;
+        mCustomSpeechRecognizer = customRecognizer;
     }
 
     @Override
     public EnvironmentsManager getEnvironmentsManager() {
-        return mEnvironmentsManager;
+        return mServiceRegistry.get(ENVIRONMENTS);
     }
 
     @Override
     public Addons getAddons() {
-        return mAddons;
+        return mServiceRegistry.get(ADDONS);
     }
 
     @Override
@@ -167,6 +325,6 @@ public class VRBrowserApplication extends Application implements AppServicesProv
 
     @Override
     public ConnectivityReceiver getConnectivityReceiver() {
-        return mConnectivityManager;
+        return mServiceRegistry.get(CONNECTIVITY);
     }
 }
@@ -0,0 +1,99 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.igalia.wolvic.audio;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+
+/**
+ * Sound commands queued during a frame and run together by {@link AudioEngine#update()}. Both
+ * happen on the main thread, so the queue isn't thread safe.
+ *
+ * A command for a sound that repeats the last command queued for that sound is merged into it,
+ * so a sound triggered several times in a frame is only played once.
+ */
+class AudioCommandQueue {
+
+    interface Target {
+        void playSound(AudioEngine.Sound aSound, float aVolume, boolean aLoop);
+        void stopSound(AudioEngine.Sound aSound);
+    }
+
+    static final int PLAY = 0;
+    static final int STOP = 1;
+
+    private static class Command {
+        final int type;
+        final AudioEngine.Sound sound;
+        float volume;
+        boolean loop;
+
+        Command(int type, AudioEngine.Sound sound, float volume, boolean loop) {
+            this.type = type;
+            this.sound = sound;
+            this.volume = volume;
+            this.loop = loop;
+        }
+    }
+
+    private final int mCapacity;
+    private final ArrayDeque<Command> mCommands;
+
+    /**
+     * @param capacity The maximum number of commands queued in a frame.
+     */
+    AudioCommandQueue(int capacity) {
+        mCapacity = capacity;
+        mCommands = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Queues a command, or merges it into the last command queued for the same sound if it has
+     * the same type. Merged plays keep the highest volume and loop if any of them does.
+     * @return false if the queue is full and the command was dropped.
+     */
+    boolean offer(int aType, AudioEngine.Sound aSound, float aVolume, boolean aLoop) {
+        Iterator<Command> it = mCommands.descendingIterator();
+        while (it.hasNext()) {
+            Command command = it.next();
+            if (command.sound != aSound) {
+                continue;
+            }
+            if (command.type != aType) {
+                break;
+            }
+            command.volume = Math.max(command.volume, aVolume);
+            command.loop |= aLoop;
+            return true;
+        }
+        if (mCommands.size() >= mCapacity) {
+            return false;
+        }
+        mCommands.add(new Command(aType, aSound, aVolume, aLoop));
+        return true;
+    }
+
+    /**
+     * Runs the queued commands on the target, in order, and empties the queue.
+     * @return The number of commands that were run.
+     */
+    int drain(Target aTarget) {
+        int count = mCommands.size();
+        Command command;
+        while ((command = mCommands.poll()) != null) {
+            if (command.type == PLAY) {
+                aTarget.playSound(command.sound, command.volume, command.loop);
+            } else {
+                aTarget.stopSound(command.sound);
+            }
+        }
+        return count;
+    }
+
+    boolean isEmpty() {
+        return mCommands.isEmpty();
+    }
+}
@@ -6,44 +6,106 @@
 package com.igalia.wolvic.audio;
 
 import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
 
 import com.igalia.wolvic.utils.SystemUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Plays the UI sounds. The sound commands and the head pose are queued and sent to the engine
+ * once per frame from {@link #update()}, so the engine is only used from the main thread.
+ */
 public class AudioEngine {
     private Context mContext;
     private AudioEngineImpl mEngine;
-    private ConcurrentHashMap<Sound, Integer> mSourceIds;
+    // Only used from the main thread.
+    private AudioVoicePool mVoices;
     private float mMainVolume = 1.0f;
     private static ConcurrentHashMap<Context, AudioEngine> mEngines = new ConcurrentHashMap<>();
-    private boolean mEnabled;
+    private volatile boolean mEnabled;
+    private volatile boolean mPaused;
     private static final String LOGTAG = SystemUtils.createLogtag(AudioEngine.class);
+    private static final int MAX_COMMANDS = 64;
+    private static final int MAX_VOICES = 8;
+
+    // Sound commands are queued from the main thread, calls from other threads are posted to it.
+    private final AudioCommandQueue mCommands = new AudioCommandQueue(MAX_COMMANDS);
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    // The head pose is triple buffered: the render thread writes a pose and swaps it with the
+    // shared one, update() swaps the shared one with the last one it read.
+    private Pose mWritePose = new Pose();
+    private final AtomicReference<Pose> mSharedPose = new AtomicReference<>(new Pose());
+    private Pose mReadPose = new Pose();
+    private final float[] mAppliedPose = new float[Pose.SIZE];
+    private boolean mHasAppliedPose;
+
+    // Only used from the main thread.
+    private long mFrames;
+    private long mCommandCount;
+    private int mMaxCommandsPerFrame;
+    private long mSkippedPoses;
+    private long mDroppedCommands;
+
+    private final Object mPreloadLock = new Object();
+    // Guarded by mPreloadLock, null once the sounds are preloaded.
+    private List<Runnable> mPreloadCallbacks;
+    private boolean mPreloaded;
+
+    private static class Pose {
+        static final int SIZE = 7;
+        final float[] values = new float[SIZE];
+        boolean fresh;
+    }
 
     public enum SoundType {
-        STEREO,
-        OBJECT,
-        FIELD
+        STEREO(0),
+        OBJECT(1),
+        FIELD(2);
+
+        // Voices of a higher priority are not stolen by lower priority sounds.
+        private int mPriority;
+
+        SoundType(int aPriority) {
+            mPriority = aPriority;
+        }
+
+        public int getPriority() {
+            return mPriority;
+        }
     }
 
     public enum Sound {
-        CLICK,
-        BACK,
-        EXIT,
-        AMBIENT(SoundType.FIELD);
+        CLICK(270),
+        BACK(335),
+        EXIT(876),
+        AMBIENT(SoundType.FIELD, 0);
 
         private SoundType mType;
+        // Length of the sound in milliseconds, it keeps a voice busy when not looping.
+        private long mDuration;
 
-        Sound() {
-            mType = SoundType.STEREO;
+        Sound(long aDuration) {
+            this(SoundType.STEREO, aDuration);
         }
-        Sound(SoundType aType) {
+        Sound(SoundType aType, long aDuration) {
             mType = aType;
+            mDuration = aDuration;
         }
 
         public SoundType getType() {
             return mType;
         }
+
+        public long getDuration() {
+            return mDuration;
+        }
     }
 
     public interface AudioTheme {
@@ -68,7 +130,9 @@ public class AudioEngine {
     public AudioEngine(Context aContext, AudioEngineImpl aImpl) {
         mContext = aContext;
         mEngine = aImpl;
-        mSourceIds = new ConcurrentHashMap<>();
+        if (aImpl != null) {
+            mVoices = new AudioVoicePool(MAX_VOICES, aImpl);
+        }
         mEngines.put(aContext, this);
         mEnabled = true;
     }
@@ -82,60 +146,153 @@ public class AudioEngine {
         preloadAsync(null);
     }
 
-    // Perform preloading in a separate thread in order to avoid blocking the main thread
+    // Perform preloading in a separate thread in order to avoid blocking the main thread.
+    // The sounds are only loaded once, later calls just wait for them.
     public void preloadAsync(final Runnable aCallback) {
-        if (mEngine != null) {
-            mEngine.preloadAsync(aCallback);
+        if (mEngine == null) {
+            return;
+        }
+        synchronized (mPreloadLock) {
+            if (mPreloaded) {
+                if (aCallback != null) {
+                    aCallback.run();
+                }
+                return;
+            }
+            boolean started = mPreloadCallbacks != null;
+            if (!started) {
+                mPreloadCallbacks = new ArrayList<>();
+            }
+            if (aCallback != null) {
+                mPreloadCallbacks.add(aCallback);
+            }
+            if (started) {
+                return;
+            }
         }
+        mEngine.preloadAsync(() -> {
+            List<Runnable> callbacks;
+            synchronized (mPreloadLock) {
+                mPreloaded = true;
+                callbacks = mPreloadCallbacks;
+                mPreloadCallbacks = null;
+            }
+            for (Runnable callback : callbacks) {
+                callback.run();
+            }
+        });
     }
 
     public void release() {
+        mEngines.remove(mContext, this);
         if (mEngine != null) {
+            Log.d(LOGTAG, "Audio commands: " + mCommandCount + " in " + mFrames + " frames, max " +
+                    mMaxCommandsPerFrame + " per frame, " + mDroppedCommands + " dropped, " +
+                    mSkippedPoses + " poses skipped");
+            Log.d(LOGTAG, "Audio voices: " + mVoices.getPlayedCount() + " played, peak " + mVoices.getPeakVoices() +
+                    " of " + mVoices.getVoiceCount() + ", " + mVoices.getStolenCount() + " stolen, " +
+                    mVoices.getRateLimitedCount() + " rate limited, " + mVoices.getRejectedCount() + " rejected");
             mEngine.release();
         }
     }
 
     public void pauseEngine() {
+        mPaused = true;
         if (mEngine != null) {
             mEngine.pause();
         }
     }
 
     public void resumeEngine() {
+        mPaused = false;
         if (mEngine != null) {
             mEngine.resume();
         }
     }
 
+    /**
+     * Sets the head pose, it's sent to the engine on the next update. Must only be called from
+     * a single thread, usually the render thread.
+     */
     public void setPose(float qx, float qy, float qz, float qw, float px, float py, float pz) {
-        if (mEngine != null) {
-            mEngine.setPose(qx, qy, qz, qw, px, py, pz);
+        if (mEngine == null) {
+            return;
         }
+        float[] values = mWritePose.values;
+        values[0] = qx;
+        values[1] = qy;
+        values[2] = qz;
+        values[3] = qw;
+        values[4] = px;
+        values[5] = py;
+        values[6] = pz;
+        mWritePose.fresh = true;
+        mWritePose = mSharedPose.getAndSet(mWritePose);
     }
 
+    /**
+     * Sends the latest pose and the queued sound commands to the engine. Must be called once per
+     * frame from the main thread.
+     */
     public void update() {
-        if (mEngine != null) {
-            mEngine.update();
+        if (mEngine == null) {
+            return;
+        }
+        mReadPose.fresh = false;
+        mReadPose = mSharedPose.getAndSet(mReadPose);
+        if (mReadPose.fresh) {
+            float[] values = mReadPose.values;
+            if (mHasAppliedPose && Arrays.equals(values, mAppliedPose)) {
+                mSkippedPoses++;
+            } else {
+                System.arraycopy(values, 0, mAppliedPose, 0, Pose.SIZE);
+                mHasAppliedPose = true;
+                mEngine.setPose(values[0], values[1], values[2], values[3], values[4], values[5], values[6]);
+            }
         }
+
+        int count = mCommands.drain(mVoices);
+        mFrames++;
+        mCommandCount += count;
+        mMaxCommandsPerFrame = Math.max(mMaxCommandsPerFrame, count);
+        mEngine.update();
     }
 
     public void playSound(Sound aSound) {
         playSound(aSound, 1.0f,false);
     }
 
+    /**
+     * Returns the number of voices playing a sound. Must be called from the main thread.
+     */
+    public int getVoicesInUse() {
+        return mVoices != null ? mVoices.getVoicesInUse() : 0;
+    }
+
     public void setMainVolume(float aVolume) {
         mMainVolume = aVolume;
     }
 
     public void playSound(Sound aSound, float aVolume, boolean aLoop) {
         if (mEnabled && mEngine != null) {
-            mEngine.playSound(aSound, aVolume * mMainVolume, aLoop);
+            queueCommand(AudioCommandQueue.PLAY, aSound, aVolume * mMainVolume, aLoop);
         }
     }
 
     public void stopSound(Sound aSound) {
         if (mEnabled && mEngine != null) {
-            mEngine.stopSound(aSound);
+            queueCommand(AudioCommandQueue.STOP, aSound, 0, false);
+        }
+    }
+
+    private void queueCommand(int aType, Sound aSound, float aVolume, boolean aLoop) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            mMainHandler.post(() -> queueCommand(aType, aSound, aVolume, aLoop));
+            return;
+        }
+        // Sounds triggered while paused would be played late.
+        if (mPaused || !mCommands.offer(aType, aSound, aVolume, aLoop)) {
+            mDroppedCommands++;
         }
     }
 
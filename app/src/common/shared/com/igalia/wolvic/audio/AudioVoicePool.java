@@ -0,0 +1,153 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.igalia.wolvic.audio;
+
+import android.os.SystemClock;
+
+import java.util.Arrays;
+import java.util.function.LongSupplier;
+
+/**
+ * Bounds the number of sounds played at the same time to a fixed number of voices.
+ *
+ * A sound played again before {@link #MIN_REPLAY_INTERVAL} is skipped. When all the voices are
+ * busy, the oldest voice with the lowest priority, not higher than the priority of the new sound,
+ * is stolen; if there is none the new sound is skipped. One shot voices are released once their
+ * sound finishes, looping ones when they are stopped.
+ *
+ * Must only be used from a single thread.
+ */
+class AudioVoicePool implements AudioCommandQueue.Target {
+
+    static final long MIN_REPLAY_INTERVAL = 50;
+    private static final long LOOPING = Long.MAX_VALUE;
+
+    private final AudioEngine.AudioEngineImpl mEngine;
+    private final LongSupplier mClock;
+    private final AudioEngine.Sound[] mSounds;
+    private final long[] mStartTimes;
+    private final long[] mEndTimes;
+    private final long[] mLastPlayed = new long[AudioEngine.Sound.values().length];
+
+    private int mPeakVoices;
+    private long mPlayed;
+    private long mStolen;
+    private long mRateLimited;
+    private long mRejected;
+
+    AudioVoicePool(int voices, AudioEngine.AudioEngineImpl engine) {
+        this(voices, engine, SystemClock::uptimeMillis);
+    }
+
+    AudioVoicePool(int voices, AudioEngine.AudioEngineImpl engine, LongSupplier clock) {
+        mEngine = engine;
+        mClock = clock;
+        mSounds = new AudioEngine.Sound[voices];
+        mStartTimes = new long[voices];
+        mEndTimes = new long[voices];
+        Arrays.fill(mLastPlayed, Long.MIN_VALUE);
+    }
+
+    @Override
+    public void playSound(AudioEngine.Sound aSound, float aVolume, boolean aLoop) {
+        long now = mClock.getAsLong();
+        long lastPlayed = mLastPlayed[aSound.ordinal()];
+        if (lastPlayed != Long.MIN_VALUE && now - lastPlayed < MIN_REPLAY_INTERVAL) {
+            mRateLimited++;
+            return;
+        }
+
+        int voice = findVoice(aSound, now);
+        if (voice < 0) {
+            mRejected++;
+            return;
+        }
+        mSounds[voice] = aSound;
+        mStartTimes[voice] = now;
+        mEndTimes[voice] = aLoop ? LOOPING : now + aSound.getDuration();
+        mLastPlayed[aSound.ordinal()] = now;
+        mPlayed++;
+        mPeakVoices = Math.max(mPeakVoices, getVoicesInUse());
+        mEngine.playSound(aSound, aVolume, aLoop);
+    }
+
+    @Override
+    public void stopSound(AudioEngine.Sound aSound) {
+        release(aSound);
+        mEngine.stopSound(aSound);
+    }
+
+    // Returns a free voice, or steals one.
+    private int findVoice(AudioEngine.Sound aSound, long now) {
+        int priority = aSound.getType().getPriority();
+        int victim = -1;
+        for (int i = 0; i < mSounds.length; i++) {
+            if (mSounds[i] == null || mEndTimes[i] <= now) {
+                mSounds[i] = null;
+                return i;
+            }
+            int victimPriority = mSounds[i].getType().getPriority();
+            if (victimPriority > priority) {
+                continue;
+            }
+            if (victim < 0 || victimPriority < mSounds[victim].getType().getPriority() ||
+                    (victimPriority == mSounds[victim].getType().getPriority() && mStartTimes[i] < mStartTimes[victim])) {
+                victim = i;
+            }
+        }
+        if (victim >= 0) {
+            // The engine stops sounds and not voices, so all the voices of that sound are released.
+            AudioEngine.Sound stolen = mSounds[victim];
+            release(stolen);
+            mEngine.stopSound(stolen);
+            mStolen++;
+        }
+        return victim;
+    }
+
+    private void release(AudioEngine.Sound aSound) {
+        for (int i = 0; i < mSounds.length; i++) {
+            if (mSounds[i] == aSound) {
+                mSounds[i] = null;
+            }
+        }
+    }
+
+    int getVoiceCount() {
+        return mSounds.length;
+    }
+
+    int getVoicesInUse() {
+        long now = mClock.getAsLong();
+        int count = 0;
+        for (int i = 0; i < mSounds.length; i++) {
+            if (mSounds[i] != null && mEndTimes[i] > now) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    int getPeakVoices() {
+        return mPeakVoices;
+    }
+
+    long getPlayedCount() {
+        return mPlayed;
+    }
+
+    long getStolenCount() {
+        return mStolen;
+    }
+
+    long getRateLimitedCount() {
+        return mRateLimited;
+    }
+
+    long getRejectedCount() {
+        return mRejected;
+    }
+}
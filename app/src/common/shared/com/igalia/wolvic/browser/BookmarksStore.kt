@@ -6,11 +6,7 @@
 package com.igalia.wolvic.browser
 
 import android.content.Context
-import android.os.Handler
-import android.os.Looper
 import androidx.lifecycle.ProcessLifecycleOwner
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.future.future
 import mozilla.appservices.places.BookmarkRoot
 import mozilla.components.concept.storage.BookmarkNode
 import mozilla.components.concept.storage.BookmarkNodeType
@@ -19,6 +15,7 @@ import mozilla.components.support.base.log.logger.Logger
 import com.igalia.wolvic.R
 import com.igalia.wolvic.VRBrowserApplication
 import com.igalia.wolvic.utils.SystemUtils
+import org.json.JSONObject
 import java.util.concurrent.CompletableFuture
 
 const val DESKTOP_ROOT = "fake_desktop_root"
@@ -62,6 +59,17 @@ class BookmarksStore constructor(val context: Context) {
     private var storage = (context.applicationContext as VRBrowserApplication).places.bookmarks
     private var titles = rootTitles(context)
     private val accountManager = (context.applicationContext as VRBrowserApplication).services.accountManager
+    private val scope = StoreScope("BookmarksStore", 2)
+    private val notifier = CoalescedNotifier {
+        for (listener in ArrayList(listeners)) {
+            listener.onBookmarksUpdated()
+        }
+    }
+    private val addedNotifier = CoalescedNotifier {
+        for (listener in ArrayList(listeners)) {
+            listener.onBookmarkAdded()
+        }
+    }
 
     // Bookmarks might have changed during sync, so notify our listeners.
     private val syncStatusObserver = object : SyncStatusObserver {
@@ -110,7 +118,7 @@ class BookmarksStore constructor(val context: Context) {
         notifyListeners()
     }
 
-    fun getBookmarks(guid: String): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
+    fun getBookmarks(guid: String): CompletableFuture<List<BookmarkNode>?> = scope.future {
         when (guid) {
             BookmarkRoot.Mobile.id -> {
                 // Construct a "virtual" desktop folder as the first bookmark item in the list.
@@ -143,12 +151,12 @@ class BookmarksStore constructor(val context: Context) {
         }
     }
 
-    fun addBookmark(aURL: String, aTitle: String) = GlobalScope.future {
+    fun addBookmark(aURL: String, aTitle: String) = scope.future {
         storage.addItem(BookmarkRoot.Mobile.id, aURL, aTitle, null)
         notifyAddedListeners()
     }
 
-    fun deleteBookmarkByURL(aURL: String) = GlobalScope.future {
+    fun deleteBookmarkByURL(aURL: String) = scope.future {
         val bookmark = getBookmarkByUrl(aURL)
         if (bookmark != null) {
             storage.deleteNode(bookmark.guid)
@@ -156,21 +164,22 @@ class BookmarksStore constructor(val context: Context) {
         notifyListeners()
     }
 
-    fun deleteBookmarkById(aId: String) = GlobalScope.future {
+    fun deleteBookmarkById(aId: String) = scope.future {
         storage.deleteNode(aId)
         notifyListeners()
     }
 
-    fun isBookmarked(aURL: String): CompletableFuture<Boolean> = GlobalScope.future {
+    fun isBookmarked(aURL: String): CompletableFuture<Boolean> = scope.future {
         getBookmarkByUrl(aURL) != null
     }
 
-    fun getTree(guid: String, recursive: Boolean): CompletableFuture<List<BookmarkNode>?> = GlobalScope.future {
+    fun getTree(guid: String, recursive: Boolean): CompletableFuture<List<BookmarkNode>?> = scope.future {
         storage.getTree(guid, recursive)?.children
                 ?.map { it.copy(title = titles[it.guid]) }
     }
 
-    fun searchBookmarks(query: String, limit: Int): CompletableFuture<List<BookmarkNode>> = GlobalScope.future {
+    // A new query makes the previous one useless, so it gets cancelled if it hasn't finished yet.
+    fun searchBookmarks(query: String, limit: Int): CompletableFuture<List<BookmarkNode>> = scope.latest("search") {
         storage.searchBookmarks(query, limit)
     }
 
@@ -189,25 +198,19 @@ class BookmarksStore constructor(val context: Context) {
         return null
     }
 
+    fun getInFlightOperations(): Int = scope.inFlightOperations
+
+    fun getOperationStats(): JSONObject = scope.toJson()
+
     private fun notifyListeners() {
         if (listeners.size > 0) {
-            val listenersCopy = ArrayList(listeners)
-            Handler(Looper.getMainLooper()).post {
-                for (listener in listenersCopy) {
-                    listener.onBookmarksUpdated()
-                }
-            }
+            notifier.post()
         }
     }
 
     private fun notifyAddedListeners() {
         if (listeners.size > 0) {
-            val listenersCopy = ArrayList(listeners)
-            Handler(Looper.getMainLooper()).post {
-                for (listener in listenersCopy) {
-                    listener.onBookmarkAdded()
-                }
-            }
+            addedNotifier.post()
         }
     }
 }
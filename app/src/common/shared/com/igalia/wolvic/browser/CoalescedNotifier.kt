@@ -0,0 +1,30 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.igalia.wolvic.browser
+
+import android.os.Handler
+import android.os.Looper
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Posts [action] to the main thread, collapsing every request made while a previous one is still
+ * pending into a single call. Listeners reload their whole contents on notification, so there is
+ * no point in delivering the same notification several times in a row.
+ */
+class CoalescedNotifier(private val action: () -> Unit) {
+
+    private val handler = Handler(Looper.getMainLooper())
+    private val pending = AtomicBoolean(false)
+
+    fun post() {
+        if (pending.compareAndSet(false, true)) {
+            handler.post {
+                pending.set(false)
+                action()
+            }
+        }
+    }
+}
@@ -6,16 +6,13 @@
 package com.igalia.wolvic.browser
 
 import android.content.Context
-import android.os.Handler
-import android.os.Looper
 import androidx.lifecycle.ProcessLifecycleOwner
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.future.future
 import mozilla.components.concept.storage.*
 import mozilla.components.service.fxa.sync.SyncStatusObserver
 import mozilla.components.support.base.log.logger.Logger
 import com.igalia.wolvic.VRBrowserApplication
 import com.igalia.wolvic.utils.SystemUtils
+import org.json.JSONObject
 import java.util.concurrent.CompletableFuture
 import java.util.stream.Collectors
 import java.util.stream.Stream
@@ -26,8 +23,27 @@ class HistoryStore constructor(val context: Context) {
 
     private var listeners = ArrayList<HistoryListener>()
     private var storage = (context.applicationContext as VRBrowserApplication).places.history
+    private val scope = StoreScope("HistoryStore", 2)
+    private val notifier = CoalescedNotifier {
+        for (listener in ArrayList(listeners)) {
+            listener.onHistoryUpdated()
+        }
+    }
+    private val writeBuffer = HistoryWriteBuffer(MAX_BUFFERED_WRITES, FLUSH_DELAY_MS, scope,
+            object : HistoryWriteBuffer.Storage {
+                override suspend fun recordVisit(url: String, visit: PageVisit) =
+                        storage.recordVisit(url, visit)
+
+                override suspend fun recordObservation(url: String, observation: PageObservation) =
+                        storage.recordObservation(url, observation)
+            }) { notifyListeners() }
 
     companion object {
+        // Buffered visits and observations are written after this delay, or as soon as the buffer
+        // reaches MAX_BUFFERED_WRITES entries.
+        private const val FLUSH_DELAY_MS = 2000L
+        private const val MAX_BUFFERED_WRITES = 32
+
         @JvmStatic
         val BLOCK_LIST: MutableList<String> = Stream.of(
                 "https://accounts.firefox.com/authorization",
@@ -77,11 +93,13 @@ class HistoryStore constructor(val context: Context) {
         notifyListeners()
     }
 
-    fun getHistory(): CompletableFuture<List<String>?> = GlobalScope.future {
+    fun getHistory(): CompletableFuture<List<String>?> = scope.future {
+        writeBuffer.flush()
         storage.getVisited()
     }
 
-    fun getDetailedHistory(): CompletableFuture<List<VisitInfo>?> = GlobalScope.future {
+    fun getDetailedHistory(): CompletableFuture<List<VisitInfo>?> = scope.future {
+        writeBuffer.flush()
         storage.getDetailedVisits(0, excludeTypes = listOf(
                 VisitType.NOT_A_VISIT,
                 VisitType.DOWNLOAD,
@@ -92,7 +110,8 @@ class HistoryStore constructor(val context: Context) {
                 VisitType.REDIRECT_PERMANENT))
     }
 
-    fun getVisitsPaginated(offset: Long, count: Long): CompletableFuture<List<VisitInfo>?> = GlobalScope.future {
+    fun getVisitsPaginated(offset: Long, count: Long): CompletableFuture<List<VisitInfo>?> = scope.future {
+        writeBuffer.flush()
         storage.getVisitsPaginated(offset, count, excludeTypes = listOf(
                 VisitType.NOT_A_VISIT,
                 VisitType.DOWNLOAD,
@@ -103,70 +122,89 @@ class HistoryStore constructor(val context: Context) {
                 VisitType.REDIRECT_PERMANENT))
     }
 
-    fun recordVisit(aURL: String, pageVisit: PageVisit) = GlobalScope.future {
-        if(BLOCK_LIST.stream().noneMatch {
-                    aURL.startsWith(it)
-                }) {
-            storage.recordVisit(aURL, pageVisit)
-            notifyListeners()
+    fun recordVisit(aURL: String, pageVisit: PageVisit) {
+        if (isAllowed(aURL)) {
+            writeBuffer.addVisit(aURL, pageVisit)
         }
     }
 
-    fun recordObservation(aURL: String, observation: PageObservation) = GlobalScope.future {
-        if(BLOCK_LIST.stream().noneMatch {
-                    aURL.startsWith(it)
-                }) {
-            storage.recordObservation(aURL, observation)
-            notifyListeners()
+    fun recordObservation(aURL: String, observation: PageObservation) {
+        if (isAllowed(aURL)) {
+            writeBuffer.addObservation(aURL, observation)
         }
     }
 
-    fun deleteHistory(aUrl: String, timestamp: Long) = GlobalScope.future {
+    /**
+     * Writes the buffered visits and observations to storage right away. Called when the app
+     * is paused so that no history is lost if the process gets killed.
+     */
+    fun flush(): CompletableFuture<Unit> = scope.future {
+        writeBuffer.flush()
+    }
+
+    fun deleteHistory(aUrl: String, timestamp: Long) = scope.future {
+        writeBuffer.flush()
         storage.deleteVisit(aUrl, timestamp)
         notifyListeners()
     }
 
-    fun deleteVisitsFor(aUrl: String) = GlobalScope.future {
+    fun deleteVisitsFor(aUrl: String) = scope.future {
+        writeBuffer.flush()
         storage.deleteVisitsFor(aUrl)
         notifyListeners()
     }
 
-    fun deleteEverything() = GlobalScope.future {
+    fun deleteEverything() = scope.future {
+        writeBuffer.flush()
         storage.deleteEverything()
         notifyListeners()
     }
 
-    fun deleteVisitsSince(since: Long) = GlobalScope.future {
+    fun deleteVisitsSince(since: Long) = scope.future {
+        writeBuffer.flush()
         storage.deleteVisitsSince(since)
         notifyListeners()
     }
 
-    fun deleteVisitsBetween(startTime: Long, endTime: Long) = GlobalScope.future {
+    fun deleteVisitsBetween(startTime: Long, endTime: Long) = scope.future {
+        writeBuffer.flush()
         storage.deleteVisitsBetween(startTime, endTime)
         notifyListeners()
     }
 
-    fun getVisited(uris: List<String>) = GlobalScope.future {
+    fun getVisited(uris: List<String>) = scope.future {
+        writeBuffer.flush()
         storage.getVisited(uris)
     }
 
-    fun isInHistory(aURL: String): CompletableFuture<Boolean> = GlobalScope.future {
+    fun isInHistory(aURL: String): CompletableFuture<Boolean> = scope.future {
+        writeBuffer.flush()
         var result = storage.getVisited(listOf(aURL))
         result.isNotEmpty() && result[0]
     }
 
-    fun getSuggestions(query: String, limit: Int): CompletableFuture<List<SearchResult>> = GlobalScope.future {
+    // A new query makes the previous one useless, so it gets cancelled if it hasn't finished yet.
+    fun getSuggestions(query: String, limit: Int): CompletableFuture<List<SearchResult>> = scope.latest("suggestions") {
+        writeBuffer.flush()
         storage.getSuggestions(query, limit)
     }
 
+    private fun isAllowed(aURL: String): Boolean {
+        for (blocked in BLOCK_LIST) {
+            if (aURL.startsWith(blocked)) {
+                return false
+            }
+        }
+        return true
+    }
+
+    fun getInFlightOperations(): Int = scope.inFlightOperations
+
+    fun getOperationStats(): JSONObject = scope.toJson()
+
     private fun notifyListeners() {
         if (listeners.size > 0) {
-            val listenersCopy = ArrayList(listeners)
-            Handler(Looper.getMainLooper()).post {
-                for (listener in listenersCopy) {
-                    listener.onHistoryUpdated()
-                }
-            }
+            notifier.post()
         }
     }
 }
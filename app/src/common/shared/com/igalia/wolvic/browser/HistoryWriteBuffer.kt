@@ -0,0 +1,115 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.igalia.wolvic.browser
+
+import kotlinx.coroutines.NonCancellable
+import kotlinx.coroutines.delay
+import kotlinx.coroutines.sync.Mutex
+import kotlinx.coroutines.sync.withLock
+import kotlinx.coroutines.withContext
+import mozilla.components.concept.storage.PageObservation
+import mozilla.components.concept.storage.PageVisit
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * Holds the visits and observations recorded by [HistoryStore] until they are written to storage.
+ * Observations for the same URL are merged, so a page that changes its title several times between
+ * two flushes only costs a single write. Every visit is kept, since storage counts them.
+ *
+ * The buffer is written [flushDelayMs] after the first entry is added, or as soon as it holds
+ * [maxSize] entries. Reads must call [flush] first, so they never miss buffered entries.
+ */
+class HistoryWriteBuffer(
+        private val maxSize: Int,
+        private val flushDelayMs: Long,
+        private val scope: StoreScope,
+        private val storage: Storage,
+        private val onFlushed: () -> Unit) {
+
+    interface Storage {
+        suspend fun recordVisit(url: String, visit: PageVisit)
+        suspend fun recordObservation(url: String, observation: PageObservation)
+    }
+
+    private class Batch(
+            val visits: List<Pair<String, PageVisit>>,
+            val observations: Map<String, PageObservation>
+    ) {
+        fun isEmpty(): Boolean = visits.isEmpty() && observations.isEmpty()
+    }
+
+    private var visits = ArrayList<Pair<String, PageVisit>>()
+    private var observations = LinkedHashMap<String, PageObservation>()
+    private val flushMutex = Mutex()
+    private val flushScheduled = AtomicBoolean(false)
+
+    fun addVisit(url: String, visit: PageVisit) {
+        onAdded(synchronized(this) {
+            visits.add(url to visit)
+            size() >= maxSize
+        })
+    }
+
+    fun addObservation(url: String, observation: PageObservation) {
+        onAdded(synchronized(this) {
+            val previous = observations[url]
+            observations[url] = if (previous == null) {
+                observation
+            } else {
+                PageObservation(
+                        title = observation.title ?: previous.title,
+                        previewImageUrl = observation.previewImageUrl ?: previous.previewImageUrl)
+            }
+            size() >= maxSize
+        })
+    }
+
+    /**
+     * Writes the buffered entries to storage. It also waits for a flush that is already writing,
+     * so the entries it drained are in storage when this returns.
+     */
+    suspend fun flush() {
+        // Once drained the batch must reach storage, even if the operation that triggered the
+        // flush gets cancelled (e.g. a superseded suggestions query).
+        withContext(NonCancellable) {
+            flushMutex.withLock {
+                flushScheduled.set(false)
+                val batch = drain()
+                if (!batch.isEmpty()) {
+                    for ((url, visit) in batch.visits) {
+                        storage.recordVisit(url, visit)
+                    }
+                    for ((url, observation) in batch.observations) {
+                        storage.recordObservation(url, observation)
+                    }
+                    onFlushed()
+                }
+            }
+        }
+    }
+
+    @Synchronized
+    fun size(): Int = visits.size + observations.size
+
+    private fun onAdded(isFull: Boolean) {
+        if (isFull) {
+            scope.future { flush() }
+        } else if (flushScheduled.compareAndSet(false, true)) {
+            scope.future {
+                delay(flushDelayMs)
+                flush()
+            }
+        }
+    }
+
+    @Synchronized
+    private fun drain(): Batch {
+        val batch = Batch(visits, observations)
+        visits = ArrayList()
+        observations = LinkedHashMap()
+        return batch
+    }
+}
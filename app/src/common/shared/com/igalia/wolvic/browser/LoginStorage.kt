@@ -1,10 +1,6 @@
 package com.igalia.wolvic.browser
 
 import android.content.Context
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.future.future
-import kotlinx.coroutines.launch
 import mozilla.components.concept.storage.Login
 import mozilla.components.service.fxa.SyncEngine
 import mozilla.components.service.fxa.sync.GlobalSyncableStoreProvider
@@ -12,6 +8,7 @@ import mozilla.components.service.sync.logins.GeckoLoginStorageDelegate
 import com.igalia.wolvic.browser.components.GeckoAutocompleteDelegateWrapper
 import com.igalia.wolvic.browser.engine.EngineProvider
 import com.igalia.wolvic.ui.widgets.AppServicesProvider
+import org.json.JSONObject
 import java.util.concurrent.CompletableFuture
 
 class LoginStorage(
@@ -20,31 +17,36 @@ class LoginStorage(
 
     private val places = (context as AppServicesProvider).places
     private var storage = places.logins
+    private val scope = StoreScope("LoginStorage", 1)
 
     init {
         EngineProvider.getOrCreateRuntime(context).autocompleteStorageDelegate = GeckoAutocompleteDelegateWrapper(
                 GeckoLoginStorageDelegate(places.logins))
-        GlobalScope.launch(Dispatchers.IO) {
+        scope.future {
             places.logins.value.warmUp()
         }
 
         GlobalSyncableStoreProvider.configureStore(SyncEngine.Passwords to storage)
     }
 
-    fun getLogins(): CompletableFuture<List<Login>> = GlobalScope.future {
+    fun getLogins(): CompletableFuture<List<Login>> = scope.future {
         storage.value.list()
     }
 
-    fun deleteEverything() = GlobalScope.future {
+    fun deleteEverything() = scope.future {
         storage.value.wipeLocal()
     }
 
-    fun delete(login: Login) = GlobalScope.future {
+    fun delete(login: Login) = scope.future {
         storage.value.delete(login.guid!!);
     }
 
-    fun update(login: Login) = GlobalScope.future {
+    fun update(login: Login) = scope.future {
         storage.value.update(login);
     }
 
+    fun getInFlightOperations(): Int = scope.inFlightOperations
+
+    fun getOperationStats(): JSONObject = scope.toJson()
+
 }
\ No newline at end of file
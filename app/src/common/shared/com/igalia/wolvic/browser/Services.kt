@@ -27,6 +27,7 @@ import org.mozilla.geckoview.AllowOrDeny
 import org.mozilla.geckoview.GeckoResult
 import org.mozilla.geckoview.GeckoSession
 import com.igalia.wolvic.R
+import com.igalia.wolvic.VRBrowserApplication
 import com.igalia.wolvic.browser.engine.EngineProvider
 import com.igalia.wolvic.telemetry.TelemetryService
 import com.igalia.wolvic.ui.widgets.WidgetManagerDelegate
@@ -103,8 +104,12 @@ class Services(val context: Context, places: Places): GeckoSession.NavigationDel
     }
 
     init {
-        if (ConnectivityReceiver.isNetworkAvailable(context)) {
-            init()
+        // The account manager reads the account state and contacts the server, which is not
+        // needed to show the first page.
+        (context.applicationContext as VRBrowserApplication).runAfterStartup {
+            if (ConnectivityReceiver.isNetworkAvailable(context)) {
+                init()
+            }
         }
 
         (context as WidgetManagerDelegate).servicesProvider.connectivityReceiver.addListener {
@@ -6,16 +6,14 @@ import android.graphics.Color;
 import android.os.StrictMode;
 import android.preference.PreferenceManager;
 import android.util.Log;
+import android.util.SparseArray;
 
 import androidx.annotation.IntDef;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.StringRes;
 import androidx.lifecycle.ViewModelProvider;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.mozilla.geckoview.ContentBlocking;
@@ -30,20 +28,17 @@ import com.igalia.wolvic.ui.viewmodel.SettingsViewModel;
 import com.igalia.wolvic.ui.widgets.menus.library.SortingContextMenuWidget;
 import com.igalia.wolvic.utils.DeviceType;
 import com.igalia.wolvic.utils.RemoteProperties;
+import com.igalia.wolvic.utils.RemotePropertiesCache;
 import com.igalia.wolvic.utils.StringUtils;
 import com.igalia.wolvic.utils.SystemUtils;
 
-import java.io.IOException;
-import java.lang.reflect.Type;
-import java.nio.charset.StandardCharsets;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-
-import mozilla.components.concept.fetch.Request;
-import mozilla.components.concept.fetch.Response;
+import java.util.concurrent.TimeUnit;
 
 import static com.igalia.wolvic.utils.ServoUtils.isServoAvailable;
 
@@ -70,6 +65,10 @@ public class SettingsStore {
     private Context mContext;
     private SharedPreferences mPrefs;
     private SettingsViewModel mSettingsViewModel;
+    private RemotePropertiesCache mRemotePropertiesCache;
+
+    private static final String REMOTE_PROPERTIES_CACHE_FILE = "remote_properties";
+    private static final long REMOTE_PROPERTIES_TTL = TimeUnit.HOURS.toMillis(12);
 
     // Developer options default values
     public final static boolean REMOTE_DEBUGGING_DEFAULT = false;
@@ -100,6 +99,8 @@ public class SettingsStore {
     private final static long CRASH_RESTART_DELTA = 2000;
     public final static boolean AUTOPLAY_ENABLED = false;
     public final static boolean DEBUG_LOGGING_DEFAULT = BuildConfig.DEBUG;
+    public final static boolean STALL_DETECTOR_DEFAULT = false;
+    public final static boolean DEFERRED_STARTUP_DEFAULT = true;
     public final static boolean POP_UPS_BLOCKING_DEFAULT = true;
     public final static boolean WEBXR_ENABLED_DEFAULT = true;
     public final static boolean TELEMETRY_STATUS_UPDATE_SENT_DEFAULT = false;
@@ -125,6 +126,9 @@ public class SettingsStore {
 
     private int mCachedScrollDirection = -1;
 
+    // Preference keys resolved from their resource ids, see key().
+    private final SparseArray<String> mKeys = new SparseArray<>();
+
     private boolean mDisableLayers = false;
     public void setDisableLayers(final boolean aDisableLayers) {
         mDisableLayers = aDisableLayers;
@@ -133,6 +137,39 @@ public class SettingsStore {
     public SettingsStore(Context aContext) {
         mContext = aContext;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(aContext);
+        mRemotePropertiesCache = new RemotePropertiesCache(
+                new File(aContext.getFilesDir(), REMOTE_PROPERTIES_CACHE_FILE),
+                BuildConfig.PROPS_ENDPOINT,
+                REMOTE_PROPERTIES_TTL);
+        mRemotePropertiesCache.addListener(properties -> {
+            if (mSettingsViewModel != null) {
+                mSettingsViewModel.setProps(properties);
+            }
+        });
+
+        // The remote properties used to be stored as raw JSON in the preferences.
+        String json = mPrefs.getString(key(R.string.settings_key_remote_props), null);
+        if (json != null) {
+            if (mRemotePropertiesCache.isEmpty()) {
+                mRemotePropertiesCache.setProperties(json);
+            }
+            mPrefs.edit().remove(key(R.string.settings_key_remote_props)).apply();
+        }
+    }
+
+    /**
+     * Resolves a preference key only the first time it's used. Some settings are read per frame
+     * or per page load, and looking up the string resource each time is not free.
+     */
+    private String key(@StringRes int aKeyId) {
+        synchronized (mKeys) {
+            String key = mKeys.get(aKeyId);
+            if (key == null) {
+                key = mContext.getString(aKeyId);
+                mKeys.put(aKeyId, key);
+            }
+            return key;
+        }
     }
 
     public void initModel(@NonNull Context context) {
@@ -141,9 +178,8 @@ public class SettingsStore {
                 ViewModelProvider.AndroidViewModelFactory.getInstance(((VRBrowserActivity) context).getApplication()))
                 .get(SettingsViewModel.class);
 
-        // Setup the stored properties until we get updated ones
-        String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
-        mSettingsViewModel.setProps(json);
+        // Setup the cached properties until we get updated ones
+        mSettingsViewModel.setProps(mRemotePropertiesCache.getProperties());
 
         mSettingsViewModel.refresh();
 
@@ -151,48 +187,22 @@ public class SettingsStore {
     }
 
     /**
-     * Synchronizes the remote properties with the settings storage and notifies the model.
-     * Any consumer listening to the SettingsViewModel will get notified of the properties updates.
+     * Refreshes the cached remote properties if they are stale. Any consumer listening to the
+     * SettingsViewModel will get notified of the properties updates.
      */
     private void update() {
-        ((VRBrowserApplication) mContext.getApplicationContext()).getExecutors().backgroundThread().post(() -> {
-            Request request = new Request(
-                    BuildConfig.PROPS_ENDPOINT,
-                    Request.Method.GET,
-                    null,
-                    null,
-                    null,
-                    null,
-                    Request.Redirect.FOLLOW,
-                    Request.CookiePolicy.INCLUDE,
-                    false
-            );
-
-            try {
-                Response response = EngineProvider.INSTANCE.getDefaultClient(mContext).fetch(request);
-                if (response.getStatus() == 200) {
-                    String json = response.getBody().string(StandardCharsets.UTF_8);
-                    SharedPreferences.Editor editor = mPrefs.edit();
-                    editor.putString(mContext.getString(R.string.settings_key_remote_props), json);
-                    editor.commit();
-
-                    mSettingsViewModel.setProps(json);
-                }
-
-            } catch (IOException e) {
-                Log.d(LOGTAG, "Remote properties error: " + e.getLocalizedMessage());
-            }
-        });
+        ((VRBrowserApplication) mContext.getApplicationContext()).getExecutors().backgroundThread().post(() ->
+                mRemotePropertiesCache.refresh(EngineProvider.INSTANCE.getDefaultClient(mContext), false));
     }
 
     public boolean isCrashReportingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_crash), CRASH_REPORTING_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_crash), CRASH_REPORTING_DEFAULT);
     }
 
     public void setCrashReportingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_crash), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_crash), isEnabled);
+        editor.apply();
     }
 
     public boolean isTelemetryEnabled() {
@@ -200,7 +210,7 @@ public class SettingsStore {
         final StrictMode.ThreadPolicy threadPolicy = StrictMode.allowThreadDiskReads();
         try {
             return mPrefs.getBoolean(
-                    mContext.getString(R.string.settings_key_telemetry), TELEMETRY_DEFAULT);
+                    key(R.string.settings_key_telemetry), TELEMETRY_DEFAULT);
         } finally {
             StrictMode.setThreadPolicy(threadPolicy);
         }
@@ -208,8 +218,8 @@ public class SettingsStore {
 
     public void setTelemetryEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_telemetry), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_telemetry), isEnabled);
+        editor.apply();
 
         // We send after enabling in case of opting-in
         if (isEnabled) {
@@ -223,80 +233,90 @@ public class SettingsStore {
     }
 
     public boolean telemetryStatusSaved() {
-        return mPrefs.contains(mContext.getString(R.string.settings_key_telemetry));
+        return mPrefs.contains(key(R.string.settings_key_telemetry));
     }
 
     public boolean isTelemetryPingUpdateSent() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_telemetry_status_update_sent), TELEMETRY_STATUS_UPDATE_SENT_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_telemetry_status_update_sent), TELEMETRY_STATUS_UPDATE_SENT_DEFAULT);
     }
 
     public void setTelemetryPingUpdateSent(boolean isSent) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_telemetry_status_update_sent), isSent);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_telemetry_status_update_sent), isSent);
+        editor.apply();
     }
 
     public void setGeolocationData(String aGeolocationData) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_geolocation_data), aGeolocationData);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_geolocation_data), aGeolocationData);
+        editor.apply();
     }
 
     public String getGeolocationData() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_geolocation_data), "");
+        return mPrefs.getString(key(R.string.settings_key_geolocation_data), "");
+    }
+
+    public void setGeolocationDataTimestamp(long timestamp) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putLong(key(R.string.settings_key_geolocation_data_timestamp), timestamp);
+        editor.apply();
+    }
+
+    public long getGeolocationDataTimestamp() {
+        return mPrefs.getLong(key(R.string.settings_key_geolocation_data_timestamp), 0);
     }
 
     public boolean isRemoteDebuggingEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_remote_debugging), REMOTE_DEBUGGING_DEFAULT);
+                key(R.string.settings_key_remote_debugging), REMOTE_DEBUGGING_DEFAULT);
     }
 
     public void setRemoteDebuggingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_remote_debugging), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_remote_debugging), isEnabled);
+        editor.apply();
     }
 
 
     public boolean isDrmContentPlaybackEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_drm_playback), DRM_PLAYBACK_DEFAULT);
+                key(R.string.settings_key_drm_playback), DRM_PLAYBACK_DEFAULT);
     }
 
     public boolean isDrmContentPlaybackSet() {
-        return mPrefs.contains(mContext.getString(R.string.settings_key_drm_playback));
+        return mPrefs.contains(key(R.string.settings_key_drm_playback));
     }
 
     public void setDrmContentPlaybackEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_drm_playback), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_drm_playback), isEnabled);
+        editor.apply();
 
         mSettingsViewModel.setIsDrmEnabled(isEnabled);
     }
 
     public int getTrackingProtectionLevel() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_tracking_protection_level), TRACKING_DEFAULT);
+                key(R.string.settings_key_tracking_protection_level), TRACKING_DEFAULT);
     }
 
     public void setTrackingProtectionLevel(int level) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_tracking_protection_level), level);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_tracking_protection_level), level);
+        editor.apply();
 
         mSettingsViewModel.setIsTrackingProtectionEnabled(level != ContentBlocking.EtpLevel.NONE);
     }
 
     public boolean isEnvironmentOverrideEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_environment_override), ENV_OVERRIDE_DEFAULT);
+                key(R.string.settings_key_environment_override), ENV_OVERRIDE_DEFAULT);
     }
 
     public void setEnvironmentOverrideEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_environment_override), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_environment_override), isEnabled);
+        editor.apply();
     }
 
     public boolean isUIHardwareAccelerationEnabled() {
@@ -305,39 +325,39 @@ public class SettingsStore {
             defaultValue = UI_HARDWARE_ACCELERATION_DEFAULT_WAVEVR;
         }
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_ui_hardware_acceleration), defaultValue);
+                key(R.string.settings_key_ui_hardware_acceleration), defaultValue);
     }
 
     public void setUIHardwareAccelerationEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_ui_hardware_acceleration), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_ui_hardware_acceleration), isEnabled);
+        editor.apply();
     }
 
     public boolean isPerformanceMonitorEnabled() {
         // Disabling Performance Monitor until it can properly handle multi-window
-        return false; // mPrefs.getBoolean(mContext.getString(R.string.settings_key_performance_monitor), PERFORMANCE_MONITOR_DEFAULT);
+        return false; // mPrefs.getBoolean(key(R.string.settings_key_performance_monitor), PERFORMANCE_MONITOR_DEFAULT);
     }
 
     public void setPerformanceMonitorEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_performance_monitor), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_performance_monitor), isEnabled);
+        editor.apply();
     }
 
     public boolean isServoEnabled() {
-        return isServoAvailable() && mPrefs.getBoolean(mContext.getString(R.string.settings_key_servo), SERVO_DEFAULT);
+        return isServoAvailable() && mPrefs.getBoolean(key(R.string.settings_key_servo), SERVO_DEFAULT);
     }
 
     public void setServoEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_servo), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_servo), isEnabled);
+        editor.apply();
     }
 
     public int getUaMode() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_user_agent_version), UA_MODE_DEFAULT);
+                key(R.string.settings_key_user_agent_version), UA_MODE_DEFAULT);
     }
 
     public void setUaMode(int mode) {
@@ -347,42 +367,42 @@ public class SettingsStore {
             checkedMode = UA_MODE_DEFAULT;
         }
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_user_agent_version), checkedMode);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_user_agent_version), checkedMode);
+        editor.apply();
     }
 
     public int getInputMode() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_input_mode), INPUT_MODE_DEFAULT);
+                key(R.string.settings_key_input_mode), INPUT_MODE_DEFAULT);
     }
 
     public void setInputMode(int aTouchMode) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_input_mode), aTouchMode);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_input_mode), aTouchMode);
+        editor.apply();
     }
 
     public String getHomepage() {
         return mPrefs.getString(
-                mContext.getString(R.string.settings_key_homepage),
+                key(R.string.settings_key_homepage),
                 mContext.getString(R.string.homepage_url));
     }
 
     public void setHomepage(String aHomepage) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_homepage), aHomepage);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_homepage), aHomepage);
+        editor.apply();
     }
 
     public float getDisplayDensity() {
         return mPrefs.getFloat(
-                mContext.getString(R.string.settings_key_display_density), DISPLAY_DENSITY_DEFAULT);
+                key(R.string.settings_key_display_density), DISPLAY_DENSITY_DEFAULT);
     }
 
     public void setDisplayDensity(float aDensity) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putFloat(mContext.getString(R.string.settings_key_display_density), aDensity);
-        editor.commit();
+        editor.putFloat(key(R.string.settings_key_display_density), aDensity);
+        editor.apply();
     }
 
     public int getWindowWidth() {
@@ -399,13 +419,13 @@ public class SettingsStore {
 
     public int getDisplayDpi() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_display_dpi), DISPLAY_DPI_DEFAULT);
+                key(R.string.settings_key_display_dpi), DISPLAY_DPI_DEFAULT);
     }
 
     public void setDisplayDpi(int aDpi) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_display_dpi), aDpi);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_display_dpi), aDpi);
+        editor.apply();
     }
 
     public int getMaxWindowWidth() {
@@ -417,29 +437,29 @@ public class SettingsStore {
     }
 
     public String getEnvironment() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_env), ENV_DEFAULT);
+        return mPrefs.getString(key(R.string.settings_key_env), ENV_DEFAULT);
     }
 
     public void setEnvironment(String aEnv) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_env), aEnv);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_env), aEnv);
+        editor.apply();
     }
 
     public int getPointerColor() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_pointer_color), POINTER_COLOR_DEFAULT_DEFAULT);
+                key(R.string.settings_key_pointer_color), POINTER_COLOR_DEFAULT_DEFAULT);
     }
 
     public void setPointerColor(int color) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_pointer_color), color);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_pointer_color), color);
+        editor.apply();
     }
 
     public int getScrollDirection() {
         if (mCachedScrollDirection < 0) {
-            mCachedScrollDirection = mPrefs.getInt(mContext.getString(R.string.settings_key_scroll_direction), SCROLL_DIRECTION_DEFAULT);
+            mCachedScrollDirection = mPrefs.getInt(key(R.string.settings_key_scroll_direction), SCROLL_DIRECTION_DEFAULT);
         }
         return mCachedScrollDirection;
     }
@@ -447,20 +467,20 @@ public class SettingsStore {
     public void setScrollDirection(int aScrollDirection) {
         mCachedScrollDirection = aScrollDirection;
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_scroll_direction), aScrollDirection);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_scroll_direction), aScrollDirection);
+        editor.apply();
     }
 
 
     public int getMSAALevel() {
         return mPrefs.getInt(
-                mContext.getString(R.string.settings_key_msaa), MSAA_DEFAULT_LEVEL);
+                key(R.string.settings_key_msaa), MSAA_DEFAULT_LEVEL);
     }
 
     public void setMSAALevel(int level) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_msaa), level);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_msaa), level);
+        editor.apply();
     }
 
     public boolean getLayersEnabled() {
@@ -477,44 +497,44 @@ public class SettingsStore {
     }
 
     public boolean isAudioEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_audio), AUDIO_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_audio), AUDIO_ENABLED);
     }
 
     public void setAudioEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_audio), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_audio), isEnabled);
+        editor.apply();
     }
 
     public String getVoiceSearchLocale() {
         String language = mPrefs.getString(
-                mContext.getString(R.string.settings_key_voice_search_language), null);
+                key(R.string.settings_key_voice_search_language), null);
         return language;
     }
 
     public void setVoiceSearchLocale(String language) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_voice_search_language), language);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_voice_search_language), language);
+        editor.apply();
     }
 
     public String getDisplayLocale() {
         String language = mPrefs.getString(
-                mContext.getString(R.string.settings_key_display_language), null);
+                key(R.string.settings_key_display_language), null);
         return language;
     }
 
     public void setDisplayLocale(String language) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_display_language), language);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_display_language), language);
+        editor.apply();
     }
 
     public ArrayList<String> getContentLocales() {
         ArrayList<String> result = new ArrayList<>();
 
         String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_content_languages),
+                key(R.string.settings_key_content_languages),
                 null);
 
         try {
@@ -533,18 +553,18 @@ public class SettingsStore {
     public void setContentLocales(List<String> languages) {
         JSONArray json = new JSONArray(languages);
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_content_languages), json.toString());
-        editor.commit();
+        editor.putString(key(R.string.settings_key_content_languages), json.toString());
+        editor.apply();
     }
 
     public float getCylinderDensity() {
-        return mPrefs.getFloat(mContext.getString(R.string.settings_key_cylinder_density),  0);
+        return mPrefs.getFloat(key(R.string.settings_key_cylinder_density),  0);
     }
 
     public void setCylinderDensity(float aDensity) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putFloat(mContext.getString(R.string.settings_key_cylinder_density), aDensity);
-        editor.commit();
+        editor.putFloat(key(R.string.settings_key_cylinder_density), aDensity);
+        editor.apply();
     }
 
     public boolean isCurvedModeEnabled() {
@@ -553,27 +573,29 @@ public class SettingsStore {
 
     public void setSelectedKeyboard(Locale aLocale) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_keyboard_locale), aLocale.toLanguageTag());
-        editor.commit();
+        editor.putString(key(R.string.settings_key_keyboard_locale), aLocale.toLanguageTag());
+        editor.apply();
     }
 
     public Locale getKeyboardLocale() {
-        String value = mPrefs.getString(mContext.getString(R.string.settings_key_keyboard_locale), null);
+        String value = mPrefs.getString(key(R.string.settings_key_keyboard_locale), null);
         if (StringUtils.isEmpty(value)) {
             return null;
         }
         return Locale.forLanguageTag(value);
     }
 
+    // The crash restart count, the pid and the tab after restore are read right after a crash, so
+    // unlike the other settings they are written synchronously.
     public synchronized long getCrashRestartCount() {
-        long count = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        long count = mPrefs.getLong(key(R.string.settings_key_crash_restart_count), 0);
         if (count > 0) {
-            final long timestamp = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), -1);
+            final long timestamp = mPrefs.getLong(key(R.string.settings_key_crash_restart_count_timestamp), -1);
             if (System.currentTimeMillis() - timestamp > CRASH_RESTART_DELTA) {
                 count = 0;
                 SharedPreferences.Editor editor = mPrefs.edit();
-                editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
-                editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), -1);
+                editor.putLong(key(R.string.settings_key_crash_restart_count), count);
+                editor.putLong(key(R.string.settings_key_crash_restart_count_timestamp), -1);
                 editor.commit();
             }
         }
@@ -582,119 +604,139 @@ public class SettingsStore {
 
     public synchronized void incrementCrashRestartCount() {
         SharedPreferences.Editor editor = mPrefs.edit();
-        long count = mPrefs.getLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        long count = mPrefs.getLong(key(R.string.settings_key_crash_restart_count), 0);
         count++;
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), count);
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count_timestamp), System.currentTimeMillis());
+        editor.putLong(key(R.string.settings_key_crash_restart_count), count);
+        editor.putLong(key(R.string.settings_key_crash_restart_count_timestamp), System.currentTimeMillis());
         editor.commit();
     }
 
     public synchronized void resetCrashRestartCount() {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putLong(mContext.getString(R.string.settings_key_crash_restart_count), 0);
+        editor.putLong(key(R.string.settings_key_crash_restart_count), 0);
         editor.commit();
     }
 
     public boolean isSpeechDataCollectionEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_speech_data_collection), SPEECH_DATA_COLLECTION_DEFAULT);
+                key(R.string.settings_key_speech_data_collection), SPEECH_DATA_COLLECTION_DEFAULT);
     }
 
     public void setSpeechDataCollectionEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_speech_data_collection), isEnabled);
+        editor.apply();
     }
 
     public boolean isNotificationsEnabled() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_notifications), NOTIFICATIONS_DEFAULT);
+                key(R.string.settings_key_notifications), NOTIFICATIONS_DEFAULT);
     }
 
     public void setNotificationsEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_notifications), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_notifications), isEnabled);
+        editor.apply();
     }
 
     public boolean isSpeechDataCollectionReviewed() {
         return mPrefs.getBoolean(
-                mContext.getString(R.string.settings_key_speech_data_collection_reviewed), SPEECH_DATA_COLLECTION_REVIEWED_DEFAULT);
+                key(R.string.settings_key_speech_data_collection_reviewed), SPEECH_DATA_COLLECTION_REVIEWED_DEFAULT);
     }
 
     public void setSpeechDataCollectionReviewed(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_speech_data_collection_reviewed), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_speech_data_collection_reviewed), isEnabled);
+        editor.apply();
     }
 
     public boolean isDebugLoggingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_debug_logging), DEBUG_LOGGING_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_debug_logging), DEBUG_LOGGING_DEFAULT);
     }
 
     public void setDebugLoggingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_debug_logging), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_debug_logging), isEnabled);
+        editor.apply();
+    }
+
+    public boolean isStallDetectorEnabled() {
+        return mPrefs.getBoolean(key(R.string.settings_key_stall_detector), STALL_DETECTOR_DEFAULT);
+    }
+
+    public void setStallDetectorEnabled(boolean isEnabled) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putBoolean(key(R.string.settings_key_stall_detector), isEnabled);
+        editor.apply();
+    }
+
+    public boolean isDeferredStartupEnabled() {
+        return mPrefs.getBoolean(key(R.string.settings_key_deferred_startup), DEFERRED_STARTUP_DEFAULT);
+    }
+
+    public void setDeferredStartupEnabled(boolean isEnabled) {
+        SharedPreferences.Editor editor = mPrefs.edit();
+        editor.putBoolean(key(R.string.settings_key_deferred_startup), isEnabled);
+        editor.apply();
     }
 
     public boolean isAutoplayEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_autoplay), AUTOPLAY_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_autoplay), AUTOPLAY_ENABLED);
     }
 
     public void setAutoplayEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_autoplay), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_autoplay), isEnabled);
+        editor.apply();
     }
 
     public void setPid(int aPid) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_pid), aPid);
+        editor.putInt(key(R.string.settings_key_pid), aPid);
         editor.commit();
     }
 
     public int getPid() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_pid), 0);
+        return mPrefs.getInt(key(R.string.settings_key_pid), 0);
     }
 
     public boolean isPopUpsBlockingEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_pop_up_blocking), POP_UPS_BLOCKING_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_pop_up_blocking), POP_UPS_BLOCKING_DEFAULT);
     }
 
     public void setPopUpsBlockingEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_pop_up_blocking), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_pop_up_blocking), isEnabled);
+        editor.apply();
 
         mSettingsViewModel.setIsPopUpBlockingEnabled(isEnabled);
     }
 
     public boolean isWebXREnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_webxr), WEBXR_ENABLED_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_webxr), WEBXR_ENABLED_DEFAULT);
     }
 
     public void setWebXREnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_webxr), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_webxr), isEnabled);
+        editor.apply();
 
         mSettingsViewModel.setIsWebXREnabled(isEnabled);
     }
 
     public void setWhatsNewDisplayed(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_whats_new_displayed), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_whats_new_displayed), isEnabled);
+        editor.apply();
     }
 
     public boolean isWhatsNewDisplayed() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_whats_new_displayed), WHATS_NEW_DISPLAYED);
+        return mPrefs.getBoolean(key(R.string.settings_key_whats_new_displayed), WHATS_NEW_DISPLAYED);
     }
 
     public void setFxALastSync(@NonNull String email, long timestamp) {
         String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_fxa_last_sync),
+                key(R.string.settings_key_fxa_last_sync),
                 new JSONObject().toString());
 
         try {
@@ -702,8 +744,8 @@ public class SettingsStore {
             jsonObject.put(email, timestamp);
 
             SharedPreferences.Editor editor = mPrefs.edit();
-            editor.putString(mContext.getString(R.string.settings_key_fxa_last_sync), jsonObject.toString());
-            editor.commit();
+            editor.putString(key(R.string.settings_key_fxa_last_sync), jsonObject.toString());
+            editor.apply();
 
         } catch (Exception e) {
             Log.d(LOGTAG, e.getMessage());
@@ -712,7 +754,7 @@ public class SettingsStore {
 
     public long getFxALastSync(@NonNull String email) {
         String json = mPrefs.getString(
-                mContext.getString(R.string.settings_key_fxa_last_sync),
+                key(R.string.settings_key_fxa_last_sync),
                 null);
 
         try {
@@ -734,170 +776,165 @@ public class SettingsStore {
 
     public void setRestoreTabsEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_restore_tabs), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_restore_tabs), isEnabled);
+        editor.apply();
     }
 
     public boolean isRestoreTabsEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_restore_tabs), RESTORE_TABS_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_restore_tabs), RESTORE_TABS_ENABLED);
     }
 
     public void setBypassCacheOnReload(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_bypass_cache_on_reload), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_bypass_cache_on_reload), isEnabled);
+        editor.apply();
     }
 
     public boolean isBypassCacheOnReloadEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_bypass_cache_on_reload), BYPASS_CACHE_ON_RELOAD);
+        return mPrefs.getBoolean(key(R.string.settings_key_bypass_cache_on_reload), BYPASS_CACHE_ON_RELOAD);
     }
 
     public void setDownloadsStorage(@Storage int storage) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_downloads_external), storage);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_downloads_external), storage);
+        editor.apply();
     }
 
     public @Storage int getDownloadsStorage() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_downloads_external), DOWNLOADS_STORAGE_DEFAULT);
+        return mPrefs.getInt(key(R.string.settings_key_downloads_external), DOWNLOADS_STORAGE_DEFAULT);
     }
 
     public void setDownloadsSortingOrder(@SortingContextMenuWidget.Order int order) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_downloads_sorting_order), order);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_downloads_sorting_order), order);
+        editor.apply();
     }
 
     public @Storage int getDownloadsSortingOrder() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_downloads_sorting_order), DOWNLOADS_SORTING_ORDER_DEFAULT);
+        return mPrefs.getInt(key(R.string.settings_key_downloads_sorting_order), DOWNLOADS_SORTING_ORDER_DEFAULT);
     }
 
     public void setRemotePropsVersionName(String versionName) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_remote_props_version_name), versionName);
-        editor.commit();
+        editor.putString(key(R.string.settings_key_remote_props_version_name), versionName);
+        editor.apply();
 
         mSettingsViewModel.setPropsVersionName(versionName);
     }
 
     public String getRemotePropsVersionName() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_remote_props_version_name), "0");
+        return mPrefs.getString(key(R.string.settings_key_remote_props_version_name), "0");
     }
 
     public void setAutocompleteEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_autocomplete), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_autocomplete), isEnabled);
+        editor.apply();
     }
 
     public boolean isAutocompleteEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_autocomplete), AUTOCOMPLETE_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_autocomplete), AUTOCOMPLETE_ENABLED);
     }
 
     public void setWebGLOutOfProcess(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_webgl_out_of_process), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_webgl_out_of_process), isEnabled);
+        editor.apply();
     }
 
     public boolean isWebGLOutOfProcess() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_webgl_out_of_process), WEBGL_OUT_OF_PROCESS);
+        return mPrefs.getBoolean(key(R.string.settings_key_webgl_out_of_process), WEBGL_OUT_OF_PROCESS);
     }
 
     public int getPrefsLastResetVersionCode() {
-        return mPrefs.getInt(mContext.getString(R.string.settings_key_prefs_last_reset_version_code), PREFS_LAST_RESET_VERSION_CODE);
+        return mPrefs.getInt(key(R.string.settings_key_prefs_last_reset_version_code), PREFS_LAST_RESET_VERSION_CODE);
     }
 
     public void setPrefsLastResetVersionCode(int versionCode) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putInt(mContext.getString(R.string.settings_key_prefs_last_reset_version_code), versionCode);
-        editor.commit();
+        editor.putInt(key(R.string.settings_key_prefs_last_reset_version_code), versionCode);
+        editor.apply();
     }
 
     @Nullable
     public Map<String, RemoteProperties> getRemoteProperties() {
-        String json = mPrefs.getString(mContext.getString(R.string.settings_key_remote_props), null);
-
-        Gson gson = new GsonBuilder().create();
-        Type type = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
-
-        Map<String, RemoteProperties> propertiesMap = null;
-        try {
-            propertiesMap = gson.fromJson(json, type);
+        return mRemotePropertiesCache.getProperties();
+    }
 
-        } catch (Exception ignored) { }
+    public void setRemoteProperties(@Nullable String json) {
+        mRemotePropertiesCache.setProperties(json);
+    }
 
-        return propertiesMap;
+    public void addRemotePropertiesListener(@NonNull RemotePropertiesCache.Listener listener) {
+        mRemotePropertiesCache.addListener(listener);
     }
-    
-    public void setRemoteProperties(@Nullable String json) {
-        SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putString(mContext.getString(R.string.settings_key_remote_props), json);
-        editor.commit();
+
+    public void removeRemotePropertiesListener(@NonNull RemotePropertiesCache.Listener listener) {
+        mRemotePropertiesCache.removeListener(listener);
     }
 
     public void recordPasswordsEncryptionKeyGenerated() {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_passwords_encryption_key_generated), true);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_passwords_encryption_key_generated), true);
+        editor.apply();
     }
 
     public boolean isPasswordsEncryptionKeyGenerated() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_passwords_encryption_key_generated), PASSWORDS_ENCRYPTION_KEY_GENERATED);
+        return mPrefs.getBoolean(key(R.string.settings_key_passwords_encryption_key_generated), PASSWORDS_ENCRYPTION_KEY_GENERATED);
     }
 
     public void setAutoFillEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_autofill_enabled), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_autofill_enabled), isEnabled);
+        editor.apply();
     }
 
     public boolean isAutoFillEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_autofill_enabled), AUTOFILL_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_autofill_enabled), AUTOFILL_ENABLED);
     }
 
     public void setLoginAutocompleteEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_login_autocomplete_enabled), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_login_autocomplete_enabled), isEnabled);
+        editor.apply();
     }
 
     public boolean isLoginAutocompleteEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_login_autocomplete_enabled), LOGIN_AUTOCOMPLETE_ENABLED);
+        return mPrefs.getBoolean(key(R.string.settings_key_login_autocomplete_enabled), LOGIN_AUTOCOMPLETE_ENABLED);
     }
 
     public void setLoginSyncEnabled(boolean isEnabled) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_login_sync_enabled), isEnabled);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_login_sync_enabled), isEnabled);
+        editor.apply();
     }
 
     public boolean isLoginSyncEnabled() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_login_sync_enabled), LOGIN_SYNC_DEFAULT);
+        return mPrefs.getBoolean(key(R.string.settings_key_login_sync_enabled), LOGIN_SYNC_DEFAULT);
     }
 
     public void setTabAfterRestore(@Nullable String uri) {
         SharedPreferences.Editor editor = mPrefs.edit();
         if (!StringUtils.isEmpty(uri)) {
-            editor.putString(mContext.getString(R.string.settings_key_tab_after_restore), uri);
+            editor.putString(key(R.string.settings_key_tab_after_restore), uri);
         } else {
-            editor.remove(mContext.getString(R.string.settings_key_tab_after_restore));
+            editor.remove(key(R.string.settings_key_tab_after_restore));
         }
         editor.commit();
     }
 
     public String getTabAfterRestore() {
-        return mPrefs.getString(mContext.getString(R.string.settings_key_tab_after_restore), null);
+        return mPrefs.getString(key(R.string.settings_key_tab_after_restore), null);
     }
 
     public void setPrivacyPolicyAccepted(boolean isAccepted) {
         SharedPreferences.Editor editor = mPrefs.edit();
-        editor.putBoolean(mContext.getString(R.string.settings_key_privacy_policy_accepted), isAccepted);
-        editor.commit();
+        editor.putBoolean(key(R.string.settings_key_privacy_policy_accepted), isAccepted);
+        editor.apply();
     }
 
     public boolean isPrivacyPolicyAccepted() {
-        return mPrefs.getBoolean(mContext.getString(R.string.settings_key_privacy_policy_accepted), false);
+        return mPrefs.getBoolean(key(R.string.settings_key_privacy_policy_accepted), false);
     }
 
 }
@@ -0,0 +1,93 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.igalia.wolvic.browser
+
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.SupervisorJob
+import kotlinx.coroutines.asCoroutineDispatcher
+import kotlinx.coroutines.future.future
+import org.json.JSONObject
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Executors
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Coroutine scope owned by each of the places-backed stores. Operations run on a dedicated
+ * dispatcher with a fixed number of threads, so bursts of calls (e.g. visits recorded during page
+ * loads) queue up instead of spawning unbounded concurrent storage operations.
+ */
+class StoreScope(name: String, parallelism: Int) {
+
+    private val threadCount = AtomicInteger(0)
+    private val dispatcher = Executors.newFixedThreadPool(parallelism) { runnable ->
+        Thread(runnable, "$name-${threadCount.incrementAndGet()}").apply { isDaemon = true }
+    }.asCoroutineDispatcher()
+    private val scope = CoroutineScope(SupervisorJob() + dispatcher)
+
+    private val latest = ConcurrentHashMap<String, CompletableFuture<*>>()
+    private val inFlight = AtomicInteger(0)
+    private val completed = AtomicLong(0)
+    private val cancelled = AtomicLong(0)
+    private val failed = AtomicLong(0)
+
+    /**
+     * Number of operations that have been submitted and are either queued or running.
+     */
+    val inFlightOperations: Int
+        get() = inFlight.get()
+
+    val completedOperations: Long
+        get() = completed.get()
+
+    val cancelledOperations: Long
+        get() = cancelled.get()
+
+    val failedOperations: Long
+        get() = failed.get()
+
+    fun <T> future(block: suspend CoroutineScope.() -> T): CompletableFuture<T> {
+        inFlight.incrementAndGet()
+        val result = scope.future(block = block)
+        result.whenComplete { _, _ ->
+            when {
+                result.isCancelled -> cancelled.incrementAndGet()
+                result.isCompletedExceptionally -> failed.incrementAndGet()
+                else -> completed.incrementAndGet()
+            }
+            inFlight.decrementAndGet()
+        }
+        return result
+    }
+
+    /**
+     * Same as [future] but cancels the previous operation started with the same key if it has
+     * not finished yet. Meant for queries whose results become useless once a newer one is
+     * issued, like the suggestions requested while typing in the URL bar.
+     */
+    fun <T> latest(key: String, block: suspend CoroutineScope.() -> T): CompletableFuture<T> {
+        val result = future(block)
+        latest.put(key, result)?.cancel(true)
+        result.whenComplete { _, _ -> latest.remove(key, result) }
+        return result
+    }
+
+    /**
+     * Returns the operation counters, for the local telemetry export.
+     */
+    fun toJson(): JSONObject {
+        return JSONObject()
+                .put("inFlight", inFlightOperations)
+                .put("completed", completedOperations)
+                .put("cancelled", cancelledOperations)
+                .put("failed", failedOperations)
+    }
+
+    override fun toString(): String {
+        return "inFlight=$inFlightOperations completed=$completedOperations cancelled=$cancelledOperations failed=$failedOperations"
+    }
+}
@@ -14,6 +14,7 @@ import com.igalia.wolvic.browser.SettingsStore
 import com.igalia.wolvic.browser.content.TrackingProtectionPolicy
 import com.igalia.wolvic.browser.content.TrackingProtectionStore
 import com.igalia.wolvic.crashreporting.CrashReporterService
+import com.igalia.wolvic.telemetry.StartupTrace
 
 object EngineProvider {
 
@@ -24,6 +25,7 @@ object EngineProvider {
     @Synchronized
     fun getOrCreateRuntime(context: Context): GeckoRuntime {
         if (runtime == null) {
+            val span = StartupTrace.begin("EngineProvider.getOrCreateRuntime")
             val builder = GeckoRuntimeSettings.Builder()
             val settingsStore = SettingsStore.getInstance(context)
 
@@ -61,6 +63,7 @@ object EngineProvider {
             }
 
             runtime = GeckoRuntime.create(context, builder.build())
+            span.end()
         }
 
         return runtime!!
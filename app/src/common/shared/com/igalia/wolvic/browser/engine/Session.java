@@ -41,6 +41,7 @@ import com.igalia.wolvic.browser.VideoAvailabilityListener;
 import com.igalia.wolvic.browser.content.TrackingProtectionPolicy;
 import com.igalia.wolvic.browser.content.TrackingProtectionStore;
 import com.igalia.wolvic.geolocation.GeolocationData;
+import com.igalia.wolvic.geolocation.GeolocationWrapper;
 import com.igalia.wolvic.telemetry.TelemetryService;
 import com.igalia.wolvic.utils.BitmapCache;
 import com.igalia.wolvic.utils.InternalPages;
@@ -631,6 +632,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         aState.mSession.close();
         aState.setActive(false);
         mFirstContentfulPaint = false;
+        TelemetryService.cancelPageLoadTime(getId());
 
         mSessionChangeListeners.forEach(listener -> listener.onSessionClosed(this));
     }
@@ -1235,7 +1237,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         }
         Log.d(LOGTAG, "Session onPageStart");
         mState.mIsLoading = true;
-        TelemetryService.startPageLoadTime(aUri);
+        TelemetryService.startPageLoadTime(getId(), aUri, isPrivateMode());
 
         setWebXRState(SessionState.WEBXR_UNUSED);
         for (GeckoSession.ProgressDelegate listener : mProgressListeners) {
@@ -1251,7 +1253,9 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
         Log.d(LOGTAG, "Session onPageStop");
         mState.mIsLoading = false;
         if (!SessionUtils.isLocalizedContent(mState.mUri)) {
-            TelemetryService.stopPageLoadTimeWithURI(mState.mUri);
+            TelemetryService.stopPageLoadTime(getId());
+        } else {
+            TelemetryService.cancelPageLoadTime(getId());
         }
 
         for (GeckoSession.ProgressDelegate listener : mProgressListeners) {
@@ -1339,6 +1343,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     @Override
     public void onFirstComposite(@NonNull GeckoSession aSession) {
         if (mState.mSession == aSession) {
+            TelemetryService.firstCompositeEvent(getId());
             for (GeckoSession.ContentDelegate listener : mContentListeners) {
                 listener.onFirstComposite(aSession);
             }
@@ -1357,6 +1362,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     public void onFirstContentfulPaint(@NonNull GeckoSession aSession) {
         mFirstContentfulPaint = true;
         if (mState.mSession == aSession) {
+            TelemetryService.firstContentfulPaintEvent(getId());
             for (GeckoSession.ContentDelegate listener : mContentListeners) {
                 listener.onFirstContentfulPaint(aSession);
             }
@@ -1738,7 +1744,7 @@ public class Session implements ContentBlocking.Delegate, GeckoSession.Navigatio
     public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
         if (mContext != null) {
             if (key.equals(mContext.getString(R.string.settings_key_geolocation_data))) {
-                GeolocationData data = GeolocationData.parse(sharedPreferences.getString(key, null));
+                GeolocationData data = GeolocationWrapper.INSTANCE.getRegion(mContext);
                 if (data != null) {
                     setRegion(data.getCountryCode());
                 }
@@ -22,8 +22,10 @@ import com.igalia.wolvic.browser.SessionChangeListener;
 import com.igalia.wolvic.browser.adapter.ComponentsAdapter;
 import com.igalia.wolvic.browser.components.GeckoWebExtensionRuntime;
 import com.igalia.wolvic.browser.content.TrackingProtectionStore;
-import com.igalia.wolvic.browser.extensions.BuiltinExtension;
+import com.igalia.wolvic.browser.extensions.BuiltinExtensionRegistry;
 import com.igalia.wolvic.db.SitePermission;
+import com.igalia.wolvic.telemetry.LocalTelemetry;
+import com.igalia.wolvic.telemetry.StartupTrace;
 import com.igalia.wolvic.utils.SystemUtils;
 import com.igalia.wolvic.utils.UrlUtils;
 
@@ -76,6 +78,7 @@ public class SessionStore implements
     private boolean mSuspendPending;
     private TrackingProtectionStore mTrackingProtectionStore;
     private GeckoWebExtensionRuntime mWebExtensionRuntime;
+    private BuiltinExtensionRegistry mBuiltinExtensionRegistry;
     private FxaWebChannelFeature mWebChannelsFeature;
     private Store.Subscription mStoreSubscription;
 
@@ -123,9 +126,21 @@ public class SessionStore implements
         mHistoryStore = new HistoryStore(context);
 
         // Web Extensions initialization
-        BUILTIN_WEB_EXTENSIONS.forEach(extension -> BuiltinExtension.install(mWebExtensionRuntime, extension.first, extension.second));
-        WebCompatFeature.INSTANCE.install(mWebExtensionRuntime);
-        WebCompatReporterFeature.INSTANCE.install(mWebExtensionRuntime, context.getString(R.string.app_name));
+        VRBrowserApplication application = (VRBrowserApplication)context.getApplicationContext();
+        LocalTelemetry localTelemetry = application.getLocalTelemetry();
+        if (localTelemetry != null) {
+            localTelemetry.addSnapshot("bookmarksStore", mBookmarksStore::getOperationStats);
+            localTelemetry.addSnapshot("historyStore", mHistoryStore::getOperationStats);
+        }
+        mBuiltinExtensionRegistry = new BuiltinExtensionRegistry(context, mWebExtensionRuntime,
+                application.getExecutors().diskIO(), mMainExecutor, application::runAfterStartup);
+        mBuiltinExtensionRegistry.install(BUILTIN_WEB_EXTENSIONS);
+        try (StartupTrace.Span ignored = StartupTrace.begin("WebCompatFeature.install")) {
+            WebCompatFeature.INSTANCE.install(mWebExtensionRuntime);
+        }
+        // The reporter is only used from its page action, it doesn't need to be ready for the first page.
+        application.runAfterStartup(() ->
+                WebCompatReporterFeature.INSTANCE.install(mWebExtensionRuntime, context.getString(R.string.app_name)));
         mWebChannelsFeature = new FxaWebChannelFeature(
                 mContext,
                 null,
@@ -391,6 +406,7 @@ public class SessionStore implements
         }
 
         if (mHistoryStore != null) {
+            mHistoryStore.flush();
             mHistoryStore.removeAllListeners();
         }
 
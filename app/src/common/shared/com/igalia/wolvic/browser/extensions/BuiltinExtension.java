@@ -8,6 +8,7 @@ package com.igalia.wolvic.browser.extensions;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
 import com.igalia.wolvic.utils.SystemUtils;
 
@@ -20,15 +21,33 @@ public class BuiltinExtension {
 
     private static final String LOGTAG = SystemUtils.createLogtag(BuiltinExtension.class);
 
+    public interface InstallListener {
+        void onInstallFinished(@NonNull String extensionId, boolean success);
+    }
+
     /**
      * Installs the web extension in the runtime through the WebExtensionRuntime install method
      */
     public static void install(@NonNull WebExtensionRuntime runtime, @NonNull String extensionId, @NonNull String extensionUrl) {
+        install(runtime, extensionId, extensionUrl, null);
+    }
+
+    /**
+     * Installs the web extension, and notifies the listener when the installation finishes.
+     */
+    public static void install(@NonNull WebExtensionRuntime runtime, @NonNull String extensionId, @NonNull String extensionUrl,
+                               @Nullable InstallListener listener) {
         runtime.installWebExtension(extensionId, extensionUrl, webExtension -> {
             Log.i(LOGTAG, extensionId + " Web Extension successfully installed");
+            if (listener != null) {
+                listener.onInstallFinished(extensionId, true);
+            }
             return null;
         }, (s, throwable) -> {
             Log.e(LOGTAG, "Error installing the " + extensionId + " Web Extension: " + throwable.getLocalizedMessage());
+            if (listener != null) {
+                listener.onInstallFinished(extensionId, false);
+            }
             return null;
         });
     }
@@ -0,0 +1,234 @@
+package com.igalia.wolvic.browser.extensions;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.pm.PackageManager;
+import android.content.res.AssetManager;
+import android.util.Log;
+import android.util.Pair;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.igalia.wolvic.telemetry.StartupTrace;
+import com.igalia.wolvic.telemetry.TelemetryService;
+import com.igalia.wolvic.utils.SystemUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+import mozilla.components.concept.engine.webextension.WebExtensionRuntime;
+
+/**
+ * Installs the builtin web extensions, keeping track of the assets hash of every installed
+ * extension, by extension id.
+ *
+ * Gecko keeps the builtin extensions installed between launches and starts them by itself, so
+ * installing an unchanged extension again only registers it in the runtime. Those installs are
+ * deferred, while new and updated extensions are installed right away so they are ready for the
+ * first page. Both run concurrently with the session restore, as the assets are only hashed in
+ * the background, and only again after the app is updated.
+ */
+public class BuiltinExtensionRegistry {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(BuiltinExtensionRegistry.class);
+
+    static final String PREFS_NAME = "builtin_extensions";
+    private static final String PREF_PACKAGE_UPDATE_TIME = "package_update_time";
+    private static final String ASSETS_HASH_SUFFIX = ".assets";
+    private static final String INSTALLED_HASH_SUFFIX = ".installed";
+    private static final String ASSETS_URL_PREFIX = "resource://android/assets/";
+    private static final String METRIC_SEPARATOR = ":";
+
+    private final Context mContext;
+    private final WebExtensionRuntime mRuntime;
+    private final Executor mBackgroundExecutor;
+    private final Executor mMainExecutor;
+    private final Executor mDeferredExecutor;
+    private SharedPreferences mPrefs;
+
+    /**
+     * @param deferredExecutor Runs, in the main thread, the installs of the unchanged extensions.
+     */
+    public BuiltinExtensionRegistry(@NonNull Context context, @NonNull WebExtensionRuntime runtime,
+                                    @NonNull Executor backgroundExecutor, @NonNull Executor mainExecutor,
+                                    @NonNull Executor deferredExecutor) {
+        mContext = context;
+        mRuntime = runtime;
+        mBackgroundExecutor = backgroundExecutor;
+        mMainExecutor = mainExecutor;
+        mDeferredExecutor = deferredExecutor;
+    }
+
+    /**
+     * Installs the extensions, given as (id, resource url) pairs. Must be called from the main thread.
+     */
+    public void install(@NonNull List<Pair<String, String>> extensions) {
+        mBackgroundExecutor.execute(() -> {
+            Map<String, String> hashes = getAssetHashes(extensions);
+            mMainExecutor.execute(() -> {
+                for (Pair<String, String> extension : extensions) {
+                    String id = extension.first;
+                    String hash = hashes.get(id);
+                    if (isInstalled(id, hash)) {
+                        mDeferredExecutor.execute(() -> install(id, extension.second, hash));
+                    } else {
+                        Log.i(LOGTAG, id + " is new or has changed, installing it");
+                        install(id, extension.second, hash);
+                    }
+                }
+            });
+        });
+    }
+
+    private void install(@NonNull String id, @NonNull String url, @Nullable String hash) {
+        long start = TelemetryService.Performance.start();
+        StartupTrace.Span span = StartupTrace.begin("Extension: " + id);
+        BuiltinExtension.install(mRuntime, id, url, (extensionId, success) -> {
+            span.end();
+            if (success) {
+                long durationMicros = (TelemetryService.Performance.start() - start) / 1000;
+                Log.d(LOGTAG, id + " installed in " + durationMicros / 1000.0 + " ms");
+                TelemetryService.Performance.record(TelemetryService.Performance.EXTENSION_INSTALL, durationMicros);
+                String metricName = getMetricName(url);
+                if (metricName != null) {
+                    TelemetryService.Performance.record(metricName, durationMicros);
+                }
+            }
+            // The extension is installed again on the next launch if it failed.
+            mBackgroundExecutor.execute(() -> setInstalled(id, success ? hash : null));
+        });
+    }
+
+    @NonNull
+    private synchronized SharedPreferences getPrefs() {
+        if (mPrefs == null) {
+            mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        }
+        return mPrefs;
+    }
+
+    /**
+     * Returns the hashes of the assets of the extensions, by id. The hashes are computed once per
+     * app update, extensions which can't be hashed are missing.
+     */
+    @NonNull
+    Map<String, String> getAssetHashes(@NonNull List<Pair<String, String>> extensions) {
+        long updateTime = getPackageUpdateTime();
+        boolean updated = getPrefs().getLong(PREF_PACKAGE_UPDATE_TIME, -1) != updateTime;
+        SharedPreferences.Editor editor = getPrefs().edit();
+        Map<String, String> hashes = new HashMap<>();
+        for (Pair<String, String> extension : extensions) {
+            String hash = updated ? null : getPrefs().getString(extension.first + ASSETS_HASH_SUFFIX, null);
+            if (hash == null) {
+                hash = hashAssets(mContext.getAssets(), getAssetsPath(extension.second));
+                editor.putString(extension.first + ASSETS_HASH_SUFFIX, hash);
+            }
+            if (hash != null) {
+                hashes.put(extension.first, hash);
+            }
+        }
+        editor.putLong(PREF_PACKAGE_UPDATE_TIME, updateTime).apply();
+        return hashes;
+    }
+
+    /**
+     * Returns whether the extension was installed with these same assets.
+     */
+    boolean isInstalled(@NonNull String id, @Nullable String hash) {
+        return hash != null && hash.equals(getPrefs().getString(id + INSTALLED_HASH_SUFFIX, null));
+    }
+
+    void setInstalled(@NonNull String id, @Nullable String hash) {
+        getPrefs().edit().putString(id + INSTALLED_HASH_SUFFIX, hash).apply();
+    }
+
+    private long getPackageUpdateTime() {
+        try {
+            return mContext.getPackageManager().getPackageInfo(mContext.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return 0;
+        }
+    }
+
+    @Nullable
+    static String getAssetsPath(@NonNull String url) {
+        if (!url.startsWith(ASSETS_URL_PREFIX)) {
+            return null;
+        }
+        String path = url.substring(ASSETS_URL_PREFIX.length());
+        return path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+    }
+
+    /**
+     * Returns the name of the install time metric of the extension, named after its assets directory.
+     */
+    @Nullable
+    static String getMetricName(@NonNull String url) {
+        String path = getAssetsPath(url);
+        if (path == null) {
+            return null;
+        }
+        return TelemetryService.Performance.EXTENSION_INSTALL + METRIC_SEPARATOR + path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * Hashes the names and the contents of the files in the assets directory, recursively.
+     * @return The hash, or null if the directory is missing or can't be read.
+     */
+    @Nullable
+    static String hashAssets(@NonNull AssetManager assets, @Nullable String path) {
+        if (path == null) {
+            return null;
+        }
+        try {
+            String[] files = assets.list(path);
+            if (files == null || files.length == 0) {
+                return null;
+            }
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            hashDirectory(assets, path, files, "", md);
+            StringBuilder sb = new StringBuilder();
+            for (byte value : md.digest()) {
+                sb.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+            }
+            return sb.toString();
+
+        } catch (IOException | NoSuchAlgorithmException e) {
+            Log.e(LOGTAG, "Unable to hash the assets in " + path + ": " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private static void hashDirectory(@NonNull AssetManager assets, @NonNull String path, @NonNull String[] files,
+                                      @NonNull String relativePath, @NonNull MessageDigest md) throws IOException {
+        // The order of the listed files is not guaranteed.
+        Arrays.sort(files);
+        byte[] buffer = new byte[8192];
+        for (String file : files) {
+            String filePath = path + "/" + file;
+            String fileRelativePath = relativePath + file;
+            String[] children = assets.list(filePath);
+            if (children != null && children.length > 0) {
+                hashDirectory(assets, filePath, children, fileRelativePath + "/", md);
+                continue;
+            }
+            md.update(fileRelativePath.getBytes(StandardCharsets.UTF_8));
+            md.update((byte) 0);
+            try (InputStream in = assets.open(filePath)) {
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    md.update(buffer, 0, read);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.igalia.wolvic.crashreporting;
+
+import android.content.Context;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.igalia.wolvic.R;
+import com.igalia.wolvic.utils.SystemUtils;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.mozilla.geckoview.CrashReporter;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Persistent queue of the crash reports waiting to be uploaded.
+ *
+ * The minidump and the extra file of every crash are stored gzipped in the queue directory, under
+ * the hash of the minidump, so the same crash is only queued once. The queue is bounded in entries
+ * and in size, dropping the oldest crashes first. Uploads happen one at a time, some time after
+ * the crashes are queued so they don't compete with the startup, and failed uploads are retried
+ * with exponential backoff.
+ *
+ * All the work is done in the given executor, the methods can be called from any thread.
+ */
+public class CrashUploadQueue {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(CrashUploadQueue.class);
+
+    public interface Uploader {
+        /**
+         * Uploads the crash report, blocking until it's done.
+         * @return The id of the submitted crash report.
+         */
+        @NonNull
+        String upload(@NonNull File dumpFile, @NonNull File extraFile) throws IOException;
+    }
+
+    // Time to wait before uploading new crashes, so uploads don't slow down the startup.
+    public static final long UPLOAD_DELAY = 30000;
+    static final int MAX_ENTRIES = 10;
+    // Minidumps bigger than this are not queued at all.
+    static final long MAX_DUMP_SIZE = 16 * 1024 * 1024;
+    static final long MAX_QUEUE_SIZE = 16 * 1024 * 1024;
+    static final int MAX_ATTEMPTS = 6;
+    static final long INITIAL_BACKOFF = 60 * 1000;
+    static final long MAX_BACKOFF = 6 * 60 * 60 * 1000;
+
+    private static final String DUMP_SUFFIX = ".dmp.gz";
+    private static final String EXTRA_SUFFIX = ".extra.gz";
+    private static final String ENTRY_SUFFIX = ".json";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final long UPLOAD_TIMEOUT = 60000;
+
+    static class Entry {
+        final String key;
+        final long created;
+        final long size;
+        int attempts;
+        long nextAttempt;
+
+        Entry(@NonNull String key, long created, long size) {
+            this.key = key;
+            this.created = created;
+            this.size = size;
+        }
+    }
+
+    private final File mDirectory;
+    private final File mTempDirectory;
+    private final Uploader mUploader;
+    private final ScheduledExecutorService mExecutor;
+    private final LongSupplier mClock;
+    // Guarded by the queue.
+    private Map<String, Entry> mEntries;
+    // Uploads hold the queue lock, so scheduling uses its own lock to never wait for them.
+    private final Object mScheduleLock = new Object();
+    private ScheduledFuture<?> mScheduledUpload;
+    private long mScheduledUploadTime;
+
+    public CrashUploadQueue(@NonNull Context context, @NonNull ScheduledExecutorService executor) {
+        this(new File(context.getFilesDir(), "crash_queue"), context.getCacheDir(),
+                new GeckoUploader(context.getApplicationContext()), executor, System::currentTimeMillis);
+    }
+
+    CrashUploadQueue(@NonNull File directory, @NonNull File tempDirectory, @NonNull Uploader uploader,
+                     @NonNull ScheduledExecutorService executor, @NonNull LongSupplier clock) {
+        mDirectory = directory;
+        mTempDirectory = tempDirectory;
+        mUploader = uploader;
+        mExecutor = executor;
+        mClock = clock;
+    }
+
+    /**
+     * Queues the crash and schedules its upload. The original files are deleted once queued, but
+     * kept if they couldn't be, so they can be queued again.
+     */
+    public void enqueue(@NonNull String dumpPath, @NonNull String extraPath) {
+        mExecutor.execute(() -> {
+            queue(new File(dumpPath), new File(extraPath));
+            scheduleUpload(UPLOAD_DELAY);
+        });
+    }
+
+    /**
+     * Queues the crashes saved by the {@link CrashReporterService}, and deletes their crash files.
+     * Crash files are kept when their crash couldn't be queued, so the next launch retries them.
+     */
+    public void enqueueCrashFiles(@NonNull Context context, @NonNull List<String> crashFiles) {
+        for (String crashFile : crashFiles) {
+            mExecutor.execute(() -> {
+                List<String> paths = new ArrayList<>(2);
+                try (BufferedReader br = new BufferedReader(new InputStreamReader(context.openFileInput(crashFile), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = br.readLine()) != null) {
+                        paths.add(line);
+                    }
+                } catch (IOException e) {
+                    Log.e(LOGTAG, "Failed to read the crash file " + crashFile + ": " + e.getMessage());
+                }
+                if (paths.size() < 2) {
+                    Log.e(LOGTAG, "Failed read crash dump file names from: " + crashFile);
+                    context.deleteFile(crashFile);
+                    return;
+                }
+                if (queue(new File(paths.get(0)), new File(paths.get(1)))) {
+                    Log.d(LOGTAG, "Removing crash file: " + crashFile);
+                    context.deleteFile(crashFile);
+                }
+                scheduleUpload(UPLOAD_DELAY);
+            });
+        }
+    }
+
+    /**
+     * Uploads the pending crashes after the delay, unless an earlier upload is already scheduled.
+     */
+    public void scheduleUpload(long delayMillis) {
+        synchronized (mScheduleLock) {
+            long time = mClock.getAsLong() + delayMillis;
+            if (mScheduledUpload != null && !mScheduledUpload.isDone()) {
+                if (mScheduledUploadTime <= time) {
+                    return;
+                }
+                mScheduledUpload.cancel(false);
+            }
+            mScheduledUploadTime = time;
+            mScheduledUpload = mExecutor.schedule(() -> {
+                // Running uploads can schedule the next one.
+                synchronized (mScheduleLock) {
+                    mScheduledUpload = null;
+                }
+                uploadPending();
+            }, delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Adds the crash to the queue and deletes the original files, unless it couldn't be written.
+     * @return Whether the original files were deleted.
+     */
+    private boolean queue(@NonNull File dumpFile, @NonNull File extraFile) {
+        try {
+            add(dumpFile, extraFile);
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Unable to queue the crash: " + e.getMessage());
+            return false;
+        }
+        dumpFile.delete();
+        extraFile.delete();
+        return true;
+    }
+
+    /**
+     * Adds the crash to the queue, unless it's already queued or too big.
+     * @return Whether the crash was added.
+     * @throws IOException If the crash couldn't be written to the queue.
+     */
+    synchronized boolean add(@NonNull File dumpFile, @NonNull File extraFile) throws IOException {
+        loadEntries();
+        if (!dumpFile.isFile() || !extraFile.isFile()) {
+            Log.e(LOGTAG, "Missing crash files: " + dumpFile + ", " + extraFile);
+            return false;
+        }
+        if (dumpFile.length() > MAX_DUMP_SIZE) {
+            Log.e(LOGTAG, "The minidump is too big to be uploaded: " + dumpFile.length() + " bytes");
+            return false;
+        }
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            throw new IOException("Unable to create the crash queue directory");
+        }
+
+        File tmpDump = new File(mDirectory, UUID.randomUUID().toString() + TMP_SUFFIX);
+        File tmpExtra = new File(mDirectory, UUID.randomUUID().toString() + TMP_SUFFIX);
+        try {
+            String key = compress(dumpFile, tmpDump, true);
+            if (mEntries.containsKey(key)) {
+                Log.d(LOGTAG, "The crash " + key + " is already queued");
+                return false;
+            }
+            File queuedDump = new File(mDirectory, key + DUMP_SUFFIX);
+            File queuedExtra = new File(mDirectory, key + EXTRA_SUFFIX);
+            compress(extraFile, tmpExtra, false);
+            if (!tmpDump.renameTo(queuedDump) || !tmpExtra.renameTo(queuedExtra)) {
+                queuedDump.delete();
+                throw new IOException("Unable to rename the queued files");
+            }
+
+            Entry entry = new Entry(key, mClock.getAsLong(), queuedDump.length() + queuedExtra.length());
+            // The entry file is written last, so it only exists for complete entries.
+            save(entry);
+            mEntries.put(key, entry);
+            Log.d(LOGTAG, "Queued crash " + key + " (" + entry.size + " bytes)");
+            trim();
+            return true;
+
+        } catch (JSONException e) {
+            throw new IOException(e);
+
+        } finally {
+            tmpDump.delete();
+            tmpExtra.delete();
+        }
+    }
+
+    /**
+     * Uploads the crashes whose next attempt is due, and schedules the retry of the failed ones.
+     */
+    synchronized void uploadPending() {
+        loadEntries();
+        List<Entry> entries = getEntries();
+        for (Entry entry : entries) {
+            if (entry.nextAttempt > mClock.getAsLong()) {
+                continue;
+            }
+            File dumpFile = new File(mTempDirectory, entry.key + ".dmp");
+            File extraFile = new File(mTempDirectory, entry.key + ".extra");
+            try {
+                decompress(new File(mDirectory, entry.key + DUMP_SUFFIX), dumpFile);
+                decompress(new File(mDirectory, entry.key + EXTRA_SUFFIX), extraFile);
+                String crashId = mUploader.upload(dumpFile, extraFile);
+                Log.i(LOGTAG, "Submitted crash report id: " + crashId);
+                remove(entry);
+
+            } catch (IOException e) {
+                entry.attempts++;
+                Log.e(LOGTAG, "Failed to submit crash report " + entry.key + " (attempt " + entry.attempts + "): " + e.getMessage());
+                if (entry.attempts >= MAX_ATTEMPTS) {
+                    remove(entry);
+                } else {
+                    entry.nextAttempt = mClock.getAsLong() + getBackoff(entry.attempts);
+                    try {
+                        save(entry);
+                    } catch (IOException | JSONException ex) {
+                        Log.e(LOGTAG, "Unable to save the crash entry: " + ex.getMessage());
+                    }
+                }
+
+            } finally {
+                dumpFile.delete();
+                extraFile.delete();
+            }
+        }
+
+        long nextAttempt = Long.MAX_VALUE;
+        for (Entry entry : mEntries.values()) {
+            nextAttempt = Math.min(nextAttempt, entry.nextAttempt);
+        }
+        if (nextAttempt != Long.MAX_VALUE) {
+            scheduleUpload(Math.max(0, nextAttempt - mClock.getAsLong()));
+        }
+    }
+
+    /**
+     * Returns the queued crashes, oldest first.
+     */
+    @NonNull
+    synchronized List<Entry> getEntries() {
+        loadEntries();
+        List<Entry> entries = new ArrayList<>(mEntries.values());
+        entries.sort(Comparator.comparingLong(entry -> entry.created));
+        return entries;
+    }
+
+    static long getBackoff(int attempts) {
+        return Math.min(INITIAL_BACKOFF << Math.min(attempts - 1, 30), MAX_BACKOFF);
+    }
+
+    private void loadEntries() {
+        if (mEntries != null) {
+            return;
+        }
+        mEntries = new HashMap<>();
+        File[] files = mDirectory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String name = file.getName();
+            if (!name.endsWith(ENTRY_SUFFIX)) {
+                continue;
+            }
+            String key = name.substring(0, name.length() - ENTRY_SUFFIX.length());
+            try (InputStream in = new FileInputStream(file)) {
+                byte[] data = new byte[(int) file.length()];
+                int offset = 0;
+                int read;
+                while (offset < data.length && (read = in.read(data, offset, data.length - offset)) != -1) {
+                    offset += read;
+                }
+                JSONObject json = new JSONObject(new String(data, 0, offset, StandardCharsets.UTF_8));
+                Entry entry = new Entry(key, json.getLong("created"), json.getLong("size"));
+                entry.attempts = json.optInt("attempts");
+                entry.nextAttempt = json.optLong("nextAttempt");
+                mEntries.put(key, entry);
+
+            } catch (IOException | JSONException e) {
+                Log.e(LOGTAG, "Dropping the unreadable crash entry " + key + ": " + e.getMessage());
+                file.delete();
+            }
+        }
+
+        // Remove the files left by interrupted writes.
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(TMP_SUFFIX) ||
+                    (name.endsWith(DUMP_SUFFIX) && !mEntries.containsKey(name.substring(0, name.length() - DUMP_SUFFIX.length()))) ||
+                    (name.endsWith(EXTRA_SUFFIX) && !mEntries.containsKey(name.substring(0, name.length() - EXTRA_SUFFIX.length())))) {
+                file.delete();
+            }
+        }
+    }
+
+    private void trim() {
+        List<Entry> entries = getEntries();
+        long size = 0;
+        for (Entry entry : entries) {
+            size += entry.size;
+        }
+        for (int i = 0; i < entries.size() && (entries.size() - i > MAX_ENTRIES || size > MAX_QUEUE_SIZE); i++) {
+            Entry entry = entries.get(i);
+            Log.w(LOGTAG, "The crash queue is full, dropping crash " + entry.key);
+            size -= entry.size;
+            remove(entry);
+        }
+    }
+
+    private void save(@NonNull Entry entry) throws IOException, JSONException {
+        JSONObject json = new JSONObject();
+        json.put("created", entry.created);
+        json.put("size", entry.size);
+        json.put("attempts", entry.attempts);
+        json.put("nextAttempt", entry.nextAttempt);
+        File file = new File(mDirectory, entry.key + ENTRY_SUFFIX);
+        File tmp = new File(mDirectory, entry.key + ENTRY_SUFFIX + TMP_SUFFIX);
+        try (OutputStream out = new FileOutputStream(tmp)) {
+            out.write(json.toString().getBytes(StandardCharsets.UTF_8));
+        }
+        if (!tmp.renameTo(file)) {
+            tmp.delete();
+            throw new IOException("Unable to rename " + tmp);
+        }
+    }
+
+    private void remove(@NonNull Entry entry) {
+        mEntries.remove(entry.key);
+        // The entry file goes first, so an interrupted removal doesn't leave an incomplete entry.
+        new File(mDirectory, entry.key + ENTRY_SUFFIX).delete();
+        new File(mDirectory, entry.key + DUMP_SUFFIX).delete();
+        new File(mDirectory, entry.key + EXTRA_SUFFIX).delete();
+    }
+
+    /**
+     * Gzips the file.
+     * @return The hash of the original file if requested, or null.
+     */
+    @Nullable
+    private static String compress(@NonNull File source, @NonNull File target, boolean hash) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new DigestInputStream(new FileInputStream(source), md);
+             OutputStream out = new GZIPOutputStream(new FileOutputStream(target))) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+        if (!hash) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        for (byte value : md.digest()) {
+            sb.append(Integer.toString((value & 0xff) + 0x100, 16).substring(1));
+        }
+        return sb.toString();
+    }
+
+    private static void decompress(@NonNull File source, @NonNull File target) throws IOException {
+        byte[] buffer = new byte[8192];
+        try (InputStream in = new GZIPInputStream(new FileInputStream(source));
+             OutputStream out = new FileOutputStream(target)) {
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+        }
+    }
+
+    /**
+     * Submits the crash reports to the Mozilla crash server, through GeckoView.
+     */
+    private static class GeckoUploader implements Uploader {
+        private final Context mContext;
+
+        GeckoUploader(@NonNull Context context) {
+            mContext = context;
+        }
+
+        @NonNull
+        @Override
+        public String upload(@NonNull File dumpFile, @NonNull File extraFile) throws IOException {
+            try {
+                String crashId = CrashReporter.sendCrashReport(mContext, dumpFile, extraFile,
+                        mContext.getString(R.string.crash_app_name)).poll(UPLOAD_TIMEOUT);
+                if (crashId == null) {
+                    throw new IOException("No crash id received");
+                }
+                return crashId;
+
+            } catch (IOException e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IOException(e);
+            }
+        }
+    }
+}
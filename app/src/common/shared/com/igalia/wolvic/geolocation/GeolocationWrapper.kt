@@ -1,11 +1,6 @@
 package com.igalia.wolvic.geolocation
 
 import android.content.Context
-import kotlinx.coroutines.CoroutineScope
-import kotlinx.coroutines.Dispatchers
-import kotlinx.coroutines.GlobalScope
-import kotlinx.coroutines.future.future
-import kotlinx.coroutines.launch
 import mozilla.components.service.location.LocationService
 import mozilla.components.service.location.MozillaLocationService
 import com.igalia.wolvic.browser.engine.EngineProvider
@@ -14,28 +9,38 @@ import java.util.concurrent.CompletableFuture
 
 object GeolocationWrapper {
 
-    fun update(context: Context) {
-        val locationService = MozillaLocationService(
-                context,
-                EngineProvider.getDefaultClient(context),
-                com.igalia.wolvic.BuildConfig.MLS_TOKEN
-        )
-        CoroutineScope(Dispatchers.IO).launch {
-            locationService.fetchRegion(true)?.run {
-                val data: GeolocationData = GeolocationData.create(countryCode, countryName)
-                SettingsStore.getInstance(context).geolocationData = data.toString()
-            }
+    @Volatile
+    private var regionProvider: RegionProvider? = null
+
+    private fun getRegionProvider(context: Context): RegionProvider =
+        regionProvider ?: synchronized(this) {
+            regionProvider ?: createRegionProvider(context.applicationContext).also { regionProvider = it }
         }
-    }
 
-    fun get(context: Context): CompletableFuture<LocationService.Region?> =
-        GlobalScope.future {
-            val locationService = MozillaLocationService(
+    private fun createRegionProvider(context: Context): RegionProvider {
+        val locationService by lazy {
+            MozillaLocationService(
                     context,
                     EngineProvider.getDefaultClient(context),
                     com.igalia.wolvic.BuildConfig.MLS_TOKEN
             )
-            locationService.fetchRegion(false)
+        }
+        // The region is cached by the provider, so the location service always fetches it.
+        return RegionProvider(SettingsStore.getInstance(context), { locationService.fetchRegion(false) })
+    }
+
+    fun update(context: Context) {
+        getRegionProvider(context).update()
+    }
+
+    /**
+     * Returns the stored region, without fetching it.
+     */
+    fun getRegion(context: Context): GeolocationData? = getRegionProvider(context).getRegion()
+
+    fun get(context: Context): CompletableFuture<LocationService.Region?> =
+        getRegionProvider(context).update().thenApply { data ->
+            data?.let { LocationService.Region(it.countryCode, it.countryName) }
         }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,98 @@
+package com.igalia.wolvic.geolocation
+
+import android.util.Log
+import com.igalia.wolvic.browser.SettingsStore
+import com.igalia.wolvic.utils.SystemUtils
+import kotlinx.coroutines.CoroutineDispatcher
+import kotlinx.coroutines.CoroutineScope
+import kotlinx.coroutines.Dispatchers
+import kotlinx.coroutines.future.future
+import mozilla.components.service.location.LocationService
+import java.util.concurrent.CompletableFuture
+
+/**
+ * Provides the region of the user, stored in the settings with the time it was fetched.
+ *
+ * The stored region is only parsed again when it changes. It's fetched again once it expires, at
+ * most once per session, and concurrent updates share the same fetch.
+ */
+class RegionProvider @JvmOverloads constructor(
+        private val settings: SettingsStore,
+        private val fetchRegion: suspend () -> LocationService.Region?,
+        private val clock: () -> Long = System::currentTimeMillis,
+        dispatcher: CoroutineDispatcher = Dispatchers.IO
+) {
+
+    companion object {
+        private val LOGTAG = SystemUtils.createLogtag(RegionProvider::class.java)
+
+        const val REGION_TTL = SystemUtils.ONE_WEEK_MILLIS
+    }
+
+    private val scope = CoroutineScope(dispatcher)
+    private val lock = Any()
+    // Guarded by the lock.
+    private var parsedJson: String? = null
+    private var parsedRegion: GeolocationData? = null
+    private var inFlight: CompletableFuture<GeolocationData?>? = null
+    private var fetched = false
+
+    /**
+     * Returns the stored region, or null if it was never fetched.
+     */
+    fun getRegion(): GeolocationData? = parse(settings.geolocationData)
+
+    fun isExpired(): Boolean {
+        val age = clock() - settings.geolocationDataTimestamp
+        return getRegion() == null || age < 0 || age > REGION_TTL
+    }
+
+    /**
+     * Fetches the region if the stored one is missing or expired.
+     * @return The updated region, or the stored one if it wasn't fetched or the fetch failed.
+     */
+    fun update(): CompletableFuture<GeolocationData?> {
+        synchronized(lock) {
+            inFlight?.let {
+                return it
+            }
+            if (fetched || !isExpired()) {
+                return CompletableFuture.completedFuture(getRegion())
+            }
+            // Failed fetches are not retried until the next session either.
+            fetched = true
+
+            val future = scope.future {
+                val region = try {
+                    fetchRegion()
+                } catch (e: Exception) {
+                    Log.e(LOGTAG, "Unable to fetch the region: ${e.localizedMessage}")
+                    null
+                }
+                if (region == null) {
+                    return@future getRegion()
+                }
+                val data = GeolocationData.create(region.countryCode, region.countryName)
+                // The timestamp goes first, so listeners of the region see it already updated.
+                settings.geolocationDataTimestamp = clock()
+                settings.geolocationData = data.toString()
+                parse(settings.geolocationData)
+            }
+            inFlight = future
+            future.whenComplete { _, _ ->
+                synchronized(lock) {
+                    inFlight = null
+                }
+            }
+            return future
+        }
+    }
+
+    private fun parse(json: String?): GeolocationData? = synchronized(lock) {
+        if (json != parsedJson) {
+            parsedRegion = if (json.isNullOrEmpty()) null else GeolocationData.parse(json)
+            parsedJson = json
+        }
+        parsedRegion
+    }
+}
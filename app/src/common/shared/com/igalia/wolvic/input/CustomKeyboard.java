@@ -14,6 +14,7 @@ import android.view.KeyEvent;
 import java.lang.reflect.Field;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class CustomKeyboard extends Keyboard {
 
@@ -29,6 +30,9 @@ public class CustomKeyboard extends Keyboard {
     public static final int KEYCODE_EMOJI = -13;
     public static final int KEYCODE_DOMAIN = -14;
 
+    // The fields found by getField(), keyed by class and field name.
+    private static final ConcurrentHashMap<String, Field> sFields = new ConcurrentHashMap<>();
+
     public CustomKeyboard(Context context, int xmlLayoutResId) {
         super(context, xmlLayoutResId, 0);
     }
@@ -143,6 +147,16 @@ public class CustomKeyboard extends Keyboard {
     }
 
     public static Field getField(Class<?> clazz, String fieldName) {
+        String key = clazz.getName() + '#' + fieldName;
+        Field field = sFields.get(key);
+        if (field == null) {
+            field = findField(clazz, fieldName);
+            sFields.put(key, field);
+        }
+        return field;
+    }
+
+    private static Field findField(Class<?> clazz, String fieldName) {
         Class<?> tmpClass = clazz;
         do {
             try {
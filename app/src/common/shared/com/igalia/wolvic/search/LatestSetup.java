@@ -0,0 +1,82 @@
+package com.igalia.wolvic.search;
+
+import androidx.annotation.NonNull;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Keeps the result of the latest of a series of setups run in the background. Readers never wait:
+ * they get the result of the last setup that finished, or the fallback until one does. A setup
+ * that finishes after a newer one was started doesn't replace the result.
+ */
+class LatestSetup<T> {
+
+    private final Executor mExecutor;
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private volatile T mValue;
+    // Completed when a setup replaces the fallback. Until then, it fails when the latest setup does
+    // and a new one is used for the next setups.
+    private volatile CompletableFuture<Void> mReady = new CompletableFuture<>();
+
+    LatestSetup(@NonNull Executor aExecutor, @NonNull T aFallback) {
+        mExecutor = aExecutor;
+        mValue = aFallback;
+    }
+
+    /**
+     * Runs a new setup, newer than every setup started before.
+     * @return The result of the setup, even if a newer one replaced it.
+     */
+    @NonNull
+    CompletableFuture<T> start(@NonNull Supplier<T> aSetup) {
+        final int generation = mGeneration.incrementAndGet();
+        return CompletableFuture.supplyAsync(() -> {
+            T value;
+            try {
+                value = aSetup.get();
+            } catch (RuntimeException e) {
+                synchronized (this) {
+                    if (mGeneration.get() == generation && !mReady.isDone()) {
+                        CompletableFuture<Void> failed = mReady;
+                        mReady = new CompletableFuture<>();
+                        failed.completeExceptionally(e);
+                    }
+                }
+                throw e;
+            }
+            synchronized (this) {
+                if (mGeneration.get() == generation) {
+                    mValue = value;
+                    mReady.complete(null);
+                }
+            }
+            return value;
+        }, mExecutor);
+    }
+
+    /**
+     * Returns the result of the latest setup that finished, or the fallback.
+     */
+    @NonNull
+    T get() {
+        return mValue;
+    }
+
+    /**
+     * Returns whether a setup has replaced the fallback.
+     */
+    boolean isReady() {
+        return mReady.isDone();
+    }
+
+    /**
+     * Completes with the current result once a setup has replaced the fallback.
+     */
+    @NonNull
+    CompletableFuture<T> whenReady() {
+        return mReady.thenApply(ignored -> mValue);
+    }
+}
@@ -10,20 +10,31 @@ import android.preference.PreferenceManager;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import com.igalia.wolvic.AppExecutors;
 import com.igalia.wolvic.R;
 import com.igalia.wolvic.VRBrowserActivity;
+import com.igalia.wolvic.VRBrowserApplication;
 import com.igalia.wolvic.browser.SettingsStore;
 import com.igalia.wolvic.geolocation.GeolocationData;
+import com.igalia.wolvic.geolocation.GeolocationWrapper;
+import com.igalia.wolvic.search.suggestions.SearchSuggestionsCache;
 import com.igalia.wolvic.search.suggestions.SearchSuggestionsClientKt;
+import com.igalia.wolvic.telemetry.StartupTrace;
+import com.igalia.wolvic.telemetry.TelemetryService;
 import com.igalia.wolvic.utils.SystemUtils;
 
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import kotlinx.coroutines.Dispatchers;
 import mozilla.components.browser.search.SearchEngine;
@@ -50,6 +61,15 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
 
     private static String EMPTY = "";
 
+    // Stands for the search terms in the saved search URL, Uri.encode() leaves it as it is.
+    private static final String SEARCH_TERMS = "wolvic_search_terms";
+    private static final String PREF_ENGINE_IDENTIFIER = "search_engine_identifier";
+    private static final String PREF_ENGINE_NAME = "search_engine_name";
+    private static final String PREF_ENGINE_SEARCH_URL = "search_engine_search_url";
+    // Used until the first setup finishes when no engine was saved by a previous run.
+    private static final EngineState DEFAULT_STATE = new EngineState("google", "Google",
+            "https://www.google.com/search?q=" + SEARCH_TERMS, null);
+
     private static SearchEngineWrapper mSearchEngineWrapperInstance;
 
     public static synchronized @NonNull
@@ -61,16 +81,47 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
         return mSearchEngineWrapperInstance;
     }
 
+    static class EngineState {
+        final String identifier;
+        final String name;
+        final String searchUrl;
+        // Null for the saved and the default engines, until a setup finishes.
+        @Nullable
+        final SearchSuggestionClient suggestionsClient;
+
+        EngineState(@NonNull String identifier, @NonNull String name, @NonNull String searchUrl,
+                    @Nullable SearchSuggestionClient suggestionsClient) {
+            this.identifier = identifier;
+            this.name = name;
+            this.searchUrl = searchUrl;
+            this.suggestionsClient = suggestionsClient;
+        }
+
+        @NonNull
+        String buildSearchUrl(@NonNull String aQuery) {
+            return searchUrl.replace(SEARCH_TERMS, Uri.encode(aQuery));
+        }
+    }
+
     private Context mContext;
-    private SearchEngine mSearchEngine;
-    private SearchSuggestionClient mSuggestionsClient;
     private SharedPreferences mPrefs;
     private boolean mAutocompleteEnabled;
+    private final SearchSuggestionsCache mSuggestionsCache = new SearchSuggestionsCache();
+    private final Executor mMainExecutor;
+    // The default engine by region, locale and user preference, so changes only load the engines once.
+    private final Map<String, SearchEngine> mEngines = new ConcurrentHashMap<>();
+    // Swapped as a whole when a setup finishes, so the engine and its client always match. The
+    // engine saved by the previous run is used until the first setup finishes.
+    private final LatestSetup<EngineState> mSetup;
+    private final AtomicBoolean mFirstQuery = new AtomicBoolean(true);
 
     private SearchEngineWrapper(@NonNull Context aContext) {
         mContext = aContext;
         mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         mAutocompleteEnabled = SettingsStore.getInstance(mContext).isAutocompleteEnabled();
+        AppExecutors executors = ((VRBrowserApplication)aContext.getApplicationContext()).getExecutors();
+        mMainExecutor = executors.mainThread();
+        mSetup = new LatestSetup<>(executors.diskIO(), getSavedState(mPrefs));
 
         setupSearchEngine(aContext, EMPTY);
     }
@@ -99,24 +150,46 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     }
 
     public String getSearchURL(String aQuery) {
-        return mSearchEngine.buildSearchUrl(aQuery);
+        return mSetup.get().buildSearchUrl(aQuery);
     }
 
     public CompletableFuture<List<String>> getSuggestions(String aQuery) {
-        return SearchSuggestionsClientKt.getSuggestionsAsync(mSuggestionsClient, aQuery != null ? aQuery : "");
+        // Suggestions are neither fetched nor served from the cache when they are disabled.
+        if (!mAutocompleteEnabled || ((VRBrowserActivity)mContext).getWindows().isInPrivateMode()) {
+            return CompletableFuture.completedFuture(Collections.emptyList());
+        }
+        // The first query includes the wait for the engine setup, if it's still running.
+        final long start = mFirstQuery.compareAndSet(true, false) ? TelemetryService.Performance.start() : 0;
+        final String query = aQuery != null ? aQuery : "";
+        CompletableFuture<List<String>> suggestions;
+        if (mSetup.isReady()) {
+            suggestions = getSuggestions(mSetup.get(), query);
+        } else {
+            // Only the engines loaded by a setup have a suggestions client.
+            suggestions = mSetup.whenReady().thenComposeAsync(state -> getSuggestions(state, query), mMainExecutor);
+        }
+        if (start != 0) {
+            suggestions.thenRun(() -> TelemetryService.Performance.stop(TelemetryService.Performance.FIRST_SUGGESTIONS, start));
+        }
+        return suggestions;
+    }
+
+    private CompletableFuture<List<String>> getSuggestions(@NonNull EngineState state, @NonNull String aQuery) {
+        return mSuggestionsCache.get(state.identifier, Locale.getDefault().toLanguageTag(), aQuery,
+                query -> SearchSuggestionsClientKt.getSuggestionsAsync(state.suggestionsClient, query));
     }
 
     public String getResourceURL() {
-        Uri uri = Uri.parse(mSearchEngine.buildSearchUrl("")) ;
+        Uri uri = Uri.parse(mSetup.get().buildSearchUrl("")) ;
         return uri.getScheme() + "://" + uri.getHost();
     }
 
     public String getIdentifier() {
-        return mSearchEngine.getIdentifier();
+        return mSetup.get().identifier;
     }
 
     public String getEngineName() {
-        return mSearchEngine.getName();
+        return mSetup.get().name;
     }
 
     // Receiver for locale updates
@@ -132,13 +205,51 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
     /**
      * We cannot send system ACTION_LOCALE_CHANGED so the component refreshes the engines
      * with the updated SearchLocalizationProvider information so we have to update the whole manager.
+     * The engines are loaded in a background thread, and the current engine is kept until they are.
+     * The new engine is saved, so the next run can use it until its own setup finishes.
      * @param aContext Activity context
      * @param userPref User preferred engine (among the available ones)
      */
     private void setupSearchEngine(@NonNull Context aContext, String userPref) {
+        // Read here, so a later setup always uses newer values.
+        final GeolocationData geolocationData = GeolocationWrapper.INSTANCE.getRegion(aContext);
+        final String locale = Locale.getDefault().toLanguageTag();
+        mSetup.start(() -> {
+            SearchEngine engine = getSearchEngine(aContext, geolocationData, locale, userPref);
+            EngineState state = new EngineState(engine.getIdentifier(), engine.getName(),
+                    engine.buildSearchUrl(SEARCH_TERMS), createSuggestionsClient(engine));
+            mPrefs.edit()
+                    .putString(PREF_ENGINE_IDENTIFIER, state.identifier)
+                    .putString(PREF_ENGINE_NAME, state.name)
+                    .putString(PREF_ENGINE_SEARCH_URL, state.searchUrl)
+                    .apply();
+            return state;
+        });
+    }
+
+    @NonNull
+    private static EngineState getSavedState(@NonNull SharedPreferences aPrefs) {
+        String identifier = aPrefs.getString(PREF_ENGINE_IDENTIFIER, null);
+        String name = aPrefs.getString(PREF_ENGINE_NAME, null);
+        String searchUrl = aPrefs.getString(PREF_ENGINE_SEARCH_URL, null);
+        if (identifier == null || name == null || searchUrl == null || !searchUrl.contains(SEARCH_TERMS)) {
+            return DEFAULT_STATE;
+        }
+        return new EngineState(identifier, name, searchUrl, null);
+    }
+
+    @NonNull
+    private SearchEngine getSearchEngine(@NonNull Context aContext, GeolocationData data, @NonNull String locale, String userPref) {
+        String key = (data != null ? data.getCountryCode() : EMPTY) + "/" + locale + "/" + userPref;
+        SearchEngine cached = mEngines.get(key);
+        if (cached != null) {
+            return cached;
+        }
+
+        long start = TelemetryService.Performance.start();
+        StartupTrace.Span span = StartupTrace.begin("SearchEngine.setup");
         List<SearchEngineFilter> engineFilterList = new ArrayList<>();
 
-        GeolocationData data = GeolocationData.parse(SettingsStore.getInstance(aContext).getGeolocationData());
         SearchLocalizationProvider mLocalizationProvider;
         if (data == null) {
             Log.d(LOGTAG, "Using Locale based search localization provider");
@@ -172,9 +283,17 @@ public class SearchEngineWrapper implements SharedPreferences.OnSharedPreference
         }
 
         // A name can be used if the user get's to choose among the available engines
-        mSearchEngine = mSearchEngineManager.getDefaultSearchEngine(aContext, userPref);
-        mSuggestionsClient = new SearchSuggestionClient(
-                mSearchEngine,
+        SearchEngine engine = mSearchEngineManager.getDefaultSearchEngine(aContext, userPref);
+        mEngines.put(key, engine);
+        span.end();
+        TelemetryService.Performance.stop(TelemetryService.Performance.SEARCH_ENGINE_SETUP, start);
+        return engine;
+    }
+
+    @NonNull
+    private SearchSuggestionClient createSuggestionsClient(@NonNull SearchEngine engine) {
+        return new SearchSuggestionClient(
+                engine,
                 (searchUrl, continuation) -> {
                     return (mAutocompleteEnabled && !((VRBrowserActivity)mContext).getWindows().isInPrivateMode()) ?
                             SearchSuggestionsClientKt.fetchSearchSuggestions(mContext, searchUrl) :
@@ -0,0 +1,148 @@
+package com.igalia.wolvic.search.suggestions;
+
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import com.igalia.wolvic.telemetry.TelemetryService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongSupplier;
+
+/**
+ * Caches the search engine suggestions by engine, locale and query, so typing and deleting
+ * characters doesn't fetch the same suggestions again.
+ *
+ * When a query isn't cached, the suggestions of a shorter query are reused if they were complete,
+ * that is, if the server returned fewer suggestions than it does when there are more matches.
+ * Requests for a query which is already being fetched share the same fetch.
+ */
+public class SearchSuggestionsCache {
+
+    public interface Fetcher {
+        @NonNull
+        CompletableFuture<List<String>> fetch(@NonNull String query);
+    }
+
+    static final int MAX_ENTRIES = 64;
+    static final long TTL = 5 * 60 * 1000;
+    // Search engines return up to 8 or 10 suggestions, fewer means there are no more matches.
+    static final int COMPLETE_RESULT_SIZE = 8;
+    private static final char KEY_SEPARATOR = '\n';
+
+    private static class Entry {
+        final List<String> suggestions;
+        final long time;
+
+        Entry(@NonNull List<String> suggestions, long time) {
+            this.suggestions = suggestions;
+            this.time = time;
+        }
+    }
+
+    private final LongSupplier mClock;
+    // Guarded by the cache.
+    private final LinkedHashMap<String, Entry> mEntries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    };
+    private final Map<String, CompletableFuture<List<String>>> mInFlight = new HashMap<>();
+
+    public SearchSuggestionsCache() {
+        this(SystemClock::elapsedRealtime);
+    }
+
+    SearchSuggestionsCache(@NonNull LongSupplier clock) {
+        mClock = clock;
+    }
+
+    @NonNull
+    public synchronized CompletableFuture<List<String>> get(@NonNull String engine, @NonNull String locale,
+                                                            @NonNull String query, @NonNull Fetcher fetcher) {
+        String prefix = engine + KEY_SEPARATOR + locale + KEY_SEPARATOR;
+        String key = prefix + query;
+        long now = mClock.getAsLong();
+
+        Entry entry = getEntry(key, now);
+        if (entry != null) {
+            return hit(TelemetryService.Performance.SUGGESTIONS_HIT, entry.suggestions);
+        }
+
+        // The longest cached query that the current one starts with.
+        for (int length = query.length() - 1; length > 0; length--) {
+            Entry prefixEntry = getEntry(prefix + query.substring(0, length), now);
+            if (prefixEntry != null && prefixEntry.suggestions.size() < COMPLETE_RESULT_SIZE) {
+                List<String> suggestions = filter(prefixEntry.suggestions, query);
+                // Keep the time of the original response, the reused suggestions are not newer.
+                mEntries.put(key, new Entry(suggestions, prefixEntry.time));
+                return hit(TelemetryService.Performance.SUGGESTIONS_PREFIX_HIT, suggestions);
+            }
+        }
+
+        CompletableFuture<List<String>> inFlight = mInFlight.get(key);
+        if (inFlight != null) {
+            TelemetryService.Performance.count(TelemetryService.Performance.SUGGESTIONS_COALESCED);
+            return inFlight;
+        }
+
+        TelemetryService.Performance.count(TelemetryService.Performance.SUGGESTIONS_MISS);
+        long start = TelemetryService.Performance.start();
+        CompletableFuture<List<String>> future = fetcher.fetch(query);
+        mInFlight.put(key, future);
+        future.whenComplete((suggestions, throwable) -> {
+            synchronized (this) {
+                mInFlight.remove(key);
+                // Failed and disabled fetches are not cached.
+                if (suggestions != null) {
+                    TelemetryService.Performance.stop(TelemetryService.Performance.SUGGESTIONS_FETCH, start);
+                    mEntries.put(key, new Entry(Collections.unmodifiableList(new ArrayList<>(suggestions)), mClock.getAsLong()));
+                }
+            }
+        });
+        return future;
+    }
+
+    public synchronized void clear() {
+        mEntries.clear();
+    }
+
+    synchronized int size() {
+        return mEntries.size();
+    }
+
+    private Entry getEntry(@NonNull String key, long now) {
+        Entry entry = mEntries.get(key);
+        if (entry != null && now - entry.time > TTL) {
+            mEntries.remove(key);
+            return null;
+        }
+        return entry;
+    }
+
+    @NonNull
+    private CompletableFuture<List<String>> hit(@NonNull String metric, @NonNull List<String> suggestions) {
+        TelemetryService.Performance.count(metric);
+        return CompletableFuture.completedFuture(suggestions);
+    }
+
+    @NonNull
+    private static List<String> filter(@NonNull List<String> suggestions, @NonNull String query) {
+        String lowerCaseQuery = query.toLowerCase(Locale.ROOT);
+        List<String> filtered = new ArrayList<>();
+        for (String suggestion : suggestions) {
+            if (suggestion.toLowerCase(Locale.ROOT).startsWith(lowerCaseQuery)) {
+                filtered.add(suggestion);
+            }
+        }
+        return Collections.unmodifiableList(filtered);
+    }
+}
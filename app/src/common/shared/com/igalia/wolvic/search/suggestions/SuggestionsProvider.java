@@ -10,12 +10,15 @@ import com.igalia.wolvic.browser.engine.SessionStore;
 import com.igalia.wolvic.search.SearchEngineWrapper;
 import com.igalia.wolvic.ui.widgets.SuggestionsWidget.SuggestionItem;
 import com.igalia.wolvic.ui.widgets.SuggestionsWidget.SuggestionItem.Type;
+import com.igalia.wolvic.utils.UrlClassifier;
 import com.igalia.wolvic.utils.UrlUtils;
 
 import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.Executor;
 import java.util.function.Supplier;
 
@@ -58,9 +61,7 @@ public class SuggestionsProvider {
     }
 
     private String getSearchURLOrDomain(String text) {
-        if (UrlUtils.isDomain(text)) {
-            return text;
-        } else if (UrlUtils.isIPUri(text)) {
+        if (UrlClassifier.classify(text) != UrlClassifier.Type.TEXT) {
             return text;
         } else {
             return mSearchEngineWrapper.getSearchURL(text);
@@ -96,6 +97,11 @@ public class SuggestionsProvider {
             future.complete(items);
 
         }, mUIThreadExecutor).exceptionally(throwable -> {
+            if (isCancellation(throwable)) {
+                // A newer query replaced this one, so its results would be stale.
+                future.cancel(false);
+                return null;
+            }
             Log.d(LOGTAG, "Error getting bookmarks suggestions: " + throwable.getLocalizedMessage());
             throwable.printStackTrace();
             future.complete(items);
@@ -121,6 +127,11 @@ public class SuggestionsProvider {
             future.complete(items);
 
         }, mUIThreadExecutor).exceptionally(throwable -> {
+            if (isCancellation(throwable)) {
+                // A newer query replaced this one, so its results would be stale.
+                future.cancel(false);
+                return null;
+            }
             Log.d(LOGTAG, "Error getting history suggestions: " + throwable.getLocalizedMessage());
             throwable.printStackTrace();
             future.complete(items);
@@ -171,6 +182,11 @@ public class SuggestionsProvider {
             future.complete(items);
 
         }, mUIThreadExecutor).exceptionally(throwable -> {
+            if (isCancellation(throwable)) {
+                // A newer query replaced this one, so its results would be stale.
+                future.cancel(false);
+                return null;
+            }
             Log.d(LOGTAG, "Error getting search engine suggestions: " + throwable.getLocalizedMessage());
             throwable.printStackTrace();
             future.complete(items);
@@ -180,6 +196,22 @@ public class SuggestionsProvider {
         return future;
     }
 
+    /**
+     * Returns whether the error comes from a query that was cancelled because a newer one replaced
+     * it, which is expected while typing.
+     */
+    public static boolean isCancellation(@NonNull Throwable throwable) {
+        Throwable cause = throwable;
+        while (cause instanceof CompletionException && cause.getCause() != null) {
+            cause = cause.getCause();
+        }
+        return cause instanceof CancellationException;
+    }
+
+    /**
+     * Returns the suggestions for the text. The future is cancelled if the storage queries are
+     * cancelled by a newer call.
+     */
     public CompletableFuture<List<SuggestionItem>> getSuggestions() {
         return CompletableFuture.supplyAsync((Supplier<ArrayList<SuggestionItem>>) ArrayList::new)
                 .thenComposeAsync(this::getSearchEngineSuggestions)
@@ -2,6 +2,7 @@ package com.igalia.wolvic.speech;
 
 import android.app.Activity;
 import android.content.Context;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.NonNull;
@@ -36,14 +37,20 @@ public class MKSpeechRecognizer implements SpeechRecognizer, ISpeechRecognitionL
 
     private static final String DEBUG_API_KEY = "WOLVIC_DEBUG";
 
+    // Delivers the mic levels and interim results to the UI once per frame.
+    private final SpeechEventPipeline mEventPipeline;
+
     public MKSpeechRecognizer(Context context) {
         mContext = context;
+        mEventPipeline = new SpeechEventPipeline(Looper.getMainLooper(),
+                ((Activity) context).getWindowManager().getDefaultDisplay().getRefreshRate());
     }
 
     @Override
     public void start(@NonNull Settings settings, @Nullable GeckoWebExecutor executor, @NonNull Callback callback) {
         mkSpeechService = MKSpeechService.getInstance();
         mCallback = callback;
+        mEventPipeline.start(mEventListener);
         mkSpeechService.addListener(this);
         String key = BuildConfig.MK_API_KEY;
         if (StringUtils.isEmpty(key)) {
@@ -60,6 +67,7 @@ public class MKSpeechRecognizer implements SpeechRecognizer, ISpeechRecognitionL
     @Override
     public void stop() {
         mCallback = null;
+        mEventPipeline.stop();
         mkSpeechService.cancel();
         removeListener();
     }
@@ -81,17 +89,27 @@ public class MKSpeechRecognizer implements SpeechRecognizer, ISpeechRecognitionL
         }
     }
 
-    public void onMicActivity(double fftsum) {
-        if (mCallback != null) {
-            double db = (double) fftsum * -1; // the higher the value, quieter the user/environment is
-            db = db == Double.POSITIVE_INFINITY ? MAX_DB : db;
-            int level = (int) (MAX_CLIPPING - (((db - MIN_DB) / (MAX_DB - MIN_DB)) * MAX_CLIPPING));
-            Log.d(LOGTAG, "===> db:      " + db);
-            Log.d(LOGTAG, "===> level    " + level);
-            mCallback.onMicActivity(level);
+    private final SpeechEventPipeline.Listener mEventListener = new SpeechEventPipeline.Listener() {
+        @Override
+        public void onMicLevel(int level) {
+            if (mCallback != null) {
+                mCallback.onMicActivity(level);
+            }
         }
-    }
 
+        @Override
+        public void onPartialResult(@NonNull String transcription, @NonNull TranscriptDiff diff) {
+            if (mCallback != null) {
+                mCallback.onPartialResult(transcription, diff);
+            }
+        }
+    };
+
+    private static int getLevel(double fftsum) {
+        double db = fftsum * -1; // the higher the value, quieter the user/environment is
+        db = db == Double.POSITIVE_INFINITY ? MAX_DB : db;
+        return (int) (MAX_CLIPPING - (((db - MIN_DB) / (MAX_DB - MIN_DB)) * MAX_CLIPPING));
+    }
 
     private void dispatch(Runnable runnable) {
         ((Activity) mContext).runOnUiThread(runnable);
@@ -108,19 +126,24 @@ public class MKSpeechRecognizer implements SpeechRecognizer, ISpeechRecognitionL
 
     @Override
     public void onSpeechStatusChanged(MKSpeechService.SpeechState aState, Object aPayload) {
+        // The frequent events are coalesced off the UI thread.
+        switch (aState) {
+            case MIC_ACTIVITY:
+                mEventPipeline.postMicLevel(getLevel((double) aPayload));
+                return;
+            case INTERIM_STT_RESULT:
+                mEventPipeline.postPartialResult((String) aPayload);
+                return;
+            default:
+                break;
+        }
+
         dispatch(() -> {
 
             switch (aState) {
-                case MIC_ACTIVITY:
-                    this.onMicActivity((double) aPayload);
-                    break;
-                case INTERIM_STT_RESULT:
-                    if (mCallback != null) {
-                        Log.w(LOGTAG, "INTERIM_STT_RESULT " + (String) aPayload);
-                        mCallback.onPartialResult((String) aPayload);
-                    }
-                    break;
                 case STT_RESULT:
+                    // Interim results still pending must not be delivered after the final one.
+                    mEventPipeline.stop();
                     if (mCallback != null) {
                         STTResult result = (STTResult) aPayload;
                         Log.w(LOGTAG, "STT_RESULT " + result.transcript);
@@ -132,18 +155,21 @@ public class MKSpeechRecognizer implements SpeechRecognizer, ISpeechRecognitionL
                     onStartListen();
                     break;
                 case NO_VOICE:
+                    mEventPipeline.stop();
                     if (mCallback != null) {
                         mCallback.onNoVoice();
                     }
                     removeListener();
                     break;
                 case CANCELED:
+                    mEventPipeline.stop();
                     if (mCallback != null) {
                         mCallback.onNoVoice();
                     }
                     removeListener();
                     break;
                 case ERROR:
+                    mEventPipeline.stop();
                     if (mCallback != null) {
                         mCallback.onError(SpeechRecognizer.Callback.SPEECH_ERROR, "unk error");
                     }
@@ -0,0 +1,188 @@
+package com.igalia.wolvic.speech;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.igalia.wolvic.utils.SystemUtils;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers the frequent events of a speech recognition, the microphone level and the interim
+ * transcripts, to the main thread at most once per display frame.
+ *
+ * Events can be posted from any thread. The events received between two frames replace each
+ * other, so only the latest level and transcript are delivered, and transcripts are delivered
+ * with their difference to the previous one.
+ */
+public class SpeechEventPipeline {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(SpeechEventPipeline.class);
+
+    public interface Listener {
+        void onMicLevel(int level);
+        void onPartialResult(@NonNull String transcription, @NonNull TranscriptDiff diff);
+    }
+
+    static final long DEFAULT_FRAME_INTERVAL = 16;
+    private static final int NO_LEVEL = Integer.MIN_VALUE;
+
+    private final Handler mHandler;
+    private final long mFrameInterval;
+    private final Object mLock = new Object();
+    // Guarded by mLock.
+    private Listener mListener;
+    private int mPendingLevel = NO_LEVEL;
+    private String mPendingTranscript;
+    private boolean mDeliveryScheduled;
+    private long mLastDelivery = Long.MIN_VALUE;
+    // Only used from the main thread.
+    private String mLastTranscript = "";
+
+    private final AtomicLong mReceived = new AtomicLong();
+    private final AtomicLong mDelivered = new AtomicLong();
+    private final AtomicLong mCoalesced = new AtomicLong();
+    private final AtomicLong mDropped = new AtomicLong();
+
+    /**
+     * @param refreshRate The refresh rate of the display, in frames per second.
+     */
+    public SpeechEventPipeline(@NonNull Looper mainLooper, float refreshRate) {
+        mHandler = new Handler(mainLooper);
+        mFrameInterval = refreshRate > 0 ? (long) Math.ceil(1000 / refreshRate) : DEFAULT_FRAME_INTERVAL;
+    }
+
+    /**
+     * Starts delivering events to the listener. Must be called from the main thread.
+     */
+    public void start(@NonNull Listener listener) {
+        synchronized (mLock) {
+            clearPending();
+            mListener = listener;
+        }
+        mLastTranscript = "";
+    }
+
+    /**
+     * Stops delivering events, the pending ones are dropped. Must be called from the main thread.
+     */
+    public void stop() {
+        synchronized (mLock) {
+            if (mListener == null) {
+                return;
+            }
+            clearPending();
+            mListener = null;
+            mDeliveryScheduled = false;
+            mHandler.removeCallbacks(mDeliver);
+        }
+        Log.d(LOGTAG, "Speech events: " + mReceived.get() + " received, " + mDelivered.get() + " delivered, " +
+                mCoalesced.get() + " coalesced, " + mDropped.get() + " dropped");
+    }
+
+    public void postMicLevel(int level) {
+        mReceived.incrementAndGet();
+        synchronized (mLock) {
+            if (mListener == null) {
+                mDropped.incrementAndGet();
+                return;
+            }
+            if (mPendingLevel != NO_LEVEL) {
+                mCoalesced.incrementAndGet();
+            }
+            mPendingLevel = level;
+            scheduleDelivery();
+        }
+    }
+
+    public void postPartialResult(@Nullable String transcription) {
+        mReceived.incrementAndGet();
+        synchronized (mLock) {
+            if (mListener == null || transcription == null) {
+                mDropped.incrementAndGet();
+                return;
+            }
+            if (mPendingTranscript != null) {
+                mCoalesced.incrementAndGet();
+            }
+            mPendingTranscript = transcription;
+            scheduleDelivery();
+        }
+    }
+
+    public long getReceivedCount() {
+        return mReceived.get();
+    }
+
+    public long getDeliveredCount() {
+        return mDelivered.get();
+    }
+
+    public long getCoalescedCount() {
+        return mCoalesced.get();
+    }
+
+    public long getDroppedCount() {
+        return mDropped.get();
+    }
+
+    // Must be called with mLock held.
+    private void clearPending() {
+        if (mPendingLevel != NO_LEVEL) {
+            mDropped.incrementAndGet();
+        }
+        if (mPendingTranscript != null) {
+            mDropped.incrementAndGet();
+        }
+        mPendingLevel = NO_LEVEL;
+        mPendingTranscript = null;
+    }
+
+    // Must be called with mLock held.
+    private void scheduleDelivery() {
+        if (mDeliveryScheduled) {
+            return;
+        }
+        mDeliveryScheduled = true;
+        mHandler.postAtTime(mDeliver, Math.max(SystemClock.uptimeMillis(), mLastDelivery + mFrameInterval));
+    }
+
+    private final Runnable mDeliver = () -> {
+        Listener listener;
+        int level;
+        String transcription;
+        synchronized (mLock) {
+            mDeliveryScheduled = false;
+            mLastDelivery = SystemClock.uptimeMillis();
+            listener = mListener;
+            level = mPendingLevel;
+            transcription = mPendingTranscript;
+            mPendingLevel = NO_LEVEL;
+            mPendingTranscript = null;
+        }
+        if (listener == null) {
+            return;
+        }
+
+        if (level != NO_LEVEL) {
+            mDelivered.incrementAndGet();
+            listener.onMicLevel(level);
+        }
+        if (transcription != null) {
+            TranscriptDiff diff = TranscriptDiff.compute(mLastTranscript, transcription);
+            if (diff.isEmpty()) {
+                // The recognizer repeated the previous transcript.
+                mCoalesced.incrementAndGet();
+                return;
+            }
+            mLastTranscript = transcription;
+            mDelivered.incrementAndGet();
+            listener.onPartialResult(transcription, diff);
+        }
+    };
+}
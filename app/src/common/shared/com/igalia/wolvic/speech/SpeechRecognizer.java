@@ -33,6 +33,13 @@ public interface SpeechRecognizer {
         void onMicActivity(int level);
         void onDecoding();
         default void onPartialResult(String transcription) {};
+        /**
+         * Called instead of {@link #onPartialResult(String)} by the recognizers that also provide
+         * the change from the previous interim result.
+         */
+        default void onPartialResult(@NonNull String transcription, @NonNull TranscriptDiff diff) {
+            onPartialResult(transcription);
+        }
         void onResult(String transcription, float confidence);
         void onNoVoice();
         void onError(@ErrorType int errorType, @Nullable String error);
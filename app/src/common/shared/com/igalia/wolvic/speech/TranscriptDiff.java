@@ -0,0 +1,54 @@
+package com.igalia.wolvic.speech;
+
+import androidx.annotation.NonNull;
+
+/**
+ * The change between two interim transcripts: the previous transcript keeps its first
+ * {@link #unchanged} characters, loses the following {@link #removed} ones and gets
+ * {@link #inserted} appended.
+ */
+public final class TranscriptDiff {
+
+    public final int unchanged;
+    public final int removed;
+    @NonNull
+    public final String inserted;
+
+    TranscriptDiff(int unchanged, int removed, @NonNull String inserted) {
+        this.unchanged = unchanged;
+        this.removed = removed;
+        this.inserted = inserted;
+    }
+
+    @NonNull
+    public static TranscriptDiff compute(@NonNull String previous, @NonNull String current) {
+        int length = Math.min(previous.length(), current.length());
+        int unchanged = 0;
+        while (unchanged < length && previous.charAt(unchanged) == current.charAt(unchanged)) {
+            unchanged++;
+        }
+        // Don't split surrogate pairs.
+        if (unchanged > 0 && Character.isHighSurrogate(previous.charAt(unchanged - 1))) {
+            unchanged--;
+        }
+        return new TranscriptDiff(unchanged, previous.length() - unchanged, current.substring(unchanged));
+    }
+
+    public boolean isEmpty() {
+        return removed == 0 && inserted.isEmpty();
+    }
+
+    /**
+     * Applies the change to the previous transcript.
+     */
+    @NonNull
+    public String apply(@NonNull String previous) {
+        return previous.substring(0, unchanged) + inserted;
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "TranscriptDiff{unchanged=" + unchanged + ", removed=" + removed + ", inserted='" + inserted + "'}";
+    }
+}
@@ -7,4 +7,6 @@ public interface ITelemetry {
     void stop();
     void customEvent(String name);
     void customEvent(String name, Bundle bundle);
+    // Only services that keep performance metrics need to implement this.
+    default void timingEvent(String name, long durationMicros) {}
 }
@@ -0,0 +1,137 @@
+package com.igalia.wolvic.telemetry;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock free latency histogram with log-linear buckets, in the spirit of HdrHistogram: every power
+ * of two range is split in {@link #SUB_BUCKETS} linear buckets, so any recorded value is reported
+ * with a relative error below 1 / {@link #SUB_BUCKETS} while the whole range, from 1 microsecond to
+ * more than a week, fits in a few hundred counters.
+ *
+ * Values are recorded in microseconds.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 4;
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_BITS = 40;
+    static final long MAX_VALUE = (1L << MAX_BITS) - 1;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_BITS - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray mCounts = new AtomicLongArray(BUCKETS);
+    private final LongAdder mCount = new LongAdder();
+    private final LongAdder mSum = new LongAdder();
+    private final AtomicLong mMin = new AtomicLong(Long.MAX_VALUE);
+    private final AtomicLong mMax = new AtomicLong(Long.MIN_VALUE);
+
+    public void record(long valueMicros) {
+        long value = Math.max(0, Math.min(valueMicros, MAX_VALUE));
+        mCounts.incrementAndGet(indexOf(value));
+        mCount.increment();
+        mSum.add(value);
+        mMin.accumulateAndGet(value, Math::min);
+        mMax.accumulateAndGet(value, Math::max);
+    }
+
+    public long getCount() {
+        return mCount.sum();
+    }
+
+    public long getMin() {
+        return getCount() > 0 ? mMin.get() : 0;
+    }
+
+    public long getMax() {
+        return getCount() > 0 ? mMax.get() : 0;
+    }
+
+    public double getMean() {
+        long count = getCount();
+        return count > 0 ? (double) mSum.sum() / count : 0;
+    }
+
+    /**
+     * Returns the value below which the given percentage of the recorded values fall, as the
+     * middle of the bucket that holds it.
+     * @param percentile A percentage between 0 and 100.
+     */
+    public long getPercentile(double percentile) {
+        // Read the buckets once, the total might be slightly behind concurrent recordings.
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            counts[i] = mCounts.get(i);
+            total += counts[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+        if (rank >= total) {
+            return getMax();
+        }
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                long value = (lowerBound(i) + upperBound(i)) / 2;
+                return Math.max(getMin(), Math.min(value, getMax()));
+            }
+        }
+        return getMax();
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            mCounts.set(i, 0);
+        }
+        mCount.reset();
+        mSum.reset();
+        mMin.set(Long.MAX_VALUE);
+        mMax.set(Long.MIN_VALUE);
+    }
+
+    @NonNull
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("count", getCount());
+        json.put("min", getMin());
+        json.put("max", getMax());
+        json.put("mean", Math.round(getMean()));
+        json.put("p50", getPercentile(50));
+        json.put("p90", getPercentile(90));
+        json.put("p99", getPercentile(99));
+        json.put("p999", getPercentile(99.9));
+        return json;
+    }
+
+    static int indexOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + subBucket;
+    }
+
+    static long lowerBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + subBucket) << shift;
+    }
+
+    static long upperBound(int index) {
+        return index + 1 < BUCKETS ? lowerBound(index + 1) - 1 : MAX_VALUE;
+    }
+}
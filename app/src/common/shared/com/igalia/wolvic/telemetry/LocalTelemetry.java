@@ -0,0 +1,192 @@
+package com.igalia.wolvic.telemetry;
+
+import android.os.Bundle;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.igalia.wolvic.utils.SystemUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Telemetry service that never leaves the device. It counts the events sent to
+ * {@link TelemetryService}, keeps a {@link LatencyHistogram} for every timing and stores every
+ * record in a {@link MetricsRingBuffer}, so recent history survives restarts. Everything can be
+ * exported as JSON from the developer options, along with the snapshots of the components that
+ * keep their own stats.
+ *
+ * Like every other service, it only records while telemetry is enabled.
+ */
+public class LocalTelemetry implements ITelemetry {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(LocalTelemetry.class);
+
+    public static final String FILE_NAME = "local_metrics";
+    private static final int RING_CAPACITY = 4096;
+
+    /**
+     * State of a component, taken when the metrics are exported.
+     */
+    public interface Snapshot {
+        @NonNull
+        JSONObject toJson() throws JSONException;
+    }
+
+    private final Map<String, LongAdder> mCounters = new ConcurrentHashMap<>();
+    private final Map<String, LatencyHistogram> mHistograms = new ConcurrentHashMap<>();
+    private final Map<String, Snapshot> mSnapshots = new ConcurrentHashMap<>();
+    private final MetricsRingBuffer mRingBuffer;
+    private final long mCreatedAt = System.currentTimeMillis();
+    private volatile boolean mStarted;
+
+    public LocalTelemetry(@NonNull File directory) {
+        this(new MetricsRingBuffer(new File(directory, FILE_NAME), RING_CAPACITY));
+    }
+
+    LocalTelemetry(@NonNull MetricsRingBuffer ringBuffer) {
+        mRingBuffer = ringBuffer;
+    }
+
+    @Override
+    public void start() {
+        mStarted = true;
+    }
+
+    @Override
+    public void stop() {
+        mStarted = false;
+        mRingBuffer.flush();
+    }
+
+    public boolean isStarted() {
+        return mStarted;
+    }
+
+    @Override
+    public void customEvent(String name) {
+        if (!mStarted || name == null) {
+            return;
+        }
+        mCounters.computeIfAbsent(name, key -> new LongAdder()).increment();
+        mRingBuffer.append(System.currentTimeMillis(), MetricsRingBuffer.TYPE_COUNTER, name, 1);
+    }
+
+    @Override
+    public void customEvent(String name, Bundle bundle) {
+        // The parameters are not aggregated, only the event is counted.
+        customEvent(name);
+    }
+
+    @Override
+    public void timingEvent(String name, long durationMicros) {
+        if (!mStarted || name == null) {
+            return;
+        }
+        getHistogram(name).record(durationMicros);
+        mRingBuffer.append(System.currentTimeMillis(), MetricsRingBuffer.TYPE_TIMING, name, durationMicros);
+    }
+
+    public long getCounter(@NonNull String name) {
+        LongAdder counter = mCounters.get(name);
+        return counter != null ? counter.sum() : 0;
+    }
+
+    @NonNull
+    public LatencyHistogram getHistogram(@NonNull String name) {
+        return mHistograms.computeIfAbsent(name, key -> new LatencyHistogram());
+    }
+
+    /**
+     * Adds the snapshot to the exports, under the given name. It replaces any snapshot added
+     * with the same name.
+     */
+    public void addSnapshot(@NonNull String name, @NonNull Snapshot snapshot) {
+        mSnapshots.put(name, snapshot);
+    }
+
+    public void removeSnapshot(@NonNull String name) {
+        mSnapshots.remove(name);
+    }
+
+    /**
+     * Discards the aggregated metrics and the stored records.
+     */
+    public void reset() {
+        mCounters.clear();
+        mHistograms.clear();
+        mRingBuffer.clear();
+    }
+
+    /**
+     * Returns the counters and the histograms of this session, with the times in microseconds,
+     * the records stored in the ring buffer, oldest first, and the snapshots.
+     */
+    @NonNull
+    public JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("createdAt", mCreatedAt);
+        json.put("exportedAt", System.currentTimeMillis());
+
+        JSONObject counters = new JSONObject();
+        for (Map.Entry<String, LongAdder> entry : new TreeMap<>(mCounters).entrySet()) {
+            counters.put(entry.getKey(), entry.getValue().sum());
+        }
+        json.put("counters", counters);
+
+        JSONObject histograms = new JSONObject();
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(mHistograms).entrySet()) {
+            histograms.put(entry.getKey(), entry.getValue().toJson());
+        }
+        json.put("histograms", histograms);
+
+        JSONArray records = new JSONArray();
+        for (MetricsRingBuffer.Record record : mRingBuffer.read()) {
+            JSONObject item = new JSONObject();
+            item.put("time", record.time);
+            item.put("type", record.type == MetricsRingBuffer.TYPE_TIMING ? "timing" : "counter");
+            item.put("name", record.name);
+            item.put("value", record.value);
+            records.put(item);
+        }
+        json.put("records", records);
+
+        JSONObject snapshots = new JSONObject();
+        for (Map.Entry<String, Snapshot> entry : new TreeMap<>(mSnapshots).entrySet()) {
+            snapshots.put(entry.getKey(), entry.getValue().toJson());
+        }
+        json.put("snapshots", snapshots);
+
+        return json;
+    }
+
+    /**
+     * Writes the JSON export to a new file in the given directory.
+     * @return The exported file, or null if it couldn't be written.
+     */
+    @Nullable
+    public File export(@NonNull File directory) {
+        File file = new File(directory, "wolvic_metrics_" + System.currentTimeMillis() + ".json");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(toJson().toString(2).getBytes(StandardCharsets.UTF_8));
+            return file;
+
+        } catch (IOException | JSONException e) {
+            Log.e(LOGTAG, "Unable to export the metrics: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+}
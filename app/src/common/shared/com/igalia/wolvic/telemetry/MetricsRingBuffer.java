@@ -0,0 +1,165 @@
+package com.igalia.wolvic.telemetry;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+
+import com.igalia.wolvic.utils.SystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Fixed size file holding the most recent metric records, the oldest ones are overwritten once it's
+ * full. The file is memory mapped so appending a record is a memory copy, the kernel writes the
+ * pages back to disk by itself, and the records survive app restarts and crashes.
+ */
+public class MetricsRingBuffer {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(MetricsRingBuffer.class);
+
+    private static final int MAGIC = 0x574d5242; // "WMRB"
+    private static final int FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 16;
+    static final int RECORD_SIZE = 64;
+    // time (8) + value (8) + type (1) + name length (1)
+    static final int MAX_NAME_LENGTH = RECORD_SIZE - 18;
+
+    public static final byte TYPE_COUNTER = 0;
+    public static final byte TYPE_TIMING = 1;
+
+    public static class Record {
+        public final long time;
+        public final byte type;
+        public final String name;
+        public final long value;
+
+        Record(long time, byte type, @NonNull String name, long value) {
+            this.time = time;
+            this.type = type;
+            this.name = name;
+            this.value = value;
+        }
+    }
+
+    private final File mFile;
+    private final int mCapacity;
+    private MappedByteBuffer mBuffer;
+    // Number of records written since the file was created, the next one goes to mWritten % mCapacity.
+    private int mWritten;
+    private boolean mFailed;
+
+    public MetricsRingBuffer(@NonNull File file, int capacity) {
+        mFile = file;
+        mCapacity = capacity;
+    }
+
+    public synchronized void append(long time, byte type, @NonNull String name, long value) {
+        if (!open()) {
+            return;
+        }
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        int nameLength = Math.min(nameBytes.length, MAX_NAME_LENGTH);
+
+        int position = HEADER_SIZE + (mWritten % mCapacity) * RECORD_SIZE;
+        mBuffer.putLong(position, time);
+        mBuffer.putLong(position + 8, value);
+        mBuffer.put(position + 16, type);
+        mBuffer.put(position + 17, (byte) nameLength);
+        for (int i = 0; i < nameLength; i++) {
+            mBuffer.put(position + 18 + i, nameBytes[i]);
+        }
+
+        // Wrap the counter before it overflows, keeping the same position in the ring.
+        mWritten = mWritten + 1 == Integer.MAX_VALUE ? mCapacity + (mWritten + 1) % mCapacity : mWritten + 1;
+        mBuffer.putInt(12, mWritten);
+    }
+
+    /**
+     * Returns the records in the file, from the oldest to the most recent.
+     */
+    @NonNull
+    public synchronized List<Record> read() {
+        List<Record> records = new ArrayList<>();
+        if (!open()) {
+            return records;
+        }
+        int count = Math.min(mWritten, mCapacity);
+        int first = mWritten - count;
+        for (int i = 0; i < count; i++) {
+            int position = HEADER_SIZE + ((first + i) % mCapacity) * RECORD_SIZE;
+            int nameLength = Math.min(mBuffer.get(position + 17) & 0xff, MAX_NAME_LENGTH);
+            byte[] name = new byte[nameLength];
+            for (int j = 0; j < nameLength; j++) {
+                name[j] = mBuffer.get(position + 18 + j);
+            }
+            records.add(new Record(
+                    mBuffer.getLong(position),
+                    mBuffer.get(position + 16),
+                    new String(name, StandardCharsets.UTF_8),
+                    mBuffer.getLong(position + 8)));
+        }
+        return records;
+    }
+
+    public synchronized void clear() {
+        if (open()) {
+            mWritten = 0;
+            mBuffer.putInt(12, 0);
+        }
+    }
+
+    /**
+     * Forces the pending changes to be written to the file.
+     */
+    public synchronized void flush() {
+        if (mBuffer != null) {
+            mBuffer.force();
+        }
+    }
+
+    private boolean open() {
+        if (mBuffer != null) {
+            return true;
+        }
+        if (mFailed) {
+            return false;
+        }
+
+        long size = HEADER_SIZE + (long) mCapacity * RECORD_SIZE;
+        try (RandomAccessFile file = new RandomAccessFile(mFile, "rw")) {
+            boolean valid = file.length() == size &&
+                    file.readInt() == MAGIC &&
+                    file.readInt() == FORMAT_VERSION &&
+                    file.readInt() == mCapacity;
+            if (!valid) {
+                file.setLength(0);
+                file.setLength(size);
+            }
+            // The mapping stays valid after the file is closed.
+            mBuffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            if (valid) {
+                mWritten = Math.max(0, mBuffer.getInt(12));
+
+            } else {
+                mBuffer.putInt(0, MAGIC);
+                mBuffer.putInt(4, FORMAT_VERSION);
+                mBuffer.putInt(8, mCapacity);
+                mBuffer.putInt(12, 0);
+                mWritten = 0;
+            }
+            return true;
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Unable to open " + mFile.getAbsolutePath() + ": " + e.getLocalizedMessage());
+            mFailed = true;
+            return false;
+        }
+    }
+}
@@ -0,0 +1,186 @@
+package com.igalia.wolvic.telemetry;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Times every navigation of every session, from the page start to its first composite, its first
+ * contentful paint and its page stop. Each milestone is reported once per navigation, both for all
+ * the navigations and for the site bucket of the page, so services can aggregate them in
+ * distributions.
+ *
+ * The metrics are persisted, so hosts are never reported: a site is reduced to one of
+ * {@link #SITE_BUCKETS} buckets by hashing its registrable domain, and navigations of private
+ * sessions are not timed at all. Only the most recent {@link #MAX_NAVIGATIONS} sessions are tracked.
+ */
+class PageLoadTracker {
+
+    interface Recorder {
+        void record(@NonNull String name, long durationMicros);
+    }
+
+    static final String FIRST_COMPOSITE = "perf_page_composite";
+    static final String FIRST_CONTENTFUL_PAINT = "perf_page_fcp";
+    static final String PAGE_STOP = "perf_page_load";
+    static final String SITE_SEPARATOR = ":";
+    static final String SITE_PREFIX = "site";
+
+    static final int MAX_NAVIGATIONS = 32;
+    static final int SITE_BUCKETS = 64;
+
+    private static class Navigation {
+        final long start;
+        final String site;
+        boolean firstComposite;
+        boolean firstContentfulPaint;
+
+        Navigation(long start, @NonNull String site) {
+            this.start = start;
+            this.site = site;
+        }
+    }
+
+    private final Recorder mRecorder;
+    private final Map<String, Navigation> mNavigations = new LinkedHashMap<String, Navigation>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Navigation> eldest) {
+            return size() > MAX_NAVIGATIONS;
+        }
+    };
+
+    PageLoadTracker(@NonNull Recorder recorder) {
+        mRecorder = recorder;
+    }
+
+    /**
+     * Starts timing a new navigation of the session, replacing the previous one. Only web pages of
+     * non private sessions are timed, internal and local pages are ignored.
+     */
+    synchronized void start(@NonNull String sessionId, @Nullable String uri, boolean isPrivate, long nowNanos) {
+        // Re-insert so the session becomes the most recent one.
+        mNavigations.remove(sessionId);
+        if (isPrivate) {
+            return;
+        }
+        String host = getHost(uri);
+        if (host != null) {
+            mNavigations.put(sessionId, new Navigation(nowNanos, getSiteBucket(host)));
+        }
+    }
+
+    synchronized void firstComposite(@NonNull String sessionId, long nowNanos) {
+        Navigation navigation = mNavigations.get(sessionId);
+        if (navigation != null && !navigation.firstComposite) {
+            navigation.firstComposite = true;
+            record(FIRST_COMPOSITE, navigation, nowNanos);
+        }
+    }
+
+    synchronized void firstContentfulPaint(@NonNull String sessionId, long nowNanos) {
+        Navigation navigation = mNavigations.get(sessionId);
+        if (navigation != null && !navigation.firstContentfulPaint) {
+            navigation.firstContentfulPaint = true;
+            record(FIRST_CONTENTFUL_PAINT, navigation, nowNanos);
+        }
+    }
+
+    /**
+     * Ends the navigation. Paints notified after it stopped are not timed: they usually come from
+     * a background tab being selected, and would measure the user instead of the page.
+     */
+    synchronized void stop(@NonNull String sessionId, long nowNanos) {
+        Navigation navigation = mNavigations.remove(sessionId);
+        if (navigation != null) {
+            record(PAGE_STOP, navigation, nowNanos);
+        }
+    }
+
+    synchronized void remove(@NonNull String sessionId) {
+        mNavigations.remove(sessionId);
+    }
+
+    synchronized void clear() {
+        mNavigations.clear();
+    }
+
+    synchronized int getTrackedNavigations() {
+        return mNavigations.size();
+    }
+
+    private void record(@NonNull String name, @NonNull Navigation navigation, long nowNanos) {
+        long duration = (nowNanos - navigation.start) / 1000;
+        mRecorder.record(name, duration);
+        mRecorder.record(name + SITE_SEPARATOR + navigation.site, duration);
+    }
+
+    /**
+     * Returns the bucket of the site of the host, from "site00" to "site3f". Many sites share each
+     * bucket, so the host can't be told from it.
+     */
+    @NonNull
+    static String getSiteBucket(@NonNull String host) {
+        return String.format(Locale.ROOT, "%s%02x", SITE_PREFIX, Math.floorMod(getSite(host).hashCode(), SITE_BUCKETS));
+    }
+
+    /**
+     * Approximates the registrable domain of the host with its last two labels, or three for
+     * country code domains like "co.uk". IP addresses are returned as they are.
+     */
+    @NonNull
+    static String getSite(@NonNull String host) {
+        int last = host.lastIndexOf('.');
+        if (host.startsWith("[") || last < 0 || Character.isDigit(host.charAt(host.length() - 1))) {
+            return host;
+        }
+        int second = host.lastIndexOf('.', last - 1);
+        if (second < 0) {
+            return host;
+        }
+        boolean countryCode = host.length() - last - 1 == 2;
+        if (countryCode && last - second - 1 <= 3) {
+            int third = host.lastIndexOf('.', second - 1);
+            return host.substring(third + 1);
+        }
+        return host.substring(second + 1);
+    }
+
+    /**
+     * Returns the lower case host of http and https uris, without the "www." prefix.
+     */
+    @Nullable
+    static String getHost(@Nullable String uri) {
+        if (uri == null) {
+            return null;
+        }
+        int start;
+        if (uri.regionMatches(true, 0, "https://", 0, 8)) {
+            start = 8;
+        } else if (uri.regionMatches(true, 0, "http://", 0, 7)) {
+            start = 7;
+        } else {
+            return null;
+        }
+
+        int end = start;
+        while (end < uri.length() && "/?#".indexOf(uri.charAt(end)) < 0) {
+            end++;
+        }
+        int userInfo = uri.lastIndexOf('@', end - 1);
+        if (userInfo >= start) {
+            start = userInfo + 1;
+        }
+        int port = uri.lastIndexOf(':', end - 1);
+        // IPv6 literals contain colons too, only strip the port after the closing bracket.
+        if (port >= start && uri.lastIndexOf(']', end - 1) < port) {
+            end = port;
+        }
+        if (uri.regionMatches(true, start, "www.", 0, 4)) {
+            start += 4;
+        }
+        return end > start ? uri.substring(start, end).toLowerCase(Locale.ROOT) : null;
+    }
+}
@@ -0,0 +1,367 @@
+package com.igalia.wolvic.telemetry;
+
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.Printer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
+
+import com.igalia.wolvic.utils.SystemUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Watchdog for the main looper. The looper message logging tells when every message starts and
+ * finishes, and a background thread samples the stack of the main thread when a message runs for
+ * longer than the threshold, so the report points to the code that blocked it instead of to the
+ * code that happened to run afterwards.
+ *
+ * Stalls are aggregated by call site, the first frame of the app code in the sampled stack, and
+ * a report with the worst call sites and the most recent stalls is rewritten periodically.
+ */
+public class StallDetector {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(StallDetector.class);
+
+    public static final long DEFAULT_THRESHOLD_MS = 100;
+    static final int MAX_SITES = 64;
+    static final int MAX_RECENT_STALLS = 32;
+    static final int MAX_STACK_DEPTH = 24;
+    static final String UNSAMPLED_SITE = "unsampled";
+    private static final String APP_PACKAGE = "com.igalia.wolvic.";
+    private static final long REPORT_INTERVAL_MS = 10_000;
+
+    static class Site {
+        final String name;
+        final List<String> stack;
+        int count;
+        long totalMs;
+        long maxMs;
+
+        Site(@NonNull String name, @NonNull List<String> stack) {
+            this.name = name;
+            this.stack = stack;
+        }
+    }
+
+    private static class Stall {
+        final long time;
+        final long durationMs;
+        final String site;
+
+        Stall(long time, long durationMs, @NonNull String site) {
+            this.time = time;
+            this.durationMs = durationMs;
+            this.site = site;
+        }
+    }
+
+    private final Looper mLooper;
+    private final File mReportFile;
+    private final long mThresholdMs;
+    private final long mCreatedAt = System.currentTimeMillis();
+
+    // Written by the main thread, read by the watchdog.
+    private volatile long mDispatchStart;
+    private volatile int mDispatchId;
+
+    // Guarded by this.
+    private int mSampledId = -1;
+    private StackTraceElement[] mSampledStack;
+    private final Map<String, Site> mSites = new HashMap<>();
+    private final ArrayDeque<Stall> mRecent = new ArrayDeque<>();
+    private int mStallCount;
+    private boolean mDirty;
+
+    // Serializes the writes of the watchdog and the ones requested from the UI.
+    private final Object mReportLock = new Object();
+
+    private Thread mWatchdog;
+    private volatile boolean mRunning;
+
+    private final Printer mPrinter = new Printer() {
+        @Override
+        public void println(String x) {
+            // The looper logs ">>>>> Dispatching to ..." and "<<<<< Finished to ..." around every message.
+            if (x.startsWith(">")) {
+                mDispatchId++;
+                mDispatchStart = SystemClock.uptimeMillis();
+
+            } else if (x.startsWith("<")) {
+                long start = mDispatchStart;
+                mDispatchStart = 0;
+                if (start != 0) {
+                    long duration = SystemClock.uptimeMillis() - start;
+                    if (duration >= mThresholdMs) {
+                        onMessageFinished(mDispatchId, duration);
+                    }
+                }
+            }
+        }
+    };
+
+    public StallDetector(@NonNull Looper looper, @NonNull File reportFile) {
+        this(looper, reportFile, DEFAULT_THRESHOLD_MS);
+    }
+
+    public StallDetector(@NonNull Looper looper, @NonNull File reportFile, long thresholdMs) {
+        mLooper = looper;
+        mReportFile = reportFile;
+        mThresholdMs = thresholdMs;
+    }
+
+    @NonNull
+    public File getReportFile() {
+        return mReportFile;
+    }
+
+    public boolean isRunning() {
+        return mRunning;
+    }
+
+    public synchronized void start() {
+        if (mRunning) {
+            return;
+        }
+        mRunning = true;
+        mLooper.setMessageLogging(mPrinter);
+        mWatchdog = new Thread(this::watch, "StallDetector");
+        mWatchdog.setDaemon(true);
+        mWatchdog.start();
+    }
+
+    public synchronized void stop() {
+        if (!mRunning) {
+            return;
+        }
+        mRunning = false;
+        mLooper.setMessageLogging(null);
+        mDispatchStart = 0;
+        mWatchdog.interrupt();
+        mWatchdog = null;
+    }
+
+    private void watch() {
+        long lastReport = 0;
+        while (mRunning) {
+            long start = mDispatchStart;
+            int id = mDispatchId;
+            long now = SystemClock.uptimeMillis();
+            long sleep = mThresholdMs / 2;
+
+            if (start != 0) {
+                long elapsed = now - start;
+                if (elapsed >= mThresholdMs) {
+                    sample(id);
+                } else {
+                    // Wake up right when the current message crosses the threshold.
+                    sleep = mThresholdMs - elapsed;
+                }
+            }
+
+            if (now - lastReport >= REPORT_INTERVAL_MS && isDirty()) {
+                writeReport();
+                lastReport = now;
+            }
+
+            try {
+                Thread.sleep(Math.max(1, sleep));
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+        if (isDirty()) {
+            writeReport();
+        }
+    }
+
+    private void sample(int id) {
+        synchronized (this) {
+            if (mSampledId == id) {
+                return;
+            }
+        }
+        StackTraceElement[] stack = mLooper.getThread().getStackTrace();
+        synchronized (this) {
+            // The message might have finished while the stack was captured.
+            if (mDispatchId == id && mDispatchStart != 0) {
+                mSampledId = id;
+                mSampledStack = stack;
+            }
+        }
+    }
+
+    private void onMessageFinished(int id, long durationMs) {
+        StackTraceElement[] stack;
+        synchronized (this) {
+            stack = mSampledId == id ? mSampledStack : null;
+            mSampledStack = null;
+        }
+        record(stack, durationMs);
+        TelemetryService.Performance.record(TelemetryService.Performance.MAIN_THREAD_STALL, durationMs * 1000);
+    }
+
+    @VisibleForTesting
+    synchronized void record(@Nullable StackTraceElement[] stack, long durationMs) {
+        String name = getSiteName(stack);
+        Site site = mSites.get(name);
+        if (site == null) {
+            if (mSites.size() >= MAX_SITES) {
+                evictLeastCostlySite();
+            }
+            site = new Site(name, formatStack(stack));
+            mSites.put(name, site);
+        }
+        site.count++;
+        site.totalMs += durationMs;
+        site.maxMs = Math.max(site.maxMs, durationMs);
+
+        if (mRecent.size() >= MAX_RECENT_STALLS) {
+            mRecent.removeFirst();
+        }
+        mRecent.addLast(new Stall(System.currentTimeMillis(), durationMs, name));
+        mStallCount++;
+        mDirty = true;
+    }
+
+    private void evictLeastCostlySite() {
+        Site least = null;
+        for (Site site : mSites.values()) {
+            if (least == null || site.totalMs < least.totalMs) {
+                least = site;
+            }
+        }
+        if (least != null) {
+            mSites.remove(least.name);
+        }
+    }
+
+    private synchronized boolean isDirty() {
+        return mDirty;
+    }
+
+    @VisibleForTesting
+    @Nullable
+    synchronized Site getSite(@NonNull String name) {
+        return mSites.get(name);
+    }
+
+    /**
+     * The call site is the first frame of the app code, so stalls inside framework or library
+     * code are attributed to the code calling them. Stacks without app code use their top frame.
+     */
+    @NonNull
+    static String getSiteName(@Nullable StackTraceElement[] stack) {
+        if (stack == null || stack.length == 0) {
+            return UNSAMPLED_SITE;
+        }
+        for (StackTraceElement frame : stack) {
+            if (frame.getClassName().startsWith(APP_PACKAGE)) {
+                return frame.toString();
+            }
+        }
+        return stack[0].toString();
+    }
+
+    @NonNull
+    private static List<String> formatStack(@Nullable StackTraceElement[] stack) {
+        if (stack == null) {
+            return Collections.emptyList();
+        }
+        List<String> frames = new ArrayList<>(Math.min(stack.length, MAX_STACK_DEPTH));
+        for (int i = 0; i < stack.length && i < MAX_STACK_DEPTH; i++) {
+            frames.add(stack[i].toString());
+        }
+        return frames;
+    }
+
+    /**
+     * Returns the call sites sorted by the total time they blocked the main thread, and the most
+     * recent stalls, oldest first.
+     */
+    @NonNull
+    public synchronized JSONObject toJson() throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("createdAt", mCreatedAt);
+        json.put("updatedAt", System.currentTimeMillis());
+        json.put("thresholdMs", mThresholdMs);
+        json.put("stalls", mStallCount);
+
+        List<Site> sites = new ArrayList<>(mSites.values());
+        Collections.sort(sites, (a, b) -> Long.compare(b.totalMs, a.totalMs));
+        JSONArray sitesJson = new JSONArray();
+        for (Site site : sites) {
+            JSONObject item = new JSONObject();
+            item.put("site", site.name);
+            item.put("count", site.count);
+            item.put("totalMs", site.totalMs);
+            item.put("maxMs", site.maxMs);
+            item.put("stack", new JSONArray(site.stack));
+            sitesJson.put(item);
+        }
+        json.put("sites", sitesJson);
+
+        JSONArray recent = new JSONArray();
+        for (Stall stall : mRecent) {
+            JSONObject item = new JSONObject();
+            item.put("time", stall.time);
+            item.put("durationMs", stall.durationMs);
+            item.put("site", stall.site);
+            recent.put(item);
+        }
+        json.put("recent", recent);
+
+        return json;
+    }
+
+    /**
+     * Writes the report to its file, replacing the previous one.
+     * @return true if the report was written.
+     */
+    public boolean writeReport() {
+        String report;
+        try {
+            synchronized (this) {
+                report = toJson().toString(2);
+                mDirty = false;
+            }
+        } catch (JSONException e) {
+            Log.e(LOGTAG, "Unable to create the stall report: " + e.getLocalizedMessage());
+            return false;
+        }
+
+        synchronized (mReportLock) {
+            File tmp = new File(mReportFile.getPath() + ".tmp");
+            try (OutputStream out = new FileOutputStream(tmp)) {
+                out.write(report.getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                Log.e(LOGTAG, "Unable to write the stall report: " + e.getLocalizedMessage());
+                tmp.delete();
+                return false;
+            }
+            if (!tmp.renameTo(mReportFile)) {
+                Log.e(LOGTAG, "Unable to replace " + mReportFile.getAbsolutePath());
+                tmp.delete();
+                return false;
+            }
+        }
+        return true;
+    }
+}
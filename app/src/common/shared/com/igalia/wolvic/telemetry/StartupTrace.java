@@ -0,0 +1,221 @@
+package com.igalia.wolvic.telemetry;
+
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.igalia.wolvic.utils.SystemUtils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * Records the timeline of the app startup as spans, and exports it in the Chrome trace event
+ * format, so it can be opened in chrome://tracing or https://ui.perfetto.dev.
+ *
+ * Recording is cheap and always on from the process start until {@link #finish()} is called, or
+ * until {@link #MAX_EVENTS} events have been recorded.
+ */
+public class StartupTrace {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(StartupTrace.class);
+
+    static final int MAX_EVENTS = 1024;
+    private static final String CATEGORY = "startup";
+
+    private static final char PHASE_COMPLETE = 'X';
+    private static final char PHASE_INSTANT = 'i';
+
+    private static class Event {
+        final String name;
+        final char phase;
+        final long start;
+        final long duration;
+        final long threadId;
+
+        Event(@NonNull String name, char phase, long start, long duration, long threadId) {
+            this.name = name;
+            this.phase = phase;
+            this.start = start;
+            this.duration = duration;
+            this.threadId = threadId;
+        }
+    }
+
+    public static class Span implements AutoCloseable {
+        private final String mName;
+        private final long mStart;
+        private boolean mEnded;
+
+        private Span(@NonNull String name, long start) {
+            mName = name;
+            mStart = start;
+        }
+
+        public void end() {
+            if (mEnded) {
+                return;
+            }
+            mEnded = true;
+            add(new Event(mName, PHASE_COMPLETE, mStart, now() - mStart, Thread.currentThread().getId()));
+        }
+
+        @Override
+        public void close() {
+            end();
+        }
+    }
+
+    // Guarded by the class.
+    private static final List<Event> sEvents = new ArrayList<>();
+    private static final Map<Long, String> sThreadNames = new HashMap<>();
+    private static volatile boolean sRecording = true;
+
+    private StartupTrace() {}
+
+    private static long now() {
+        return SystemClock.elapsedRealtimeNanos() / 1000;
+    }
+
+    private static synchronized void add(@NonNull Event event) {
+        if (!sRecording) {
+            return;
+        }
+        if (sEvents.size() >= MAX_EVENTS) {
+            Log.w(LOGTAG, "Too many events, the startup trace is stopped");
+            sRecording = false;
+            return;
+        }
+        sEvents.add(event);
+        sThreadNames.putIfAbsent(event.threadId, Thread.currentThread().getName());
+    }
+
+    /**
+     * Starts a span, which is recorded in the thread that ends it.
+     */
+    @NonNull
+    public static Span begin(@NonNull String name) {
+        return new Span(name, sRecording ? now() : 0);
+    }
+
+    /**
+     * Records a span around the given call, returning its result.
+     */
+    public static <T> T trace(@NonNull String name, @NonNull Supplier<T> call) {
+        try (Span ignored = begin(name)) {
+            return call.get();
+        }
+    }
+
+    public static void instant(@NonNull String name) {
+        if (sRecording) {
+            add(new Event(name, PHASE_INSTANT, now(), 0, Thread.currentThread().getId()));
+        }
+    }
+
+    /**
+     * Stops recording, the events recorded so far are kept for the export.
+     */
+    public static void finish() {
+        sRecording = false;
+    }
+
+    public static boolean isRecording() {
+        return sRecording;
+    }
+
+    @NonNull
+    public static synchronized JSONObject toJson() throws JSONException {
+        int pid = Process.myPid();
+        JSONArray events = new JSONArray();
+
+        // The time between the fork of the process and the first traced code. Spans are added
+        // when they end, so the first event is not necessarily the earliest one.
+        Event first = null;
+        for (Event event : sEvents) {
+            if (first == null || event.start < first.start) {
+                first = event;
+            }
+        }
+        long processStart = Process.getStartElapsedRealtime() * 1000;
+        if (first != null && processStart < first.start) {
+            events.put(toJson(new Event("Process.start", PHASE_COMPLETE, processStart,
+                    first.start - processStart, first.threadId), pid));
+        }
+
+        for (Event event : sEvents) {
+            events.put(toJson(event, pid));
+        }
+
+        for (Map.Entry<Long, String> thread : sThreadNames.entrySet()) {
+            JSONObject metadata = new JSONObject();
+            metadata.put("name", "thread_name");
+            metadata.put("ph", "M");
+            metadata.put("pid", pid);
+            metadata.put("tid", thread.getKey());
+            metadata.put("args", new JSONObject().put("name", thread.getValue()));
+            events.put(metadata);
+        }
+
+        JSONObject json = new JSONObject();
+        json.put("traceEvents", events);
+        json.put("displayTimeUnit", "ms");
+        return json;
+    }
+
+    @NonNull
+    private static JSONObject toJson(@NonNull Event event, int pid) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put("name", event.name);
+        json.put("cat", CATEGORY);
+        json.put("ph", String.valueOf(event.phase));
+        json.put("ts", event.start);
+        if (event.phase == PHASE_COMPLETE) {
+            json.put("dur", event.duration);
+        } else {
+            // Instant events are drawn across the whole process.
+            json.put("s", "p");
+        }
+        json.put("pid", pid);
+        json.put("tid", event.threadId);
+        return json;
+    }
+
+    /**
+     * Writes the trace to a new file in the given directory.
+     * @return The exported file, or null if it couldn't be written.
+     */
+    @Nullable
+    public static File export(@NonNull File directory) {
+        File file = new File(directory, "wolvic_startup_trace_" + System.currentTimeMillis() + ".json");
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(toJson().toString().getBytes(StandardCharsets.UTF_8));
+            return file;
+
+        } catch (IOException | JSONException e) {
+            Log.e(LOGTAG, "Unable to export the startup trace: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    static synchronized void reset() {
+        sEvents.clear();
+        sThreadNames.clear();
+        sRecording = true;
+    }
+}
@@ -2,6 +2,7 @@ package com.igalia.wolvic.telemetry;
 
 import android.content.Context;
 import android.os.Bundle;
+import android.os.SystemClock;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.UiThread;
@@ -11,9 +12,10 @@ import com.igalia.wolvic.browser.SettingsStore;
 import com.igalia.wolvic.search.SearchEngineWrapper;
 import com.igalia.wolvic.utils.SystemUtils;
 
-import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import mozilla.components.concept.fetch.Client;
 import mozilla.components.service.glean.Glean;
@@ -30,14 +32,14 @@ public class TelemetryService {
     private final static String LOGTAG = SystemUtils.createLogtag(TelemetryService.class);
     private static boolean initialized = false;
     private static Context context = null;
-    private static HashSet<String> domainMap = new HashSet<String>();
-    private static Map<String, GleanTimerId> loadingTimerId = new Hashtable<>();
+    private static final PageLoadTracker pageLoadTracker = new PageLoadTracker(TelemetryService::timingEvent);
     private static GleanTimerId immersiveTimerId;
     private static Map<Integer, GleanTimerId> windowLifeTimerId = new Hashtable<>();
     private static GleanTimerId activeWindowTimerId[] = new GleanTimerId[MAX_WINDOWS];
     private static GleanTimerId openWindowTimerId[] = new GleanTimerId[MAX_WINDOWS];
     private static GleanTimerId openPrivateWindowTimerId[] = new GleanTimerId[MAX_WINDOWS];
-    private static ITelemetry service;
+    private static final List<ITelemetry> services = new CopyOnWriteArrayList<>();
+    private static ITelemetry platformService;
     private static boolean started;
 
     // We should call this at the application initial stage.
@@ -60,10 +62,47 @@ public class TelemetryService {
         }
     }
 
+    // Sets the telemetry service of the platform, replacing the previous one.
     public static void setService(ITelemetry impl) {
-        service = impl;
-        if (started && service != null) {
-            service.start();
+        if (platformService != null) {
+            services.remove(platformService);
+        }
+        platformService = impl;
+        addService(impl);
+    }
+
+    // Adds a service that receives the events together with the platform one.
+    public static void addService(ITelemetry impl) {
+        if (impl == null || services.contains(impl)) {
+            return;
+        }
+        services.add(impl);
+        if (started) {
+            impl.start();
+        }
+    }
+
+    public static void removeService(ITelemetry impl) {
+        if (services.remove(impl) && started) {
+            impl.stop();
+        }
+    }
+
+    private static void customEvent(String name) {
+        for (ITelemetry service : services) {
+            service.customEvent(name);
+        }
+    }
+
+    private static void customEvent(String name, Bundle bundle) {
+        for (ITelemetry service : services) {
+            service.customEvent(name, bundle);
+        }
+    }
+
+    private static void timingEvent(String name, long durationMicros) {
+        for (ITelemetry service : services) {
+            service.timingEvent(name, durationMicros);
         }
     }
 
@@ -72,7 +111,7 @@ public class TelemetryService {
     public static void start() {
         Glean.INSTANCE.setUploadEnabled(true);
         started = true;
-        if (service != null) {
+        for (ITelemetry service : services) {
             service.start();
         }
     }
@@ -82,132 +121,153 @@ public class TelemetryService {
     public static void stop() {
         Glean.INSTANCE.setUploadEnabled(false);
         started = false;
-        if (service != null) {
+        for (ITelemetry service : services) {
             service.stop();
         }
     }
 
-    public static void startPageLoadTime(String aUrl) {
-        if (service == null) {
+    // Page loads are timed per session, from the page start to its first composite, its first
+    // contentful paint and its page stop, see PageLoadTracker.
+    public static void startPageLoadTime(@NonNull String sessionId, String aUrl, boolean isPrivate) {
+        if (services.isEmpty()) {
+            return;
+        }
+        pageLoadTracker.start(sessionId, aUrl, isPrivate, SystemClock.elapsedRealtimeNanos());
+        customEvent("startPageLoadTime");
+    }
+
+    public static void firstCompositeEvent(@NonNull String sessionId) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("startPageLoadTime");
+        pageLoadTracker.firstComposite(sessionId, SystemClock.elapsedRealtimeNanos());
     }
 
-    public static void stopPageLoadTimeWithURI(String uri) {
-        if (service == null) {
+    public static void firstContentfulPaintEvent(@NonNull String sessionId) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("stopPageLoadTime");
+        pageLoadTracker.firstContentfulPaint(sessionId, SystemClock.elapsedRealtimeNanos());
+    }
+
+    public static void stopPageLoadTime(@NonNull String sessionId) {
+        if (services.isEmpty()) {
+            return;
+        }
+        pageLoadTracker.stop(sessionId, SystemClock.elapsedRealtimeNanos());
+        customEvent("stopPageLoadTime");
+    }
+
+    public static void cancelPageLoadTime(@NonNull String sessionId) {
+        pageLoadTracker.remove(sessionId);
     }
 
     public static void windowsResizeEvent() {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("windowsResizeEvent");
+        customEvent("windowsResizeEvent");
     }
 
     public static void windowsMoveEvent() {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("windowsMoveEvent");
+        customEvent("windowsMoveEvent");
     }
 
     public static void activePlacementEvent(int from, boolean active) {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
         Bundle bundle = new Bundle();
         bundle.putInt("from", from);
         bundle.putBoolean("active", active);
-        service.customEvent("activePlacementEvent", bundle);
+        customEvent("activePlacementEvent", bundle);
     }
 
     public static void openWindowsEvent(int from, int to, boolean isPrivate) {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
         Bundle bundle = new Bundle();
         bundle.putInt("from", from);
         bundle.putInt("to", to);
         bundle.putBoolean("isPrivate", isPrivate);
-        service.customEvent("openWindowsEvent", bundle);
+        customEvent("openWindowsEvent", bundle);
     }
 
     public static void resetOpenedWindowsCount(int number, boolean isPrivate) {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
         Bundle bundle = new Bundle();
         bundle.putInt("number", number);
         bundle.putBoolean("isPrivate", isPrivate);
-        service.customEvent("resetOpenedWindowsCount", bundle);
+        customEvent("resetOpenedWindowsCount", bundle);
     }
 
     public static void sessionStop() {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
-        domainMap.clear();
-        loadingTimerId.clear();
+        pageLoadTracker.clear();
         windowLifeTimerId.clear();
         activeWindowTimerId = new GleanTimerId[MAX_WINDOWS];
         openWindowTimerId = new GleanTimerId[MAX_WINDOWS];
         openPrivateWindowTimerId = new GleanTimerId[MAX_WINDOWS];
 
-        service.customEvent("sessionStop");
+        customEvent("sessionStop");
     }
 
     @UiThread
     public static void urlBarEvent(boolean aIsUrl) {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
         Bundle bundle = new Bundle();
         bundle.putBoolean("isUrl", aIsUrl);
-        service.customEvent("urlBarEvent", bundle);
+        customEvent("urlBarEvent", bundle);
     }
 
     @UiThread
     public static void voiceInputEvent() {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("voiceInputEvent");
+        customEvent("voiceInputEvent");
     }
 
     public static void startImmersive() {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("startImmersive");
+        customEvent("startImmersive");
     }
 
     public static void stopImmersive() {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("stopImmersive");
+        customEvent("stopImmersive");
     }
 
     public static void openWindowEvent(int windowId) {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
         Bundle bundle = new Bundle();
         bundle.putInt("windowId", windowId);
-        service.customEvent("openWindowEvent", bundle);
+        customEvent("openWindowEvent", bundle);
     }
 
     public static void closeWindowEvent(int windowId) {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
         Bundle bundle = new Bundle();
         bundle.putInt("windowId", windowId);
-        service.customEvent("closeWindowEvent", bundle);
+        customEvent("closeWindowEvent", bundle);
     }
 
     private static String getDefaultSearchEngineIdentifierForTelemetry() {
@@ -215,69 +275,69 @@ public class TelemetryService {
     }
 
     public static void newWindowOpenEvent() {
-        if (service == null) {
+        if (services.isEmpty()) {
             return;
         }
-        service.customEvent("newWindowOpenEvent");
+        customEvent("newWindowOpenEvent");
     }
 
     public static class FxA {
 
         public static void signIn() {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
-            service.customEvent("FxA_signIn");
+            customEvent("FxA_signIn");
         }
 
         public static void signInResult(boolean status) {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
             Bundle bundle = new Bundle();
             bundle.putBoolean("status", status);
-            service.customEvent("FxA_signInResult", bundle);
+            customEvent("FxA_signInResult", bundle);
         }
 
         public static void signOut() {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
-            service.customEvent("FxA_signOut");
+            customEvent("FxA_signOut");
         }
 
         public static void bookmarksSyncStatus(boolean status) {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
             Bundle bundle = new Bundle();
             bundle.putBoolean("status", status);
-            service.customEvent("FxA_bookmarksSyncStatus");
+            customEvent("FxA_bookmarksSyncStatus");
         }
 
         public static void historySyncStatus(boolean status) {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
             Bundle bundle = new Bundle();
             bundle.putBoolean("status", status);
-            service.customEvent("FxA_historySyncStatus", bundle);
+            customEvent("FxA_historySyncStatus", bundle);
         }
 
         public static void sentTab() {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
-            service.customEvent("FxA_sentTab");
+            customEvent("FxA_sentTab");
         }
 
         public static void receivedTab(@NonNull mozilla.components.concept.sync.DeviceType source) {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
             Bundle bundle = new Bundle();
             bundle.putInt("source", source.ordinal());
-            service.customEvent("FxA_receivedTab", bundle);
+            customEvent("FxA_receivedTab", bundle);
         }
     }
 
@@ -296,19 +356,69 @@ public class TelemetryService {
         }
 
         public static void openedCounter(@NonNull TabSource source) {
-            if (service == null) {
+            if (services.isEmpty()) {
                 return;
             }
             Bundle bundle = new Bundle();
             bundle.putInt("source", source.ordinal());
-            service.customEvent("tab_opened", bundle);
+            customEvent("tab_opened", bundle);
         }
 
         public static void activatedEvent() {
-            if (service == null) {
+            if (services.isEmpty()) {
+                return;
+            }
+            customEvent("tab_activated");
+        }
+    }
+
+    public static class Performance {
+
+        public static final String PAGE_LOAD = PageLoadTracker.PAGE_STOP;
+        public static final String PAGE_FIRST_COMPOSITE = PageLoadTracker.FIRST_COMPOSITE;
+        public static final String PAGE_FIRST_CONTENTFUL_PAINT = PageLoadTracker.FIRST_CONTENTFUL_PAINT;
+        public static final String TAB_SWITCH = "perf_tab_switch";
+        public static final String SESSION_RESTORE = "perf_session_restore";
+        public static final String POINTER_LAYER_RENDER = "perf_pointer_layer_render";
+        public static final String MAIN_THREAD_STALL = "perf_main_thread_stall";
+        public static final String EXTENSION_INSTALL = "perf_extension_install";
+        public static final String SUGGESTIONS_FETCH = "perf_suggestions_fetch";
+        public static final String SUGGESTIONS_HIT = "perf_suggestions_hit";
+        public static final String SUGGESTIONS_PREFIX_HIT = "perf_suggestions_prefix_hit";
+        public static final String SUGGESTIONS_COALESCED = "perf_suggestions_coalesced";
+        public static final String SUGGESTIONS_MISS = "perf_suggestions_miss";
+        public static final String SEARCH_ENGINE_SETUP = "perf_search_engine_setup";
+        public static final String FIRST_SUGGESTIONS = "perf_first_suggestions";
+        public static final String VOICE_FIRST_WORD = "perf_voice_first_word";
+        public static final String KEYBOARD_PRELOAD = "perf_keyboard_preload";
+        public static final String KEYBOARD_SWITCH = "perf_keyboard_switch";
+        public static final String KEYBOARD_FIRST_KEY = "perf_keyboard_first_key";
+
+        // Returns the start time to pass to stop().
+        public static long start() {
+            return SystemClock.elapsedRealtimeNanos();
+        }
+
+        public static void stop(@NonNull String name, long startNanos) {
+            if (services.isEmpty()) {
+                return;
+            }
+            timingEvent(name, (SystemClock.elapsedRealtimeNanos() - startNanos) / 1000);
+        }
+
+        // Reports a duration measured by the caller.
+        public static void record(@NonNull String name, long durationMicros) {
+            if (services.isEmpty()) {
+                return;
+            }
+            timingEvent(name, durationMicros);
+        }
+
+        public static void count(@NonNull String name) {
+            if (services.isEmpty()) {
                 return;
             }
-            service.customEvent("tab_activated");
+            customEvent(name);
         }
     }
 }
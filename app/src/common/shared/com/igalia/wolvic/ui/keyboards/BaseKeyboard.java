@@ -3,6 +3,8 @@ package com.igalia.wolvic.ui.keyboards;
 import android.content.Context;
 import android.view.inputmethod.EditorInfo;
 
+import androidx.annotation.NonNull;
+
 import com.igalia.wolvic.R;
 import com.igalia.wolvic.ui.widgets.WidgetPlacement;
 import com.igalia.wolvic.utils.StringUtils;
@@ -13,10 +15,19 @@ import java.util.stream.Stream;
 
 public abstract class BaseKeyboard implements KeyboardInterface {
     protected Context mContext;
+    // Set by the keyboards that rank their candidates with the ones picked by the user.
+    protected CandidateRanker mCandidateRanker;
     BaseKeyboard(Context aContext) {
         mContext = aContext;
     }
 
+    @Override
+    public void onCandidateSelected(@NonNull Words aWord) {
+        if (mCandidateRanker != null) {
+            mCandidateRanker.learn(aWord);
+        }
+    }
+
     @Override
     public String getEnterKeyText(int aIMEOptions, String aComposingText) {
         Locale locale = getLocale();
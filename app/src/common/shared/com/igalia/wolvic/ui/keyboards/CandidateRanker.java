@@ -0,0 +1,128 @@
+package com.igalia.wolvic.ui.keyboards;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import com.igalia.wolvic.VRBrowserApplication;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ * Ranks the candidates of a keyboard with the ones the user picks.
+ *
+ * The candidates picked before for the same code are moved to the front, heaviest first, and the
+ * ones that the static dictionaries no longer return for the input are added. The rest keep their
+ * order. Only the first {@link #MAX_RANKED} candidates are looked up, so ranking takes bounded
+ * time per keystroke however many candidates the static dictionaries return.
+ */
+class CandidateRanker {
+
+    static final int MAX_RANKED = 128;
+    // The number of learned candidates moved to the front.
+    static final int MAX_LEARNED = 8;
+
+    private final UserDictionary mDictionary;
+
+    CandidateRanker(@NonNull UserDictionary dictionary) {
+        mDictionary = dictionary;
+    }
+
+    /**
+     * Creates a ranker with its own user dictionary.
+     * @param name The name of the dictionary, unique for each keyboard.
+     */
+    static CandidateRanker create(@NonNull Context context, @NonNull String name) {
+        File file = new File(context.getFilesDir(), "user_dictionary_" + name + ".bin");
+        VRBrowserApplication application = (VRBrowserApplication) context.getApplicationContext();
+        return new CandidateRanker(new UserDictionary(file, application.getExecutors().diskIO(), System::currentTimeMillis));
+    }
+
+    void learn(@NonNull KeyboardInterface.Words aWord) {
+        if (aWord.code != null && aWord.value != null) {
+            mDictionary.learn(aWord.code, aWord.value);
+        }
+    }
+
+    /**
+     * @param aCode The code typed by the user, used to add the learned candidates missing from
+     *              the static ones.
+     * @param aCandidates The candidates from the static dictionaries, in their order.
+     * @return The ranked candidates.
+     */
+    @NonNull
+    List<KeyboardInterface.Words> rank(@NonNull String aCode, @NonNull List<KeyboardInterface.Words> aCandidates) {
+        ArrayList<KeyboardInterface.Words> learned = new ArrayList<>();
+        ArrayList<Float> weights = new ArrayList<>();
+        HashSet<String> values = new HashSet<>();
+
+        int ranked = Math.min(aCandidates.size(), MAX_RANKED);
+        String[] keys = new String[ranked];
+        HashSet<String> learnedKeys = new HashSet<>();
+        for (int i = 0; i < ranked; i++) {
+            KeyboardInterface.Words word = aCandidates.get(i);
+            values.add(word.value);
+            keys[i] = UserDictionary.key(UserDictionary.compactCode(word.code), word.value);
+            float weight = mDictionary.getWeight(word.code, word.value);
+            if (weight > 0 && learnedKeys.add(keys[i])) {
+                insert(learned, weights, word, weight);
+            }
+        }
+        // The learned candidates that aren't among the ranked ones, they may be in the rest.
+        HashSet<String> addedValues = new HashSet<>();
+        for (UserDictionary.Entry entry : mDictionary.getEntries(aCode)) {
+            if (!values.contains(entry.value)) {
+                addedValues.add(entry.value);
+                KeyboardInterface.Words word = new KeyboardInterface.Words(syllables(entry.code), entry.code, entry.value);
+                insert(learned, weights, word, mDictionary.getWeight(entry.code, entry.value));
+            }
+        }
+        if (learned.isEmpty()) {
+            return aCandidates;
+        }
+
+        List<KeyboardInterface.Words> result = new ArrayList<>(aCandidates.size() + learned.size());
+        HashSet<String> moved = new HashSet<>();
+        for (KeyboardInterface.Words word : learned) {
+            result.add(word);
+            moved.add(UserDictionary.key(UserDictionary.compactCode(word.code), word.value));
+        }
+        for (int i = 0; i < ranked; i++) {
+            if (!moved.contains(keys[i])) {
+                result.add(aCandidates.get(i));
+            }
+        }
+        for (int i = ranked; i < aCandidates.size(); i++) {
+            KeyboardInterface.Words word = aCandidates.get(i);
+            if (addedValues.isEmpty() || !addedValues.contains(word.value)) {
+                result.add(word);
+            }
+        }
+        return result;
+    }
+
+    // Keeps the MAX_LEARNED heaviest candidates, sorted by weight.
+    private static void insert(List<KeyboardInterface.Words> words, List<Float> weights, KeyboardInterface.Words word, float weight) {
+        int index = weights.size();
+        while (index > 0 && weights.get(index - 1) < weight) {
+            index--;
+        }
+        if (index >= MAX_LEARNED) {
+            return;
+        }
+        words.add(index, word);
+        weights.add(index, weight);
+        if (words.size() > MAX_LEARNED) {
+            words.remove(MAX_LEARNED);
+            weights.remove(MAX_LEARNED);
+        }
+    }
+
+    private static int syllables(String aCode) {
+        String code = aCode.trim();
+        return code.isEmpty() ? 0 : (int) code.chars().filter(ch -> ch == ' ').count() + 1;
+    }
+}
@@ -16,7 +16,6 @@ import com.igalia.wolvic.utils.StringUtils;
 import com.igalia.wolvic.utils.SystemUtils;
 
 import java.util.ArrayList;
-import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
@@ -32,9 +31,17 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
     private CustomKeyboard mSymbolsKeyboard;
     private SymbolList mSymbolsConverter;  // For Emoji characters.
     private List<Words> mEmojiList = null;
-    private DBHelper mDB;
+    // Set by getAlphabeticKeyboard() along with mCandidateRanker, on the UI thread or on the
+    // preloader's thread. The UI thread only uses them once the keyboard is claimed, and claiming
+    // waits for a running preload. Volatile for preloadDictionaries(), which can run on the
+    // preloader's thread after the UI thread claimed the keyboard and set it.
+    private volatile DBHelper mDB;
     private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
     private HashMap<String, KeyMap> mExtraKeymaps = new HashMap<>();
+    private PinyinDecoder mDecoder;
+    // The length of the longest key, read by preloadDictionaries() on the preloader's thread since
+    // it scans the whole database. 0 until then.
+    private volatile int mMaxKeyLength;
 
     public ChinesePinyinKeyboard(Context aContext) {
         super(aContext);
@@ -46,6 +53,7 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         if (mKeyboard == null) {
             mKeyboard = new CustomKeyboard(mContext.getApplicationContext(), R.xml.keyboard_qwerty_pinyin);
             loadDatabase();
+            mCandidateRanker = CandidateRanker.create(mContext, "pinyin");
         }
         return mKeyboard;
     }
@@ -61,6 +69,18 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         return mSymbolsKeyboard;
     }
 
+    @Override
+    public void preloadDictionaries() {
+        DBHelper db = mDB;
+        if (db != null) {
+            // Copies the database from the assets the first time, and opens it.
+            db.getReadableDatabase();
+            if (mMaxKeyLength == 0) {
+                mMaxKeyLength = readMaxKeyLength(db);
+            }
+        }
+    }
+
     @Override
     public String getModeChangeKeyText() {
         return mContext.getString(R.string.pinyin_keyboard_mode_change);
@@ -75,43 +95,31 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
 
         // Autocomplete when special characters are clicked
         final char lastChar = aComposingText.charAt(aComposingText.length() - 1);
-        final boolean autocompose = ("" + lastChar).matches("[^a-z]");
+        final boolean autocompose = lastChar < 'a' || lastChar > 'z';
 
-        aComposingText = aComposingText.replaceAll("\\s","");
+        aComposingText = UserDictionary.compactCode(aComposingText);
         if (aComposingText.isEmpty()) {
             return null;
         }
 
-        ArrayList<String> displayList = getDisplayCode(aComposingText);
-        int syllables = 0;
-
-        StringBuilder code = new StringBuilder();
-        if (displayList != null) {
-            syllables = displayList.size();
-            for (String display: displayList) {
-                if (code.length() != 0) {
-                    code.append(' ');
-                }
-                code.append(display);
-            }
+        // Until the preload reads the key length every prefix of the composing text is looked up,
+        // the decoder is replaced once it's known.
+        int maxKeyLength = mMaxKeyLength > 0 ? mMaxKeyLength : Integer.MAX_VALUE;
+        if (mDecoder == null || mDecoder.getMaxKeyLength() != maxKeyLength) {
+            mDecoder = new PinyinDecoder(this::getKeyMap, maxKeyLength);
         }
-
-        ArrayList<Words> words = new ArrayList<>();
-        StringBuilder candidate = new StringBuilder();
-        String tempKey = aComposingText;
-        String remainKey = "";
+        mDecoder.setText(aComposingText);
 
         // First candidate
-        while (tempKey.length() > 0) {
-            List<Words> displays = getDisplays(tempKey);
-            if (displays != null && displays.size() > 0){
-                candidate.append(displays.get(0).value);
-                tempKey = remainKey;
-                remainKey = "";
-            } else {
-                remainKey = tempKey.charAt(tempKey.length() - 1) + remainKey;
-                tempKey = tempKey.substring(0, tempKey.length() - 1);
+        List<Words> segments = mDecoder.getSegments();
+        StringBuilder code = new StringBuilder();
+        StringBuilder candidate = new StringBuilder();
+        for (Words segment : segments) {
+            if (code.length() != 0) {
+                code.append(' ');
             }
+            code.append(segment.code);
+            candidate.append(segment.value);
         }
 
         // We can't find available candidates, so using the composing text
@@ -119,41 +127,26 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         if (candidate.length() == 0) {
             candidate.append(aComposingText);
         }
-        words.add(new Words(syllables, code.toString(), candidate.toString()));
+        ArrayList<Words> words = new ArrayList<>();
+        words.add(new Words(segments.size(), code.toString(), candidate.toString()));
 
         // Extra candidates
-        tempKey = aComposingText;
-        while (tempKey.length() > 0) {
-            List<Words> displays = getDisplays(tempKey);
-            if (displays != null) {
-                words.addAll(displays);
-            }
-            KeyMap map = mKeymaps.get(tempKey);
-            if (map != null && map.candidates.size() > 0) {
-                words.addAll(map.candidates);
-            }
-            tempKey = tempKey.substring(0, tempKey.length() - 1);
-        }
+        mDecoder.addPrefixCandidates(words);
         cleanCandidates(words);
 
         CandidatesResult result = new CandidatesResult();
-        result.words = words;
+        result.words = mCandidateRanker != null ? mCandidateRanker.rank(aComposingText, words) : words;
         result.action = autocompose ? CandidatesResult.Action.AUTO_COMPOSE : CandidatesResult.Action.SHOW_CANDIDATES;
         result.composing = aComposingText;
         if (result.words.size() > 0) {
-            final char kBackslashCode = 92;
+            // Show the spaces of the code of the first candidate in the composing text.
             String newCode = result.words.get(0).code;
-
-            // When using backslashes ({@code \}) in the replacement string
-            // will cause crash at `replaceFirst()`, so we need to replace it first.
-            if (result.words.get(0).code.length() > 0 &&
-                result.words.get(0).code.charAt(result.words.get(0).code.length() - 1)
-                        == kBackslashCode) {
-                newCode = result.words.get(0).code.replace("\\", "\\\\");
-                aComposingText = aComposingText.replace("\\", "\\\\");
+            String codeWithoutSpaces = UserDictionary.compactCode(newCode);
+            int index = aComposingText.indexOf(codeWithoutSpaces);
+            if (index >= 0) {
+                result.composing = aComposingText.substring(0, index) + newCode +
+                        aComposingText.substring(index + codeWithoutSpaces.length());
             }
-            String codeWithoutSpaces = StringUtils.removeSpaces(newCode);
-            result.composing = aComposingText.replaceFirst(Pattern.quote(codeWithoutSpaces), newCode);
         }
 
         return result;
@@ -201,23 +194,6 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         return aComposing.replaceFirst(Pattern.quote(aCode), "");
     }
 
-    private ArrayList<String> getDisplayCode(String aKey) {
-        ArrayList<String> result = new ArrayList<>();
-        String remain = "";
-        while (aKey.length() > 0) {
-            List<Words> displays = getDisplays(aKey);
-            if (displays != null && displays.size() > 0) {
-                result.add(displays.get(0).code);
-                aKey = remain;
-                remain = "";
-            } else {
-                remain = aKey.charAt(aKey.length() - 1) + remain;
-                aKey = aKey.substring(0, aKey.length() - 1);
-            }
-        }
-        return result.size() > 0 ? result : null;
-    }
-
     private void cleanCandidates(ArrayList<Words> aCandidates) {
         // Remove potential repeated value between first candidate and first extra
         if (aCandidates.size() > 1 && aCandidates.get(0).value.equals((aCandidates.get(1).value))) {
@@ -290,16 +266,25 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         }
     }
 
-    private List<Words> getDisplays(String aKey) {
-        if (aKey.matches("^[^a-z]+$")) {
-            // Allow completion of uppercase letters, numbers and symbols
-            return Collections.singletonList(new Words(1, aKey, aKey));
-        }
+    @Nullable
+    private KeyMap getKeyMap(@NonNull String aKey) {
         loadKeymapIfNotLoaded(aKey);
-        KeyMap map = mKeymaps.get(aKey);
-        return map != null ? map.displays : null;
+        return mKeymaps.get(aKey);
     }
 
+    private static int readMaxKeyLength(@NonNull DBHelper aDB) {
+        try (Cursor cursor = aDB.getReadableDatabase().rawQuery("SELECT MAX(LENGTH(keymap)) FROM keymaps UNION ALL SELECT MAX(LENGTH(inputcode)) FROM autocorrect", null)) {
+            int length = 1;
+            while (cursor.moveToNext()) {
+                length = Math.max(length, cursor.getInt(0));
+            }
+            return length;
+        } catch (Exception ex) {
+            // Without the limit every prefix of the composing text is looked up.
+            Log.e(LOGTAG, "Error reading the pinyin key length: " + ex.getMessage());
+            return Integer.MAX_VALUE;
+        }
+    }
 
     private void loadDatabase() {
         try {
@@ -346,13 +331,15 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
         }
         loadKeymapTable(aKey);
         loadAutoCorrectTable(aKey);
+        KeyMap map = mKeymaps.get(aKey);
         KeyMap extra = mExtraKeymaps.get(aKey);
-        if (extra != null) {
-            KeyMap map = mKeymaps.get(aKey);
-            if (map != null) {
-                map.displays.addAll(extra.displays);
-                map.candidates.addAll(extra.candidates);
-            }
+        if (map != null && extra != null) {
+            map.displays.addAll(extra.displays);
+            map.candidates.addAll(extra.candidates);
+        }
+        if (map == null) {
+            // Remember the keys that aren't in the database, so they are only queried once.
+            mKeymaps.put(aKey, new KeyMap());
         }
     }
 
@@ -470,7 +457,7 @@ public class ChinesePinyinKeyboard extends BaseKeyboard {
     }
 
 
-    class KeyMap {
+    static class KeyMap {
         ArrayList<Words> displays = new ArrayList<>();
         ArrayList<Words> candidates = new ArrayList<>();
     }
@@ -35,8 +35,12 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
     private CustomKeyboard mSymbolsKeyboard;
     private SymbolList mSymbolsConverter;  // For Emoji characters.
     private List<Words> mEmojiList = null;
-    private DBWordHelper mWordDB;
-    private DBPhraseHelper mPhraseDB;
+    // Set by getAlphabeticKeyboard() along with mCandidateRanker, on the UI thread or on the
+    // preloader's thread. The UI thread only uses them once the keyboard is claimed, and claiming
+    // waits for a running preload. Volatile for preloadDictionaries(), which can run on the
+    // preloader's thread after the UI thread claimed the keyboard and set them.
+    private volatile DBWordHelper mWordDB;
+    private volatile DBPhraseHelper mPhraseDB;
     private HashMap<String, KeyMap> mKeymaps = new HashMap<>();
     private HashMap<String, Words> mKeyCodes = new HashMap<>();
     private final String[] sqliteArgs = new String[2];
@@ -53,6 +57,7 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
         if (mKeyboard == null) {
             mKeyboard = new CustomKeyboard(mContext.getApplicationContext(), R.xml.keyboard_qwerty_zhuyin);
             loadDatabase();
+            mCandidateRanker = CandidateRanker.create(mContext, "zhuyin");
         }
         return mKeyboard;
     }
@@ -101,7 +106,7 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
         }
 
         CandidatesResult result = new CandidatesResult();
-        result.words = words;
+        result.words = mCandidateRanker != null ? mCandidateRanker.rank(aComposingText, words) : words;
         result.action = CandidatesResult.Action.SHOW_CANDIDATES;
         result.composing = aComposingText;
         if (result.words.size() > 0) {
@@ -220,6 +225,17 @@ public class ChineseZhuyinKeyboard extends BaseKeyboard {
         }
     }
 
+    @Override
+    public void preloadDictionaries() {
+        DBWordHelper wordDB = mWordDB;
+        DBPhraseHelper phraseDB = mPhraseDB;
+        if (wordDB != null && phraseDB != null) {
+            // Copies the databases from the assets the first time, and opens them.
+            wordDB.getReadableDatabase();
+            phraseDB.getReadableDatabase();
+        }
+    }
+
     @Override
     public String getModeChangeKeyText() {
         return mContext.getString(R.string.zhuyin_keyboard_mode_change);
@@ -63,6 +63,7 @@ public class JapaneseKeyboard extends BaseKeyboard {
     public CustomKeyboard getAlphabeticKeyboard() {
         if (mKeyboard == null) {
             mKeyboard = new CustomKeyboard(mContext.getApplicationContext(), R.xml.keyboard_qwerty_japanese);
+            mCandidateRanker = CandidateRanker.create(mContext, "japanese");
         }
 
         return mKeyboard;
@@ -108,7 +109,9 @@ public class JapaneseKeyboard extends BaseKeyboard {
         }
 
         CandidatesResult result = new CandidatesResult();
-        result.words = words;
+        // The candidates are learned by their reading.
+        result.words = mCandidateRanker != null ?
+                mCandidateRanker.rank(mComposingText.toString(ComposingText.LAYER1), words) : words;
 
         if (autocompose) {
             result.action = CandidatesResult.Action.AUTO_COMPOSE;
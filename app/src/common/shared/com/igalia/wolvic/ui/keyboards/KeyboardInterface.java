@@ -6,6 +6,7 @@ import java.util.Locale;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
 
 public interface KeyboardInterface {
     class Words {
@@ -51,4 +52,22 @@ public interface KeyboardInterface {
     String getEnterKeyText(int aIMEOptions, String aComposingText);
     String getModeChangeKeyText();
     default @Nullable void clear() {}
+    default void onCandidateSelected(@NonNull Words aWord) {}
+
+    /**
+     * Builds the layouts and loads everything the keyboard needs before it's used. Called from a
+     * background thread, never while the keyboard is in use.
+     */
+    @WorkerThread
+    default void preload() {
+        getAlphabeticKeyboard();
+        getSymbolsKeyboard();
+    }
+
+    /**
+     * Opens the dictionaries of the keyboard, so typing the first key doesn't wait for them. Called
+     * from a background thread, maybe while the keyboard is in use, so it must be thread safe.
+     */
+    @WorkerThread
+    default void preloadDictionaries() {}
 }
\ No newline at end of file
@@ -0,0 +1,140 @@
+package com.igalia.wolvic.ui.keyboards;
+
+import android.util.Log;
+
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+import com.igalia.wolvic.telemetry.TelemetryService;
+import com.igalia.wolvic.utils.SystemUtils;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Builds the layouts and loads the dictionaries of the keyboards in the background, so switching
+ * to them and typing the first key doesn't block the UI thread.
+ *
+ * Keyboards aren't thread safe, so a keyboard must be claimed with {@link #claim(KeyboardInterface)}
+ * before the UI thread uses it. A keyboard claimed before its preload starts is only warmed with
+ * {@link KeyboardInterface#preloadDictionaries()}, and claiming one that is being preloaded waits
+ * for it to finish.
+ */
+public class KeyboardPreloader {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(KeyboardPreloader.class);
+
+    private static final String METRIC_SEPARATOR = ":";
+
+    private static final int PENDING = 0;
+    private static final int LOADING = 1;
+    private static final int LOADED = 2;
+    private static final int CLAIMED = 3;
+
+    private static class Entry {
+        final KeyboardInterface keyboard;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        boolean scheduled;
+
+        Entry(KeyboardInterface keyboard) {
+            this.keyboard = keyboard;
+        }
+    }
+
+    private final Executor mExecutor;
+    // Only used from the main thread.
+    private final HashMap<KeyboardInterface, Entry> mEntries = new HashMap<>();
+
+    public KeyboardPreloader(@NonNull Executor aExecutor) {
+        mExecutor = aExecutor;
+    }
+
+    /**
+     * Preloads the keyboards in the background, in order. Keyboards that were already preloaded
+     * are skipped.
+     */
+    @MainThread
+    public void preload(@NonNull List<KeyboardInterface> aKeyboards) {
+        for (KeyboardInterface keyboard : aKeyboards) {
+            Entry entry = getEntry(keyboard);
+            if (!entry.scheduled) {
+                entry.scheduled = true;
+                mExecutor.execute(() -> load(entry));
+            }
+        }
+    }
+
+    /**
+     * Takes the keyboard for the UI thread, waiting for its preload if it's running.
+     */
+    @MainThread
+    public void claim(@NonNull KeyboardInterface aKeyboard) {
+        Entry entry = getEntry(aKeyboard);
+        if (entry.state.compareAndSet(PENDING, CLAIMED)) {
+            return;
+        }
+        if (entry.state.get() == LOADING) {
+            long start = TelemetryService.Performance.start();
+            awaitUninterruptibly(entry.loaded);
+            Log.d(LOGTAG, "Waited " + (TelemetryService.Performance.start() - start) / 1000000 + " ms for " + aKeyboard.getLocale());
+        }
+        entry.state.set(CLAIMED);
+    }
+
+    /**
+     * Returns the name of the metric for a keyboard.
+     */
+    @NonNull
+    public static String getMetricName(@NonNull String aName, @NonNull KeyboardInterface aKeyboard) {
+        return aName + METRIC_SEPARATOR + aKeyboard.getLocale().toLanguageTag();
+    }
+
+    private Entry getEntry(KeyboardInterface aKeyboard) {
+        Entry entry = mEntries.get(aKeyboard);
+        if (entry == null) {
+            entry = new Entry(aKeyboard);
+            mEntries.put(aKeyboard, entry);
+        }
+        return entry;
+    }
+
+    private void load(Entry aEntry) {
+        long start = TelemetryService.Performance.start();
+        boolean claimed = !aEntry.state.compareAndSet(PENDING, LOADING);
+        try {
+            if (!claimed) {
+                aEntry.keyboard.preload();
+            }
+            aEntry.keyboard.preloadDictionaries();
+        } catch (RuntimeException e) {
+            Log.e(LOGTAG, "Error preloading the keyboard for " + aEntry.keyboard.getLocale() + ": " + e.getMessage());
+        } finally {
+            if (!claimed) {
+                aEntry.state.compareAndSet(LOADING, LOADED);
+                aEntry.loaded.countDown();
+            }
+        }
+        long durationMicros = (TelemetryService.Performance.start() - start) / 1000;
+        Log.d(LOGTAG, "Preloaded the keyboard for " + aEntry.keyboard.getLocale() + " in " + durationMicros / 1000.0 + " ms");
+        TelemetryService.Performance.record(getMetricName(TelemetryService.Performance.KEYBOARD_PRELOAD, aEntry.keyboard), durationMicros);
+    }
+
+    private static void awaitUninterruptibly(CountDownLatch aLatch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                aLatch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
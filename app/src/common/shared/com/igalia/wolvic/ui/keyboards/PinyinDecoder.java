@@ -0,0 +1,189 @@
+package com.igalia.wolvic.ui.keyboards;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.igalia.wolvic.ui.keyboards.KeyboardInterface.Words;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Splits the pinyin composing text into the keys of the dictionary, keeping a lattice with the
+ * keys found at each position of the text.
+ *
+ * When a char is appended only the keys ending with it are looked up, at most one for each of the
+ * last {@link #getMaxKeyLength()} positions, and deleting chars just drops the keys ending after
+ * them. Any other edit of the text rolls the lattice back to the common prefix and extends it
+ * from there.
+ *
+ * Runs of chars other than lowercase letters (uppercase letters, numbers, symbols) aren't looked
+ * up, they can be completed as they are.
+ */
+class PinyinDecoder {
+
+    interface Dictionary {
+        /**
+         * @return The entries for the key, or null if there are none.
+         */
+        @Nullable
+        ChinesePinyinKeyboard.KeyMap lookup(@NonNull String aKey);
+    }
+
+    private static class Edge {
+        final int end;
+        final ChinesePinyinKeyboard.KeyMap map;
+
+        Edge(int end, ChinesePinyinKeyboard.KeyMap map) {
+            this.end = end;
+            this.map = map;
+        }
+    }
+
+    private final Dictionary mDictionary;
+    private final int mMaxKeyLength;
+    private final StringBuilder mText = new StringBuilder();
+    // The keys found at each start position of the text, by increasing end.
+    private final ArrayList<ArrayList<Edge>> mEdges = new ArrayList<>();
+    // For each end position of the text, where the run of non lowercase chars before it starts.
+    private int[] mRunStarts = new int[32];
+    private long mLookups;
+
+    /**
+     * @param aMaxKeyLength The length of the longest key in the dictionary.
+     */
+    PinyinDecoder(@NonNull Dictionary aDictionary, int aMaxKeyLength) {
+        mDictionary = aDictionary;
+        mMaxKeyLength = Math.max(aMaxKeyLength, 1);
+    }
+
+    int getMaxKeyLength() {
+        return mMaxKeyLength;
+    }
+
+    /**
+     * Updates the lattice to the text, which must not contain spaces.
+     */
+    void setText(@NonNull String aText) {
+        int common = 0;
+        int max = Math.min(mText.length(), aText.length());
+        while (common < max && mText.charAt(common) == aText.charAt(common)) {
+            common++;
+        }
+        truncate(common);
+        for (int i = common; i < aText.length(); i++) {
+            append(aText.charAt(i));
+        }
+    }
+
+    @NonNull
+    String getText() {
+        return mText.toString();
+    }
+
+    /**
+     * Returns the longest keys that cover the text from its start, one after the other. The
+     * segments stop at the first position where no key is found.
+     */
+    @NonNull
+    List<Words> getSegments() {
+        ArrayList<Words> segments = new ArrayList<>();
+        int length = mText.length();
+        int start = 0;
+        while (start < length) {
+            Words word = null;
+            int end = start;
+            ArrayList<Edge> edges = mEdges.get(start);
+            for (int i = edges.size() - 1; i >= 0; i--) {
+                Edge edge = edges.get(i);
+                if (!edge.map.displays.isEmpty()) {
+                    word = edge.map.displays.get(0);
+                    end = edge.end;
+                    break;
+                }
+            }
+            int runEnd = getRunEnd(start);
+            if (runEnd > end) {
+                String key = mText.substring(start, runEnd);
+                word = new Words(1, key, key);
+                end = runEnd;
+            }
+            if (word == null) {
+                break;
+            }
+            segments.add(word);
+            start = end;
+        }
+        return segments;
+    }
+
+    /**
+     * Adds the words of the keys found at the start of the text, longest keys first.
+     */
+    void addPrefixCandidates(@NonNull List<Words> aWords) {
+        if (mText.length() == 0) {
+            return;
+        }
+        ArrayList<Edge> edges = mEdges.get(0);
+        for (int i = edges.size() - 1; i >= 0; i--) {
+            ChinesePinyinKeyboard.KeyMap map = edges.get(i).map;
+            aWords.addAll(map.displays);
+            aWords.addAll(map.candidates);
+        }
+        for (int end = getRunEnd(0); end > 0; end--) {
+            String key = mText.substring(0, end);
+            aWords.add(new Words(1, key, key));
+        }
+    }
+
+    long getLookupCount() {
+        return mLookups;
+    }
+
+    private void append(char aChar) {
+        mText.append(aChar);
+        int end = mText.length();
+        if (end >= mRunStarts.length) {
+            mRunStarts = Arrays.copyOf(mRunStarts, mRunStarts.length * 2);
+        }
+        mRunStarts[end] = isLowercase(aChar) ? end : mRunStarts[end - 1];
+        mEdges.add(new ArrayList<>(2));
+
+        // The keys that only have non lowercase chars are not in the dictionary.
+        int runStart = mRunStarts[end];
+        for (int start = Math.max(0, end - mMaxKeyLength); start < runStart; start++) {
+            ChinesePinyinKeyboard.KeyMap map = mDictionary.lookup(mText.substring(start, end));
+            mLookups++;
+            if (map != null && (!map.displays.isEmpty() || !map.candidates.isEmpty())) {
+                mEdges.get(start).add(new Edge(end, map));
+            }
+        }
+    }
+
+    private void truncate(int aLength) {
+        for (int start = mEdges.size() - 1; start >= aLength; start--) {
+            mEdges.remove(start);
+        }
+        for (int start = Math.max(0, aLength - mMaxKeyLength); start < aLength; start++) {
+            ArrayList<Edge> edges = mEdges.get(start);
+            while (!edges.isEmpty() && edges.get(edges.size() - 1).end > aLength) {
+                edges.remove(edges.size() - 1);
+            }
+        }
+        mText.setLength(aLength);
+    }
+
+    // Returns the end of the run of non lowercase chars at the start, or the start if there is none.
+    private int getRunEnd(int aStart) {
+        int end = aStart;
+        while (end < mText.length() && !isLowercase(mText.charAt(end))) {
+            end++;
+        }
+        return end;
+    }
+
+    private static boolean isLowercase(char aChar) {
+        return aChar >= 'a' && aChar <= 'z';
+    }
+}
@@ -0,0 +1,280 @@
+package com.igalia.wolvic.ui.keyboards;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+
+import com.igalia.wolvic.utils.SystemUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * The candidates picked by the user for each input code, weighted by how often and how recently
+ * they were picked.
+ *
+ * Every pick is appended to a binary log, which is replayed when the dictionary is loaded. Once
+ * the log has grown to twice the number of entries it's rewritten with a single record per entry,
+ * keeping the {@link #MAX_ENTRIES} heaviest ones. The file is only accessed from the executor.
+ */
+class UserDictionary {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(UserDictionary.class);
+
+    private static final int FORMAT_VERSION = 1;
+    static final int MAX_ENTRIES = 2000;
+    // The weight of a pick halves every two weeks.
+    static final long HALF_LIFE = 14 * 24 * 60 * 60 * 1000L;
+    private static final int MIN_RECORDS_TO_COMPACT = 64;
+    private static final int MAX_LENGTH = 64;
+
+    static class Entry {
+        final String code;
+        final String value;
+        float weight;
+        long time;
+
+        Entry(String code, String value) {
+            this.code = code;
+            this.value = value;
+        }
+
+        float getWeight(long now) {
+            return weight * decay(now - time);
+        }
+
+        void add(float aWeight, long aTime) {
+            if (aTime >= time) {
+                weight = getWeight(aTime) + aWeight;
+                time = aTime;
+            } else {
+                weight += aWeight * decay(time - aTime);
+            }
+        }
+    }
+
+    private final File mFile;
+    private final Executor mExecutor;
+    private final LongSupplier mClock;
+    private final Object mLock = new Object();
+    // Guarded by mLock, keyed by code and value.
+    private final HashMap<String, Entry> mEntries = new HashMap<>();
+    // Guarded by mLock, keyed by the code without spaces.
+    private final HashMap<String, List<Entry>> mEntriesByCode = new HashMap<>();
+    // Only used from the executor.
+    private int mRecords;
+
+    UserDictionary(@NonNull File file, @NonNull Executor executor, @NonNull LongSupplier clock) {
+        mFile = file;
+        mExecutor = executor;
+        mClock = clock;
+        mExecutor.execute(this::load);
+    }
+
+    static float decay(long age) {
+        return age <= 0 ? 1.0f : (float) Math.pow(0.5, (double) age / HALF_LIFE);
+    }
+
+    /**
+     * Records that the user picked the value for the code.
+     */
+    void learn(@NonNull String code, @NonNull String value) {
+        if (code.isEmpty() || value.isEmpty() || code.length() > MAX_LENGTH || value.length() > MAX_LENGTH) {
+            return;
+        }
+        long now = mClock.getAsLong();
+        synchronized (mLock) {
+            getOrCreate(code, value).add(1, now);
+        }
+        mExecutor.execute(() -> {
+            append(code, value, 1, now);
+            if (mRecords >= MIN_RECORDS_TO_COMPACT && mRecords > 2 * size()) {
+                compact();
+            }
+        });
+    }
+
+    /**
+     * Returns the current weight of the value for the code, 0 if it was never picked.
+     */
+    float getWeight(@NonNull String code, @NonNull String value) {
+        synchronized (mLock) {
+            Entry entry = mEntries.get(key(compactCode(code), value));
+            return entry != null ? entry.getWeight(mClock.getAsLong()) : 0;
+        }
+    }
+
+    /**
+     * Returns the entries picked for the code, whatever its spaces.
+     */
+    @NonNull
+    List<Entry> getEntries(@NonNull String code) {
+        synchronized (mLock) {
+            List<Entry> entries = mEntriesByCode.get(compactCode(code));
+            return entries != null ? new ArrayList<>(entries) : Collections.emptyList();
+        }
+    }
+
+    int size() {
+        synchronized (mLock) {
+            return mEntries.size();
+        }
+    }
+
+    /**
+     * Returns the code without spaces. Codes without spaces are returned as they are, so it's cheap
+     * enough to call for every candidate.
+     */
+    static String compactCode(String code) {
+        int length = code.length();
+        int i = 0;
+        while (i < length && !Character.isWhitespace(code.charAt(i))) {
+            i++;
+        }
+        if (i == length) {
+            return code;
+        }
+        StringBuilder builder = new StringBuilder(length);
+        builder.append(code, 0, i);
+        for (; i < length; i++) {
+            char c = code.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+
+    static String key(String compactCode, String value) {
+        return compactCode + '\t' + value;
+    }
+
+    // Must be called with mLock held.
+    private Entry getOrCreate(String code, String value) {
+        String compactCode = compactCode(code);
+        String key = key(compactCode, value);
+        Entry entry = mEntries.get(key);
+        if (entry == null) {
+            entry = new Entry(code, value);
+            mEntries.put(key, entry);
+            List<Entry> entries = mEntriesByCode.get(compactCode);
+            if (entries == null) {
+                entries = new ArrayList<>(1);
+                mEntriesByCode.put(compactCode, entries);
+            }
+            entries.add(entry);
+        }
+        return entry;
+    }
+
+    @WorkerThread
+    private void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+        boolean truncated = false;
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(mFile.toPath())))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                Log.w(LOGTAG, "Discarding user dictionary with an unknown format: " + mFile.getName());
+                mFile.delete();
+                return;
+            }
+            while (in.available() > 0) {
+                String code = in.readUTF();
+                String value = in.readUTF();
+                float weight = in.readFloat();
+                long time = in.readLong();
+                synchronized (mLock) {
+                    getOrCreate(code, value).add(weight, time);
+                }
+                mRecords++;
+            }
+        } catch (EOFException e) {
+            // The last pick was only partially written.
+            truncated = true;
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Unable to read the user dictionary: " + e.getMessage());
+            truncated = true;
+        }
+        if (truncated || size() > MAX_ENTRIES) {
+            compact();
+        }
+    }
+
+    @WorkerThread
+    private void append(String code, String value, float weight, long time) {
+        boolean exists = mFile.exists();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)))) {
+            if (!exists) {
+                out.writeInt(FORMAT_VERSION);
+            }
+            writeRecord(out, code, value, weight, time);
+            mRecords++;
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Unable to write to the user dictionary: " + e.getMessage());
+        }
+    }
+
+    @WorkerThread
+    private void compact() {
+        long now = mClock.getAsLong();
+        List<Entry> entries;
+        synchronized (mLock) {
+            entries = new ArrayList<>(mEntries.values());
+            if (entries.size() > MAX_ENTRIES) {
+                entries.sort((a, b) -> Float.compare(b.getWeight(now), a.getWeight(now)));
+                for (Entry entry : entries.subList(MAX_ENTRIES, entries.size())) {
+                    String compactCode = compactCode(entry.code);
+                    mEntries.remove(key(compactCode, entry.value));
+                    List<Entry> byCode = mEntriesByCode.get(compactCode);
+                    byCode.remove(entry);
+                    if (byCode.isEmpty()) {
+                        mEntriesByCode.remove(compactCode);
+                    }
+                }
+                entries = new ArrayList<>(entries.subList(0, MAX_ENTRIES));
+            }
+        }
+
+        File tmp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+            out.writeInt(FORMAT_VERSION);
+            for (Entry entry : entries) {
+                synchronized (mLock) {
+                    writeRecord(out, entry.code, entry.value, entry.weight, entry.time);
+                }
+            }
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Unable to compact the user dictionary: " + e.getMessage());
+            tmp.delete();
+            return;
+        }
+        if (!tmp.renameTo(mFile)) {
+            Log.e(LOGTAG, "Unable to replace the user dictionary");
+            tmp.delete();
+            return;
+        }
+        mRecords = entries.size();
+    }
+
+    private static void writeRecord(DataOutputStream out, String code, String value, float weight, long time) throws IOException {
+        out.writeUTF(code);
+        out.writeUTF(value);
+        out.writeFloat(weight);
+        out.writeLong(time);
+    }
+}
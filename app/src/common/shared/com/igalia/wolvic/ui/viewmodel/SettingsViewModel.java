@@ -1,24 +1,18 @@
 package com.igalia.wolvic.ui.viewmodel;
 
 import android.app.Application;
-import android.util.Log;
 
 import androidx.annotation.NonNull;
 import androidx.databinding.ObservableBoolean;
 import androidx.lifecycle.AndroidViewModel;
 import androidx.lifecycle.MutableLiveData;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-import com.google.gson.reflect.TypeToken;
-
 import org.mozilla.geckoview.ContentBlocking;
 import com.igalia.wolvic.BuildConfig;
 import com.igalia.wolvic.browser.SettingsStore;
 import com.igalia.wolvic.utils.RemoteProperties;
 import com.igalia.wolvic.utils.SystemUtils;
 
-import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.Map;
 
@@ -115,15 +109,8 @@ public class SettingsViewModel extends AndroidViewModel {
         return propsVersionName;
     }
 
-    public void setProps(String json) {
-        try {
-            Gson gson = new GsonBuilder().create();
-            Type type = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
-            this.props.postValue(gson.fromJson(json, type));
-
-        } catch (Exception e) {
-            Log.e(LOGTAG, String.valueOf(e.getLocalizedMessage()));
-        }
+    public void setProps(Map<String, RemoteProperties> props) {
+        this.props.postValue(props);
     }
 
     public MutableLiveData<Map<String, RemoteProperties>> getProps() {
@@ -36,6 +36,7 @@ import androidx.annotation.Nullable;
 
 import org.mozilla.geckoview.GeckoSession;
 import com.igalia.wolvic.R;
+import com.igalia.wolvic.VRBrowserApplication;
 import com.igalia.wolvic.browser.SettingsStore;
 import com.igalia.wolvic.browser.engine.Session;
 import com.igalia.wolvic.input.CustomKeyboard;
@@ -52,6 +53,7 @@ import com.igalia.wolvic.ui.keyboards.GermanKeyboard;
 import com.igalia.wolvic.ui.keyboards.ItalianKeyboard;
 import com.igalia.wolvic.ui.keyboards.JapaneseKeyboard;
 import com.igalia.wolvic.ui.keyboards.KeyboardInterface;
+import com.igalia.wolvic.ui.keyboards.KeyboardPreloader;
 import com.igalia.wolvic.ui.keyboards.KoreanKeyboard;
 import com.igalia.wolvic.ui.keyboards.NorwegianKeyboard;
 import com.igalia.wolvic.ui.keyboards.PolishKeyboard;
@@ -67,6 +69,8 @@ import com.igalia.wolvic.utils.StringUtils;
 import com.igalia.wolvic.utils.ViewUtils;
 
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Locale;
 
 
@@ -80,6 +84,9 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     private CustomKeyboardView mPopupKeyboardView;
     private ArrayList<KeyboardInterface> mKeyboards;
     private KeyboardInterface mCurrentKeyboard;
+    private KeyboardPreloader mKeyboardPreloader;
+    // The keyboards that handled a key, to measure the first one of each.
+    private HashSet<KeyboardInterface> mTypedKeyboards = new HashSet<>();
     private CustomKeyboard mDefaultKeyboardSymbols;
     private CustomKeyboard mKeyboardNumeric;
     private Drawable mShiftOnIcon;
@@ -109,6 +116,10 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     private boolean mIsCapsLock;
     private ImageView mPopupKeyboardLayer;
     private boolean mIsInVoiceInput = false;
+    // The interim voice result shown as composing text, replaced by the final one.
+    private String mVoiceComposingText = "";
+    private long mVoiceInputStart;
+    private boolean mVoiceFirstWordShown;
     private String mComposingText = "";
     private String mComposingDisplayText = "";
     private boolean mInternalDeleteHint = false;
@@ -296,6 +307,8 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         mKeyboards.add(new FinnishKeyboard(aContext));
         mKeyboards.add(new DutchKeyboard(aContext));
         mKeyboards.add(new ThaiKeyboard(aContext));
+        VRBrowserApplication application = (VRBrowserApplication) aContext.getApplicationContext();
+        mKeyboardPreloader = new KeyboardPreloader(application.getExecutors().diskIO());
 
         mDefaultKeyboardSymbols = new CustomKeyboard(aContext.getApplicationContext(), R.xml.keyboard_symbols);
         mKeyboardNumeric = new CustomKeyboard(aContext.getApplicationContext(), R.xml.keyboard_numeric);
@@ -364,6 +377,8 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         mAutoCompletionView.setDelegate(this);
 
         updateCandidates();
+
+        application.runAfterStartup(() -> mKeyboardPreloader.preload(getPreferredKeyboards()));
     }
 
     @Override
@@ -451,6 +466,9 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     }
 
     public void updateFocusedView(View aFocusedView) {
+        if (aFocusedView != mFocusedView) {
+            cleanVoiceComposingText();
+        }
         if (mFocusedView != null && mFocusedView instanceof TextView) {
             ((TextView)mFocusedView).removeTextChangedListener(this);
         }
@@ -607,6 +625,9 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     @Override
     public void onKey(int primaryCode, int[] keyCodes, boolean hasPopup) {
         Log.d(LOGTAG, "Keyboard onPress++ " + primaryCode);
+        final KeyboardInterface keyboard = mCurrentKeyboard;
+        final boolean isFirstKey = mInputConnection != null && mTypedKeyboards.add(keyboard);
+        final long start = isFirstKey ? TelemetryService.Performance.start() : 0;
         switch (primaryCode) {
             case Keyboard.KEYCODE_MODE_CHANGE:
                 handleModeChange();
@@ -649,6 +670,12 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
 
         mIsLongPress = false;
         mIsMultiTap = false;
+
+        if (isFirstKey) {
+            // The first key of a keyboard loads its dictionaries, if they weren't preloaded.
+            TelemetryService.Performance.stop(TelemetryService.Performance.KEYBOARD_FIRST_KEY, start);
+            TelemetryService.Performance.stop(KeyboardPreloader.getMetricName(TelemetryService.Performance.KEYBOARD_FIRST_KEY, keyboard), start);
+        }
     }
 
     @Override
@@ -708,6 +735,20 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         handleLanguageChange(keyboard);
     }
 
+    // The current keyboard followed by the ones for the system locales.
+    private List<KeyboardInterface> getPreferredKeyboards() {
+        ArrayList<KeyboardInterface> keyboards = new ArrayList<>();
+        keyboards.add(mCurrentKeyboard);
+        LocaleList localeList = getResources().getConfiguration().getLocales();
+        for (int i = 0; i < localeList.size(); ++i) {
+            KeyboardInterface keyboard = getKeyboardForLocale(localeList.get(i));
+            if (keyboard != null && !keyboards.contains(keyboard)) {
+                keyboards.add(keyboard);
+            }
+        }
+        return keyboards;
+    }
+
     private KeyboardInterface getKeyboardForLocale(@Nullable Locale aLocale) {
         if (aLocale == null) {
             return null;
@@ -742,6 +783,16 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
         }
     }
 
+    private void cleanVoiceComposingText() {
+        if (mVoiceComposingText.length() > 0 && mInputConnection != null) {
+            // Remove the interim result of an unfinished voice input
+            postInputCommand(() -> {
+                displayComposingText("", ComposingAction.FINISH);
+            });
+        }
+        mVoiceComposingText = "";
+    }
+
     private void handleShift(boolean isShifted) {
         final boolean statusChanged = mKeyboardView.isShifted() != isShifted;
 
@@ -876,8 +927,10 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     }
 
     private void handleLanguageChange(KeyboardInterface aKeyboard) {
+        final long start = TelemetryService.Performance.start();
         cleanComposingText();
 
+        mKeyboardPreloader.claim(aKeyboard);
         mCurrentKeyboard = aKeyboard;
 
         // For the case when switching from a symbol keyboard to a alphabetic keyboard.
@@ -925,6 +978,9 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
 
         String spaceText = mCurrentKeyboard.getSpaceKeyText(mComposingText).toUpperCase();
         mCurrentKeyboard.getAlphabeticKeyboard().setSpaceKeyLabel(spaceText);
+
+        TelemetryService.Performance.stop(TelemetryService.Performance.KEYBOARD_SWITCH, start);
+        TelemetryService.Performance.stop(KeyboardPreloader.getMetricName(TelemetryService.Performance.KEYBOARD_SWITCH, aKeyboard), start);
     }
 
     private void disableShift(@NonNull CustomKeyboard keyboard) {
@@ -1082,7 +1138,11 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             mVoiceSearchWidget.setDelegate(this); // VoiceSearchDelegate
             mVoiceSearchWidget.setDelegate(() -> exitVoiceInputMode()); // DismissDelegate
         }
+        cleanComposingText();
         mIsInVoiceInput = true;
+        mVoiceComposingText = "";
+        mVoiceInputStart = TelemetryService.Performance.start();
+        mVoiceFirstWordShown = false;
         TelemetryService.voiceInputEvent();
         mVoiceSearchWidget.show(CLEAR_FOCUS);
         mWidgetPlacement.visible = false;
@@ -1134,7 +1194,7 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
             mAutoCompletionView.setItems(candidates != null ? candidates.words : null);
             if (candidates != null && candidates.action == KeyboardInterface.CandidatesResult.Action.AUTO_COMPOSE) {
                 setAutoCompletionVisible(false);
-                onAutoCompletionItemClick(candidates.words.get(0));
+                selectCandidate(candidates.words.get(0));
             } else if (candidates != null) {
                 postInputCommand(() -> displayComposingText(candidates.composing, ComposingAction.DO_NOT_FINISH));
             } else {
@@ -1334,17 +1394,33 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
     @Override
     public void OnVoiceSearchResult(String aTranscription, float confidence) {
         if (aTranscription != null && !aTranscription.isEmpty()) {
+            // Committing the text replaces the interim result.
+            mVoiceComposingText = "";
             handleText(aTranscription);
         }
         exitVoiceInputMode();
     }
 
+    @Override
+    public void OnPartialVoiceSearchResult(String aTranscription) {
+        if (!mIsInVoiceInput || mFocusedView == null || mInputConnection == null || aTranscription == null) {
+            return;
+        }
+        if (!mVoiceFirstWordShown && !aTranscription.trim().isEmpty()) {
+            mVoiceFirstWordShown = true;
+            TelemetryService.Performance.stop(TelemetryService.Performance.VOICE_FIRST_WORD, mVoiceInputStart);
+        }
+        mVoiceComposingText = aTranscription;
+        postInputCommand(() -> displayComposingText(aTranscription, ComposingAction.DO_NOT_FINISH));
+    }
+
     @Override
     public void OnVoiceSearchError(@SpeechRecognizer.Callback.ErrorType int errorType) {
         exitVoiceInputMode();
     }
 
     private void exitVoiceInputMode() {
+        cleanVoiceComposingText();
         if (mIsInVoiceInput && mVoiceSearchWidget != null) {
             mVoiceSearchWidget.hide(KEEP_WIDGET);
             mWidgetPlacement.visible = true;
@@ -1357,6 +1433,37 @@ public class KeyboardWidget extends UIWidget implements CustomKeyboardView.OnKey
 
     @Override
     public void onAutoCompletionItemClick(final KeyboardInterface.Words aItem) {
+        boolean isPrivate = mSession != null && mSession.isPrivateMode();
+        if (mFocusedView != null && mInputConnection != null && !isPrivate && isLearningAllowed(mEditorInfo)) {
+            // Only the candidates picked by the user are learned, not the auto composed ones.
+            mCurrentKeyboard.onCandidateSelected(aItem);
+        }
+        selectCandidate(aItem);
+    }
+
+    /**
+     * Returns whether the candidates picked in the field can be learned. They aren't for password
+     * fields and for the ones that ask for no personalized learning, like the ones of private
+     * windows.
+     */
+    static boolean isLearningAllowed(@NonNull EditorInfo aEditorInfo) {
+        if ((aEditorInfo.imeOptions & EditorInfo.IME_FLAG_NO_PERSONALIZED_LEARNING) != 0) {
+            return false;
+        }
+        int inputClass = aEditorInfo.inputType & EditorInfo.TYPE_MASK_CLASS;
+        int variation = aEditorInfo.inputType & EditorInfo.TYPE_MASK_VARIATION;
+        if (inputClass == EditorInfo.TYPE_CLASS_TEXT) {
+            return variation != EditorInfo.TYPE_TEXT_VARIATION_PASSWORD &&
+                    variation != EditorInfo.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD &&
+                    variation != EditorInfo.TYPE_TEXT_VARIATION_WEB_PASSWORD;
+        }
+        if (inputClass == EditorInfo.TYPE_CLASS_NUMBER) {
+            return variation != EditorInfo.TYPE_NUMBER_VARIATION_PASSWORD;
+        }
+        return true;
+    }
+
+    private void selectCandidate(final KeyboardInterface.Words aItem) {
         if (mFocusedView == null || mInputConnection == null) {
             return;
         }
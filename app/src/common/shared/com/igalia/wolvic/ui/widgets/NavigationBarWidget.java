@@ -994,7 +994,7 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
         mSuggestionsProvider.setFilterText(originalText);
         mSuggestionsProvider.getSuggestions()
                 .whenCompleteAsync((items, ex) -> {
-                    if (mBinding.navigationBarNavigation.urlBar.hasFocus()) {
+                    if (ex == null && mBinding.navigationBarNavigation.urlBar.hasFocus()) {
                         mAwesomeBar.updateItems(items);
                         mAwesomeBar.setHighlightedText(mBinding.navigationBarNavigation.urlBar.getOriginalText().trim());
 
@@ -1005,8 +1005,10 @@ public class NavigationBarWidget extends UIWidget implements GeckoSession.Naviga
                     }
 
                 }, mUIThreadExecutor).exceptionally(throwable -> {
-                    Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
-                    throwable.printStackTrace();
+                    if (!SuggestionsProvider.isCancellation(throwable)) {
+                        Log.d(LOGTAG, "Error getting suggestions: " + throwable.getLocalizedMessage());
+                        throwable.printStackTrace();
+                    }
                     return null;
         });
     }
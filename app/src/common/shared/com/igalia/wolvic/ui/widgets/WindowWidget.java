@@ -1662,6 +1662,8 @@ public class WindowWidget extends UIWidget implements SessionChangeListener,
             mUIThreadExecutor.execute(mFirstDrawCallback);
             mFirstDrawCallback = null;
             mAfterFirstPaint = true;
+            // The first window with content completes the startup, so deferred tasks can run.
+            mUIThreadExecutor.execute(() -> ((VRBrowserApplication) getContext().getApplicationContext()).onStartupCompleted());
             // view queue calls need to be delayed to avoid a deadlock
             // caused by GeckoSession.syncResumeResizeCompositor()
             // See: https://github.com/MozillaReality/FirefoxReality/issues/2889
@@ -26,6 +26,7 @@ import com.igalia.wolvic.browser.engine.Session;
 import com.igalia.wolvic.browser.engine.SessionState;
 import com.igalia.wolvic.browser.engine.SessionStore;
 import com.igalia.wolvic.downloads.DownloadsManager;
+import com.igalia.wolvic.telemetry.StartupTrace;
 import com.igalia.wolvic.telemetry.TelemetryService;
 import com.igalia.wolvic.ui.widgets.dialogs.PromptDialogWidget;
 import com.igalia.wolvic.ui.widgets.dialogs.UIDialog;
@@ -768,6 +769,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
     }
 
     public void restoreSessions() {
+        final long start = TelemetryService.Performance.start();
+        StartupTrace.Span span = StartupTrace.begin("Windows.restoreSessions");
         if (mIsRestoreEnabled && mWindowsState != null) {
             ArrayList<Session> restoredSessions = new ArrayList<>();
             if (mWindowsState.tabs != null) {
@@ -813,6 +816,8 @@ public class Windows implements TrayListener, TopBarWidget.Delegate, TitleBarWid
         }
 
         mAfterRestore = true;
+        TelemetryService.Performance.stop(TelemetryService.Performance.SESSION_RESTORE, start);
+        span.end();
     }
 
     private void removeWindow(@NonNull WindowWidget aWindow) {
@@ -1286,6 +1291,7 @@ public void selectTab(@NonNull Session aTab) {
 
     @Override
     public void onTabSelect(Session aTab) {
+        final long start = TelemetryService.Performance.start();
         if (mFocusedWindow.getSession() != aTab) {
             TelemetryService.Tabs.activatedEvent();
         }
@@ -1321,6 +1327,7 @@ public void selectTab(@NonNull Session aTab) {
                             WindowWidget.LEAVE_CURRENT_SESSION_ACTIVE :
                             WindowWidget.DEACTIVATE_CURRENT_SESSION);
         }
+        TelemetryService.Performance.stop(TelemetryService.Performance.TAB_SWITCH, start);
     }
 
     public void addTab(WindowWidget targetWindow) {
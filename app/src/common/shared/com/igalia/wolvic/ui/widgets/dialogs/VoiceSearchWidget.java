@@ -173,8 +173,7 @@ public class VoiceSearchWidget extends UIDialog implements WidgetManagerDelegate
 
         @Override
         public void onMicActivity(int level) {
-            // Captures the activity from the microphone
-            Log.d(LOGTAG, "===> MIC_ACTIVITY");
+            // Captures the activity from the microphone, at most once per frame
             mVoiceInputClipDrawable.setLevel(level);
         }
 
@@ -188,7 +187,6 @@ public class VoiceSearchWidget extends UIDialog implements WidgetManagerDelegate
         @Override
         public void onPartialResult(String transcription) {
             // When a partial result is available
-            Log.d(LOGTAG, "===> PARTIAL_STT_RESULT");
             if (mDelegate != null) {
                 mBinding.voiceSearchStart.setText(transcription);
                 mDelegate.OnPartialVoiceSearchResult(transcription);
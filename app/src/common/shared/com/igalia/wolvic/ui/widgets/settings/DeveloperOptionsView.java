@@ -6,6 +6,7 @@
 package com.igalia.wolvic.ui.widgets.settings;
 
 import android.content.Context;
+import android.net.Uri;
 import android.view.LayoutInflater;
 import android.view.View;
 
@@ -13,12 +14,18 @@ import androidx.databinding.DataBindingUtil;
 
 import com.igalia.wolvic.BuildConfig;
 import com.igalia.wolvic.R;
+import com.igalia.wolvic.VRBrowserApplication;
 import com.igalia.wolvic.browser.SettingsStore;
 import com.igalia.wolvic.browser.engine.SessionStore;
 import com.igalia.wolvic.databinding.OptionsDeveloperBinding;
+import com.igalia.wolvic.telemetry.LocalTelemetry;
+import com.igalia.wolvic.telemetry.StallDetector;
+import com.igalia.wolvic.telemetry.StartupTrace;
 import com.igalia.wolvic.ui.views.settings.SwitchSetting;
 import com.igalia.wolvic.ui.widgets.WidgetManagerDelegate;
 
+import java.io.File;
+
 import static com.igalia.wolvic.utils.ServoUtils.isServoAvailable;
 
 class DeveloperOptionsView extends SettingsView {
@@ -76,6 +83,20 @@ class DeveloperOptionsView extends SettingsView {
             mBinding.webglOutOfProcessSwitch.setVisibility(View.GONE);
         }
 
+        mBinding.exportMetricsButton.setOnClickListener(v -> exportMetrics());
+
+        mBinding.stallDetectorSwitch.setOnCheckedChangeListener(mStallDetectorListener);
+        setStallDetector(SettingsStore.getInstance(getContext()).isStallDetectorEnabled(), false);
+
+        mBinding.stallReportButton.setOnClickListener(v -> showStallReport());
+
+        mBinding.deferredStartupSwitch.setOnCheckedChangeListener(mDeferredStartupListener);
+        setDeferredStartup(SettingsStore.getInstance(getContext()).isDeferredStartupEnabled(), false);
+
+        mBinding.startupTraceButton.setOnClickListener(v -> exportStartupTrace());
+
+        mBinding.serviceStatsButton.setOnClickListener(v -> exportServiceStats());
+
         if (!isServoAvailable()) {
             mBinding.servoSwitch.setVisibility(View.GONE);
 
@@ -109,6 +130,14 @@ class DeveloperOptionsView extends SettingsView {
         setWebGLOutOfProcess(value, doApply);
     };
 
+    private SwitchSetting.OnCheckedChangeListener mStallDetectorListener = (compoundButton, value, doApply) -> {
+        setStallDetector(value, doApply);
+    };
+
+    private SwitchSetting.OnCheckedChangeListener mDeferredStartupListener = (compoundButton, value, doApply) -> {
+        setDeferredStartup(value, doApply);
+    };
+
     private SwitchSetting.OnCheckedChangeListener mServoListener = (compoundButton, b, doApply) -> {
         setServo(b, true);
     };
@@ -146,6 +175,15 @@ class DeveloperOptionsView extends SettingsView {
             restart = true;
         }
 
+        if (mBinding.stallDetectorSwitch.isChecked() != SettingsStore.STALL_DETECTOR_DEFAULT) {
+            setStallDetector(SettingsStore.STALL_DETECTOR_DEFAULT, true);
+        }
+
+        if (mBinding.deferredStartupSwitch.isChecked() != SettingsStore.DEFERRED_STARTUP_DEFAULT) {
+            setDeferredStartup(SettingsStore.DEFERRED_STARTUP_DEFAULT, true);
+            restart = true;
+        }
+
         if (restart) {
             showRestartDialog();
         }
@@ -228,6 +266,109 @@ class DeveloperOptionsView extends SettingsView {
         }
     }
 
+    private void setStallDetector(boolean value, boolean doApply) {
+        mBinding.stallDetectorSwitch.setOnCheckedChangeListener(null);
+        mBinding.stallDetectorSwitch.setValue(value, false);
+        mBinding.stallDetectorSwitch.setOnCheckedChangeListener(mStallDetectorListener);
+
+        if (doApply) {
+            SettingsStore.getInstance(getContext()).setStallDetectorEnabled(value);
+            StallDetector detector = ((VRBrowserApplication) getContext().getApplicationContext()).getStallDetector();
+            if (detector != null) {
+                if (value) {
+                    detector.start();
+                } else {
+                    detector.stop();
+                }
+            }
+        }
+    }
+
+    private void setDeferredStartup(boolean value, boolean doApply) {
+        mBinding.deferredStartupSwitch.setOnCheckedChangeListener(null);
+        mBinding.deferredStartupSwitch.setValue(value, false);
+        mBinding.deferredStartupSwitch.setOnCheckedChangeListener(mDeferredStartupListener);
+
+        if (doApply) {
+            SettingsStore.getInstance(getContext()).setDeferredStartupEnabled(value);
+            showRestartDialog();
+        }
+    }
+
+    private void exportStartupTrace() {
+        VRBrowserApplication application = (VRBrowserApplication) getContext().getApplicationContext();
+        File directory = getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getContext().getFilesDir();
+        }
+        final File outputDirectory = directory;
+        application.getExecutors().diskIO().execute(() -> {
+            File file = StartupTrace.export(outputDirectory);
+            if (file != null) {
+                application.getExecutors().mainThread().execute(() -> {
+                    SessionStore.get().getActiveSession().loadUri(Uri.fromFile(file).toString());
+                    exitWholeSettings();
+                });
+            }
+        });
+    }
+
+    private void exportServiceStats() {
+        VRBrowserApplication application = (VRBrowserApplication) getContext().getApplicationContext();
+        File directory = getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getContext().getFilesDir();
+        }
+        final File outputDirectory = directory;
+        application.getExecutors().diskIO().execute(() -> {
+            File file = application.exportServiceStats(outputDirectory);
+            if (file != null) {
+                application.getExecutors().mainThread().execute(() -> {
+                    SessionStore.get().getActiveSession().loadUri(Uri.fromFile(file).toString());
+                    exitWholeSettings();
+                });
+            }
+        });
+    }
+
+    private void showStallReport() {
+        VRBrowserApplication application = (VRBrowserApplication) getContext().getApplicationContext();
+        StallDetector detector = application.getStallDetector();
+        if (detector == null) {
+            return;
+        }
+        application.getExecutors().diskIO().execute(() -> {
+            if (detector.writeReport()) {
+                application.getExecutors().mainThread().execute(() -> {
+                    SessionStore.get().getActiveSession().loadUri(Uri.fromFile(detector.getReportFile()).toString());
+                    exitWholeSettings();
+                });
+            }
+        });
+    }
+
+    private void exportMetrics() {
+        VRBrowserApplication application = (VRBrowserApplication) getContext().getApplicationContext();
+        LocalTelemetry telemetry = application.getLocalTelemetry();
+        if (telemetry == null) {
+            return;
+        }
+        File directory = getContext().getExternalFilesDir(null);
+        if (directory == null) {
+            directory = getContext().getFilesDir();
+        }
+        final File outputDirectory = directory;
+        application.getExecutors().diskIO().execute(() -> {
+            File file = telemetry.export(outputDirectory);
+            if (file != null) {
+                application.getExecutors().mainThread().execute(() -> {
+                    SessionStore.get().getActiveSession().loadUri(Uri.fromFile(file).toString());
+                    exitWholeSettings();
+                });
+            }
+        });
+    }
+
     @Override
     protected SettingViewType getType() {
         return SettingViewType.LANGUAGE_VOICE;
@@ -0,0 +1,136 @@
+package com.igalia.wolvic.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable index of the external environments available for an app version, built once from the
+ * remote properties so lookups by id or payload url don't need to go through them again.
+ *
+ * The environments are the ones listed for the target version when it has any, otherwise the ones
+ * of the most recent version, as sorted by name, that has them.
+ */
+public final class EnvironmentCatalogue {
+
+    public interface Listener {
+        void onEnvironmentCatalogueChanged(@NonNull EnvironmentCatalogue catalogue);
+    }
+
+    private final long mVersion;
+    private final String mVersionName;
+    private final Map<String, RemoteProperties> mProperties;
+    private final Environment[] mEnvironments;
+    private final Map<String, Environment> mById;
+    private final Map<String, Environment> mByPayload;
+
+    private EnvironmentCatalogue(long version, @NonNull String versionName,
+                                 @Nullable Map<String, RemoteProperties> properties,
+                                 @Nullable Environment[] environments) {
+        mVersion = version;
+        mVersionName = versionName;
+        mProperties = properties;
+        mEnvironments = environments;
+
+        Map<String, Environment> byId = new HashMap<>();
+        Map<String, Environment> byPayload = new HashMap<>();
+        if (environments != null) {
+            for (Environment environment : environments) {
+                // Keep the first match, as the linear searches this replaces did.
+                if (environment.getValue() != null) {
+                    byId.putIfAbsent(environment.getValue(), environment);
+                }
+                if (environment.getPayload() != null) {
+                    byPayload.putIfAbsent(environment.getPayload(), environment);
+                }
+            }
+        }
+        mById = Collections.unmodifiableMap(byId);
+        mByPayload = Collections.unmodifiableMap(byPayload);
+    }
+
+    /**
+     * Builds the catalogue of the given version from the remote properties.
+     * @param version A number identifying this catalogue, it's increased every time it's rebuilt.
+     */
+    @NonNull
+    static EnvironmentCatalogue build(long version, @NonNull String versionName,
+                                      @Nullable Map<String, RemoteProperties> properties) {
+        Environment[] environments = null;
+        if (properties != null) {
+            RemoteProperties versionProperties = properties.get(versionName);
+            if (versionProperties != null && versionProperties.getEnvironments() != null) {
+                environments = versionProperties.getEnvironments();
+
+            } else {
+                List<String> keys = new ArrayList<>(properties.keySet());
+                keys.sort(Collections.reverseOrder());
+                for (String key : keys) {
+                    RemoteProperties props = properties.get(key);
+                    if (props != null && props.getEnvironments() != null) {
+                        environments = props.getEnvironments();
+                        break;
+                    }
+                }
+            }
+        }
+
+        return new EnvironmentCatalogue(version, versionName, properties,
+                environments != null ? environments.clone() : null);
+    }
+
+    /**
+     * Checks whether this catalogue was built from the given properties instance for the given
+     * version. The remote properties are never modified, they are replaced when they change.
+     */
+    boolean isBuiltFrom(@Nullable Map<String, RemoteProperties> properties, @NonNull String versionName) {
+        return mProperties == properties && mVersionName.equals(versionName);
+    }
+
+    public long getVersion() {
+        return mVersion;
+    }
+
+    @NonNull
+    public String getVersionName() {
+        return mVersionName;
+    }
+
+    /**
+     * Returns a copy of the environments, or null if there aren't any.
+     */
+    @Nullable
+    public Environment[] getEnvironments() {
+        return mEnvironments != null ? mEnvironments.clone() : null;
+    }
+
+    @Nullable
+    public Environment getById(@NonNull String envId) {
+        return mById.get(envId);
+    }
+
+    @Nullable
+    public Environment getByPayload(@NonNull String payloadUrl) {
+        return mByPayload.get(payloadUrl);
+    }
+
+    /**
+     * Checks whether both catalogues list the same environments.
+     */
+    public boolean hasSameEnvironments(@Nullable EnvironmentCatalogue other) {
+        return other != null && Arrays.equals(mEnvironments, other.mEnvironments);
+    }
+
+    @NonNull
+    @Override
+    public String toString() {
+        return "EnvironmentCatalogue{version=" + mVersion + ", versionName=" + mVersionName +
+                ", environments=" + mById.keySet() + "}";
+    }
+}
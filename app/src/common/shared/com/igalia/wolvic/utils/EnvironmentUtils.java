@@ -8,19 +8,28 @@ import androidx.annotation.Nullable;
 import com.igalia.wolvic.BuildConfig;
 import com.igalia.wolvic.R;
 import com.igalia.wolvic.browser.SettingsStore;
+import com.igalia.wolvic.utils.cubemap.CubemapTranscoder;
+import com.igalia.wolvic.utils.cubemap.KtxWriter;
+import com.igalia.wolvic.utils.zip.UnzipTask;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
-import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class EnvironmentUtils {
 
     public static final String ENVS_FOLDER = "envs";
     public static final String BUILTIN_ENVS_PREFIX = "cubemap/";
 
+    // Catalogues are built lazily for each version name and rebuilt when the remote properties change.
+    private static final Map<String, EnvironmentCatalogue> sCatalogues = new ConcurrentHashMap<>();
+    private static final AtomicLong sCatalogueVersion = new AtomicLong();
+    private static final List<EnvironmentCatalogue.Listener> sCatalogueListeners = new ArrayList<>();
+
     /**
      * Gets the ouput path for a given environment id.
      * @param context An activity context.
@@ -98,9 +107,10 @@ public class EnvironmentUtils {
     }
 
     /**
-     * Check wether or not an external environment is ready to be used. Checks is the ouput directory exists
-     * and if it contains 6 items. We make an assumption that those items are the right images and that they
-     * follow the naming convention.
+     * Check wether or not an external environment is ready to be used. Environments installed by
+     * {@link UnzipTask} are ready when their install manifest exists, as it's only written once every
+     * entry has been extracted and verified. For environments installed by previous versions we make
+     * the assumption that the directory is ready if it contains 6 items, the cubemap images.
      * @param context An activity context.
      * @param envId The environment id. This maps to the Remote properties JSON "value" environment property.
      * @return true is the environment is ready, false otherwise
@@ -111,9 +121,17 @@ public class EnvironmentUtils {
         if (envOutputPath != null) {
             File file = new File(envOutputPath);
             if (file.exists() && file.isDirectory()) {
-                File[] files = file.listFiles();
-                if (files != null && files.length == 6) {
+                if (new File(file, UnzipTask.INSTALL_MANIFEST).isFile()) {
                     isEnvReady = true;
+
+                } else {
+                    // Compressed textures are generated next to the images, don't count them nor the
+                    // temporary files they are written to.
+                    File[] files = file.listFiles((dir, name) ->
+                            !name.endsWith(CubemapTranscoder.KTX_EXTENSION) && !name.endsWith(KtxWriter.TEMP_EXTENSION));
+                    if (files != null && files.length == 6) {
+                        isEnvReady = true;
+                    }
                 }
             }
         }
@@ -175,30 +193,7 @@ public class EnvironmentUtils {
      * @return The Remote environments list or null if they couldn't be found.
      */
     public static Environment[] getExternalEnvironments(@NonNull Context context, @NonNull String versionName) {
-        Map<String, RemoteProperties> properties = SettingsStore.getInstance(context).getRemoteProperties();
-        if (properties != null) {
-            // If there are environments for the current version we return those,
-            // otherwise return the ones from the most recent version
-            if (properties.containsKey(versionName)) {
-                RemoteProperties versionProperties = properties.get(versionName);
-                if (versionProperties != null && versionProperties.getEnvironments() != null) {
-                    return versionProperties.getEnvironments();
-                }
-            }
-
-            Set<String> keys = properties.keySet();
-            List<String> keysList = keys.stream()
-                    .sorted((o1, o2) -> o2.compareTo(o1))
-                    .collect(Collectors.toList());
-            for (String key : keysList) {
-                RemoteProperties props = properties.get(key);
-                if (props != null && props.getEnvironments() != null) {
-                    return props.getEnvironments();
-                }
-            }
-        }
-
-        return null;
+        return getCatalogue(context, versionName).getEnvironments();
     }
 
     /**
@@ -225,36 +220,7 @@ public class EnvironmentUtils {
      */
     @Nullable
     public static Environment getExternalEnvironmentById(@NonNull Context context, @NonNull String envId, @NonNull String versionName) {
-        Map<String, RemoteProperties> properties = SettingsStore.getInstance(context).getRemoteProperties();
-        if (properties != null) {
-            // If there are environments for the current version we return those,
-            // otherwise return the ones from the most recent version
-            if (properties.containsKey(versionName)) {
-                RemoteProperties versionProperties = properties.get(versionName);
-                if (versionProperties != null && versionProperties.getEnvironments() != null) {
-                    return Arrays.stream(versionProperties.getEnvironments())
-                            .filter(environment -> envId.equals(environment.getValue()))
-                            .findFirst()
-                            .orElse(null);
-                }
-            }
-
-            Set<String> keys = properties.keySet();
-            List<String> keysList = keys.stream()
-                    .sorted((o1, o2) -> o2.compareTo(o1))
-                    .collect(Collectors.toList());
-            for (String key : keysList) {
-                RemoteProperties props = properties.get(key);
-                if (props != null && props.getEnvironments() != null) {
-                    return Arrays.stream(props.getEnvironments())
-                            .filter(environment -> envId.equals(environment.getValue()))
-                            .findFirst()
-                            .orElse(null);
-                }
-            }
-        }
-
-        return null;
+        return getCatalogue(context, versionName).getById(envId);
     }
 
     /**
@@ -281,35 +247,79 @@ public class EnvironmentUtils {
      */
     @Nullable
     public static Environment getExternalEnvironmentByPayload(@NonNull Context context, @NonNull String payloadUrl, @NonNull String versionName) {
-        Map<String, RemoteProperties> properties = SettingsStore.getInstance(context).getRemoteProperties();
-        if (properties != null) {
-            // If there are environments for the current version we return those,
-            // otherwise return the ones from the most recent version
-            if (properties.containsKey(versionName)) {
-                RemoteProperties versionProperties = properties.get(versionName);
-                if (versionProperties != null && versionProperties.getEnvironments() != null) {
-                    return Arrays.stream(versionProperties.getEnvironments())
-                            .filter(environment -> payloadUrl.equals(environment.getPayload()))
-                            .findFirst()
-                            .orElse(null);
-                }
-            }
+        return getCatalogue(context, versionName).getByPayload(payloadUrl);
+    }
 
-            Set<String> keys = properties.keySet();
-            List<String> keysList = keys.stream()
-                    .sorted((o1, o2) -> o2.compareTo(o1))
-                    .collect(Collectors.toList());
-            for (String key : keysList) {
-                RemoteProperties props = properties.get(key);
-                if (props != null && props.getEnvironments() != null) {
-                    return Arrays.stream(props.getEnvironments())
-                            .filter(environment -> payloadUrl.equals(environment.getPayload()))
-                            .findFirst()
-                            .orElse(null);
-                }
+    /**
+     * Returns the catalogue of external environments for the current version.
+     * @param context An activity context.
+     * @return The catalogue, built again only if the remote properties changed since the last call.
+     */
+    @NonNull
+    public static EnvironmentCatalogue getCatalogue(@NonNull Context context) {
+        return getCatalogue(context, BuildConfig.VERSION_NAME);
+    }
+
+    /**
+     * Returns the catalogue of external environments for the given version.
+     * @param context An activity context.
+     * @param versionName The target version name string.
+     * @return The catalogue, built again only if the remote properties changed since the last call.
+     */
+    @NonNull
+    public static EnvironmentCatalogue getCatalogue(@NonNull Context context, @NonNull String versionName) {
+        return getCatalogue(SettingsStore.getInstance(context).getRemoteProperties(), versionName);
+    }
+
+    @NonNull
+    private static EnvironmentCatalogue getCatalogue(@Nullable Map<String, RemoteProperties> properties, @NonNull String versionName) {
+        EnvironmentCatalogue catalogue = sCatalogues.get(versionName);
+        if (catalogue == null || !catalogue.isBuiltFrom(properties, versionName)) {
+            catalogue = EnvironmentCatalogue.build(sCatalogueVersion.incrementAndGet(), versionName, properties);
+            sCatalogues.put(versionName, catalogue);
+        }
+        return catalogue;
+    }
+
+    /**
+     * Registers a listener that is notified, from the thread that fetched them, whenever a change
+     * in the remote properties changes the environments available for the current version.
+     * @param context An activity context.
+     * @param listener The listener to register.
+     */
+    public static void addCatalogueListener(@NonNull Context context, @NonNull EnvironmentCatalogue.Listener listener) {
+        synchronized (sCatalogueListeners) {
+            if (sCatalogueListeners.isEmpty()) {
+                SettingsStore.getInstance(context).addRemotePropertiesListener(sRemotePropertiesListener);
+            }
+            if (!sCatalogueListeners.contains(listener)) {
+                sCatalogueListeners.add(listener);
             }
         }
+    }
 
-        return null;
+    public static void removeCatalogueListener(@NonNull Context context, @NonNull EnvironmentCatalogue.Listener listener) {
+        synchronized (sCatalogueListeners) {
+            sCatalogueListeners.remove(listener);
+            if (sCatalogueListeners.isEmpty()) {
+                SettingsStore.getInstance(context).removeRemotePropertiesListener(sRemotePropertiesListener);
+            }
+        }
     }
+
+    private static final RemotePropertiesCache.Listener sRemotePropertiesListener = properties -> {
+        EnvironmentCatalogue previous = sCatalogues.get(BuildConfig.VERSION_NAME);
+        EnvironmentCatalogue catalogue = getCatalogue(properties, BuildConfig.VERSION_NAME);
+        if (catalogue.hasSameEnvironments(previous)) {
+            return;
+        }
+
+        List<EnvironmentCatalogue.Listener> listeners;
+        synchronized (sCatalogueListeners) {
+            listeners = new ArrayList<>(sCatalogueListeners);
+        }
+        for (EnvironmentCatalogue.Listener listener : listeners) {
+            listener.onEnvironmentCatalogueChanged(catalogue);
+        }
+    };
 }
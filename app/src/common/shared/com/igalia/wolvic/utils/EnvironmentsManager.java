@@ -2,8 +2,6 @@ package com.igalia.wolvic.utils;
 
 import android.app.DownloadManager;
 import android.content.Context;
-import android.content.SharedPreferences;
-import android.preference.PreferenceManager;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -11,19 +9,25 @@ import androidx.annotation.Nullable;
 
 import org.mozilla.geckoview.GeckoSession;
 import com.igalia.wolvic.R;
+import com.igalia.wolvic.VRBrowserApplication;
 import com.igalia.wolvic.browser.SettingsStore;
 import com.igalia.wolvic.downloads.Download;
 import com.igalia.wolvic.downloads.DownloadJob;
 import com.igalia.wolvic.downloads.DownloadsManager;
 import com.igalia.wolvic.ui.widgets.WidgetManagerDelegate;
+import com.igalia.wolvic.utils.cubemap.CubemapTranscoder;
 import com.igalia.wolvic.utils.zip.UnzipCallback;
 import com.igalia.wolvic.utils.zip.UnzipTask;
 
 import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
-public class EnvironmentsManager implements DownloadsManager.DownloadsListener, SharedPreferences.OnSharedPreferenceChangeListener {
+public class EnvironmentsManager implements DownloadsManager.DownloadsListener, EnvironmentCatalogue.Listener {
 
     public interface EnvironmentListener {
         default void onEnvironmentSetSuccess(@NonNull String envId) {}
@@ -33,15 +37,18 @@ public class EnvironmentsManager implements DownloadsManager.DownloadsListener,
     private WidgetManagerDelegate mApplicationDelegate;
     private Context mContext;
     private DownloadsManager mDownloadManager;
-    private SharedPreferences mPrefs;
     private ArrayList<EnvironmentListener> mListeners;
     private long mEnvDownloadId = -1;
+    // Environments being transcoded, the active environment is also requested from the render thread.
+    private final Set<String> mTranscoding = ConcurrentHashMap.newKeySet();
+
+    // Transcoding is CPU bound and takes a few seconds, so it gets its own thread.
+    private static final Executor sTranscoderExecutor = Executors.newSingleThreadExecutor();
 
     public EnvironmentsManager(@NonNull Context context) {
         mContext = context;
         mApplicationDelegate = ((WidgetManagerDelegate)context);
         mDownloadManager = mApplicationDelegate.getServicesProvider().getDownloadsManager();
-        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
         mListeners = new ArrayList<>();
     }
 
@@ -59,12 +66,12 @@ public class EnvironmentsManager implements DownloadsManager.DownloadsListener,
 
     public void init() {
         mDownloadManager.addListener(this);
-        mPrefs.registerOnSharedPreferenceChangeListener(this);
+        EnvironmentUtils.addCatalogueListener(mContext, this);
     }
 
     public void end() {
         mDownloadManager.removeListener(this);
-        mPrefs.unregisterOnSharedPreferenceChangeListener(this);
+        EnvironmentUtils.removeCatalogueListener(mContext, this);
     }
 
     public void setOrDownloadEnvironment(@NonNull String envId) {
@@ -83,6 +90,7 @@ public class EnvironmentsManager implements DownloadsManager.DownloadsListener,
                 SettingsStore.getInstance(mContext).setEnvironment(envId);
                 mListeners.forEach(environmentListener -> environmentListener.onEnvironmentSetSuccess(envId));
                 mApplicationDelegate.updateEnvironment();
+                transcodeEnvironment(envId);
 
             } else {
                 downloadEnvironment(envId);
@@ -105,6 +113,7 @@ public class EnvironmentsManager implements DownloadsManager.DownloadsListener,
             if (EnvironmentUtils.isExternalEnvReady(mContext, envId)) {
                 // If the environment is ready, return the path
                 environmentPath = EnvironmentUtils.getExternalEnvPath(mContext, envId);
+                transcodeEnvironment(envId);
 
             } else {
                 downloadEnvironment(envId);
@@ -156,12 +165,35 @@ public class EnvironmentsManager implements DownloadsManager.DownloadsListener,
         }
     }
 
+    /**
+     * Compresses the images of an external environment in the background, if they aren't already,
+     * and reloads it afterwards if it's still the active one so it uses the compressed textures.
+     */
+    private void transcodeEnvironment(@NonNull String envId) {
+        String envPath = EnvironmentUtils.getExternalEnvPath(mContext, envId);
+        if (envPath == null || !mTranscoding.add(envId)) {
+            return;
+        }
+
+        File envDir = new File(envPath);
+        sTranscoderExecutor.execute(() -> {
+            boolean transcoded = CubemapTranscoder.needsTranscoding(envDir) && CubemapTranscoder.transcode(envDir);
+            ((VRBrowserApplication) mContext.getApplicationContext()).getExecutors().mainThread().execute(() -> {
+                mTranscoding.remove(envId);
+                if (transcoded && envId.equals(SettingsStore.getInstance(mContext).getEnvironment())) {
+                    mApplicationDelegate.updateEnvironment();
+                }
+            });
+        });
+    }
+
     // DownloadsManager
 
 
     @Override
     public void onDownloadsUpdate(@NonNull List<Download> downloads) {
-        Download envDownload = downloads.stream().filter(download -> EnvironmentUtils.getExternalEnvironmentByPayload(mContext, download.getUri()) != null).findFirst().orElse(null);
+        EnvironmentCatalogue catalogue = EnvironmentUtils.getCatalogue(mContext);
+        Download envDownload = downloads.stream().filter(download -> catalogue.getByPayload(download.getUri()) != null).findFirst().orElse(null);
         if (envDownload != null) {
             mEnvDownloadId = envDownload.getId();
         }
@@ -197,6 +229,7 @@ public class EnvironmentsManager implements DownloadsManager.DownloadsListener,
                     SettingsStore.getInstance(mContext).setEnvironment(env.getValue());
                     mListeners.forEach(environmentListener -> environmentListener.onEnvironmentSetSuccess(env.getValue()));
                     mApplicationDelegate.updateEnvironment();
+                    transcodeEnvironment(env.getValue());
                 }
 
                 @Override
@@ -220,10 +253,11 @@ public class EnvironmentsManager implements DownloadsManager.DownloadsListener,
         }
     }
 
+    // EnvironmentCatalogue.Listener
+
     @Override
-    public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String s) {
-        if (s.equals(mContext.getString(R.string.settings_key_remote_props))) {
-            mApplicationDelegate.updateEnvironment();
-        }
+    public void onEnvironmentCatalogueChanged(@NonNull EnvironmentCatalogue catalogue) {
+        ((VRBrowserApplication) mContext.getApplicationContext()).getExecutors().mainThread().execute(
+                () -> mApplicationDelegate.updateEnvironment());
     }
 }
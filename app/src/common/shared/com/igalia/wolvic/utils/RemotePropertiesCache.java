@@ -0,0 +1,270 @@
+package com.igalia.wolvic.utils;
+
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import mozilla.components.concept.fetch.Client;
+import mozilla.components.concept.fetch.MutableHeaders;
+import mozilla.components.concept.fetch.Request;
+import mozilla.components.concept.fetch.Response;
+
+/**
+ * Keeps a local copy of the remote properties so they are available right away at startup.
+ *
+ * The properties are stored already parsed and re-serialized (so only the fields we know about are
+ * kept) together with the ETag and Last-Modified headers of the response, which are used to make
+ * conditional requests. The endpoint is not contacted again until the cached copy is older than
+ * the given TTL.
+ */
+public class RemotePropertiesCache {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(RemotePropertiesCache.class);
+
+    private static final int FORMAT_VERSION = 1;
+    private static final Type PROPERTIES_TYPE = new TypeToken<Map<String, RemoteProperties>>() {}.getType();
+
+    public interface Listener {
+        void onRemotePropertiesChanged(@Nullable Map<String, RemoteProperties> properties);
+    }
+
+    private final File mFile;
+    private final String mEndpoint;
+    private final long mTTL;
+    private final Gson mGson = new GsonBuilder().create();
+    private final List<Listener> mListeners = new ArrayList<>();
+
+    private volatile Map<String, RemoteProperties> mProperties;
+    private String mETag;
+    private String mLastModified;
+    private long mFetchedAt;
+
+    public RemotePropertiesCache(@NonNull File file, @NonNull String endpoint, long ttl) {
+        mFile = file;
+        mEndpoint = endpoint;
+        mTTL = ttl;
+        load();
+    }
+
+    public void addListener(@NonNull Listener listener) {
+        synchronized (mListeners) {
+            if (!mListeners.contains(listener)) {
+                mListeners.add(listener);
+            }
+        }
+    }
+
+    public void removeListener(@NonNull Listener listener) {
+        synchronized (mListeners) {
+            mListeners.remove(listener);
+        }
+    }
+
+    /**
+     * Returns the cached properties without any parsing or disk access.
+     */
+    @Nullable
+    public Map<String, RemoteProperties> getProperties() {
+        return mProperties;
+    }
+
+    public synchronized boolean isEmpty() {
+        return mProperties == null;
+    }
+
+    /**
+     * Replaces the cached properties with the ones in the given JSON, dropping the validators of
+     * the previous response.
+     */
+    public void setProperties(@Nullable String json) {
+        Map<String, RemoteProperties> properties = parse(json);
+        synchronized (this) {
+            mProperties = properties;
+            mETag = null;
+            mLastModified = null;
+            mFetchedAt = 0;
+            save();
+        }
+        notifyListeners(properties);
+    }
+
+    /**
+     * Fetches the properties unless the cached copy is still fresh, sending the validators of the
+     * cached response so the server can reply with a 304 if nothing changed.
+     *
+     * @return true if the properties changed.
+     */
+    @WorkerThread
+    public boolean refresh(@NonNull Client client, boolean force) {
+        final String etag;
+        final String lastModified;
+        synchronized (this) {
+            if (!force && mProperties != null && System.currentTimeMillis() - mFetchedAt < mTTL) {
+                return false;
+            }
+            etag = mETag;
+            lastModified = mLastModified;
+        }
+
+        MutableHeaders headers = new MutableHeaders();
+        if (etag != null) {
+            headers.set("If-None-Match", etag);
+        }
+        if (lastModified != null) {
+            headers.set("If-Modified-Since", lastModified);
+        }
+        Request request = new Request(
+                mEndpoint,
+                Request.Method.GET,
+                headers,
+                null,
+                null,
+                null,
+                Request.Redirect.FOLLOW,
+                Request.CookiePolicy.INCLUDE,
+                false
+        );
+
+        try (Response response = client.fetch(request)) {
+            if (response.getStatus() == 304) {
+                synchronized (this) {
+                    mFetchedAt = System.currentTimeMillis();
+                    save();
+                }
+                return false;
+            }
+            if (response.getStatus() != 200) {
+                Log.d(LOGTAG, "Remote properties request failed with status " + response.getStatus());
+                return false;
+            }
+
+            Map<String, RemoteProperties> properties = parse(response.getBody().string(StandardCharsets.UTF_8));
+            if (properties == null) {
+                return false;
+            }
+            boolean changed;
+            synchronized (this) {
+                changed = !properties.equals(mProperties);
+                mProperties = properties;
+                mETag = response.getHeaders().get("ETag");
+                mLastModified = response.getHeaders().get("Last-Modified");
+                mFetchedAt = System.currentTimeMillis();
+                save();
+            }
+            if (changed) {
+                notifyListeners(properties);
+            }
+            return changed;
+
+        } catch (IOException e) {
+            Log.d(LOGTAG, "Remote properties error: " + e.getLocalizedMessage());
+            return false;
+        }
+    }
+
+    @Nullable
+    private Map<String, RemoteProperties> parse(@Nullable String json) {
+        if (json == null) {
+            return null;
+        }
+        try {
+            return mGson.fromJson(json, PROPERTIES_TYPE);
+
+        } catch (Exception e) {
+            Log.e(LOGTAG, "Unable to parse remote properties: " + e.getLocalizedMessage());
+            return null;
+        }
+    }
+
+    private void notifyListeners(@Nullable Map<String, RemoteProperties> properties) {
+        List<Listener> listeners;
+        synchronized (mListeners) {
+            listeners = new ArrayList<>(mListeners);
+        }
+        for (Listener listener : listeners) {
+            listener.onRemotePropertiesChanged(properties);
+        }
+    }
+
+    private synchronized void load() {
+        if (!mFile.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(mFile))) {
+            if (in.readInt() != FORMAT_VERSION) {
+                return;
+            }
+            mFetchedAt = in.readLong();
+            mETag = readNullableString(in);
+            mLastModified = readNullableString(in);
+            byte[] json = new byte[in.readInt()];
+            in.readFully(json);
+            mProperties = parse(new String(json, StandardCharsets.UTF_8));
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Unable to read the remote properties cache: " + e.getLocalizedMessage());
+            mProperties = null;
+            mETag = null;
+            mLastModified = null;
+            mFetchedAt = 0;
+        }
+    }
+
+    private synchronized void save() {
+        if (mProperties == null) {
+            if (mFile.exists() && !mFile.delete()) {
+                Log.e(LOGTAG, "Unable to delete the remote properties cache");
+            }
+            return;
+        }
+
+        // Write to a temporary file first so a crash never leaves a truncated cache behind.
+        File temp = new File(mFile.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(temp))) {
+            byte[] json = mGson.toJson(mProperties, PROPERTIES_TYPE).getBytes(StandardCharsets.UTF_8);
+            out.writeInt(FORMAT_VERSION);
+            out.writeLong(mFetchedAt);
+            writeNullableString(out, mETag);
+            writeNullableString(out, mLastModified);
+            out.writeInt(json.length);
+            out.write(json);
+
+        } catch (IOException e) {
+            Log.e(LOGTAG, "Unable to write the remote properties cache: " + e.getLocalizedMessage());
+            return;
+        }
+        if (!temp.renameTo(mFile)) {
+            Log.e(LOGTAG, "Unable to replace the remote properties cache");
+        }
+    }
+
+    @Nullable
+    private static String readNullableString(@NonNull DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullableString(@NonNull DataOutputStream out, @Nullable String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -10,20 +10,10 @@ import android.util.Log;
 
 import androidx.annotation.NonNull;
 
-import org.mozilla.geckoview.CrashReporter;
-import org.mozilla.geckoview.GeckoResult;
 import com.igalia.wolvic.BuildConfig;
-import com.igalia.wolvic.R;
 import com.igalia.wolvic.VRBrowserActivity;
 import com.igalia.wolvic.VRBrowserApplication;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.net.URISyntaxException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 
 public class SystemUtils {
@@ -59,53 +49,12 @@ public class SystemUtils {
         return "VRB[" + aClass.getSimpleName() + "]";
     }
 
-    private static final String CRASH_STATS_URL = "https://crash-stats.mozilla.com/report/index/";
-
-    private static void sendCrashFiles(@NonNull Context context, @NonNull final String aDumpFile, @NonNull final String aExtraFile) {
-        ((VRBrowserApplication)context.getApplicationContext()).getExecutors().backgroundThread().post(() -> {
-            try {
-                GeckoResult<String> result = CrashReporter.sendCrashReport(context, new File(aDumpFile), new File(aExtraFile), context.getString(R.string.crash_app_name));
-
-                result.accept(crashID -> {
-                    Log.e(LOGTAG, "Submitted crash report id: " + crashID);
-                    Log.e(LOGTAG, "Report available at: " + CRASH_STATS_URL + crashID);
-                }, ex -> {
-                    Log.e(LOGTAG, "Failed to submit crash report: " + (ex != null ? ex.getMessage() : "Exception is NULL"));
-                });
-            } catch (IOException | URISyntaxException e) {
-                Log.e(LOGTAG, "Failed to send crash report: " + e.toString());
-            }
-        });
-    }
-
     public static void postCrashFiles(@NonNull Context context, @NonNull final String aDumpFile, @NonNull final String aExtraFile) {
-        sendCrashFiles(context, aDumpFile, aExtraFile);
+        ((VRBrowserApplication)context.getApplicationContext()).getCrashUploadQueue().enqueue(aDumpFile, aExtraFile);
     }
 
     public static void postCrashFiles(@NonNull Context context, final ArrayList<String> aFiles) {
-        for (String file: aFiles) {
-            try {
-                ArrayList<String> list = new ArrayList<>(2);
-                try (FileInputStream in = context.openFileInput(file)) {
-                    try(BufferedReader br = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
-                        String line;
-                        while((line = br.readLine()) != null) {
-                            list.add(line);
-                        }
-                    }
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
-                if (list.size() < 2) {
-                    Log.e(LOGTAG, "Failed read crash dump file names from: " + file);
-                    return;
-                }
-                sendCrashFiles(context, list.get(0), list.get(1));
-            } finally {
-                Log.d(LOGTAG,"Removing crash file: " + file);
-                context.deleteFile(file);
-            }
-        }
+        ((VRBrowserApplication)context.getApplicationContext()).getCrashUploadQueue().enqueueCrashFiles(context, aFiles);
     }
 
     public static void clearCrashFiles(@NonNull Context context, final ArrayList<String> aFiles) {
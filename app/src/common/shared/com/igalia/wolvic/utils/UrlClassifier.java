@@ -0,0 +1,264 @@
+/* -*- Mode: Java; c-basic-offset: 4; tab-width: 4; indent-tabs-mode: nil; -*-
+ * This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package com.igalia.wolvic.utils;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Single pass scanners that classify the text typed in the URL bar. They are called on every
+ * keystroke and for every suggestion, so they work on character offsets and never allocate.
+ *
+ * They accept exactly the same inputs as the regular expressions previously used by
+ * {@link UrlUtils}:
+ * <ul>
+ *     <li>domain: <code>^(http://www\.|https://www\.|http://|https://)?[a-zA-Z0-9]+([\-\.]{1}[a-zA-Z0-9]+)*\.[a-zA-Z]{2,5}(:[0-9]{1,5})?(/[^ ]*)?$</code></li>
+ *     <li>IPv4: <code>^(([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])\.){3}([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])(:[0-9]+)?(/[^ ]*)?</code></li>
+ *     <li>localhost: <code>^(localhost)(:[0-9]+)?(/[^ ]*)?</code>, case insensitive</li>
+ * </ul>
+ */
+public final class UrlClassifier {
+
+    public enum Type {
+        DOMAIN,
+        IP,
+        LOCALHOST,
+        TEXT
+    }
+
+    private static final String LOCALHOST = "localhost";
+    private static final int MIN_TLD_LENGTH = 2;
+    private static final int MAX_TLD_LENGTH = 5;
+    private static final int MAX_PORT_LENGTH = 5;
+
+    private UrlClassifier() {}
+
+    /**
+     * Classifies the text as typed by the user. Domains take precedence over IP addresses, the
+     * same order used when deciding whether some text should be loaded or searched for.
+     */
+    @NonNull
+    public static Type classify(@Nullable String text) {
+        if (text == null) {
+            return Type.TEXT;
+        }
+        if (isDomain(text)) {
+            return Type.DOMAIN;
+        }
+        int start = hostStart(text);
+        if (start < 0) {
+            return Type.TEXT;
+        }
+        int end = hostEnd(text, start);
+        start = trimStart(text, start, end);
+        if (startsWithLocalhost(text, start, end)) {
+            return Type.LOCALHOST;
+        }
+        if (startsWithIPv4(text, start, end)) {
+            return Type.IP;
+        }
+        return Type.TEXT;
+    }
+
+    public static boolean isDomain(@NonNull String text) {
+        final int length = text.length();
+        int i = 0;
+        if (text.startsWith("https://")) {
+            i = 8;
+        } else if (text.startsWith("http://")) {
+            i = 7;
+        }
+
+        // Host: alphanumeric labels separated by a single '-' or '.', ending in a '.' followed by
+        // a 2 to 5 letter top level domain.
+        int labelLength = 0;
+        boolean lastLabelIsAlpha = true;
+        boolean lastSeparatorIsDot = false;
+        for (; i < length; i++) {
+            char c = text.charAt(i);
+            if (c == '.' || c == '-') {
+                if (labelLength == 0) {
+                    return false;
+                }
+                lastSeparatorIsDot = c == '.';
+                labelLength = 0;
+                lastLabelIsAlpha = true;
+            } else if (isAsciiLetter(c)) {
+                labelLength++;
+            } else if (isAsciiDigit(c)) {
+                labelLength++;
+                lastLabelIsAlpha = false;
+            } else {
+                break;
+            }
+        }
+        if (!lastSeparatorIsDot || !lastLabelIsAlpha ||
+                labelLength < MIN_TLD_LENGTH || labelLength > MAX_TLD_LENGTH) {
+            return false;
+        }
+
+        // Optional port.
+        if (i < length && text.charAt(i) == ':') {
+            int digits = 0;
+            i++;
+            while (i < length && isAsciiDigit(text.charAt(i))) {
+                digits++;
+                i++;
+            }
+            if (digits == 0 || digits > MAX_PORT_LENGTH) {
+                return false;
+            }
+        }
+
+        // Optional path, which can't contain spaces.
+        if (i < length && text.charAt(i) == '/') {
+            return text.indexOf(' ', i) < 0;
+        }
+
+        return isEndOfInput(text, i);
+    }
+
+    public static boolean isIPUri(@Nullable String uri) {
+        if (uri == null) {
+            return false;
+        }
+        int start = hostStart(uri);
+        if (start < 0) {
+            return false;
+        }
+        int end = hostEnd(uri, start);
+        start = trimStart(uri, start, end);
+        return startsWithLocalhost(uri, start, end) || startsWithIPv4(uri, start, end);
+    }
+
+    public static boolean isLocalIP(@Nullable String uri) {
+        if (uri == null) {
+            return false;
+        }
+        int start = hostStart(uri);
+        if (start < 0) {
+            return false;
+        }
+        int end = hostEnd(uri, start);
+        start = trimStart(uri, start, end);
+        if (startsWithLocalhost(uri, start, end)) {
+            return true;
+        }
+        return startsWithIPv4(uri, start, end) && (
+                uri.startsWith("10.", start) ||
+                uri.startsWith("172.", start) ||
+                uri.startsWith("192.168.", start));
+    }
+
+    /**
+     * Offset where the text left by {@link UrlUtils#stripProtocol(String)} starts, or -1 if
+     * nothing is left.
+     */
+    private static int hostStart(@NonNull String uri) {
+        if (uri.startsWith("data:")) {
+            return -1;
+        }
+        int index = uri.indexOf("://");
+        return index >= 0 ? index + 3 : 0;
+    }
+
+    /**
+     * Offset where the text left by {@link UrlUtils#stripProtocol(String)} followed by
+     * {@link String#trim()} ends.
+     */
+    private static int hostEnd(@NonNull String uri, int start) {
+        int end = uri.length();
+        if (end > start && uri.charAt(end - 1) == '/') {
+            end--;
+        }
+        while (end > start && uri.charAt(end - 1) <= ' ') {
+            end--;
+        }
+        return end;
+    }
+
+    private static int trimStart(@NonNull String uri, int start, int end) {
+        while (start < end && uri.charAt(start) <= ' ') {
+            start++;
+        }
+        return start;
+    }
+
+    private static boolean startsWithLocalhost(@NonNull String text, int start, int end) {
+        if (end - start < LOCALHOST.length()) {
+            return false;
+        }
+        for (int i = 0; i < LOCALHOST.length(); i++) {
+            char c = text.charAt(start + i);
+            if (c != LOCALHOST.charAt(i) && c != Character.toUpperCase(LOCALHOST.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks for three valid octets, each followed by a dot, and a fourth one. As the pattern this
+     * replaces wasn't anchored at the end, a single digit is enough for the last octet.
+     */
+    private static boolean startsWithIPv4(@NonNull String text, int start, int end) {
+        int i = start;
+        for (int octet = 0; octet < 3; octet++) {
+            int value = 0;
+            int digits = 0;
+            while (i < end && digits <= 3 && isAsciiDigit(text.charAt(i))) {
+                value = value * 10 + (text.charAt(i) - '0');
+                digits++;
+                i++;
+            }
+            if (i >= end || text.charAt(i) != '.' || !isValidOctet(value, digits, text.charAt(i - digits))) {
+                return false;
+            }
+            i++;
+        }
+        return i < end && isAsciiDigit(text.charAt(i));
+    }
+
+    private static boolean isValidOctet(int value, int digits, char first) {
+        switch (digits) {
+            case 1:
+                return true;
+            case 2:
+                return first != '0';
+            case 3:
+                return value >= 100 && value <= 255;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Mirrors the behavior of a non multiline <code>$</code>, which also matches right before a
+     * line terminator at the end of the input.
+     */
+    private static boolean isEndOfInput(@NonNull String text, int i) {
+        final int remaining = text.length() - i;
+        if (remaining == 0) {
+            return true;
+        }
+        if (remaining == 2) {
+            return text.charAt(i) == '\r' && text.charAt(i + 1) == '\n';
+        }
+        if (remaining == 1) {
+            char c = text.charAt(i);
+            return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+        }
+        return false;
+    }
+
+    private static boolean isAsciiLetter(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isAsciiDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+}
@@ -25,7 +25,6 @@ import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Arrays;
 import java.util.List;
-import java.util.regex.Pattern;
 
 // This class refers from mozilla-mobile/focus-android
 public class UrlUtils {
@@ -76,30 +75,16 @@ public class UrlUtils {
         return result;
     }
 
-    private static Pattern domainPattern = Pattern.compile("^(http:\\/\\/www\\.|https:\\/\\/www\\.|http:\\/\\/|https:\\/\\/)?[a-zA-Z0-9]+([\\-\\.]{1}[a-zA-Z0-9]+)*\\.[a-zA-Z]{2,5}(:[0-9]{1,5})?(\\/[^ ]*)?$");
     public static boolean isDomain(String text) {
-        return domainPattern.matcher(text).find();
+        return UrlClassifier.isDomain(text);
     }
 
-    private static Pattern ipPattern = Pattern.compile("^(([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])\\.){3}([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])(:[0-9]+)?(/[^ ]*)?");
-    private static Pattern localhostPattern = Pattern.compile("^(localhost)(:[0-9]+)?(/[^ ]*)?", Pattern.CASE_INSENSITIVE);
     public static boolean isIPUri(@Nullable String aUri) {
-        if (aUri == null) {
-            return false;
-        }
-        String uri = stripProtocol(aUri).trim();
-        return localhostPattern.matcher(uri).find() || ipPattern.matcher(uri).find();
+        return UrlClassifier.isIPUri(aUri);
     }
 
     public static boolean isLocalIP(@Nullable String aUri) {
-        if (!isIPUri(aUri)) {
-            return false;
-        }
-        String uri = stripProtocol(aUri).trim();
-        return uri.startsWith("10.") ||
-               uri.startsWith("172.") ||
-               uri.startsWith("192.168.") || //
-               localhostPattern.matcher(uri).find();
+        return UrlClassifier.isLocalIP(aUri);
     }
 
     public static boolean isPrivateAboutPage(@Nullable Context context,  @Nullable String uri) {
@@ -242,7 +227,7 @@ public class UrlUtils {
 
     public static String urlForText(@NonNull Context context, @NonNull String text) {
         String url = text.trim();
-        if ((UrlUtils.isDomain(text) || UrlUtils.isIPUri(text)) && !text.contains(" ")) {
+        if (UrlClassifier.classify(text) != UrlClassifier.Type.TEXT && !text.contains(" ")) {
             url = text;
             TelemetryService.urlBarEvent(true);
         } else if (text.startsWith("about:") || text.startsWith("resource://")) {
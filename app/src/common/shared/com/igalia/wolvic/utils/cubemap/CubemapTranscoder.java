@@ -0,0 +1,129 @@
+package com.igalia.wolvic.utils.cubemap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.SystemClock;
+import android.util.Log;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.WorkerThread;
+
+import com.igalia.wolvic.utils.SystemUtils;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Converts the six images of an external environment into ETC2 compressed KTX textures.
+ *
+ * The native skybox loader prefers the ".ktx" faces over the ".jpg" and ".png" ones, so once an
+ * environment is transcoded it's uploaded as is, without decoding any image, and it takes an eighth
+ * of the GPU memory of the RGBA8 layer used for the images. The textures are written next to the
+ * images, so they are replaced together with them whenever a new version of the environment is
+ * installed.
+ */
+public class CubemapTranscoder {
+
+    private static final String LOGTAG = SystemUtils.createLogtag(CubemapTranscoder.class);
+
+    // Must match the size of the cube layer created in BrowserWorld::CreateSkyBox.
+    public static final int FACE_SIZE = 1024;
+
+    public static final String KTX_EXTENSION = ".ktx";
+    // Loaded instead of the plain ones when the cube layer uses a sRGB format.
+    private static final String SRGB_SUFFIX = "_srgb";
+
+    private static final String[] FACES = {"posx", "negx", "posy", "negy", "posz", "negz"};
+    private static final String[] IMAGE_EXTENSIONS = {".jpg", ".png"};
+
+    private CubemapTranscoder() {}
+
+    /**
+     * Checks whether all the faces of the environment are already compressed.
+     */
+    public static boolean isTranscoded(@NonNull File envDir) {
+        for (String face : FACES) {
+            if (!new File(envDir, face + KTX_EXTENSION).isFile()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks whether the environment has images that can be transcoded.
+     */
+    public static boolean needsTranscoding(@NonNull File envDir) {
+        return !isTranscoded(envDir) && findImage(envDir, FACES[0]) != null;
+    }
+
+    /**
+     * Compresses every face of the environment. The plain textures are written after the sRGB ones
+     * and the native loader only picks the KTX faces when all six plain textures exist, so an
+     * interrupted transcoding is never used.
+     *
+     * @return true if all the faces were transcoded.
+     */
+    @WorkerThread
+    public static boolean transcode(@NonNull File envDir) {
+        long decodeTime = 0;
+        long encodeTime = 0;
+        try {
+            for (String face : FACES) {
+                File image = findImage(envDir, face);
+                if (image == null) {
+                    throw new IOException("Missing face " + face);
+                }
+
+                long start = SystemClock.elapsedRealtime();
+                int[] pixels = decode(image);
+                long decoded = SystemClock.elapsedRealtime();
+                byte[] data = Etc2Encoder.encode(pixels, FACE_SIZE, FACE_SIZE);
+                encodeTime += SystemClock.elapsedRealtime() - decoded;
+                decodeTime += decoded - start;
+
+                KtxWriter.write(new File(envDir, face + SRGB_SUFFIX + KTX_EXTENSION),
+                        KtxWriter.GL_COMPRESSED_SRGB8_ETC2, FACE_SIZE, FACE_SIZE, data);
+                KtxWriter.write(new File(envDir, face + KTX_EXTENSION),
+                        KtxWriter.GL_COMPRESSED_RGB8_ETC2, FACE_SIZE, FACE_SIZE, data);
+            }
+
+        } catch (IOException | OutOfMemoryError e) {
+            Log.e(LOGTAG, "Unable to transcode " + envDir.getName() + ": " + e.getLocalizedMessage());
+            return false;
+        }
+
+        Log.i(LOGTAG, "Transcoded " + envDir.getName() + ", decoding took " + decodeTime +
+                " ms and encoding " + encodeTime + " ms");
+        return true;
+    }
+
+    @Nullable
+    private static File findImage(@NonNull File envDir, @NonNull String face) {
+        for (String extension : IMAGE_EXTENSIONS) {
+            File image = new File(envDir, face + extension);
+            if (image.isFile()) {
+                return image;
+            }
+        }
+        return null;
+    }
+
+    @NonNull
+    private static int[] decode(@NonNull File image) throws IOException {
+        Bitmap bitmap = BitmapFactory.decodeFile(image.getAbsolutePath());
+        if (bitmap == null) {
+            throw new IOException("Unable to decode " + image.getName());
+        }
+        if (bitmap.getWidth() != FACE_SIZE || bitmap.getHeight() != FACE_SIZE) {
+            Bitmap scaled = Bitmap.createScaledBitmap(bitmap, FACE_SIZE, FACE_SIZE, true);
+            bitmap.recycle();
+            bitmap = scaled;
+        }
+        int[] pixels = new int[FACE_SIZE * FACE_SIZE];
+        bitmap.getPixels(pixels, 0, FACE_SIZE, 0, 0, FACE_SIZE, FACE_SIZE);
+        bitmap.recycle();
+        return pixels;
+    }
+}
@@ -0,0 +1,228 @@
+package com.igalia.wolvic.utils.cubemap;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Compresses images into GL_COMPRESSED_RGB8_ETC2 blocks.
+ *
+ * Only the individual and differential modes are used, which are the ETC1 ones, so the output can
+ * also be read by ETC1 decoders. Differential blocks are only emitted when the second base color
+ * doesn't overflow, as ETC2 reuses those bit patterns for its T, H and planar modes.
+ *
+ * For every 4x4 block both sub-block orientations are tried and, for every sub-block, all the
+ * modifier tables, keeping the combination with the lowest squared error.
+ */
+public class Etc2Encoder {
+
+    public static final int BLOCK_SIZE = 4;
+    public static final int BYTES_PER_BLOCK = 8;
+
+    // Modifier tables, in the same order as the pixel index values: +small, +large, -small, -large.
+    static final int[][] MODIFIERS = {
+            {2, 8, -2, -8},
+            {5, 17, -5, -17},
+            {9, 29, -9, -29},
+            {13, 42, -13, -42},
+            {18, 60, -18, -60},
+            {24, 80, -24, -80},
+            {33, 106, -33, -106},
+            {47, 183, -47, -183}
+    };
+
+    private Etc2Encoder() {}
+
+    /**
+     * Returns the size of the compressed data for an image of the given size.
+     */
+    public static int getCompressedSize(int width, int height) {
+        return (width / BLOCK_SIZE) * (height / BLOCK_SIZE) * BYTES_PER_BLOCK;
+    }
+
+    /**
+     * Compresses the given ARGB pixels, stored row by row. Alpha is ignored.
+     *
+     * @param pixels The image pixels, as returned by {@link android.graphics.Bitmap#getPixels}.
+     * @param width The image width, it must be a multiple of {@link #BLOCK_SIZE}.
+     * @param height The image height, it must be a multiple of {@link #BLOCK_SIZE}.
+     * @return The compressed blocks, row by row.
+     */
+    @NonNull
+    public static byte[] encode(@NonNull int[] pixels, int width, int height) {
+        if (width % BLOCK_SIZE != 0 || height % BLOCK_SIZE != 0) {
+            throw new IllegalArgumentException("Image size must be a multiple of " + BLOCK_SIZE + ": " + width + "x" + height);
+        }
+        if (pixels.length < width * height) {
+            throw new IllegalArgumentException("Not enough pixels for a " + width + "x" + height + " image");
+        }
+
+        byte[] output = new byte[getCompressedSize(width, height)];
+        BlockEncoder encoder = new BlockEncoder();
+        int offset = 0;
+        for (int y = 0; y < height; y += BLOCK_SIZE) {
+            for (int x = 0; x < width; x += BLOCK_SIZE) {
+                long block = encoder.encode(pixels, width, x, y);
+                for (int i = 0; i < BYTES_PER_BLOCK; i++) {
+                    output[offset++] = (byte) (block >>> (56 - 8 * i));
+                }
+            }
+        }
+        return output;
+    }
+
+    /**
+     * Encodes a single block. It keeps the working buffers around so they are not allocated for
+     * every block.
+     */
+    private static class BlockEncoder {
+
+        // Block pixels, indexed as the ETC pixel indices: x * 4 + y.
+        private final int[] mRed = new int[16];
+        private final int[] mGreen = new int[16];
+        private final int[] mBlue = new int[16];
+        private final int[] mBase1 = new int[3];
+        private final int[] mBase2 = new int[3];
+
+        // Pixel positions of both sub-blocks for each orientation.
+        private static final int[][][] SUB_BLOCKS = {
+                // flip = 0, two 2x4 sub-blocks side by side.
+                {{0, 1, 2, 3, 4, 5, 6, 7}, {8, 9, 10, 11, 12, 13, 14, 15}},
+                // flip = 1, two 4x2 sub-blocks on top of each other.
+                {{0, 1, 4, 5, 8, 9, 12, 13}, {2, 3, 6, 7, 10, 11, 14, 15}}
+        };
+
+        // Results of the last call to encodeSubBlock().
+        private int mTable;
+        private int mIndices;
+
+        long encode(@NonNull int[] pixels, int width, int blockX, int blockY) {
+            for (int x = 0; x < BLOCK_SIZE; x++) {
+                for (int y = 0; y < BLOCK_SIZE; y++) {
+                    int pixel = pixels[(blockY + y) * width + blockX + x];
+                    int i = x * 4 + y;
+                    mRed[i] = (pixel >> 16) & 0xff;
+                    mGreen[i] = (pixel >> 8) & 0xff;
+                    mBlue[i] = pixel & 0xff;
+                }
+            }
+
+            long best = 0;
+            long bestError = Long.MAX_VALUE;
+            for (int flip = 0; flip < 2; flip++) {
+                int[] first = SUB_BLOCKS[flip][0];
+                int[] second = SUB_BLOCKS[flip][1];
+
+                int r1 = average(mRed, first), g1 = average(mGreen, first), b1 = average(mBlue, first);
+                int r2 = average(mRed, second), g2 = average(mGreen, second), b2 = average(mBlue, second);
+
+                long block;
+                int[] base1 = mBase1;
+                int[] base2 = mBase2;
+                int qr1 = quantize(r1, 31), qg1 = quantize(g1, 31), qb1 = quantize(b1, 31);
+                int dr = quantize(r2, 31) - qr1, dg = quantize(g2, 31) - qg1, db = quantize(b2, 31) - qb1;
+                if (fitsDelta(dr) && fitsDelta(dg) && fitsDelta(db)) {
+                    base1[0] = expand5(qr1); base1[1] = expand5(qg1); base1[2] = expand5(qb1);
+                    base2[0] = expand5(qr1 + dr); base2[1] = expand5(qg1 + dg); base2[2] = expand5(qb1 + db);
+                    block = ((long) qr1 << 59) | ((long) (dr & 7) << 56) |
+                            ((long) qg1 << 51) | ((long) (dg & 7) << 48) |
+                            ((long) qb1 << 43) | ((long) (db & 7) << 40) |
+                            (1L << 33);
+
+                } else {
+                    int qr2 = quantize(r2, 15), qg2 = quantize(g2, 15), qb2 = quantize(b2, 15);
+                    qr1 = quantize(r1, 15); qg1 = quantize(g1, 15); qb1 = quantize(b1, 15);
+                    base1[0] = expand4(qr1); base1[1] = expand4(qg1); base1[2] = expand4(qb1);
+                    base2[0] = expand4(qr2); base2[1] = expand4(qg2); base2[2] = expand4(qb2);
+                    block = ((long) qr1 << 60) | ((long) qr2 << 56) |
+                            ((long) qg1 << 52) | ((long) qg2 << 48) |
+                            ((long) qb1 << 44) | ((long) qb2 << 40);
+                }
+                block |= (long) flip << 32;
+
+                long error = encodeSubBlock(first, base1);
+                block |= ((long) mTable << 37) | (mIndices & 0xffffffffL);
+                if (error >= bestError) {
+                    continue;
+                }
+                error += encodeSubBlock(second, base2);
+                block |= ((long) mTable << 34) | (mIndices & 0xffffffffL);
+
+                if (error < bestError) {
+                    bestError = error;
+                    best = block;
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Picks the modifier table with the lowest error for the sub-block, leaving the table in
+         * {@link #mTable} and the pixel indices, already in their final bit positions, in
+         * {@link #mIndices}.
+         *
+         * @return The squared error of the sub-block.
+         */
+        private long encodeSubBlock(@NonNull int[] positions, @NonNull int[] base) {
+            long bestError = Long.MAX_VALUE;
+            for (int table = 0; table < MODIFIERS.length; table++) {
+                int[] modifiers = MODIFIERS[table];
+                long error = 0;
+                int indices = 0;
+                for (int position : positions) {
+                    int bestPixelError = Integer.MAX_VALUE;
+                    int bestIndex = 0;
+                    for (int index = 0; index < 4; index++) {
+                        int modifier = modifiers[index];
+                        int pixelError = square(clamp(base[0] + modifier) - mRed[position]) +
+                                square(clamp(base[1] + modifier) - mGreen[position]) +
+                                square(clamp(base[2] + modifier) - mBlue[position]);
+                        if (pixelError < bestPixelError) {
+                            bestPixelError = pixelError;
+                            bestIndex = index;
+                        }
+                    }
+                    error += bestPixelError;
+                    indices |= ((bestIndex >> 1) << (16 + position)) | ((bestIndex & 1) << position);
+                }
+
+                if (error < bestError) {
+                    bestError = error;
+                    mTable = table;
+                    mIndices = indices;
+                }
+            }
+            return bestError;
+        }
+    }
+
+    private static int average(@NonNull int[] channel, @NonNull int[] positions) {
+        int sum = 0;
+        for (int position : positions) {
+            sum += channel[position];
+        }
+        return (sum + positions.length / 2) / positions.length;
+    }
+
+    private static int quantize(int value, int max) {
+        return (value * max + 127) / 255;
+    }
+
+    private static boolean fitsDelta(int delta) {
+        return delta >= -4 && delta <= 3;
+    }
+
+    static int expand4(int value) {
+        return (value << 4) | value;
+    }
+
+    static int expand5(int value) {
+        return (value << 3) | (value >> 2);
+    }
+
+    static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(value, 255);
+    }
+
+    private static int square(int value) {
+        return value * value;
+    }
+}
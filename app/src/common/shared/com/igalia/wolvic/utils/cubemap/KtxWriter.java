@@ -0,0 +1,66 @@
+package com.igalia.wolvic.utils.cubemap;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Writes single level compressed textures as KTX 1.1 files, the same layout used by the builtin
+ * environments in the cubemap assets folder.
+ */
+public class KtxWriter {
+
+    public static final int GL_COMPRESSED_RGB8_ETC2 = 0x9274;
+    public static final int GL_COMPRESSED_SRGB8_ETC2 = 0x9275;
+    public static final String TEMP_EXTENSION = ".tmp";
+    private static final int GL_RGB = 0x1907;
+
+    private static final byte[] IDENTIFIER = {
+            (byte) 0xAB, 'K', 'T', 'X', ' ', '1', '1', (byte) 0xBB, '\r', '\n', 0x1A, '\n'
+    };
+    static final int HEADER_SIZE = IDENTIFIER.length + 13 * 4;
+
+    private KtxWriter() {}
+
+    /**
+     * Writes the texture into a temporary file that then replaces the given one, so readers never
+     * see a partially written texture.
+     */
+    public static void write(@NonNull File file, int internalFormat, int width, int height, @NonNull byte[] data) throws IOException {
+        File temp = new File(file.getPath() + TEMP_EXTENSION);
+        try (OutputStream out = new FileOutputStream(temp)) {
+            out.write(header(internalFormat, width, height, data.length));
+            out.write(data);
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            throw new IOException("Unable to write " + file.getAbsolutePath());
+        }
+    }
+
+    @NonNull
+    static byte[] header(int internalFormat, int width, int height, int imageSize) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + 4).order(ByteOrder.LITTLE_ENDIAN);
+        header.put(IDENTIFIER);
+        header.putInt(0x04030201);      // endianness
+        header.putInt(0);               // glType, 0 for compressed textures
+        header.putInt(1);               // glTypeSize
+        header.putInt(0);               // glFormat, 0 for compressed textures
+        header.putInt(internalFormat);  // glInternalFormat
+        header.putInt(GL_RGB);          // glBaseInternalFormat
+        header.putInt(width);           // pixelWidth
+        header.putInt(height);          // pixelHeight
+        header.putInt(0);               // pixelDepth
+        header.putInt(0);               // numberOfArrayElements
+        header.putInt(1);               // numberOfFaces
+        header.putInt(1);               // numberOfMipmapLevels
+        header.putInt(0);               // bytesOfKeyValueData
+        header.putInt(imageSize);       // imageSize of the first and only level
+        return header.array();
+    }
+}
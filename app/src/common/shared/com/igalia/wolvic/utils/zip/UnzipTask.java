@@ -3,21 +3,61 @@ package com.igalia.wolvic.utils.zip;
 import android.content.Context;
 import android.os.Bundle;
 import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.VisibleForTesting;
 
-import net.lingala.zip4j.core.ZipFile;
-import net.lingala.zip4j.progress.ProgressMonitor;
+import com.igalia.wolvic.utils.SystemUtils;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipInputStream;
 
+/**
+ * Extracts a zip file in a single streaming pass.
+ *
+ * Entries are extracted into a staging directory next to the output path and checked against the
+ * CRC stored in the zip. Every verified entry is recorded in a journal, so an interrupted or
+ * cancelled extraction can be resumed without rewriting the entries that were already done. Once
+ * all the entries are extracted the journal becomes the {@link #INSTALL_MANIFEST} and the staging
+ * directory replaces the output one, so the output path never holds a partial extraction.
+ */
 public class UnzipTask {
 
+    private static final String LOGTAG = SystemUtils.createLogtag(UnzipTask.class);
+
+    public static final String INSTALL_MANIFEST = ".installed";
+    private static final String INSTALL_JOURNAL = ".journal";
+    private static final String STAGING_SUFFIX = ".staging";
+    private static final String OLD_SUFFIX = ".old";
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // All the extractions share a single thread, they are disk bound anyway.
+    private static final ExecutorService sExecutor = Executors.newSingleThreadExecutor();
+
     private String mZipPath;
-    private ProgressMonitor mUnzipMonitor;
     private UnzipResultReceiver mReceiver;
-    private boolean mIsRunning;
+    private volatile boolean mIsRunning;
+    private volatile boolean mIsCancelled;
 
     public UnzipTask(@NonNull Context context) {
         mReceiver = new UnzipResultReceiver(new Handler(context.getMainLooper()));
@@ -33,64 +73,175 @@ public class UnzipTask {
     }
 
     public void start(@NonNull String zipPath, @NonNull String outputPath) {
-        Executors.newSingleThreadExecutor().submit(() -> startUnzip(zipPath, outputPath));
+        mIsCancelled = false;
+        sExecutor.submit(() -> startUnzip(zipPath, outputPath));
     }
 
-    private void startUnzip(@NonNull String zipPath, @NonNull String outputPath) {
+    /**
+     * Runs the extraction on the calling thread.
+     */
+    @VisibleForTesting
+    void startUnzip(@NonNull String zipPath, @NonNull String outputPath) {
         mZipPath = zipPath;
+        mIsRunning = true;
 
-        // Remove previous unzip attempt
-        File file = new File(outputPath);
-        if (file.exists() && file.isDirectory()) {
-            String[] children = file.list();
-            for (String child : children) {
-                new File(file, child).delete();
-            }
-        }
+        File zipFile = new File(zipPath);
+        File output = new File(outputPath);
+        File staging = new File(outputPath + STAGING_SUFFIX);
+        File journal = new File(staging, INSTALL_JOURNAL);
 
-        // Start unzip
         try {
             notifyStarted();
 
-            mIsRunning =  true;
+            // A previous install that was moved aside by an interrupted swap is still the last
+            // complete one, so it's put back before anything else.
+            File old = new File(outputPath + OLD_SUFFIX);
+            if (!output.exists() && old.isDirectory() && !old.renameTo(output)) {
+                throw new IOException("Unable to restore " + output.getAbsolutePath());
+            }
+
+            if (!staging.isDirectory() && !staging.mkdirs()) {
+                throw new IOException("Unable to create " + staging.getAbsolutePath());
+            }
+            Map<String, Long> extracted = readJournal(journal);
+
+            final long start = SystemClock.elapsedRealtime();
+            final long total = Math.max(zipFile.length(), 1);
+            long written = 0;
+            int lastProgress = -1;
+            byte[] buffer = new byte[BUFFER_SIZE];
+            CountingInputStream counter = new CountingInputStream(new FileInputStream(zipFile));
+            try (ZipInputStream zip = new ZipInputStream(new BufferedInputStream(counter, BUFFER_SIZE));
+                 Writer journalWriter = new FileWriter(journal, true)) {
+                ZipEntry entry;
+                while ((entry = zip.getNextEntry()) != null) {
+                    File target = new File(staging, entry.getName());
+                    if (!target.getCanonicalPath().startsWith(staging.getCanonicalPath() + File.separator)) {
+                        throw new ZipException("Entry outside of the output directory: " + entry.getName());
+                    }
 
-            ZipFile zipFile = new ZipFile(mZipPath);
-            zipFile.setRunInThread(true);
-            zipFile.extractAll(outputPath);
-            mUnzipMonitor = zipFile.getProgressMonitor();
-            while (mUnzipMonitor.getState() == ProgressMonitor.STATE_BUSY) {
-                double progress = zipFile.getProgressMonitor().getPercentDone();
+                    if (entry.isDirectory()) {
+                        if (!target.isDirectory() && !target.mkdirs()) {
+                            throw new IOException("Unable to create " + target.getAbsolutePath());
+                        }
+                        continue;
+                    }
 
-                notifyProgress(progress);
+                    // Entries verified by a previous attempt are skipped when the zip declares their
+                    // CRC upfront, otherwise we can't know if they are the same before reading them.
+                    Long previous = extracted.get(entry.getName());
+                    if (previous != null && entry.getCrc() != -1 && previous == entry.getCrc() &&
+                            target.isFile() && target.length() == entry.getSize()) {
+                        continue;
+                    }
 
-                try {
-                    Thread.sleep(500);
+                    File parent = target.getParentFile();
+                    if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                        throw new IOException("Unable to create " + parent.getAbsolutePath());
+                    }
 
-                } catch (InterruptedException e) {
-                    throw new RuntimeException(e);
+                    CRC32 crc = new CRC32();
+                    try (OutputStream out = new FileOutputStream(target)) {
+                        int read;
+                        while ((read = zip.read(buffer)) > 0) {
+                            if (mIsCancelled) {
+                                notifyCancelled();
+                                return;
+                            }
+                            out.write(buffer, 0, read);
+                            crc.update(buffer, 0, read);
+                            written += read;
+
+                            int progress = (int) (100 * counter.getCount() / total);
+                            if (progress != lastProgress) {
+                                lastProgress = progress;
+                                notifyProgress(progress);
+                            }
+                        }
+                    }
+                    if (entry.getCrc() != -1 && crc.getValue() != entry.getCrc()) {
+                        throw new ZipException("Checksum mismatch for " + entry.getName());
+                    }
+
+                    journalWriter.write(crc.getValue() + "\t" + entry.getName() + "\n");
+                    journalWriter.flush();
                 }
             }
 
-            if (!mUnzipMonitor.isCancelAllTasks()) {
-                notifyFinish(mZipPath);
+            install(staging, journal, output);
 
-            } else {
-                notifyCancelled();
-            }
+            long elapsed = Math.max(SystemClock.elapsedRealtime() - start, 1);
+            Log.i(LOGTAG, "Extracted " + written + " bytes from " + zipFile.getName() + " in " + elapsed +
+                    " ms (" + (written / elapsed) + " KB/s)");
+
+            notifyFinish(outputPath);
 
         } catch (Exception e) {
-            notifyError(e.getLocalizedMessage());
+            Log.e(LOGTAG, "Unable to extract " + zipPath + ": " + e.getLocalizedMessage());
+            notifyError(String.valueOf(e.getLocalizedMessage()));
 
         } finally {
             mIsRunning = false;
-            mUnzipMonitor = null;
         }
     }
 
-    public void cancel() {
-        if (mUnzipMonitor != null) {
-            mUnzipMonitor.cancelAllTasks();
+    /**
+     * Replaces the output directory with the staging one.
+     */
+    private void install(@NonNull File staging, @NonNull File journal, @NonNull File output) throws IOException {
+        if (!journal.renameTo(new File(staging, INSTALL_MANIFEST))) {
+            throw new IOException("Unable to write the install manifest");
+        }
+
+        File old = new File(output.getPath() + OLD_SUFFIX);
+        deleteRecursively(old);
+        if (output.exists() && !output.renameTo(old)) {
+            throw new IOException("Unable to replace " + output.getAbsolutePath());
+        }
+        if (!staging.renameTo(output)) {
+            // Put the previous output back so the old content is still usable.
+            old.renameTo(output);
+            throw new IOException("Unable to install into " + output.getAbsolutePath());
         }
+        deleteRecursively(old);
+    }
+
+    @NonNull
+    private static Map<String, Long> readJournal(@NonNull File journal) {
+        Map<String, Long> entries = new HashMap<>();
+        if (!journal.isFile()) {
+            return entries;
+        }
+        try (BufferedReader reader = new BufferedReader(new FileReader(journal))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                int separator = line.indexOf('\t');
+                if (separator > 0) {
+                    entries.put(line.substring(separator + 1), Long.parseLong(line.substring(0, separator)));
+                }
+            }
+
+        } catch (IOException | NumberFormatException e) {
+            // The journal might have been truncated by a crash, extract everything again.
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static void deleteRecursively(@NonNull File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            Log.e(LOGTAG, "Unable to delete " + file.getAbsolutePath());
+        }
+    }
+
+    public void cancel() {
+        mIsCancelled = true;
     }
 
     public boolean isIsRunning() {
@@ -130,5 +281,44 @@ public class UnzipTask {
         mReceiver.send(UnzipResultReceiver.ERROR, bundle);
     }
 
+    /**
+     * Keeps track of the compressed bytes read, used to report the progress.
+     */
+    private static class CountingInputStream extends FilterInputStream {
+
+        private long mCount;
+
+        CountingInputStream(@NonNull InputStream in) {
+            super(in);
+        }
+
+        long getCount() {
+            return mCount;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int result = super.read();
+            if (result != -1) {
+                mCount++;
+            }
+            return result;
+        }
 
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int result = super.read(b, off, len);
+            if (result > 0) {
+                mCount += result;
+            }
+            return result;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long result = super.skip(n);
+            mCount += result;
+            return result;
+        }
+    }
 }
@@ -9,6 +9,7 @@ import org.junit.Rule
 import org.junit.Test
 import org.junit.runner.RunWith
 import com.igalia.wolvic.browser.SettingsStore
+import com.igalia.wolvic.utils.EnvironmentCatalogue
 import com.igalia.wolvic.utils.EnvironmentUtils
 import com.igalia.wolvic.utils.TestFileUtils
 import org.robolectric.RobolectricTestRunner
@@ -100,6 +101,40 @@ class EnvironmentsTest {
         assertEquals(env?.payload, "https://mixedreality.mozilla.org/FirefoxReality/envs/space/space.zip")
     }
 
+    @Test
+    fun `Catalogue is only rebuilt when the remote properties change`() {
+        settingStore.setRemoteProperties(TestFileUtils.readTextFile(javaClass.classLoader!!,"environments/targetVersionEnvs.json"))
+        val catalogue = EnvironmentUtils.getCatalogue(context, "11")
+        assertSame(catalogue, EnvironmentUtils.getCatalogue(context, "11"))
+        assertNotNull(catalogue.getById("wolvic"))
+        assertSame(catalogue.getById("wolvic"), catalogue.getByPayload("https://mixedreality.mozilla.org/FirefoxReality/envs/meadow/space.zip"))
+
+        settingStore.setRemoteProperties(TestFileUtils.readTextFile(javaClass.classLoader!!,"environments/testNoEnvs.json"))
+        val updated = EnvironmentUtils.getCatalogue(context, "11")
+        assertNotSame(catalogue, updated)
+        assertTrue(updated.version > catalogue.version)
+        assertNull(updated.getById("wolvic"))
+    }
+
+    @Test
+    fun `Catalogue listeners are notified when the environments change`() {
+        settingStore.setRemoteProperties(TestFileUtils.readTextFile(javaClass.classLoader!!,"environments/testNoEnvs.json"))
+        val catalogues = mutableListOf<EnvironmentCatalogue>()
+        val listener = EnvironmentCatalogue.Listener { catalogues.add(it) }
+        EnvironmentUtils.addCatalogueListener(context, listener)
+        try {
+            settingStore.setRemoteProperties(TestFileUtils.readTextFile(javaClass.classLoader!!,"environments/targetVersionEnvs.json"))
+            assertEquals(1, catalogues.size)
+            assertNotNull(catalogues[0].environments)
+
+            // Same environments, nothing to notify.
+            settingStore.setRemoteProperties(TestFileUtils.readTextFile(javaClass.classLoader!!,"environments/previousVersionEnvs.json"))
+            assertEquals(1, catalogues.size)
+        } finally {
+            EnvironmentUtils.removeCatalogueListener(context, listener)
+        }
+    }
+
     @Test
     fun `Environment is builtin`() {
         assertTrue(EnvironmentUtils.isBuiltinEnvironment(context, "void"))
@@ -158,4 +193,18 @@ class EnvironmentsTest {
         assertTrue(isReady)
     }
 
+    @Test
+    fun `External environment is ready with leftover temporary textures`() {
+        val dir = File(EnvironmentUtils.getExternalEnvPath(context, "space")!!)
+        dir.mkdirs()
+        for (x in 0..5) {
+            assertTrue(File(dir, "image_$x").createNewFile())
+        }
+        // A texture that was being transcoded when the app was killed.
+        assertTrue(File(dir, "image_0.ktx.tmp").createNewFile())
+        assertTrue(File(dir, "image_1.ktx").createNewFile())
+
+        assertTrue(EnvironmentUtils.isExternalEnvReady(context, "space"))
+    }
+
 }
\ No newline at end of file
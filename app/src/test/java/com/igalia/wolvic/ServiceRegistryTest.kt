@@ -0,0 +1,117 @@
+package com.igalia.wolvic
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executors
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class ServiceRegistryTest {
+
+    private val registry = ServiceRegistry()
+    private val created = mutableListOf<String>()
+
+    private val A = ServiceRegistry.Key<String>("A")
+    private val B = ServiceRegistry.Key<String>("B")
+    private val C = ServiceRegistry.Key<String>("C")
+
+    private fun factory(name: String) = ServiceRegistry.Factory {
+        synchronized(created) { created.add(name) }
+        name
+    }
+
+    private inline fun <reified T : Throwable> assertFails(block: () -> Unit) {
+        try {
+            block()
+            fail("${T::class.java.simpleName} was not thrown")
+        } catch (e: Throwable) {
+            if (e !is T) {
+                throw e
+            }
+        }
+    }
+
+    @Test
+    fun `Services are created lazily after their dependencies`() {
+        registry.register(A, factory("A"))
+        registry.register(B, factory("B"), A)
+        registry.register(C, factory("C"), B)
+        assertTrue(created.isEmpty())
+
+        assertEquals("C", registry.get(C))
+        assertEquals("C", registry.get(C))
+        assertEquals(listOf("A", "B", "C"), created)
+        assertEquals(listOf("A", "B", "C"), registry.stats.map { it.name })
+        assertEquals(listOf(0, 1, 2), registry.stats.map { it.order })
+    }
+
+    @Test
+    fun `Stats include the services that were not created`() {
+        registry.register(A, factory("A"))
+        registry.register(B, factory("B"))
+        registry.register(C, factory("C"), A)
+        registry.get(C)
+
+        val stats = registry.stats
+        assertEquals(listOf("A", "C", "B"), stats.map { it.name })
+        assertEquals(listOf(true, true, false), stats.map { it.initialized })
+        assertEquals(Thread.currentThread().name, stats[0].thread)
+        assertNull(stats[2].thread)
+        assertEquals(-1, stats[2].order)
+
+        // Services created later are added to the stats.
+        registry.get(B)
+        assertEquals(listOf("A", "C", "B"), registry.stats.map { it.name })
+        assertEquals(2, registry.stats[2].order)
+        assertTrue(registry.stats.all { it.initialized })
+    }
+
+    @Test
+    fun `Dependencies must be registered first`() {
+        assertFails<IllegalArgumentException> { registry.register(B, factory("B"), A) }
+        registry.register(A, factory("A"))
+        assertFails<IllegalArgumentException> { registry.register(A, factory("A")) }
+        assertFails<IllegalArgumentException> { registry.get(C) }
+    }
+
+    @Test
+    fun `Services requesting themselves fail`() {
+        registry.register(A, ServiceRegistry.Factory { registry.get(A) })
+        assertFails<IllegalStateException> { registry.get(A) }
+        assertFalse(registry.isInitialized(A))
+    }
+
+    @Test
+    fun `Services are created once across threads`() {
+        val count = AtomicInteger()
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        var thread: String? = null
+        registry.register(A, ServiceRegistry.Factory {
+            thread = Thread.currentThread().name
+            started.countDown()
+            release.await()
+            "A" + count.incrementAndGet()
+        })
+
+        val executor = Executors.newFixedThreadPool(3)
+        registry.initializeAsync(executor, A, A, A)
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+        assertNull(registry.peek(A))
+        release.countDown()
+
+        // Requesting the service waits for the background creation.
+        assertEquals("A1", registry.get(A))
+        executor.shutdown()
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS))
+        assertEquals(1, count.get())
+        assertNotEquals(Thread.currentThread().name, thread)
+        assertEquals(thread, registry.stats[0].thread)
+    }
+}
@@ -0,0 +1,155 @@
+package com.igalia.wolvic.audio
+
+import androidx.test.core.app.ApplicationProvider
+import android.content.Context
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class AudioEngineTest {
+
+    private val impl = RecordingEngine()
+    private lateinit var engine: AudioEngine
+
+    @Before
+    fun setup() {
+        engine = AudioEngine(ApplicationProvider.getApplicationContext<Context>(), impl)
+    }
+
+    @After
+    fun tearDown() {
+        engine.release()
+    }
+
+    @Test
+    fun `Sounds are played on the next update`() {
+        engine.playSound(AudioEngine.Sound.CLICK)
+        engine.stopSound(AudioEngine.Sound.AMBIENT)
+        assertTrue(impl.calls.isEmpty())
+
+        engine.update()
+        assertEquals(listOf("play CLICK", "stop AMBIENT", "update"), impl.calls)
+    }
+
+    @Test
+    fun `Only the latest pose of a frame is applied`() {
+        engine.setPose(0f, 0f, 0f, 1f, 1f, 0f, 0f)
+        engine.setPose(0f, 0f, 0f, 1f, 2f, 0f, 0f)
+        engine.update()
+        // The same pose is not sent again.
+        engine.setPose(0f, 0f, 0f, 1f, 2f, 0f, 0f)
+        engine.update()
+        engine.update()
+
+        assertEquals(listOf("pose 2.0", "update", "update", "update"), impl.calls)
+    }
+
+    @Test
+    fun `Sounds are dropped while paused`() {
+        engine.pauseEngine()
+        engine.playSound(AudioEngine.Sound.CLICK)
+        engine.resumeEngine()
+        engine.update()
+
+        assertEquals(listOf("pause", "resume", "update"), impl.calls)
+    }
+
+    @Test
+    fun `The sounds are preloaded once`() {
+        var callbacks = 0
+        engine.preloadAsync { callbacks++ }
+        engine.preloadAsync { callbacks++ }
+        assertEquals(1, impl.preloads.size)
+        assertEquals(0, callbacks)
+
+        impl.preloads[0].run()
+        assertEquals(2, callbacks)
+        engine.preloadAsync { callbacks++ }
+        assertEquals(1, impl.preloads.size)
+        assertEquals(3, callbacks)
+    }
+
+    @Test
+    fun `The queue keeps the order of the commands and rejects them when full`() {
+        val queue = AudioCommandQueue(3)
+        assertTrue(queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.CLICK, 1f, false))
+        assertTrue(queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.BACK, 1f, false))
+        assertTrue(queue.offer(AudioCommandQueue.STOP, AudioEngine.Sound.AMBIENT, 0f, false))
+        assertFalse(queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.EXIT, 1f, false))
+
+        val consumer = RecordingEngine()
+        assertEquals(3, queue.drain(consumer))
+        assertEquals(listOf("play CLICK", "play BACK", "stop AMBIENT"), consumer.calls)
+        assertTrue(queue.isEmpty())
+        assertEquals(0, queue.drain(consumer))
+    }
+
+    @Test
+    fun `Repeated commands of a frame are merged`() {
+        val queue = AudioCommandQueue(8)
+        queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.CLICK, 0.5f, false)
+        queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.BACK, 1f, false)
+        queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.CLICK, 0.8f, false)
+        queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.CLICK, 0.2f, false)
+        // A stop after a play is kept, so the sound is stopped at the end of the frame.
+        queue.offer(AudioCommandQueue.STOP, AudioEngine.Sound.BACK, 0f, false)
+        queue.offer(AudioCommandQueue.STOP, AudioEngine.Sound.BACK, 0f, false)
+
+        val consumer = RecordingEngine()
+        assertEquals(3, queue.drain(consumer))
+        assertEquals(listOf("play CLICK", "play BACK", "stop BACK"), consumer.calls)
+        assertEquals(listOf(0.8f, 1f), consumer.volumes)
+    }
+
+    @Test
+    fun `Merged commands don't use queue slots`() {
+        val queue = AudioCommandQueue(1)
+        for (i in 0 until 10) {
+            assertTrue(queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.CLICK, 1f, false))
+        }
+        assertFalse(queue.offer(AudioCommandQueue.PLAY, AudioEngine.Sound.BACK, 1f, false))
+    }
+
+    private class RecordingEngine : AudioEngine.AudioEngineImpl, AudioCommandQueue.Target {
+        val calls = mutableListOf<String>()
+        val volumes = mutableListOf<Float>()
+        val preloads = mutableListOf<Runnable>()
+
+        override fun preloadAsync(aCallback: Runnable) {
+            preloads.add(aCallback)
+        }
+
+        override fun pause() {
+            calls.add("pause")
+        }
+
+        override fun resume() {
+            calls.add("resume")
+        }
+
+        override fun setPose(qx: Float, qy: Float, qz: Float, qw: Float, px: Float, py: Float, pz: Float) {
+            calls.add("pose $px")
+        }
+
+        override fun update() {
+            calls.add("update")
+        }
+
+        override fun release() {}
+
+        override fun playSound(aSound: AudioEngine.Sound, aVolume: Float, aLoop: Boolean) {
+            calls.add("play $aSound")
+            volumes.add(aVolume)
+        }
+
+        override fun stopSound(aSound: AudioEngine.Sound) {
+            calls.add("stop $aSound")
+        }
+    }
+}
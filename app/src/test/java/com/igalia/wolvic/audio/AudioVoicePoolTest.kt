@@ -0,0 +1,88 @@
+package com.igalia.wolvic.audio
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class AudioVoicePoolTest {
+
+    private var now = 1000L
+    private val calls = mutableListOf<String>()
+
+    private val engine = object : AudioEngine.AudioEngineImpl {
+        override fun preloadAsync(aCallback: Runnable) {}
+        override fun pause() {}
+        override fun resume() {}
+        override fun setPose(qx: Float, qy: Float, qz: Float, qw: Float, px: Float, py: Float, pz: Float) {}
+        override fun update() {}
+        override fun release() {}
+
+        override fun playSound(aSound: AudioEngine.Sound, aVolume: Float, aLoop: Boolean) {
+            calls.add("play $aSound")
+        }
+
+        override fun stopSound(aSound: AudioEngine.Sound) {
+            calls.add("stop $aSound")
+        }
+    }
+
+    private fun createPool(voices: Int) = AudioVoicePool(voices, engine) { now }
+
+    @Test
+    fun `Sounds played again too soon are skipped`() {
+        val pool = createPool(4)
+        pool.playSound(AudioEngine.Sound.CLICK, 1f, false)
+        now += AudioVoicePool.MIN_REPLAY_INTERVAL - 1
+        pool.playSound(AudioEngine.Sound.CLICK, 1f, false)
+        now += 1
+        pool.playSound(AudioEngine.Sound.CLICK, 1f, false)
+
+        assertEquals(listOf("play CLICK", "play CLICK"), calls)
+        assertEquals(1, pool.rateLimitedCount)
+        assertEquals(2, pool.voicesInUse)
+    }
+
+    @Test
+    fun `Voices are released when their sound finishes`() {
+        val pool = createPool(4)
+        pool.playSound(AudioEngine.Sound.CLICK, 1f, false)
+        pool.playSound(AudioEngine.Sound.AMBIENT, 1f, true)
+        assertEquals(2, pool.voicesInUse)
+
+        now += AudioEngine.Sound.CLICK.duration
+        assertEquals(1, pool.voicesInUse)
+        pool.stopSound(AudioEngine.Sound.AMBIENT)
+        assertEquals(0, pool.voicesInUse)
+        assertEquals(2, pool.peakVoices)
+    }
+
+    @Test
+    fun `The oldest voice of the lowest priority is stolen`() {
+        val pool = createPool(3)
+        pool.playSound(AudioEngine.Sound.AMBIENT, 1f, true)
+        now += 1
+        pool.playSound(AudioEngine.Sound.BACK, 1f, false)
+        now += 1
+        pool.playSound(AudioEngine.Sound.CLICK, 1f, false)
+        now += 1
+        pool.playSound(AudioEngine.Sound.EXIT, 1f, false)
+
+        assertEquals(listOf("play AMBIENT", "play BACK", "play CLICK", "stop BACK", "play EXIT"), calls)
+        assertEquals(1, pool.stolenCount)
+        assertEquals(3, pool.voicesInUse)
+    }
+
+    @Test
+    fun `Higher priority voices are not stolen`() {
+        val pool = createPool(1)
+        pool.playSound(AudioEngine.Sound.AMBIENT, 1f, true)
+        pool.playSound(AudioEngine.Sound.CLICK, 1f, false)
+
+        assertEquals(listOf("play AMBIENT"), calls)
+        assertEquals(1, pool.rejectedCount)
+    }
+}
@@ -0,0 +1,62 @@
+package com.igalia.wolvic.browser
+
+import org.junit.After
+import org.junit.Assert.assertEquals
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.robolectric.shadows.ShadowLooper
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class CoalescedNotifierTest {
+
+    private var calls = 0
+    private val notifier = CoalescedNotifier { calls++ }
+
+    @Before
+    fun setup() {
+        ShadowLooper.pauseMainLooper()
+    }
+
+    @After
+    fun tearDown() {
+        ShadowLooper.unPauseMainLooper()
+    }
+
+    @Test
+    fun `Pending notifications are delivered once`() {
+        notifier.post()
+        notifier.post()
+        notifier.post()
+        assertEquals(0, calls)
+
+        ShadowLooper.runUiThreadTasks()
+        assertEquals(1, calls)
+        ShadowLooper.runUiThreadTasks()
+        assertEquals(1, calls)
+    }
+
+    @Test
+    fun `Notifications after a delivery are delivered again`() {
+        notifier.post()
+        ShadowLooper.runUiThreadTasks()
+        notifier.post()
+        notifier.post()
+        ShadowLooper.runUiThreadTasks()
+
+        assertEquals(2, calls)
+    }
+
+    @Test
+    fun `Notifications from other threads are coalesced`() {
+        val threads = (1..4).map { Thread { repeat(10) { notifier.post() } } }
+        threads.forEach { it.start() }
+        threads.forEach { it.join() }
+
+        ShadowLooper.runUiThreadTasks()
+        assertEquals(1, calls)
+    }
+}
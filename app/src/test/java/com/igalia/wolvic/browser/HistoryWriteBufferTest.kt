@@ -0,0 +1,108 @@
+package com.igalia.wolvic.browser
+
+import mozilla.components.concept.storage.PageObservation
+import mozilla.components.concept.storage.PageVisit
+import mozilla.components.concept.storage.RedirectSource
+import mozilla.components.concept.storage.VisitType
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class HistoryWriteBufferTest {
+
+    private class RecordingStorage : HistoryWriteBuffer.Storage {
+        val writes = ArrayList<String>()
+        var written = CountDownLatch(0)
+        var release: CountDownLatch? = null
+
+        override suspend fun recordVisit(url: String, visit: PageVisit) {
+            release?.await(5, TimeUnit.SECONDS)
+            synchronized(writes) { writes.add("visit $url") }
+            written.countDown()
+        }
+
+        override suspend fun recordObservation(url: String, observation: PageObservation) {
+            synchronized(writes) { writes.add("observation $url ${observation.title}") }
+            written.countDown()
+        }
+
+        fun getWrites(): List<String> = synchronized(writes) { ArrayList(writes) }
+    }
+
+    private val scope = StoreScope("HistoryWriteBufferTest", 2)
+    private val storage = RecordingStorage()
+    private var flushes = 0
+
+    // The delayed flush never happens during a test.
+    private fun createBuffer(maxSize: Int) = HistoryWriteBuffer(maxSize, 60_000, scope, storage) { flushes++ }
+
+    private fun visit() = PageVisit(VisitType.LINK, RedirectSource.NOT_A_SOURCE)
+
+    @Test
+    fun `Repeated visits to a URL are merged into one observation`() {
+        val buffer = createBuffer(32)
+        buffer.addVisit("https://example.com", visit())
+        buffer.addObservation("https://example.com", PageObservation("Loading"))
+        buffer.addVisit("https://example.com", visit())
+        buffer.addObservation("https://example.com", PageObservation("Example"))
+        buffer.addObservation("https://example.com", PageObservation(null))
+        assertEquals(3, buffer.size())
+
+        scope.future { buffer.flush() }.get(5, TimeUnit.SECONDS)
+        // Every visit is kept, storage counts them.
+        assertEquals(listOf("visit https://example.com", "visit https://example.com",
+                "observation https://example.com Example"), storage.getWrites())
+        assertEquals(0, buffer.size())
+        assertEquals(1, flushes)
+    }
+
+    @Test
+    fun `The buffer is written when it's full`() {
+        val buffer = createBuffer(3)
+        storage.written = CountDownLatch(3)
+        buffer.addVisit("https://a.com", visit())
+        buffer.addVisit("https://b.com", visit())
+        assertTrue(storage.getWrites().isEmpty())
+
+        buffer.addObservation("https://a.com", PageObservation("A"))
+        assertTrue(storage.written.await(5, TimeUnit.SECONDS))
+        assertEquals(listOf("visit https://a.com", "visit https://b.com", "observation https://a.com A"),
+                storage.getWrites())
+    }
+
+    @Test
+    fun `Flushing an empty buffer doesn't notify`() {
+        val buffer = createBuffer(32)
+        scope.future { buffer.flush() }.get(5, TimeUnit.SECONDS)
+        assertEquals(0, flushes)
+    }
+
+    @Test
+    fun `Reads wait for the entries being written`() {
+        val buffer = createBuffer(2)
+        val release = CountDownLatch(1)
+        storage.release = release
+        buffer.addVisit("https://a.com", visit())
+        // The buffer is full, so it's drained and written in the background.
+        buffer.addVisit("https://b.com", visit())
+
+        val read = scope.future {
+            buffer.flush()
+            storage.getWrites()
+        }
+        try {
+            read.get(200, TimeUnit.MILLISECONDS)
+            fail("The read didn't wait for the buffered visits")
+        } catch (e: TimeoutException) {
+        }
+        release.countDown()
+        assertEquals(listOf("visit https://a.com", "visit https://b.com"), read.get(5, TimeUnit.SECONDS))
+    }
+}
@@ -0,0 +1,88 @@
+package com.igalia.wolvic.browser
+
+import kotlinx.coroutines.delay
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class StoreScopeTest {
+
+    private val scope = StoreScope("StoreScopeTest", 2)
+
+    @Test
+    fun `Operations run on the threads of the scope`() {
+        val thread = scope.future { Thread.currentThread().name }.get(5, TimeUnit.SECONDS)
+        assertTrue(thread, thread.startsWith("StoreScopeTest-"))
+    }
+
+    @Test
+    fun `A newer operation cancels the previous one with the same key`() {
+        val started = CountDownLatch(1)
+        val stopped = CountDownLatch(1)
+        val first = scope.latest("suggestions") {
+            try {
+                started.countDown()
+                delay(10_000)
+                "first"
+            } finally {
+                stopped.countDown()
+            }
+        }
+        assertTrue(started.await(5, TimeUnit.SECONDS))
+        val second = scope.latest("suggestions") { "second" }
+
+        assertTrue(first.isCancelled)
+        assertTrue(stopped.await(5, TimeUnit.SECONDS))
+        assertEquals("second", second.get(5, TimeUnit.SECONDS))
+    }
+
+    @Test
+    fun `Operations with other keys are not cancelled`() {
+        val release = CountDownLatch(1)
+        val first = scope.latest("history") {
+            release.await(5, TimeUnit.SECONDS)
+            "history"
+        }
+        val second = scope.latest("bookmarks") { "bookmarks" }
+        val third = scope.future { "future" }
+
+        assertEquals("bookmarks", second.get(5, TimeUnit.SECONDS))
+        assertEquals("future", third.get(5, TimeUnit.SECONDS))
+        release.countDown()
+        assertEquals("history", first.get(5, TimeUnit.SECONDS))
+        assertFalse(first.isCancelled)
+    }
+
+    @Test
+    fun `Operations are counted`() {
+        val release = CountDownLatch(1)
+        val running = scope.future { release.await(5, TimeUnit.SECONDS) }
+        assertEquals(1, scope.inFlightOperations)
+
+        scope.future { "completed" }.get(5, TimeUnit.SECONDS)
+        val failed = scope.future { throw IllegalStateException() }
+        val cancelled = scope.latest("suggestions") { delay(10_000) }
+        scope.latest("suggestions") { "newer" }.get(5, TimeUnit.SECONDS)
+        release.countDown()
+        running.get(5, TimeUnit.SECONDS)
+
+        assertTrue(cancelled.isCancelled)
+        assertTrue(failed.isCompletedExceptionally)
+        // The counters are updated right after the futures complete.
+        val deadline = System.currentTimeMillis() + 5000
+        while (scope.inFlightOperations > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        assertEquals(0, scope.inFlightOperations)
+        assertEquals(3, scope.completedOperations)
+        assertEquals(1, scope.cancelledOperations)
+        assertEquals(1, scope.failedOperations)
+        assertEquals(3, scope.toJson().getLong("completed"))
+    }
+}
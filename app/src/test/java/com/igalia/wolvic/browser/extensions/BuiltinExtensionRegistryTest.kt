@@ -0,0 +1,67 @@
+package com.igalia.wolvic.browser.extensions
+
+import android.content.Context
+import android.util.Pair
+import androidx.test.core.app.ApplicationProvider
+import com.igalia.wolvic.telemetry.TelemetryService
+import mozilla.components.concept.engine.webextension.WebExtensionRuntime
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class BuiltinExtensionRegistryTest {
+
+    private lateinit var context: Context
+    private lateinit var registry: BuiltinExtensionRegistry
+
+    private val youtube = Pair("fxr-webcompat_youtube@mozilla.org", "resource://android/assets/extensions/fxr_youtube/")
+
+    @Before
+    fun setup() {
+        context = ApplicationProvider.getApplicationContext()
+        val executor = Executor { it.run() }
+        registry = BuiltinExtensionRegistry(context, object : WebExtensionRuntime {}, executor, executor, executor)
+    }
+
+    private fun prefs() = context.getSharedPreferences(BuiltinExtensionRegistry.PREFS_NAME, Context.MODE_PRIVATE)
+
+    @Test
+    fun `Extensions are only installed if their assets changed`() {
+        assertFalse(registry.isInstalled(youtube.first, "hash1"))
+        registry.setInstalled(youtube.first, "hash1")
+        assertTrue(registry.isInstalled(youtube.first, "hash1"))
+        assertFalse(registry.isInstalled(youtube.first, "hash2"))
+        // Extensions that can't be hashed are always installed.
+        assertFalse(registry.isInstalled(youtube.first, null))
+
+        // Failed installs are retried.
+        registry.setInstalled(youtube.first, null)
+        assertFalse(registry.isInstalled(youtube.first, "hash1"))
+    }
+
+    @Test
+    fun `Asset hashes are cached until the app is updated`() {
+        // Missing assets can't be hashed.
+        assertTrue(registry.getAssetHashes(listOf(youtube)).isEmpty())
+
+        prefs().edit().putString(youtube.first + ".assets", "cached").commit()
+        assertEquals(mapOf(youtube.first to "cached"), registry.getAssetHashes(listOf(youtube)))
+
+        prefs().edit().putLong("package_update_time", -2).commit()
+        assertTrue(registry.getAssetHashes(listOf(youtube)).isEmpty())
+    }
+
+    @Test
+    fun `Install times are reported by assets directory`() {
+        assertEquals("extensions/fxr_youtube", BuiltinExtensionRegistry.getAssetsPath(youtube.second))
+        assertEquals(TelemetryService.Performance.EXTENSION_INSTALL + ":fxr_youtube",
+                BuiltinExtensionRegistry.getMetricName(youtube.second))
+        assertNull(BuiltinExtensionRegistry.getMetricName("https://example.com/extension.xpi"))
+    }
+}
@@ -0,0 +1,137 @@
+package com.igalia.wolvic.crashreporting
+
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+import java.io.IOException
+import java.util.concurrent.Executors
+import java.util.concurrent.ScheduledExecutorService
+import java.util.function.LongSupplier
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class CrashUploadQueueTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private var now = 1000L
+    private var online = true
+    private val uploads = mutableListOf<String>()
+    private lateinit var executor: ScheduledExecutorService
+
+    // Stands in for the crash server, receiving the decompressed files.
+    private val uploader = CrashUploadQueue.Uploader { dumpFile, extraFile ->
+        if (!online) {
+            throw IOException("Network unreachable")
+        }
+        uploads.add(dumpFile.readText() + "|" + extraFile.readText())
+        "crash-id"
+    }
+
+    @Before
+    fun setup() {
+        executor = Executors.newSingleThreadScheduledExecutor()
+    }
+
+    @After
+    fun tearDown() {
+        executor.shutdownNow()
+    }
+
+    private fun createQueue() = CrashUploadQueue(File(folder.root, "queue"), folder.newFolder(),
+            uploader, executor, LongSupplier { now })
+
+    private fun crashFile(content: String) = folder.newFile().apply { writeText(content) }
+
+    @Test
+    fun `Crashes are queued once and uploaded`() {
+        val queue = createQueue()
+        val dump = crashFile("minidump")
+        val extra = crashFile("{\"ProductName\":\"Wolvic\"}")
+        assertTrue(queue.add(dump, extra))
+        assertFalse(queue.add(dump, extra))
+        assertFalse(queue.add(crashFile("x".repeat(10)), File(folder.root, "missing")))
+        assertEquals(1, queue.entries.size)
+
+        queue.uploadPending()
+        assertEquals(listOf("minidump|{\"ProductName\":\"Wolvic\"}"), uploads)
+        assertTrue(queue.entries.isEmpty())
+        assertTrue(File(folder.root, "queue").list()!!.isEmpty())
+    }
+
+    @Test
+    fun `Failed uploads are retried with backoff`() {
+        online = false
+        val queue = createQueue()
+        queue.add(crashFile("minidump"), crashFile("{}"))
+
+        queue.uploadPending()
+        assertEquals(1, queue.entries[0].attempts)
+        assertEquals(now + CrashUploadQueue.INITIAL_BACKOFF, queue.entries[0].nextAttempt)
+
+        // The retry state survives restarts.
+        online = true
+        val restored = createQueue()
+        restored.uploadPending()
+        assertTrue(uploads.isEmpty())
+        now += CrashUploadQueue.INITIAL_BACKOFF
+        restored.uploadPending()
+        assertEquals(1, uploads.size)
+
+        assertEquals(2 * CrashUploadQueue.INITIAL_BACKOFF, CrashUploadQueue.getBackoff(2))
+        assertEquals(CrashUploadQueue.MAX_BACKOFF, CrashUploadQueue.getBackoff(100))
+    }
+
+    @Test
+    fun `Crashes are dropped after too many attempts`() {
+        online = false
+        val queue = createQueue()
+        queue.add(crashFile("minidump"), crashFile("{}"))
+        for (i in 0 until CrashUploadQueue.MAX_ATTEMPTS) {
+            now += CrashUploadQueue.MAX_BACKOFF
+            queue.uploadPending()
+        }
+        assertTrue(queue.entries.isEmpty())
+    }
+
+    @Test
+    fun `The queue is bounded`() {
+        val queue = createQueue()
+        for (i in 0 until CrashUploadQueue.MAX_ENTRIES + 5) {
+            now++
+            assertTrue(queue.add(crashFile("minidump $i"), crashFile("{}")))
+        }
+        val entries = queue.entries
+        assertEquals(CrashUploadQueue.MAX_ENTRIES, entries.size)
+        // The oldest crashes are dropped first.
+        assertEquals(1006L, entries[0].created)
+    }
+
+    @Test
+    fun `Crash files are only deleted once queued`() {
+        val queue = createQueue()
+        val dump = crashFile("minidump")
+        val extra = crashFile("{}")
+        // The queue directory can't be created.
+        File(folder.root, "queue").writeText("")
+        queue.enqueue(dump.path, extra.path)
+        executor.submit {}.get()
+        assertTrue(dump.exists())
+        assertTrue(extra.exists())
+
+        File(folder.root, "queue").delete()
+        queue.enqueue(dump.path, extra.path)
+        executor.submit {}.get()
+        assertFalse(dump.exists())
+        assertFalse(extra.exists())
+        assertEquals(1, queue.entries.size)
+    }
+}
@@ -0,0 +1,95 @@
+package com.igalia.wolvic.geolocation
+
+import androidx.test.core.app.ApplicationProvider
+import com.igalia.wolvic.TestApplication
+import com.igalia.wolvic.browser.SettingsStore
+import kotlinx.coroutines.CompletableDeferred
+import kotlinx.coroutines.Dispatchers
+import mozilla.components.service.location.LocationService
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE, application = TestApplication::class)
+class RegionProviderTest {
+
+    private lateinit var settings: SettingsStore
+    private var now = 1000L
+    private var fetches = 0
+    private var response: CompletableDeferred<LocationService.Region?> = CompletableDeferred(SPAIN)
+
+    // Stands in for the location service.
+    private val fetchRegion: suspend () -> LocationService.Region? = {
+        fetches++
+        response.await()
+    }
+
+    @Before
+    fun setup() {
+        settings = SettingsStore.getInstance(ApplicationProvider.getApplicationContext<TestApplication>())
+        settings.geolocationData = ""
+        settings.geolocationDataTimestamp = 0
+    }
+
+    private fun createProvider() = RegionProvider(settings, fetchRegion, { now }, Dispatchers.Unconfined)
+
+    @Test
+    fun `The region is fetched and stored`() {
+        val provider = createProvider()
+        assertNull(provider.getRegion())
+        assertTrue(provider.isExpired())
+
+        assertEquals("ES", provider.update().get()!!.countryCode)
+        assertEquals("ES", GeolocationData.parse(settings.geolocationData)!!.countryCode)
+        assertEquals(now, settings.geolocationDataTimestamp)
+        // The parsed region is reused until it changes.
+        assertSame(provider.getRegion(), provider.getRegion())
+    }
+
+    @Test
+    fun `The region is fetched once per session`() {
+        val provider = createProvider()
+        provider.update().get()
+        now += RegionProvider.REGION_TTL + 1
+        assertTrue(provider.isExpired())
+        provider.update().get()
+        assertEquals(1, fetches)
+
+        // A new session only fetches the region again once it has expired.
+        createProvider().update().get()
+        assertEquals(2, fetches)
+        createProvider().update().get()
+        assertEquals(2, fetches)
+    }
+
+    @Test
+    fun `Concurrent updates share the same fetch`() {
+        response = CompletableDeferred()
+        val provider = createProvider()
+        val first = provider.update()
+        val second = provider.update()
+        assertSame(first, second)
+        assertFalse(first.isDone)
+
+        response.complete(SPAIN)
+        assertEquals("ES", second.get()!!.countryCode)
+        assertEquals(1, fetches)
+    }
+
+    @Test
+    fun `Failed fetches keep the stored region`() {
+        settings.geolocationData = GeolocationData.create("FR", "France").toString()
+        now += RegionProvider.REGION_TTL + 1
+        response = CompletableDeferred(null)
+        assertEquals("FR", createProvider().update().get()!!.countryCode)
+        assertEquals(1, fetches)
+    }
+
+    companion object {
+        val SPAIN = LocationService.Region("ES", "Spain")
+    }
+}
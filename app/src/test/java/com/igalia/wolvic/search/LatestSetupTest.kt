@@ -0,0 +1,80 @@
+package com.igalia.wolvic.search
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class LatestSetupTest {
+
+    private val tasks = ArrayList<Runnable>()
+    private val executor = Executor { tasks.add(it) }
+
+    @Test
+    fun `The fallback is used until a setup finishes`() {
+        val setup = LatestSetup(executor, "fallback")
+        val ready = setup.whenReady()
+        setup.start { "first" }
+
+        assertEquals("fallback", setup.get())
+        assertFalse(setup.isReady)
+        assertFalse(ready.isDone)
+
+        tasks.removeAt(0).run()
+        assertEquals("first", setup.get())
+        assertTrue(setup.isReady)
+        assertEquals("first", ready.join())
+    }
+
+    @Test
+    fun `A stale setup doesn't replace a newer one`() {
+        val setup = LatestSetup(executor, "fallback")
+        val first = setup.start { "first" }
+        setup.start { "second" }
+
+        // The newer setup finishes first.
+        tasks.removeAt(1).run()
+        assertEquals("second", setup.get())
+        tasks.removeAt(0).run()
+        assertEquals("first", first.join())
+        assertEquals("second", setup.get())
+    }
+
+    @Test
+    fun `Readers wait for the latest setup, not a stale one`() {
+        val setup = LatestSetup(executor, "fallback")
+        val ready = setup.whenReady()
+        setup.start { "first" }
+        setup.start { "second" }
+
+        tasks.removeAt(0).run()
+        assertEquals("fallback", setup.get())
+        assertFalse(setup.isReady)
+        assertFalse(ready.isDone)
+
+        tasks.removeAt(0).run()
+        assertEquals("second", setup.get())
+        assertEquals("second", ready.join())
+    }
+
+    @Test
+    fun `A failed setup is replaced by the next one`() {
+        val setup = LatestSetup(executor, "fallback")
+        val failed = setup.whenReady()
+        setup.start { throw IllegalStateException() }
+        tasks.removeAt(0).run()
+        assertTrue(failed.isCompletedExceptionally)
+        assertFalse(setup.isReady)
+        assertEquals("fallback", setup.get())
+
+        val ready = setup.whenReady()
+        setup.start { "second" }
+        tasks.removeAt(0).run()
+        assertTrue(setup.isReady)
+        assertEquals("second", ready.join())
+    }
+}
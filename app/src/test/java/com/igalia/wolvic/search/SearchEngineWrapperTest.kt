@@ -0,0 +1,19 @@
+package com.igalia.wolvic.search
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SearchEngineWrapperTest {
+
+    @Test
+    fun `Saved engines encode the query in their search URL`() {
+        val state = SearchEngineWrapper.EngineState("example", "Example",
+                "https://example.com/search?q=wolvic_search_terms&client=wolvic", null)
+        assertEquals("https://example.com/search?q=a%20b%26c&client=wolvic", state.buildSearchUrl("a b&c"))
+    }
+}
@@ -0,0 +1,97 @@
+package com.igalia.wolvic.search.suggestions
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CompletableFuture
+import java.util.function.LongSupplier
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SearchSuggestionsCacheTest {
+
+    private var now = 0L
+    private val cache = SearchSuggestionsCache(LongSupplier { now })
+    private val fetched = mutableListOf<String>()
+    private val pending = mutableMapOf<String, CompletableFuture<List<String>>>()
+
+    private val fetcher = SearchSuggestionsCache.Fetcher { query ->
+        fetched.add(query)
+        CompletableFuture.completedFuture(SERVER[query] ?: emptyList())
+    }
+
+    private val slowFetcher = SearchSuggestionsCache.Fetcher { query ->
+        fetched.add(query)
+        CompletableFuture<List<String>>().also { pending[query] = it }
+    }
+
+    private fun get(query: String, engine: String = "google", fetcher: SearchSuggestionsCache.Fetcher = this.fetcher) =
+            cache.get(engine, "en-US", query, fetcher).get()
+
+    @Test
+    fun `Suggestions are cached by engine and query`() {
+        assertEquals(SERVER["wolv"], get("wolv"))
+        assertEquals(SERVER["wolv"], get("wolv"))
+        assertEquals(listOf("wolv"), fetched)
+
+        get("wolv", engine = "bing")
+        assertEquals(listOf("wolv", "wolv"), fetched)
+        assertEquals(1f / 3, cache.hitRatio, 0.001f)
+    }
+
+    @Test
+    fun `Cached suggestions expire`() {
+        get("wolv")
+        now += SearchSuggestionsCache.TTL + 1
+        get("wolv")
+        assertEquals(listOf("wolv", "wolv"), fetched)
+    }
+
+    @Test
+    fun `Complete results of shorter queries are reused`() {
+        get("wolv")
+        assertEquals(listOf("wolvic browser", "Wolvic VR"), get("wolvic"))
+        assertEquals(listOf("wolv"), fetched)
+
+        // Truncated results could be missing suggestions for the longer query.
+        get("a")
+        get("ab")
+        assertEquals(listOf("wolv", "a", "ab"), fetched)
+    }
+
+    @Test
+    fun `Identical queries share the same fetch`() {
+        val first = cache.get("google", "en-US", "wolv", slowFetcher)
+        val second = cache.get("google", "en-US", "wolv", slowFetcher)
+        assertSame(first, second)
+        assertEquals(listOf("wolv"), fetched)
+
+        pending["wolv"]!!.complete(SERVER["wolv"])
+        assertEquals(SERVER["wolv"], get("wolv"))
+        assertEquals(1, fetched.size)
+    }
+
+    @Test
+    fun `Failed fetches are not cached`() {
+        cache.get("google", "en-US", "wolv", slowFetcher)
+        pending["wolv"]!!.completeExceptionally(RuntimeException("offline"))
+        get("wolv")
+        assertEquals(listOf("wolv", "wolv"), fetched)
+    }
+
+    @Test
+    fun `The cache is bounded`() {
+        for (i in 0 until SearchSuggestionsCache.MAX_ENTRIES * 2) {
+            get("query $i")
+        }
+        assertEquals(SearchSuggestionsCache.MAX_ENTRIES, cache.size())
+    }
+
+    companion object {
+        val SERVER = mapOf(
+                "wolv" to listOf("wolves", "wolvic browser", "Wolvic VR", "wolverine"),
+                "a" to (1..SearchSuggestionsCache.COMPLETE_RESULT_SIZE).map { "a$it" })
+    }
+}
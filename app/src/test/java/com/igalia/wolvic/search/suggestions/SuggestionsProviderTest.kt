@@ -0,0 +1,34 @@
+package com.igalia.wolvic.search.suggestions
+
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.concurrent.CancellationException
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CompletionException
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SuggestionsProviderTest {
+
+    @Test
+    fun `A superseded query is a cancellation`() {
+        val query = CompletableFuture<List<String>>()
+        val dependent = query.thenApply { it.size }
+        query.cancel(false)
+
+        var error: Throwable? = null
+        dependent.exceptionally { error = it; 0 }
+        assertTrue(error is CompletionException)
+        assertTrue(SuggestionsProvider.isCancellation(error!!))
+        assertTrue(SuggestionsProvider.isCancellation(CancellationException()))
+    }
+
+    @Test
+    fun `Failures aren't cancellations`() {
+        assertFalse(SuggestionsProvider.isCancellation(IllegalStateException()))
+        assertFalse(SuggestionsProvider.isCancellation(CompletionException(IllegalStateException())))
+    }
+}
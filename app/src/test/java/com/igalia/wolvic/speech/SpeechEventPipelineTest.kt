@@ -0,0 +1,109 @@
+package com.igalia.wolvic.speech
+
+import android.os.Looper
+import org.junit.After
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import org.robolectric.shadows.ShadowLooper
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class SpeechEventPipelineTest {
+
+    private lateinit var pipeline: SpeechEventPipeline
+    private val levels = mutableListOf<Int>()
+    private val transcripts = mutableListOf<Pair<String, TranscriptDiff>>()
+
+    private val listener = object : SpeechEventPipeline.Listener {
+        override fun onMicLevel(level: Int) {
+            levels.add(level)
+        }
+
+        override fun onPartialResult(transcription: String, diff: TranscriptDiff) {
+            transcripts.add(Pair(transcription, diff))
+        }
+    }
+
+    @Before
+    fun setup() {
+        ShadowLooper.pauseMainLooper()
+        pipeline = SpeechEventPipeline(Looper.getMainLooper(), 60f)
+        pipeline.start(listener)
+    }
+
+    @After
+    fun tearDown() {
+        ShadowLooper.unPauseMainLooper()
+    }
+
+    @Test
+    fun `Only the latest level of a frame is delivered`() {
+        pipeline.postMicLevel(1)
+        pipeline.postMicLevel(2)
+        pipeline.postMicLevel(3)
+        ShadowLooper.runUiThreadTasks()
+
+        assertEquals(listOf(3), levels)
+        assertEquals(3, pipeline.receivedCount)
+        assertEquals(1, pipeline.deliveredCount)
+        assertEquals(2, pipeline.coalescedCount)
+    }
+
+    @Test
+    fun `Events are delivered at most once per frame`() {
+        pipeline.postMicLevel(1)
+        ShadowLooper.runUiThreadTasks()
+        pipeline.postMicLevel(2)
+        ShadowLooper.runUiThreadTasks()
+        assertEquals(listOf(1), levels)
+
+        ShadowLooper.idleMainLooper(SpeechEventPipeline.DEFAULT_FRAME_INTERVAL + 1)
+        assertEquals(listOf(1, 2), levels)
+    }
+
+    @Test
+    fun `Transcripts are delivered with their difference to the previous one`() {
+        pipeline.postPartialResult("hello")
+        ShadowLooper.idleMainLooper(SpeechEventPipeline.DEFAULT_FRAME_INTERVAL + 1)
+        pipeline.postPartialResult("hello world")
+        ShadowLooper.idleMainLooper(SpeechEventPipeline.DEFAULT_FRAME_INTERVAL + 1)
+        pipeline.postPartialResult("hello worl")
+        pipeline.postPartialResult("hello wore")
+        ShadowLooper.idleMainLooper(SpeechEventPipeline.DEFAULT_FRAME_INTERVAL + 1)
+        // Repeated transcripts are not delivered again.
+        pipeline.postPartialResult("hello wore")
+        ShadowLooper.idleMainLooper(SpeechEventPipeline.DEFAULT_FRAME_INTERVAL + 1)
+
+        assertEquals(listOf("hello", "hello world", "hello wore"), transcripts.map { it.first })
+        val diff = transcripts[2].second
+        assertEquals(9, diff.unchanged)
+        assertEquals(2, diff.removed)
+        assertEquals("e", diff.inserted)
+        assertEquals("hello wore", diff.apply("hello world"))
+        assertEquals(2, pipeline.coalescedCount)
+    }
+
+    @Test
+    fun `Pending events are dropped when stopped`() {
+        pipeline.postMicLevel(1)
+        pipeline.postPartialResult("hello")
+        pipeline.stop()
+        pipeline.postMicLevel(2)
+        ShadowLooper.idleMainLooper(SpeechEventPipeline.DEFAULT_FRAME_INTERVAL + 1)
+
+        assertTrue(levels.isEmpty())
+        assertTrue(transcripts.isEmpty())
+        assertEquals(3, pipeline.droppedCount)
+    }
+
+    @Test
+    fun `Surrogate pairs are not split`() {
+        val diff = TranscriptDiff.compute("a😀", "a😁")
+        assertEquals(1, diff.unchanged)
+        assertEquals("😁", diff.inserted)
+    }
+}
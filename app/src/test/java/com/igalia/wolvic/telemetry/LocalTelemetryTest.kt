@@ -0,0 +1,139 @@
+package com.igalia.wolvic.telemetry
+
+import android.os.Bundle
+import org.json.JSONObject
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class LocalTelemetryTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var telemetry: LocalTelemetry
+
+    @Before
+    fun setup() {
+        telemetry = LocalTelemetry(folder.root)
+        telemetry.start()
+    }
+
+    @Test
+    fun `Events are counted only while started`() {
+        telemetry.customEvent("tab_activated")
+        telemetry.customEvent("tab_activated", Bundle())
+        telemetry.stop()
+        telemetry.customEvent("tab_activated")
+        telemetry.timingEvent(TelemetryService.Performance.TAB_SWITCH, 1000)
+
+        assertEquals(2, telemetry.getCounter("tab_activated"))
+        assertEquals(0, telemetry.getHistogram(TelemetryService.Performance.TAB_SWITCH).count)
+    }
+
+    @Test
+    fun `Histogram percentiles are within the bucket precision`() {
+        val histogram = LatencyHistogram()
+        for (value in 1L..10000L) {
+            histogram.record(value)
+        }
+
+        assertEquals(10000, histogram.count)
+        assertEquals(1, histogram.min)
+        assertEquals(10000, histogram.max)
+        assertEquals(5000.5, histogram.mean, 0.001)
+        assertWithin(5000, histogram.getPercentile(50.0))
+        assertWithin(9900, histogram.getPercentile(99.0))
+        assertEquals(10000, histogram.getPercentile(100.0))
+    }
+
+    @Test
+    fun `Histogram buckets cover the whole range`() {
+        var previous = -1L
+        var index = 0
+        while (LatencyHistogram.lowerBound(index) < LatencyHistogram.MAX_VALUE &&
+                LatencyHistogram.upperBound(index) < LatencyHistogram.MAX_VALUE) {
+            val lower = LatencyHistogram.lowerBound(index)
+            assertEquals(previous + 1, lower)
+            assertEquals(index, LatencyHistogram.indexOf(lower))
+            assertEquals(index, LatencyHistogram.indexOf(LatencyHistogram.upperBound(index)))
+            previous = LatencyHistogram.upperBound(index)
+            index++
+        }
+
+        val histogram = LatencyHistogram()
+        histogram.record(-5)
+        histogram.record(Long.MAX_VALUE)
+        assertEquals(0, histogram.min)
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.max)
+    }
+
+    @Test
+    fun `Records persist across instances and wrap around`() {
+        val file = File(folder.root, "ring")
+        val ring = MetricsRingBuffer(file, 4)
+        for (i in 1..6) {
+            ring.append(i.toLong(), MetricsRingBuffer.TYPE_TIMING, "event_$i", i * 10L)
+        }
+        ring.flush()
+
+        val records = MetricsRingBuffer(file, 4).read()
+        assertEquals(listOf("event_3", "event_4", "event_5", "event_6"), records.map { it.name })
+        assertEquals(listOf(30L, 40L, 50L, 60L), records.map { it.value })
+
+        // A different capacity doesn't match the stored layout, so the file is started again.
+        assertTrue(MetricsRingBuffer(file, 8).read().isEmpty())
+    }
+
+    @Test
+    fun `Long names are truncated`() {
+        val ring = MetricsRingBuffer(File(folder.root, "ring"), 4)
+        ring.append(0, MetricsRingBuffer.TYPE_COUNTER, "x".repeat(100), 1)
+        assertEquals(MetricsRingBuffer.MAX_NAME_LENGTH, ring.read()[0].name.length)
+    }
+
+    @Test
+    fun `Metrics are exported as JSON`() {
+        telemetry.customEvent("voiceInputEvent")
+        telemetry.timingEvent(TelemetryService.Performance.PAGE_LOAD, 120000)
+        telemetry.timingEvent(TelemetryService.Performance.PAGE_LOAD, 80000)
+
+        val json = telemetry.toJson()
+        assertEquals(1, json.getJSONObject("counters").getLong("voiceInputEvent"))
+        val pageLoad = json.getJSONObject("histograms").getJSONObject(TelemetryService.Performance.PAGE_LOAD)
+        assertEquals(2, pageLoad.getLong("count"))
+        assertEquals(120000, pageLoad.getLong("max"))
+        assertEquals(3, json.getJSONArray("records").length())
+
+        val exported = telemetry.export(folder.root)
+        assertNotNull(exported)
+        assertTrue(exported!!.readText().contains(TelemetryService.Performance.PAGE_LOAD))
+
+        telemetry.reset()
+        assertEquals(0, telemetry.toJson().getJSONArray("records").length())
+    }
+
+    @Test
+    fun `Snapshots are taken when exporting`() {
+        var operations = 1
+        telemetry.addSnapshot("historyStore") { JSONObject().put("inFlight", operations) }
+        operations = 3
+        assertEquals(3, telemetry.toJson().getJSONObject("snapshots").getJSONObject("historyStore").getInt("inFlight"))
+
+        telemetry.removeSnapshot("historyStore")
+        assertEquals(0, telemetry.toJson().getJSONObject("snapshots").length())
+    }
+
+    private fun assertWithin(expected: Long, actual: Long) {
+        val error = Math.abs(expected - actual).toDouble() / expected
+        assertTrue("$actual is not close to $expected", error <= 1.0 / LatencyHistogram.SUB_BUCKETS)
+    }
+}
@@ -0,0 +1,81 @@
+package com.igalia.wolvic.telemetry
+
+import android.os.Looper
+import org.json.JSONObject
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class StallDetectorTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var detector: StallDetector
+
+    @Before
+    fun setup() {
+        detector = StallDetector(Looper.getMainLooper(), File(folder.root, "stalls.json"))
+    }
+
+    private fun frame(className: String, method: String, line: Int) =
+            StackTraceElement(className, method, "${className.substringAfterLast('.')}.java", line)
+
+    private val settingsCommit = arrayOf(
+            frame("android.app.SharedPreferencesImpl\$EditorImpl", "commit", 10),
+            frame("com.igalia.wolvic.browser.SettingsStore", "setEnvironment", 20),
+            frame("com.igalia.wolvic.ui.widgets.Windows", "onTabSelect", 30),
+            frame("android.os.Looper", "loop", 40))
+
+    @Test
+    fun `Stalls are aggregated by the first app frame`() {
+        detector.record(settingsCommit, 120)
+        detector.record(settingsCommit, 300)
+        detector.record(arrayOf(frame("android.os.MessageQueue", "nativePollOnce", 1)), 150)
+        detector.record(null, 110)
+
+        val site = detector.getSite(StallDetector.getSiteName(settingsCommit))
+        assertNotNull(site)
+        assertTrue(site!!.name.contains("SettingsStore.setEnvironment"))
+        assertEquals(2, site.count)
+        assertEquals(420, site.totalMs)
+        assertEquals(300, site.maxMs)
+        assertEquals(settingsCommit.size, site.stack.size)
+        assertNotNull(detector.getSite(StallDetector.UNSAMPLED_SITE))
+    }
+
+    @Test
+    fun `Memory is bounded`() {
+        for (i in 0 until StallDetector.MAX_SITES * 2) {
+            detector.record(arrayOf(frame("com.igalia.wolvic.Site$i", "run", i)), 100L + i)
+        }
+
+        val json = detector.toJson()
+        assertEquals(StallDetector.MAX_SITES * 2, json.getInt("stalls"))
+        assertEquals(StallDetector.MAX_SITES, json.getJSONArray("sites").length())
+        assertEquals(StallDetector.MAX_RECENT_STALLS, json.getJSONArray("recent").length())
+        // The least costly call sites are the ones dropped.
+        assertNull(detector.getSite(StallDetector.getSiteName(arrayOf(frame("com.igalia.wolvic.Site0", "run", 0)))))
+    }
+
+    @Test
+    fun `The report is sorted by total time`() {
+        detector.record(arrayOf(frame("com.igalia.wolvic.Fast", "run", 1)), 100)
+        detector.record(settingsCommit, 500)
+
+        assertTrue(detector.writeReport())
+        val report = JSONObject(detector.reportFile.readText())
+        val sites = report.getJSONArray("sites")
+        assertEquals(2, sites.length())
+        assertEquals(500, sites.getJSONObject(0).getLong("totalMs"))
+        assertEquals(StallDetector.DEFAULT_THRESHOLD_MS, report.getLong("thresholdMs"))
+    }
+}
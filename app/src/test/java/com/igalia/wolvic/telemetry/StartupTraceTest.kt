@@ -0,0 +1,75 @@
+package com.igalia.wolvic.telemetry
+
+import org.json.JSONObject
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class StartupTraceTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    @Before
+    fun setup() {
+        StartupTrace.reset()
+    }
+
+    private fun events(): List<JSONObject> {
+        val array = StartupTrace.toJson().getJSONArray("traceEvents")
+        return (0 until array.length()).map { array.getJSONObject(it) }
+    }
+
+    @Test
+    fun `Spans are exported as complete events`() {
+        val outer = StartupTrace.begin("outer")
+        val value = StartupTrace.trace("inner") { 42 }
+        StartupTrace.instant("marker")
+        outer.end()
+        // Ending a span twice doesn't record it twice.
+        outer.end()
+
+        assertEquals(42, value)
+        val traced = events().filter { it.optString("cat") == "startup" && it.getString("name") != "Process.start" }
+        assertEquals(listOf("inner", "marker", "outer"), traced.map { it.getString("name") })
+
+        val inner = traced[0]
+        val outerEvent = traced[2]
+        assertEquals("X", outerEvent.getString("ph"))
+        assertTrue(outerEvent.getLong("ts") <= inner.getLong("ts"))
+        assertTrue(outerEvent.getLong("ts") + outerEvent.getLong("dur") >= inner.getLong("ts") + inner.getLong("dur"))
+        assertEquals("i", traced[1].getString("ph"))
+
+        // Every thread gets its name.
+        assertTrue(events().any { it.getString("ph") == "M" && it.getLong("tid") == inner.getLong("tid") })
+    }
+
+    @Test
+    fun `Recording stops when finished or full`() {
+        StartupTrace.finish()
+        StartupTrace.begin("ignored").end()
+        assertTrue(events().isEmpty())
+
+        StartupTrace.reset()
+        for (i in 0 until StartupTrace.MAX_EVENTS + 10) {
+            StartupTrace.instant("event $i")
+        }
+        assertFalse(StartupTrace.isRecording())
+        assertEquals(StartupTrace.MAX_EVENTS, events().count { it.getString("ph") == "i" })
+    }
+
+    @Test
+    fun `The trace is exported to a file`() {
+        StartupTrace.begin("span").end()
+        val file = StartupTrace.export(folder.root)
+        assertNotNull(file)
+        assertTrue(JSONObject(file!!.readText()).has("traceEvents"))
+    }
+}
@@ -0,0 +1,127 @@
+package com.igalia.wolvic.ui.keyboards
+
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+import java.util.concurrent.Executor
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class CandidateRankerTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private var now = 1000L
+    private lateinit var file: File
+
+    @Before
+    fun setup() {
+        file = File(folder.root, "user_dictionary.bin")
+    }
+
+    private fun createDictionary() = UserDictionary(file, Executor { it.run() }) { now }
+
+    private fun words(vararg values: String) =
+            values.map { KeyboardInterface.Words(2, "ni hao", it) }
+
+    @Test
+    fun `Picked candidates come first, the most picked first`() {
+        val dictionary = createDictionary()
+        val ranker = CandidateRanker(dictionary)
+        val candidates = words("你好", "拟好", "泥号", "尼豪")
+        assertSame(candidates, ranker.rank("nihao", candidates))
+
+        ranker.learn(candidates[2])
+        now += 1000
+        ranker.learn(candidates[3])
+        ranker.learn(candidates[3])
+
+        assertEquals(listOf("尼豪", "泥号", "你好", "拟好"), ranker.rank("nihao", candidates).map { it.value })
+    }
+
+    @Test
+    fun `Recent picks weigh more than old ones`() {
+        val dictionary = createDictionary()
+        dictionary.learn("nihao", "泥号")
+        dictionary.learn("nihao", "泥号")
+        now += 2 * UserDictionary.HALF_LIFE
+        dictionary.learn("nihao", "尼豪")
+
+        assertEquals(0.5f, dictionary.getWeight("ni hao", "泥号"), 0.01f)
+        assertEquals(listOf("尼豪", "泥号", "你好"),
+                CandidateRanker(dictionary).rank("nihao", words("你好", "泥号", "尼豪")).map { it.value })
+    }
+
+    @Test
+    fun `Picked candidates missing from the static ones are added`() {
+        val ranker = CandidateRanker(createDictionary())
+        ranker.learn(KeyboardInterface.Words(2, "ni hao", "妮好"))
+
+        val ranked = ranker.rank("nihao", words("你好"))
+        assertEquals(listOf("妮好", "你好"), ranked.map { it.value })
+        assertEquals(2, ranked[0].syllable)
+        // Only for the same code.
+        assertEquals(listOf("你"), ranker.rank("ni", listOf(KeyboardInterface.Words(1, "ni", "你"))).map { it.value })
+    }
+
+    @Test
+    fun `The picks are kept in the file`() {
+        createDictionary().apply {
+            learn("ni hao", "泥号")
+            learn("ni hao", "泥号")
+            learn("ma", "吗")
+        }
+
+        val dictionary = createDictionary()
+        assertEquals(2, dictionary.size())
+        assertEquals(2f, dictionary.getWeight("nihao", "泥号"), 0.01f)
+        assertEquals("ni hao", dictionary.getEntries("nihao")[0].code)
+    }
+
+    @Test
+    fun `A partially written pick is discarded`() {
+        createDictionary().apply {
+            learn("ma", "吗")
+            learn("ni hao", "泥号")
+        }
+        file.writeBytes(file.readBytes().copyOf(file.length().toInt() - 3))
+
+        assertEquals(1, createDictionary().size())
+        // The file was rewritten, so new picks are readable.
+        createDictionary().learn("ni", "你")
+        assertEquals(2, createDictionary().size())
+    }
+
+    @Test
+    fun `The file is compacted`() {
+        val dictionary = createDictionary()
+        for (i in 0 until 200) {
+            dictionary.learn("ma", "吗")
+        }
+        val length = file.length()
+        assertTrue(length < 100 * 24)
+        assertEquals(200f, createDictionary().getWeight("ma", "吗"), 0.01f)
+    }
+
+    @Test
+    fun `Only the first candidates are ranked, without duplicates`() {
+        val ranker = CandidateRanker(createDictionary())
+        val candidates = (0 until 400).map { KeyboardInterface.Words(1, "ma", "value$it") }
+        ranker.learn(candidates[10])
+        ranker.learn(candidates[300])
+        ranker.learn(candidates[300])
+
+        val ranked = ranker.rank("ma", candidates).map { it.value }
+        assertEquals(400, ranked.size)
+        assertEquals(listOf("value300", "value10", "value0"), ranked.take(3))
+        assertEquals(1, ranked.count { it == "value300" })
+        assertEquals(400, ranked.toSet().size)
+    }
+}
@@ -0,0 +1,102 @@
+package com.igalia.wolvic.ui.keyboards
+
+import android.content.Context
+import androidx.test.core.app.ApplicationProvider
+import com.igalia.wolvic.input.CustomKeyboard
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.util.Locale
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
+import java.util.concurrent.TimeUnit
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class KeyboardPreloaderTest {
+
+    private class FakeKeyboard(context: Context, private val keyboardLocale: Locale) : BaseKeyboard(context) {
+        val calls = ArrayList<String>()
+        var loading: CountDownLatch? = null
+        var release: CountDownLatch? = null
+
+        override fun getAlphabeticKeyboard(): CustomKeyboard = throw UnsupportedOperationException()
+        override fun getKeyboardTitle() = keyboardLocale.displayName
+        override fun getLocale() = keyboardLocale
+
+        override fun preload() {
+            loading?.countDown()
+            release?.await(5, TimeUnit.SECONDS)
+            synchronized(calls) { calls.add("preload") }
+        }
+
+        override fun preloadDictionaries() {
+            synchronized(calls) { calls.add("dictionaries") }
+        }
+    }
+
+    private val context = ApplicationProvider.getApplicationContext<Context>()
+    private val tasks = ArrayList<Runnable>()
+    private val executor = Executor { tasks.add(it) }
+
+    private fun runTasks() {
+        tasks.forEach { it.run() }
+        tasks.clear()
+    }
+
+    @Test
+    fun `Keyboards are preloaded once`() {
+        val preloader = KeyboardPreloader(executor)
+        val english = FakeKeyboard(context, Locale.ENGLISH)
+        val french = FakeKeyboard(context, Locale.FRENCH)
+
+        preloader.preload(listOf(english, french))
+        preloader.preload(listOf(french))
+        assertEquals(2, tasks.size)
+        runTasks()
+
+        assertEquals(listOf("preload", "dictionaries"), english.calls)
+        assertEquals(listOf("preload", "dictionaries"), french.calls)
+        preloader.claim(english)
+    }
+
+    @Test
+    fun `Claimed keyboards only preload their dictionaries`() {
+        val preloader = KeyboardPreloader(executor)
+        val keyboard = FakeKeyboard(context, Locale.CHINA)
+
+        preloader.claim(keyboard)
+        preloader.preload(listOf(keyboard))
+        runTasks()
+
+        assertEquals(listOf("dictionaries"), keyboard.calls)
+    }
+
+    @Test
+    fun `Claiming a keyboard being preloaded waits for it`() {
+        val preloader = KeyboardPreloader(Executor { Thread(it).start() })
+        val keyboard = FakeKeyboard(context, Locale.JAPANESE)
+        keyboard.loading = CountDownLatch(1)
+        keyboard.release = CountDownLatch(1)
+
+        preloader.preload(listOf(keyboard))
+        assertTrue(keyboard.loading!!.await(5, TimeUnit.SECONDS))
+        Thread {
+            Thread.sleep(50)
+            keyboard.release!!.countDown()
+        }.start()
+        preloader.claim(keyboard)
+
+        synchronized(keyboard.calls) {
+            assertEquals(listOf("preload", "dictionaries"), keyboard.calls)
+        }
+    }
+
+    @Test
+    fun `Metric names include the keyboard locale`() {
+        assertEquals("perf_keyboard_switch:zh-CN",
+                KeyboardPreloader.getMetricName("perf_keyboard_switch", FakeKeyboard(context, Locale.SIMPLIFIED_CHINESE)))
+    }
+}
@@ -0,0 +1,84 @@
+package com.igalia.wolvic.ui.keyboards
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class PinyinDecoderTest {
+
+    private val dictionary = HashMap<String, ChinesePinyinKeyboard.KeyMap>()
+    private val lookups = ArrayList<String>()
+
+    private fun add(key: String, code: String, vararg displays: String) {
+        val map = dictionary.getOrPut(key) { ChinesePinyinKeyboard.KeyMap() }
+        displays.forEach { map.displays.add(KeyboardInterface.Words(code.split(' ').size, code, it)) }
+    }
+
+    private fun createDecoder(maxKeyLength: Int = 5): PinyinDecoder {
+        add("ni", "ni", "你", "尼")
+        add("hao", "hao", "好")
+        add("ma", "ma", "吗")
+        add("nihao", "ni hao", "你好")
+        add("n", "n", "n")
+        add("h", "h", "h")
+        add("ha", "ha", "哈")
+        return PinyinDecoder(PinyinDecoder.Dictionary { lookups.add(it); dictionary[it] }, maxKeyLength)
+    }
+
+    @Test
+    fun `The longest keys are picked from the start`() {
+        val decoder = createDecoder()
+        decoder.setText("nihaoma")
+        assertEquals(listOf("你好", "吗"), decoder.getSegments().map { it.value })
+        assertEquals(listOf("ni hao", "ma"), decoder.getSegments().map { it.code })
+
+        val words = ArrayList<KeyboardInterface.Words>()
+        decoder.addPrefixCandidates(words)
+        assertEquals(listOf("你好", "你", "尼", "n"), words.map { it.value })
+    }
+
+    @Test
+    fun `Only the keys ending with the appended char are looked up`() {
+        val decoder = createDecoder(3)
+        val text = "nihaonihaonihao"
+        for (i in 1..text.length) {
+            lookups.clear()
+            decoder.setText(text.substring(0, i))
+            assertEquals(minOf(i, 3), lookups.size)
+        }
+        assertEquals("你好你好你好", decoder.getSegments().joinToString("") { it.value })
+    }
+
+    @Test
+    fun `Deleting chars rolls the lattice back`() {
+        val decoder = createDecoder()
+        decoder.setText("nihao")
+        decoder.setText("niha")
+        assertEquals(listOf("你", "哈"), decoder.getSegments().map { it.value })
+
+        lookups.clear()
+        decoder.setText("ni")
+        assertEquals(0, lookups.size)
+        assertEquals(listOf("你"), decoder.getSegments().map { it.value })
+
+        decoder.setText("nihao")
+        assertEquals(listOf("你好"), decoder.getSegments().map { it.value })
+    }
+
+    @Test
+    fun `Non lowercase chars are completed as they are`() {
+        val decoder = createDecoder()
+        decoder.setText("A12ni")
+        assertEquals(listOf("A12", "你"), decoder.getSegments().map { it.value })
+        // Keys without lowercase chars are never looked up.
+        assertEquals(listOf("A12n", "12n", "2n", "n", "A12ni", "12ni", "2ni", "ni", "i"), lookups)
+
+        val words = ArrayList<KeyboardInterface.Words>()
+        decoder.addPrefixCandidates(words)
+        assertEquals(listOf("A12", "A1", "A"), words.map { it.value })
+    }
+}
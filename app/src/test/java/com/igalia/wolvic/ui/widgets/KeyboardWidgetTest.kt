@@ -0,0 +1,39 @@
+package com.igalia.wolvic.ui.widgets
+
+import android.text.InputType
+import android.view.inputmethod.EditorInfo
+import org.junit.Assert.*
+import org.junit.Test
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class KeyboardWidgetTest {
+
+    private fun editorInfo(inputType: Int, imeOptions: Int = 0) = EditorInfo().apply {
+        this.inputType = inputType
+        this.imeOptions = imeOptions
+    }
+
+    @Test
+    fun `Picks in plain text fields are learned`() {
+        assertTrue(KeyboardWidget.isLearningAllowed(editorInfo(InputType.TYPE_CLASS_TEXT)))
+        assertTrue(KeyboardWidget.isLearningAllowed(editorInfo(InputType.TYPE_CLASS_TEXT or InputType.TYPE_TEXT_VARIATION_URI)))
+    }
+
+    @Test
+    fun `Picks in fields without personalized learning are not learned`() {
+        assertFalse(KeyboardWidget.isLearningAllowed(editorInfo(InputType.TYPE_CLASS_TEXT,
+                EditorInfo.IME_ACTION_GO or EditorInfo.IME_FLAG_NO_PERSONALIZED_LEARNING)))
+    }
+
+    @Test
+    fun `Picks in password fields are not learned`() {
+        assertFalse(KeyboardWidget.isLearningAllowed(editorInfo(InputType.TYPE_CLASS_TEXT or InputType.TYPE_TEXT_VARIATION_PASSWORD)))
+        assertFalse(KeyboardWidget.isLearningAllowed(editorInfo(InputType.TYPE_CLASS_TEXT or InputType.TYPE_TEXT_VARIATION_VISIBLE_PASSWORD)))
+        assertFalse(KeyboardWidget.isLearningAllowed(editorInfo(InputType.TYPE_CLASS_TEXT or InputType.TYPE_TEXT_VARIATION_WEB_PASSWORD)))
+        assertFalse(KeyboardWidget.isLearningAllowed(editorInfo(InputType.TYPE_CLASS_NUMBER or InputType.TYPE_NUMBER_VARIATION_PASSWORD)))
+    }
+}
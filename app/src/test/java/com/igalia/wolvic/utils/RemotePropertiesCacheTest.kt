@@ -0,0 +1,126 @@
+package com.igalia.wolvic.utils
+
+import mozilla.components.concept.fetch.Client
+import mozilla.components.concept.fetch.MutableHeaders
+import mozilla.components.concept.fetch.Request
+import mozilla.components.concept.fetch.Response
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class RemotePropertiesCacheTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private lateinit var server: FakeServer
+    private lateinit var file: File
+
+    @Before
+    fun setup() {
+        server = FakeServer(TestFileUtils.readTextFile(javaClass.classLoader!!, "environments/targetVersionEnvs.json")!!)
+        file = File(folder.root, "remote_properties")
+    }
+
+    @Test
+    fun `Properties are fetched and served from the file on the next launch`() {
+        val cache = RemotePropertiesCache(file, ENDPOINT, TTL)
+        assertNull(cache.properties)
+
+        assertTrue(cache.refresh(server, false))
+        assertEquals(1, server.requests.size)
+        assertNotNull(cache.properties)
+        assertTrue(file.exists())
+
+        val nextLaunch = RemotePropertiesCache(file, ENDPOINT, TTL)
+        assertEquals(cache.properties, nextLaunch.properties)
+        assertEquals(1, server.requests.size)
+    }
+
+    @Test
+    fun `Fresh properties are not fetched again`() {
+        val cache = RemotePropertiesCache(file, ENDPOINT, TTL)
+        cache.refresh(server, false)
+        assertFalse(cache.refresh(server, false))
+        assertEquals(1, server.requests.size)
+    }
+
+    @Test
+    fun `Stale properties are revalidated with a conditional request`() {
+        val cache = RemotePropertiesCache(file, ENDPOINT, 0)
+        cache.refresh(server, false)
+        val properties = cache.properties
+
+        assertFalse(cache.refresh(server, false))
+        assertEquals(2, server.requests.size)
+        assertEquals(server.etag, server.requests[1].headers?.get("If-None-Match"))
+        assertEquals(304, server.lastStatus)
+        assertEquals(properties, cache.properties)
+    }
+
+    @Test
+    fun `Listeners are notified when the properties change`() {
+        val cache = RemotePropertiesCache(file, ENDPOINT, 0)
+        var notifications = 0
+        cache.addListener { notifications++ }
+
+        cache.refresh(server, false)
+        assertEquals(1, notifications)
+
+        val previous = cache.properties
+        server.update(TestFileUtils.readTextFile(javaClass.classLoader!!, "environments/testNoEnvs.json")!!)
+        assertTrue(cache.refresh(server, false))
+        assertEquals(2, notifications)
+        assertNotEquals(previous, cache.properties)
+    }
+
+    @Test
+    fun `Failed requests keep the cached properties`() {
+        val cache = RemotePropertiesCache(file, ENDPOINT, 0)
+        cache.refresh(server, false)
+        val properties = cache.properties
+
+        server.status = 500
+        assertFalse(cache.refresh(server, true))
+        assertEquals(properties, cache.properties)
+    }
+
+    /**
+     * Stand-in for the properties endpoint that honors If-None-Match.
+     */
+    private class FakeServer(private var body: String) : Client() {
+        val requests = mutableListOf<Request>()
+        var etag = "\"1\""
+        var status = 200
+        var lastStatus = 0
+
+        fun update(newBody: String) {
+            body = newBody
+            etag = "\"${etag.trim('"').toInt() + 1}\""
+        }
+
+        override fun fetch(request: Request): Response {
+            requests.add(request)
+            lastStatus = when {
+                status != 200 -> status
+                request.headers?.get("If-None-Match") == etag -> 304
+                else -> 200
+            }
+            val content = if (lastStatus == 200) body else ""
+            return Response(request.url, lastStatus, MutableHeaders("ETag" to etag), Response.Body(content.byteInputStream()))
+        }
+    }
+
+    companion object {
+        private const val ENDPOINT = "https://example.com/props.json"
+        private const val TTL = 60 * 60 * 1000L
+    }
+}
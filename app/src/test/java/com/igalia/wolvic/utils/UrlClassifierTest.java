@@ -0,0 +1,136 @@
+package com.igalia.wolvic.utils;
+
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+/**
+ * Checks that {@link UrlClassifier} accepts exactly the same inputs as the regular expressions it
+ * replaced in {@link UrlUtils}.
+ */
+public class UrlClassifierTest {
+
+    private static final Pattern DOMAIN_PATTERN = Pattern.compile("^(http:\\/\\/www\\.|https:\\/\\/www\\.|http:\\/\\/|https:\\/\\/)?[a-zA-Z0-9]+([\\-\\.]{1}[a-zA-Z0-9]+)*\\.[a-zA-Z]{2,5}(:[0-9]{1,5})?(\\/[^ ]*)?$");
+    private static final Pattern IP_PATTERN = Pattern.compile("^(([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])\\.){3}([0-9]|[1-9][0-9]|1[0-9]{2}|2[0-4][0-9]|25[0-5])(:[0-9]+)?(/[^ ]*)?");
+    private static final Pattern LOCALHOST_PATTERN = Pattern.compile("^(localhost)(:[0-9]+)?(/[^ ]*)?", Pattern.CASE_INSENSITIVE);
+
+    private static final String[] CORPUS = {
+            "", " ", "a", "com", ".com", "a.c", "a.co", "a.com", "a.comme", "a.commer", "a.c0m",
+            "example.com", "www.example.com", "sub.example.co.uk", "my-site.org", "my--site.org",
+            "-site.org", "site-.org", "site.-org", "a.b-com", "a..com", "a.com.", "1.com", "123.45",
+            "http://example.com", "https://example.com", "http://www.example.com", "https://www.com",
+            "HTTP://example.com", "ftp://example.com", "http://", "https://", "http:/example.com",
+            "example.com:8080", "example.com:", "example.com:123456", "example.com:80/path",
+            "example.com/path?q=1#frag", "example.com/path with space", "example.com /path",
+            "example.com\n", "example.com\r\n", "example.com\r", "example.com\u0085",
+            "example.com\u2028", "example.com\u2029", "example.com\n\n", "example.com\t",
+            "example.com/\n", "ex\u00e4mple.com", "example.c\u00f6m", "search for something", "wolvic",
+            "0.0.0.0", "127.0.0.1", "255.255.255.255", "256.1.1.1", "1.2.3.256", "1.2.3.4abc",
+            "01.2.3.4", "1.02.3.4", "1.2.3", "1.2.3.", "1.2.3.x", "10.0.0.1", "172.16.0.1",
+            "192.168.1.1", "192.169.1.1", "1234.1.1.1", "http://192.168.0.1:8080/index.html",
+            "  192.168.0.1  ", "192.168.0.1/", "/192.168.0.1", "data:1.2.3.4", "data:localhost",
+            "localhost", "LOCALHOST", "LocalHost:8000", "localhos", "localhost.example.com",
+            "http://localhost/", "  localhost", "://localhost", "a://b://1.2.3.4", "1.2.3.4 extra",
+            "http://1.2.3.4/", "///", "/", "  /", "about:config", "resource://foo"
+    };
+
+    private static final String ALPHABET = "abcxyzHLOST0123456789019255.-:/ _\n\r\u0085\u2028\u00e9httpswwwlocal";
+    private static final String[] FRAGMENTS = {
+            "http://", "https://", "www.", "localhost", ".com", ".org", ".co.uk", ":8080", "/path",
+            "192.", "168.", "10.", "172.", "255.", "256.", "1.", "0.", "data:", "://", " ", "\r\n"
+    };
+
+    @Test
+    public void corpusMatchesRegularExpressions() {
+        for (String text : CORPUS) {
+            assertMatchesRegularExpressions(text);
+        }
+    }
+
+    @Test
+    public void randomInputsMatchRegularExpressions() {
+        Random random = new Random(42);
+        StringBuilder builder = new StringBuilder();
+        for (int n = 0; n < 200000; n++) {
+            builder.setLength(0);
+            int parts = random.nextInt(8);
+            for (int i = 0; i < parts; i++) {
+                if (random.nextBoolean()) {
+                    builder.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+                } else {
+                    int chars = 1 + random.nextInt(4);
+                    for (int j = 0; j < chars; j++) {
+                        builder.append(ALPHABET.charAt(random.nextInt(ALPHABET.length())));
+                    }
+                }
+            }
+            assertMatchesRegularExpressions(builder.toString());
+        }
+    }
+
+    @Test
+    public void classify() {
+        assertEquals(UrlClassifier.Type.DOMAIN, UrlClassifier.classify("example.com"));
+        assertEquals(UrlClassifier.Type.IP, UrlClassifier.classify("http://192.168.0.1/"));
+        assertEquals(UrlClassifier.Type.LOCALHOST, UrlClassifier.classify("localhost:8000"));
+        assertEquals(UrlClassifier.Type.TEXT, UrlClassifier.classify("search for something"));
+        assertEquals(UrlClassifier.Type.TEXT, UrlClassifier.classify(null));
+    }
+
+    @Test
+    public void classifyMatchesRegularExpressions() {
+        for (String text : CORPUS) {
+            UrlClassifier.Type expected;
+            if (DOMAIN_PATTERN.matcher(text).find()) {
+                expected = UrlClassifier.Type.DOMAIN;
+            } else if (LOCALHOST_PATTERN.matcher(stripProtocol(text).trim()).find()) {
+                expected = UrlClassifier.Type.LOCALHOST;
+            } else if (isIPUriWithRegularExpressions(text)) {
+                expected = UrlClassifier.Type.IP;
+            } else {
+                expected = UrlClassifier.Type.TEXT;
+            }
+            assertEquals("Input: \"" + text + "\"", expected, UrlClassifier.classify(text));
+        }
+    }
+
+    private static void assertMatchesRegularExpressions(String text) {
+        String message = "Input: \"" + text + "\"";
+        assertEquals(message, DOMAIN_PATTERN.matcher(text).find(), UrlClassifier.isDomain(text));
+        assertEquals(message, isIPUriWithRegularExpressions(text), UrlClassifier.isIPUri(text));
+        assertEquals(message, isLocalIPWithRegularExpressions(text), UrlClassifier.isLocalIP(text));
+    }
+
+    private static boolean isIPUriWithRegularExpressions(String text) {
+        String uri = stripProtocol(text).trim();
+        return LOCALHOST_PATTERN.matcher(uri).find() || IP_PATTERN.matcher(uri).find();
+    }
+
+    private static boolean isLocalIPWithRegularExpressions(String text) {
+        if (!isIPUriWithRegularExpressions(text)) {
+            return false;
+        }
+        String uri = stripProtocol(text).trim();
+        return uri.startsWith("10.") ||
+                uri.startsWith("172.") ||
+                uri.startsWith("192.168.") ||
+                LOCALHOST_PATTERN.matcher(uri).find();
+    }
+
+    // Same as UrlUtils.stripProtocol, which can't be used in a local unit test as UrlUtils
+    // depends on the Android framework.
+    private static String stripProtocol(String host) {
+        if (host.startsWith("data:")) {
+            return "";
+        }
+        int index = host.indexOf("://");
+        String result = index >= 0 ? host.substring(index + 3) : host;
+        if (result.endsWith("/")) {
+            result = result.substring(0, result.length() - 1);
+        }
+        return result;
+    }
+}
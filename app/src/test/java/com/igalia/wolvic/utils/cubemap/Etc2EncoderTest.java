@@ -0,0 +1,207 @@
+package com.igalia.wolvic.utils.cubemap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Decodes the output of {@link Etc2Encoder} to check its quality, and checks the KTX files the
+ * compressed faces are written to.
+ */
+public class Etc2EncoderTest {
+
+    private static final int SIZE = CubemapTranscoder.FACE_SIZE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void flatColorsAreEncodedExactly() {
+        int[] pixels = new int[16 * 16];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | (i < pixels.length / 2 ? 0x000000 : 0xffffff);
+        }
+        byte[] data = Etc2Encoder.encode(pixels, 16, 16);
+        assertEquals(Etc2Encoder.getCompressedSize(16, 16), data.length);
+        assertArrayEquals(pixels, decode(data, 16, 16));
+    }
+
+    @Test
+    public void gradientsKeepTheirQuality() {
+        int[] pixels = gradient(256, 256);
+        double psnr = psnr(pixels, decode(Etc2Encoder.encode(pixels, 256, 256), 256, 256));
+        assertTrue("PSNR " + psnr, psnr > 35);
+    }
+
+    @Test
+    public void noiseKeepsItsQuality() {
+        int[] pixels = noise(256, 256, new Random(7));
+        double psnr = psnr(pixels, decode(Etc2Encoder.encode(pixels, 256, 256), 256, 256));
+        assertTrue("PSNR " + psnr, psnr > 20);
+    }
+
+    @Test
+    public void differentialBlocksNeverOverflow() {
+        // An overflowing second base color would turn the block into a T, H or planar one.
+        Random random = new Random(11);
+        int[] pixels = new int[64 * 64];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        byte[] data = Etc2Encoder.encode(pixels, 64, 64);
+        for (int offset = 0; offset < data.length; offset += Etc2Encoder.BYTES_PER_BLOCK) {
+            long block = readBlock(data, offset);
+            if ((block >>> 33 & 1) == 1) {
+                for (int shift = 59; shift >= 43; shift -= 8) {
+                    int base = (int) (block >>> shift) & 0x1f;
+                    int delta = signExtend3((int) (block >>> (shift - 3)) & 7);
+                    assertTrue(base + delta >= 0 && base + delta <= 31);
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizesMustBeMultiplesOfTheBlockSize() {
+        Etc2Encoder.encode(new int[10 * 10], 10, 10);
+    }
+
+    @Test
+    public void headerMatchesTheBuiltinEnvironments() {
+        byte[] header = KtxWriter.header(KtxWriter.GL_COMPRESSED_RGB8_ETC2, 1024, 1024, 0x80000);
+        byte[] expected = {
+                (byte) 0xab, 0x4b, 0x54, 0x58, 0x20, 0x31, 0x31, (byte) 0xbb, 0x0d, 0x0a, 0x1a, 0x0a,
+                0x01, 0x02, 0x03, 0x04, 0, 0, 0, 0, 0x01, 0, 0, 0, 0, 0, 0, 0,
+                0x74, (byte) 0x92, 0, 0, 0x07, 0x19, 0, 0, 0, 0x04, 0, 0, 0, 0x04, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 0, 0x01, 0, 0, 0, 0x01, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0x08, 0
+        };
+        assertArrayEquals(expected, header);
+    }
+
+    @Test
+    public void facesAreWrittenToKtxFiles() throws Exception {
+        int[] pixels = gradient(SIZE, SIZE);
+        Random random = new Random(3);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] ^= random.nextInt(16) * 0x010101;
+        }
+        byte[] data = Etc2Encoder.encode(pixels, SIZE, SIZE);
+        assertEquals(Etc2Encoder.getCompressedSize(SIZE, SIZE), data.length);
+        double psnr = psnr(pixels, decode(data, SIZE, SIZE));
+        assertTrue("PSNR " + psnr, psnr > 30);
+
+        File ktx = folder.newFile("posx.ktx");
+        KtxWriter.write(ktx, KtxWriter.GL_COMPRESSED_RGB8_ETC2, SIZE, SIZE, data);
+        byte[] loaded = Files.readAllBytes(ktx.toPath());
+        assertEquals(KtxWriter.HEADER_SIZE + 4 + data.length, loaded.length);
+        assertArrayEquals(KtxWriter.header(KtxWriter.GL_COMPRESSED_RGB8_ETC2, SIZE, SIZE, data.length),
+                Arrays.copyOf(loaded, KtxWriter.HEADER_SIZE + 4));
+        assertArrayEquals(data, Arrays.copyOfRange(loaded, KtxWriter.HEADER_SIZE + 4, loaded.length));
+    }
+
+    private static int[] gradient(int width, int height) {
+        int[] pixels = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / (width - 1);
+                int g = y * 255 / (height - 1);
+                int b = (x + y) * 255 / (width + height - 2);
+                pixels[y * width + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        return pixels;
+    }
+
+    /**
+     * Detail over a flat color, as in sky and terrain textures. Full range noise is not used as
+     * ETC can't hold more than two hues per block.
+     */
+    private static int[] noise(int width, int height, Random random) {
+        int[] pixels = new int[width * height];
+        for (int i = 0; i < pixels.length; i++) {
+            int r = 90 + random.nextInt(48);
+            int g = 120 + random.nextInt(48);
+            int b = 160 + random.nextInt(48);
+            pixels[i] = 0xff000000 | (r << 16) | (g << 8) | b;
+        }
+        return pixels;
+    }
+
+    private static double psnr(int[] expected, int[] actual) {
+        double error = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int difference = ((expected[i] >> shift) & 0xff) - ((actual[i] >> shift) & 0xff);
+                error += difference * difference;
+            }
+        }
+        double mse = error / (expected.length * 3);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+
+    private static long readBlock(byte[] data, int offset) {
+        long block = 0;
+        for (int i = 0; i < Etc2Encoder.BYTES_PER_BLOCK; i++) {
+            block = (block << 8) | (data[offset + i] & 0xff);
+        }
+        return block;
+    }
+
+    private static int signExtend3(int value) {
+        return (value & 4) != 0 ? value - 8 : value;
+    }
+
+    /**
+     * Reference decoder for the individual and differential modes, following the ETC2 spec.
+     */
+    private static int[] decode(byte[] data, int width, int height) {
+        int[] pixels = new int[width * height];
+        int offset = 0;
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                long block = readBlock(data, offset);
+                offset += Etc2Encoder.BYTES_PER_BLOCK;
+
+                boolean differential = (block >>> 33 & 1) == 1;
+                boolean flip = (block >>> 32 & 1) == 1;
+                int[][] bases = new int[2][3];
+                for (int channel = 0; channel < 3; channel++) {
+                    if (differential) {
+                        int shift = 59 - channel * 8;
+                        int base = (int) (block >>> shift) & 0x1f;
+                        int delta = signExtend3((int) (block >>> (shift - 3)) & 7);
+                        bases[0][channel] = Etc2Encoder.expand5(base);
+                        bases[1][channel] = Etc2Encoder.expand5(base + delta);
+                    } else {
+                        int shift = 60 - channel * 8;
+                        bases[0][channel] = Etc2Encoder.expand4((int) (block >>> shift) & 0xf);
+                        bases[1][channel] = Etc2Encoder.expand4((int) (block >>> (shift - 4)) & 0xf);
+                    }
+                }
+                int[] tables = {(int) (block >>> 37) & 7, (int) (block >>> 34) & 7};
+
+                for (int x = 0; x < 4; x++) {
+                    for (int y = 0; y < 4; y++) {
+                        int i = x * 4 + y;
+                        int subBlock = flip ? (y < 2 ? 0 : 1) : (x < 2 ? 0 : 1);
+                        int index = (int) ((block >>> (16 + i) & 1) << 1 | (block >>> i & 1));
+                        int modifier = Etc2Encoder.MODIFIERS[tables[subBlock]][index];
+                        int r = Etc2Encoder.clamp(bases[subBlock][0] + modifier);
+                        int g = Etc2Encoder.clamp(bases[subBlock][1] + modifier);
+                        int b = Etc2Encoder.clamp(bases[subBlock][2] + modifier);
+                        pixels[(by + y) * width + bx + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+                    }
+                }
+            }
+        }
+        return pixels;
+    }
+}
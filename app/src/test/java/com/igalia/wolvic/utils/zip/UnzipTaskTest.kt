@@ -0,0 +1,156 @@
+package com.igalia.wolvic.utils.zip
+
+import androidx.test.core.app.ApplicationProvider
+import org.junit.Assert.*
+import org.junit.Before
+import org.junit.Rule
+import org.junit.Test
+import org.junit.rules.TemporaryFolder
+import org.junit.runner.RunWith
+import org.robolectric.RobolectricTestRunner
+import org.robolectric.annotation.Config
+import java.io.File
+import java.io.FileOutputStream
+import java.util.zip.CRC32
+import java.util.zip.ZipEntry
+import java.util.zip.ZipOutputStream
+
+@RunWith(RobolectricTestRunner::class)
+@Config(manifest = Config.NONE)
+class UnzipTaskTest {
+
+    @get:Rule
+    val folder = TemporaryFolder()
+
+    private class RecordingCallback : UnzipCallback {
+        var finished = false
+        var cancelled = false
+        var error: String? = null
+
+        override fun onUnzipStart(zipFile: String) {}
+        override fun onUnzipProgress(zipFile: String, progress: Double) {}
+        override fun onUnzipFinish(zipFile: String, outputPath: String) { finished = true }
+        override fun onUnzipCancelled(zipFile: String) { cancelled = true }
+        override fun onUnzipError(zipFile: String, error: String?) { this.error = error }
+    }
+
+    private lateinit var task: UnzipTask
+    private lateinit var callback: RecordingCallback
+    private lateinit var output: File
+
+    @Before
+    fun setup() {
+        task = UnzipTask(ApplicationProvider.getApplicationContext())
+        callback = RecordingCallback()
+        task.addListener(callback)
+        output = File(folder.root, "env")
+    }
+
+    // Stored entries declare their CRC upfront, like the ones the journal can skip.
+    private fun createZip(entries: Map<String, String>, stored: Boolean = false): File {
+        val zip = folder.newFile()
+        ZipOutputStream(FileOutputStream(zip)).use { out ->
+            for ((name, content) in entries) {
+                val data = content.toByteArray()
+                val entry = ZipEntry(name)
+                if (stored) {
+                    val crc = CRC32()
+                    crc.update(data)
+                    entry.method = ZipEntry.STORED
+                    entry.size = data.size.toLong()
+                    entry.compressedSize = data.size.toLong()
+                    entry.crc = crc.value
+                }
+                out.putNextEntry(entry)
+                out.write(data)
+                out.closeEntry()
+            }
+        }
+        return zip
+    }
+
+    private fun unzip(zip: File) = task.startUnzip(zip.absolutePath, output.absolutePath)
+
+    private fun previousInstall(dir: File) {
+        dir.mkdirs()
+        File(dir, "image.png").writeText("previous")
+        File(dir, UnzipTask.INSTALL_MANIFEST).writeText("0\timage.png\n")
+    }
+
+    @Test
+    fun `A zip is installed into the output directory`() {
+        previousInstall(output)
+        unzip(createZip(mapOf("image.png" to "image", "textures/image.ktx" to "texture")))
+
+        assertTrue(callback.finished)
+        assertNull(callback.error)
+        assertEquals("image", File(output, "image.png").readText())
+        assertEquals("texture", File(output, "textures/image.ktx").readText())
+        assertTrue(File(output, UnzipTask.INSTALL_MANIFEST).isFile)
+        assertFalse(File(output.path + ".staging").exists())
+        assertFalse(File(output.path + ".old").exists())
+    }
+
+    @Test
+    fun `A corrupted entry is rejected`() {
+        previousInstall(output)
+        val zip = createZip(mapOf("image.png" to "image content"), stored = true)
+        val bytes = zip.readBytes()
+        val data = String(bytes, Charsets.ISO_8859_1).indexOf("image content")
+        bytes[data] = 'X'.code.toByte()
+        zip.writeBytes(bytes)
+
+        unzip(zip)
+        assertFalse(callback.finished)
+        assertNotNull(callback.error)
+        // The previous install is still usable.
+        assertEquals("previous", File(output, "image.png").readText())
+        assertFalse(File(output.path + ".staging", UnzipTask.INSTALL_MANIFEST).exists())
+    }
+
+    @Test
+    fun `An interrupted extraction is resumed from the journal`() {
+        val zip = createZip(mapOf("a.png" to "first", "b.png" to "second"), stored = true)
+        val crc = CRC32()
+        crc.update("first".toByteArray())
+        val staging = File(output.path + ".staging")
+        staging.mkdirs()
+        val extracted = File(staging, "a.png")
+        extracted.writeText("first")
+        extracted.setLastModified(1000)
+        File(staging, ".journal").writeText("${crc.value}\ta.png\n")
+
+        unzip(zip)
+        assertTrue(callback.finished)
+        // The verified entry wasn't written again.
+        assertEquals(1000, File(output, "a.png").lastModified())
+        assertEquals("first", File(output, "a.png").readText())
+        assertEquals("second", File(output, "b.png").readText())
+        assertEquals(2, File(output, UnzipTask.INSTALL_MANIFEST).readLines().size)
+    }
+
+    @Test
+    fun `An interrupted swap keeps the previous install`() {
+        // The process died after moving the previous install aside.
+        val old = File(output.path + ".old")
+        previousInstall(old)
+        // The new zip can't be installed, so the previous install must be the one left.
+        val zip = createZip(mapOf("../image.png" to "image"))
+
+        unzip(zip)
+        assertNotNull(callback.error)
+        assertEquals("previous", File(output, "image.png").readText())
+        assertTrue(File(output, UnzipTask.INSTALL_MANIFEST).isFile)
+        assertFalse(old.exists())
+    }
+
+    @Test
+    fun `Entries outside of the output directory are rejected`() {
+        unzip(createZip(mapOf("../evil.png" to "evil")))
+
+        assertFalse(callback.finished)
+        assertNotNull(callback.error)
+        assertFalse(File(folder.root, "evil.png").exists())
+        assertFalse(output.exists())
+    }
+}